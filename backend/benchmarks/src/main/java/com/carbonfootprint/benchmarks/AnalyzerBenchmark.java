@@ -0,0 +1,91 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+
+/**
+ * End-to-end cost of one analysis: the in-process Java engine versus forking evaluation.py.
+ *
+ * Trace and script paths default to the sample files in the backend tree and can be changed
+ * with -Dbench.trace=... and -Dbench.script=... (the python case needs python3 with pandas).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @Param({"native", "python"})
+    public String analyzer;
+
+    private Script script;
+    private Path pythonScript;
+    private TraceAnalysisEngine engine;
+
+    @Setup
+    public void setUp() {
+        Path trace = Paths.get(System.getProperty("bench.trace", "../uploads/trace.csv")).toAbsolutePath();
+        pythonScript = Paths.get(System.getProperty("bench.script",
+                "../src/main/resources/scripts/evaluation.py")).toAbsolutePath();
+        if (!Files.exists(trace)) {
+            throw new IllegalStateException("Trace file not found: " + trace);
+        }
+
+        script = new Script();
+        script.setFileName(trace.getFileName().toString());
+        script.setFilePath(trace.toString());
+        engine = new TraceAnalysisEngine(Runtime.getRuntime().availableProcessors(), 16L * 1024 * 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public Object analyze() throws IOException, InterruptedException {
+        if ("native".equals(analyzer)) {
+            // What NativeTraceAnalyzer.analyze() does
+            return engine.aggregate(Paths.get(script.getFilePath())).toResultNode("default");
+        }
+        return runPython();
+    }
+
+    // Same command line PythonRunnerService builds
+    private byte[] runPython() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(System.getProperty("bench.python", "python3"),
+                pythonScript.toString(), script.getFilePath())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        byte[] output;
+        try (InputStream in = process.getInputStream()) {
+            output = in.readAllBytes();
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("evaluation.py failed, is pandas installed?");
+        }
+        return output;
+    }
+}
@@ -0,0 +1,55 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.carbonfootprint.CarbonFootprintBackendApplication;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Starts the backend without the web server against a private in-memory H2 database, for the
+ * benchmarks that go through the services and repositories. Everything else comes from the
+ * application's own configuration.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {}
+
+    static ConfigurableApplicationContext start(String database) throws IOException {
+        Path workDir = Files.createTempDirectory("carbon-footprint-bench-");
+        // Command-line arguments, so they win over application.yml
+        return new SpringApplicationBuilder(CarbonFootprintBackendApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.format_sql=false",
+                        "--debug=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework=WARN",
+                        "--logging.level.com.carbonfootprint=WARN",
+                        "--file.upload-dir=" + workDir.resolve("uploads"),
+                        "--file.export-dir=" + workDir.resolve("exports"),
+                        // Benchmarks reconcile the dashboard row themselves after seeding
+                        "--analysis.dashboard-reconcile-interval-ms=86400000");
+    }
+
+    /** Native analyzer output for -Dbench.trace (default: the sample trace). */
+    static JsonNode sampleResult() throws IOException {
+        Path trace = Paths.get(System.getProperty("bench.trace", "../uploads/trace.csv")).toAbsolutePath();
+        if (!Files.exists(trace)) {
+            throw new IllegalStateException("Trace file not found: " + trace);
+        }
+        try (InputStream in = Files.newInputStream(trace)) {
+            return TraceAnalysisEngine.aggregate(in).toResultNode("default");
+        }
+    }
+}
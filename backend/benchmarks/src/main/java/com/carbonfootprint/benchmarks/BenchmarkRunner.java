@@ -0,0 +1,113 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Entry point of benchmarks.jar. Takes the usual JMH command line, but always writes JSON
+ * results (to -Dbench.results, default target/jmh-results.json, unless -rff is given) so runs
+ * of different releases can be kept and compared.
+ *
+ * With -Dbench.baseline=previous.json the new scores are compared to that file afterwards and
+ * the process exits with status 1 if any benchmark got slower by more than -Dbench.tolerance
+ * (default 0.10, i.e. 10%). Benchmarks missing from either file are listed but never fail.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        CommandLineOptions cli;
+        try {
+            cli = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams() || cli.shouldListProfilers()
+                || cli.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        Path results = Paths.get(cli.getResult().orElse(System.getProperty("bench.results", "target/jmh-results.json")));
+        new Runner(new OptionsBuilder()
+                .parent(cli)
+                .result(results.toString())
+                .resultFormat(cli.getResultFormat().orElse(ResultFormatType.JSON))
+                .build()).run();
+
+        String baseline = System.getProperty("bench.baseline");
+        if (baseline != null) {
+            double tolerance = Double.parseDouble(System.getProperty("bench.tolerance", "0.10"));
+            int regressions = compare(Paths.get(baseline), results, tolerance);
+            if (regressions > 0) {
+                System.err.println(regressions + " benchmark(s) regressed by more than " + Math.round(tolerance * 100) + "%");
+                System.exit(1);
+            }
+        }
+    }
+
+    /** Prints the change of every score against the baseline and returns the number of regressions. */
+    static int compare(Path baseline, Path current, double tolerance) throws IOException {
+        Map<String, JsonNode> before = scores(baseline);
+        Map<String, JsonNode> after = scores(current);
+        int regressions = 0;
+
+        System.out.println();
+        System.out.println("Compared with " + baseline + ":");
+        for (Map.Entry<String, JsonNode> entry : after.entrySet()) {
+            JsonNode old = before.get(entry.getKey());
+            if (old == null) {
+                System.out.printf("  %-80s new%n", entry.getKey());
+                continue;
+            }
+            double oldScore = old.path("primaryMetric").path("score").asDouble();
+            double newScore = entry.getValue().path("primaryMetric").path("score").asDouble();
+            // Throughput: higher is better; every time-based mode: lower is better
+            double change = oldScore == 0 ? 0 : (newScore - oldScore) / oldScore;
+            double slowdown = "thrpt".equals(entry.getValue().path("mode").asText()) ? -change : change;
+            boolean regressed = slowdown > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("  %-80s %+7.1f%%%s%n", entry.getKey(), change * 100, regressed ? "  REGRESSION" : "");
+        }
+        for (String name : before.keySet()) {
+            if (!after.containsKey(name)) {
+                System.out.printf("  %-80s not run%n", name);
+            }
+        }
+        return regressions;
+    }
+
+    // Keyed by benchmark, mode and parameters, which identify a score across runs
+    private static Map<String, JsonNode> scores(Path file) throws IOException {
+        Map<String, JsonNode> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText())
+                    .append(" [").append(run.path("mode").asText()).append(']');
+            Map<String, String> params = new TreeMap<>();
+            run.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            params.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+            scores.put(key.toString(), run);
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,99 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.analysis.ProgressListener;
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.carbonfootprint.analysis.TraceColumnFile;
+import com.carbonfootprint.analysis.TraceColumnFileWriter;
+
+/**
+ * The native analysis of one synthetic trace read as CSV against the columnar copy the backend
+ * converts uploads to, single-threaded and with 4 threads (threshold 0, so the CSV takes the
+ * mapped chunked path too). {@code statusCounts} reads the status column alone, the kind of
+ * query that touches a single column; {@code convert} is the one-off background conversion.
+ * Both file sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnarTraceBenchmark {
+
+    @Param({"1000000"})
+    public long rows;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path trace;
+    private Path columns;
+    private Path converted;
+    private TraceAnalysisEngine engine;
+
+    @Setup
+    public void setUp() throws IOException {
+        trace = SyntheticTraceGenerator.cached(rows);
+        columns = SyntheticTraceGenerator.cachedColumns(rows);
+        converted = Files.createTempFile("columnar-benchmark-", ".cols");
+        engine = new TraceAnalysisEngine(threads, 0);
+        System.out.println(trace.getFileName() + ": " + Files.size(trace) + " bytes, "
+                + columns.getFileName() + ": " + Files.size(columns) + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        engine.close();
+        Files.deleteIfExists(converted);
+    }
+
+    @Benchmark
+    public TraceAggregates csv() throws IOException {
+        return engine.aggregate(trace);
+    }
+
+    @Benchmark
+    public TraceAggregates columns() throws IOException {
+        try (TraceColumnFile file = TraceColumnFile.open(columns)) {
+            return engine.aggregate(file, ProgressListener.NONE, PowerProfiles.DEFAULT);
+        }
+    }
+
+    @Benchmark
+    public long[] statusCounts() throws IOException {
+        try (TraceColumnFile file = TraceColumnFile.open(columns)) {
+            long[] counts = new long[file.getStatusNames().size() + 1];
+            file.scan(EnumSet.of(TraceColumnFile.Column.STATUS), row -> counts[row.statusId + 1]++);
+            return counts;
+        }
+    }
+
+    @Benchmark
+    public long convert() throws IOException {
+        try (InputStream in = Files.newInputStream(trace)) {
+            return TraceColumnFileWriter.convert(in, converted, "benchmark");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.carbonfootprint.analysis.TraceCompression;
+
+/**
+ * The native analysis of one synthetic trace stored plain, gzip or zstd compressed: what
+ * decompressing on the fly costs against reading up to 10-20x more bytes. Single-threaded, since
+ * compressed traces never take the parallel mapped path. The file sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressedTraceBenchmark {
+
+    @Param({"1000000"})
+    public long rows;
+
+    @Param({"NONE", "GZIP", "ZSTD"})
+    public TraceCompression compression;
+
+    private Path trace;
+    private TraceAnalysisEngine engine;
+
+    @Setup
+    public void setUp() throws IOException {
+        trace = SyntheticTraceGenerator.cached(rows, compression);
+        engine = new TraceAnalysisEngine(1, Long.MAX_VALUE);
+        System.out.println(trace.getFileName() + ": " + Files.size(trace) + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public TraceAggregates aggregate() throws IOException {
+        return engine.aggregate(trace);
+    }
+}
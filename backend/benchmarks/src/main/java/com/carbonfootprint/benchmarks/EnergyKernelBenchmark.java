@@ -0,0 +1,130 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.analysis.EnergyKernel;
+import com.carbonfootprint.analysis.EnergyModel;
+import com.carbonfootprint.analysis.PowerProfile;
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceColumns;
+import com.carbonfootprint.analysis.TraceCsvParser;
+import com.carbonfootprint.analysis.TraceLayout;
+import com.carbonfootprint.analysis.TraceRow;
+import com.carbonfootprint.analysis.TraceRowHandler;
+
+/**
+ * The scalar and the Vector API energy kernels over the same decoded rows. {@code batchRows}
+ * 1024 is what TraceAggregates uses, so the columns stay in cache; 1048576 streams the whole
+ * trace through one batch, where both kernels should end up limited by memory bandwidth rather
+ * than by arithmetic. {@code modelAndGroup} is the kernel plus the group statistics, as in an
+ * analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EnergyKernelBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"1024", "1048576"})
+    public int batchRows;
+
+    private EnergyKernel energyKernel;
+    private TraceCsvParser parser;
+    private TraceLayout layout;
+    private List<TraceColumns> batches;
+
+    @Setup
+    public void setUp() throws IOException {
+        energyKernel = "vector".equals(kernel) ? EnergyKernel.vector() : EnergyKernel.scalar();
+        if (energyKernel == null) {
+            throw new IllegalStateException("The vector kernel needs --add-modules jdk.incubator.vector");
+        }
+        System.out.println("Energy kernel: " + energyKernel.getName());
+
+        batches = new ArrayList<>();
+        parser = new TraceCsvParser();
+        try (InputStream in = Files.newInputStream(SyntheticTraceGenerator.cached(rows))) {
+            parser.parse(in, new TraceRowHandler() {
+                @Override
+                public void onRow(TraceRow row) {
+                    if (batches.isEmpty() || batches.get(batches.size() - 1).isFull()) {
+                        batches.add(new TraceColumns(batchRows));
+                    }
+                    batches.get(batches.size() - 1).add(row);
+                }
+            });
+        }
+        layout = parser.getLayout();
+        // The constant intensity and the default power profile, as TraceAggregates fills them in
+        // without an hourly profile or host mappings
+        PowerProfile profile = PowerProfile.DEFAULT;
+        for (TraceColumns batch : batches) {
+            Arrays.fill(batch.gramsPerKwh, 0, batch.size, EnergyModel.CARBON_INTENSITY_G_PER_KWH);
+            Arrays.fill(batch.cpuWattsPerCore, 0, batch.size, profile.getCpuWattsPerCore());
+            Arrays.fill(batch.idleWatts, 0, batch.size, profile.getIdleWatts());
+            Arrays.fill(batch.memoryWattsPerGb, 0, batch.size, profile.getMemoryWattsPerGb());
+            Arrays.fill(batch.storageWattsPerGb, 0, batch.size, profile.getStorageWattsPerGb());
+        }
+    }
+
+    // The model alone: clipped %cpu, IO, energy and carbon columns for every row
+    @Benchmark
+    public List<TraceColumns> kernel() {
+        for (TraceColumns batch : batches) {
+            energyKernel.apply(batch);
+        }
+        return batches;
+    }
+
+    // Rows fed one by one to TraceAggregates, which batches them for the kernel and groups them
+    @Benchmark
+    public TraceAggregates modelAndGroup() {
+        TraceAggregates aggregates = new TraceAggregates(parser.getProcessNames(), parser.getHostNames(), energyKernel);
+        aggregates.onLayout(layout);
+        TraceRow row = new TraceRow();
+        for (TraceColumns batch : batches) {
+            for (int i = 0; i < batch.size; i++) {
+                row.processId = batch.processId[i];
+                row.hostId = batch.hostId[i];
+                row.cpus = batch.cpus[i];
+                row.cpuPercent = batch.cpuPercent[i];
+                row.realtime = batch.realtime[i];
+                row.duration = batch.duration[i];
+                row.memory = batch.memory[i];
+                row.readBytes = batch.readBytes[i];
+                row.writeBytes = batch.writeBytes[i];
+                row.start = batch.start[i];
+                row.complete = batch.complete[i];
+                aggregates.onRow(row);
+            }
+        }
+        aggregates.getRows();
+        return aggregates;
+    }
+}
@@ -0,0 +1,138 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.analysis.CarbonIntensity;
+import com.carbonfootprint.analysis.EnergyModel;
+import com.carbonfootprint.analysis.PowerProfile;
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceCsvParser;
+import com.carbonfootprint.analysis.TraceLayout;
+import com.carbonfootprint.analysis.TraceRow;
+import com.carbonfootprint.analysis.TraceRowHandler;
+
+/**
+ * The energy/carbon model without any parsing: rows of a synthetic trace are decoded once into
+ * columns, then each invocation runs the per-row model alone, and the model plus the
+ * per-process/per-host grouping of TraceAggregates. {@code power} "hosts" maps the synthetic
+ * hosts to two power profiles, which should cost the same as the single default profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnergyModelBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"default", "hosts"})
+    public String power;
+
+    private PowerProfiles powerProfiles;
+    private TraceCsvParser parser;
+    private TraceLayout layout;
+    private int[] processId;
+    private int[] hostId;
+    private double[] cpus;
+    private double[] cpuPercent;
+    private double[] realtime;
+    private double[] duration;
+    private double[] memory;
+    private double[] readBytes;
+    private double[] writeBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        processId = new int[rows];
+        hostId = new int[rows];
+        cpus = new double[rows];
+        cpuPercent = new double[rows];
+        realtime = new double[rows];
+        duration = new double[rows];
+        memory = new double[rows];
+        readBytes = new double[rows];
+        writeBytes = new double[rows];
+
+        parser = new TraceCsvParser();
+        try (InputStream in = Files.newInputStream(SyntheticTraceGenerator.cached(rows))) {
+            parser.parse(in, new TraceRowHandler() {
+                private int next;
+
+                @Override
+                public void onRow(TraceRow row) {
+                    processId[next] = row.processId;
+                    hostId[next] = row.hostId;
+                    cpus[next] = row.cpus;
+                    cpuPercent[next] = row.cpuPercent;
+                    realtime[next] = row.realtime;
+                    duration[next] = row.duration;
+                    memory[next] = row.memory;
+                    readBytes[next] = row.readBytes;
+                    writeBytes[next] = row.writeBytes;
+                    next++;
+                }
+            });
+        }
+        layout = parser.getLayout();
+
+        powerProfiles = "hosts".equals(power)
+                ? PowerProfiles.of(List.of(new PowerProfile("xeon", 7.5, 90, 0.375, 5), new PowerProfile("epyc", 3.6, 110, 0.375, 4)),
+                        Map.of("cpu0*", "xeon", "cpu1*", "epyc"), "default")
+                : PowerProfiles.DEFAULT;
+    }
+
+    // Power, energy and carbon of every row, summed
+    @Benchmark
+    public double model() {
+        double carbon = 0;
+        for (int i = 0; i < rows; i++) {
+            double ioGb = readBytes[i] / EnergyModel.BYTES_PER_GB + writeBytes[i] / EnergyModel.BYTES_PER_GB;
+            double power = EnergyModel.powerWatts(cpus[i], EnergyModel.clipCpuPercent(cpuPercent[i]), ioGb);
+            carbon += EnergyModel.carbonGrams(EnergyModel.energyWh(power, realtime[i]));
+        }
+        return carbon;
+    }
+
+    // The model plus the group statistics, as the parser drives it
+    @Benchmark
+    public TraceAggregates modelAndGroup() {
+        TraceAggregates aggregates = new TraceAggregates(parser.getProcessNames(), parser.getHostNames(),
+                CarbonIntensity.CONSTANT, powerProfiles);
+        aggregates.onLayout(layout);
+        TraceRow row = new TraceRow();
+        for (int i = 0; i < rows; i++) {
+            row.processId = processId[i];
+            row.hostId = hostId[i];
+            row.cpus = cpus[i];
+            row.cpuPercent = cpuPercent[i];
+            row.realtime = realtime[i];
+            row.duration = duration[i];
+            row.memory = memory[i];
+            row.readBytes = readBytes[i];
+            row.writeBytes = writeBytes[i];
+            aggregates.onRow(row);
+        }
+        return aggregates;
+    }
+}
@@ -0,0 +1,119 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.service.JsonCodec;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+/**
+ * Per-call cost of the JSON work the services do, with a mapper built for every call (what the
+ * code did before JsonCodec) against the shared codec, with and without Blackbird.
+ *
+ * The payload is the analysis output of -Dbench.trace (default: the sample trace).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"perCall", "shared", "blackbird"})
+    public String codec;
+
+    private JsonCodec shared;
+    private byte[] analyzerOutput;
+    private AnalysisResult result;
+    private VisualizationData visualization;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path trace = Paths.get(System.getProperty("bench.trace", "../uploads/trace.csv")).toAbsolutePath();
+        if (!Files.exists(trace)) {
+            throw new IllegalStateException("Trace file not found: " + trace);
+        }
+
+        // Built the way Spring Boot builds the application's mapper
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if ("blackbird".equals(codec)) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        shared = new JsonCodec(builder.build());
+
+        JsonNode output;
+        try (TraceAnalysisEngine engine = new TraceAnalysisEngine(1, Long.MAX_VALUE)) {
+            output = engine.aggregate(trace).toResultNode("default");
+        }
+        analyzerOutput = shared.writeTree(output);
+        visualization = shared.readVisualization(new ByteArrayInputStream(analyzerOutput));
+
+        Script script = new Script();
+        script.setId(1L);
+        script.setFileName(trace.getFileName().toString());
+        script.setFilePath(trace.toString());
+        result = new AnalysisResult();
+        result.setId(1L);
+        result.setScript(script);
+        result.setAnalysisTime(LocalDateTime.now());
+        result.setTotalEnergy(output.path("summary").path("totalEnergy").asDouble());
+        result.setRawData(new String(analyzerOutput, StandardCharsets.UTF_8));
+    }
+
+    // PythonWorkerPool and AnalysisPayloadService: analyzer output to a tree
+    @Benchmark
+    public JsonNode readAnalyzerOutput() throws IOException {
+        if ("perCall".equals(codec)) {
+            return new ObjectMapper().readTree(analyzerOutput);
+        }
+        return shared.readTree(analyzerOutput);
+    }
+
+    // AnalysisService export
+    @Benchmark
+    public byte[] writeAnalysisResult() throws IOException {
+        if ("perCall".equals(codec)) {
+            return new ObjectMapper().registerModule(new JavaTimeModule()).writeValueAsBytes(result);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(analyzerOutput.length + 1024);
+        shared.writeResult(result, out);
+        return out.toByteArray();
+    }
+
+    // The /api/visualization response body
+    @Benchmark
+    public byte[] writeVisualization() throws IOException {
+        if ("perCall".equals(codec)) {
+            return new ObjectMapper().writeValueAsBytes(visualization);
+        }
+        return shared.writeVisualization(visualization);
+    }
+}
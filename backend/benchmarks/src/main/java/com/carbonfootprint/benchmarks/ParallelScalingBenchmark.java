@@ -0,0 +1,62 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+
+/**
+ * Wall-clock time of the memory-mapped chunked parser for 1/2/4/8 threads.
+ *
+ * The default trace has 10M rows (about 4.5GB, generated once into java.io.tmpdir); use
+ * -p rows=1000000 for a quicker run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelScalingBenchmark {
+
+    @Param({"10000000"})
+    public long rows;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Path trace;
+    private TraceAnalysisEngine engine;
+
+    @Setup
+    public void setUp() throws IOException {
+        trace = SyntheticTraceGenerator.cached(rows);
+        // Threshold 0 forces the mapped path even for the single-threaded case
+        engine = new TraceAnalysisEngine(threads, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public TraceAggregates aggregate() throws IOException {
+        return engine.aggregate(trace);
+    }
+}
@@ -0,0 +1,121 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.service.AnalysisService;
+import com.carbonfootprint.service.AnalysisService.DashboardSummary;
+import com.carbonfootprint.service.AnalysisService.EnergyConsumer;
+import com.carbonfootprint.service.DashboardAggregateService;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * AnalysisService persistence and dashboard queries against 1k and 100k stored results.
+ *
+ * The history is inserted with plain JDBC batches before measuring: one result row plus one
+ * TaskResult row per process of the sample analysis (-Dbench.trace), with randomized values.
+ * saveAnalysisResult stores the sample analysis itself, payload and task rows included, so the
+ * table keeps growing by a few thousand rows during the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StoredResultsBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"1000", "100000"})
+    public int results;
+
+    private ConfigurableApplicationContext context;
+    private AnalysisService analysisService;
+    private JsonNode sample;
+
+    @Setup
+    public void setUp() throws IOException {
+        sample = BenchmarkApplication.sampleResult();
+        context = BenchmarkApplication.start("stored-results");
+        analysisService = context.getBean(AnalysisService.class);
+        seed(context.getBean(JdbcTemplate.class));
+        context.getBean(DashboardAggregateService.class).reconcile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private void seed(JdbcTemplate jdbc) {
+        SplittableRandom random = new SplittableRandom(results);
+        LocalDateTime time = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < results; i++) {
+            batch.add(new Object[] {Timestamp.valueOf(time.plusMinutes(i)), random.nextDouble(50),
+                    random.nextDouble(25), random.nextDouble(100_000), random.nextDouble(100)});
+            if (batch.size() == BATCH || i == results - 1) {
+                jdbc.batchUpdate("insert into analysis_result (analysis_time, total_energy, total_carbon_footprint, "
+                        + "total_runtime, avg_cpu_utilization) values (?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+
+        JsonNode tasks = sample.path("tasks");
+        List<Long> ids = jdbc.queryForList("select id from analysis_result", Long.class);
+        for (int i = 0; i < ids.size(); i++) {
+            for (JsonNode task : tasks) {
+                double scale = random.nextDouble(0.5, 1.5);
+                batch.add(new Object[] {task.path("process").asText(),
+                        task.path("energy_consumption").asDouble() * scale,
+                        task.path("carbon_footprint").asDouble() * scale,
+                        task.path("runtime").asDouble() * scale, "default",
+                        task.path("cpu_usage").asDouble(), task.path("memory_allocated").asDouble(),
+                        task.path("tasks").asLong(), task.path("io_volume").asDouble() * scale, ids.get(i)});
+            }
+            if (batch.size() >= BATCH || i == ids.size() - 1) {
+                jdbc.batchUpdate("insert into task_result (id, process, energy_consumption, carbon_footprint, runtime, "
+                        + "hardware, cpu_usage, memory_usage, task_count, io_volume, result_id) "
+                        + "values (next value for task_result_seq, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public AnalysisResult saveAnalysisResult() {
+        return analysisService.saveAnalysisResult(null, sample);
+    }
+
+    @Benchmark
+    public DashboardSummary getDashboardSummary() {
+        return analysisService.getDashboardSummary();
+    }
+
+    @Benchmark
+    public List<EnergyConsumer> getTopEnergyConsumers() {
+        return analysisService.getTopEnergyConsumers(10);
+    }
+}
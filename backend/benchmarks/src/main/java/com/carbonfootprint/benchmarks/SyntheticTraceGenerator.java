@@ -0,0 +1,154 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+import com.carbonfootprint.analysis.ContentHashes;
+import com.carbonfootprint.analysis.TraceColumnFile;
+import com.carbonfootprint.analysis.TraceColumnFileWriter;
+import com.carbonfootprint.analysis.TraceCompression;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Writes synthetic Nextflow traces with the 43-column layout evaluation.py assigns to
+ * headerless files (see TraceLayout.EXPECTED_COLUMNS). Output is deterministic for a given
+ * row count, and generated files are cached under java.io.tmpdir so repeated runs reuse them.
+ */
+public final class SyntheticTraceGenerator {
+
+    private static final String[] PROCESSES = {
+            "NFCORE_CHIPSEQ:CHIPSEQ:FASTQC_TRIMGALORE:FASTQC",
+            "NFCORE_CHIPSEQ:CHIPSEQ:FASTQC_TRIMGALORE:TRIMGALORE",
+            "NFCORE_CHIPSEQ:CHIPSEQ:ALIGN_BWA_MEM:BWA_MEM",
+            "NFCORE_CHIPSEQ:CHIPSEQ:ALIGN_BWA_MEM:BAM_SORT_SAMTOOLS:SAMTOOLS_SORT",
+            "NFCORE_CHIPSEQ:CHIPSEQ:ALIGN_BWA_MEM:BAM_SORT_SAMTOOLS:SAMTOOLS_INDEX",
+            "NFCORE_CHIPSEQ:CHIPSEQ:ALIGN_BWA_MEM:BAM_SORT_SAMTOOLS:BAM_STATS_SAMTOOLS:SAMTOOLS_STATS",
+            "NFCORE_CHIPSEQ:CHIPSEQ:ALIGN_BWA_MEM:BAM_SORT_SAMTOOLS:BAM_STATS_SAMTOOLS:SAMTOOLS_FLAGSTAT",
+            "NFCORE_CHIPSEQ:CHIPSEQ:PICARD_MERGESAMFILES",
+            "NFCORE_CHIPSEQ:CHIPSEQ:MARK_DUPLICATES_PICARD:PICARD_MARKDUPLICATES",
+            "NFCORE_CHIPSEQ:CHIPSEQ:FILTER_BAM_BAMTOOLS:BAMTOOLS_FILTER",
+            "NFCORE_CHIPSEQ:CHIPSEQ:PRESEQ_LCEXTRAP",
+            "NFCORE_CHIPSEQ:CHIPSEQ:PICARD_COLLECTMULTIPLEMETRICS",
+            "NFCORE_CHIPSEQ:CHIPSEQ:BEDTOOLS_GENOMECOV",
+            "NFCORE_CHIPSEQ:CHIPSEQ:UCSC_BEDGRAPHTOBIGWIG",
+            "NFCORE_CHIPSEQ:CHIPSEQ:DEEPTOOLS_COMPUTEMATRIX",
+            "NFCORE_CHIPSEQ:CHIPSEQ:DEEPTOOLS_PLOTPROFILE",
+            "NFCORE_CHIPSEQ:CHIPSEQ:PHANTOMPEAKQUALTOOLS",
+            "NFCORE_CHIPSEQ:CHIPSEQ:MACS2_CALLPEAK",
+            "NFCORE_CHIPSEQ:CHIPSEQ:HOMER_ANNOTATEPEAKS",
+            "NFCORE_CHIPSEQ:CHIPSEQ:MULTIQC"
+    };
+
+    private static final int HOSTS = 16;
+
+    private SyntheticTraceGenerator() {}
+
+    /** Returns a cached synthetic trace with the given number of rows, generating it if needed. */
+    public static Path cached(long rows) throws IOException {
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "synthetic-trace-" + rows + ".csv");
+        if (!Files.exists(file)) {
+            Path partial = Files.createTempFile(file.getParent(), "synthetic-trace-", ".tmp");
+            write(partial, rows);
+            Files.move(partial, file);
+        }
+        return file;
+    }
+
+    /** The cached trace compressed like an upload of that format (.csv.gz or .csv.zst). */
+    public static Path cached(long rows, TraceCompression compression) throws IOException {
+        Path plain = cached(rows);
+        if (!compression.isCompressed()) {
+            return plain;
+        }
+        Path file = Paths.get(plain + (compression == TraceCompression.GZIP ? ".gz" : ".zst"));
+        if (!Files.exists(file)) {
+            Path partial = Files.createTempFile(file.getParent(), "synthetic-trace-", ".tmp");
+            try (OutputStream out = compress(Files.newOutputStream(partial), compression)) {
+                Files.copy(plain, out);
+            }
+            Files.move(partial, file);
+        }
+        return file;
+    }
+
+    /** The cached trace converted to a columnar trace, as the backend keeps next to uploads. */
+    public static Path cachedColumns(long rows) throws IOException {
+        Path plain = cached(rows);
+        Path file = TraceColumnFile.pathFor(plain);
+        if (!Files.exists(file)) {
+            Path partial = Files.createTempFile(file.getParent(), "synthetic-trace-", ".tmp");
+            try (InputStream in = Files.newInputStream(plain)) {
+                TraceColumnFileWriter.convert(in, partial, ContentHashes.hashFile(plain));
+            }
+            Files.move(partial, file);
+        }
+        return file;
+    }
+
+    private static OutputStream compress(OutputStream out, TraceCompression compression) throws IOException {
+        // Default levels, as gzip and zstd use on the command line
+        return compression == TraceCompression.GZIP
+                ? new GZIPOutputStream(out, 64 * 1024)
+                : new ZstdOutputStream(out);
+    }
+
+    public static void write(Path file, long rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(rows);
+        StringBuilder line = new StringBuilder(512);
+        long submit = 1697280000000L;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long taskId = 1; taskId <= rows; taskId++) {
+                String process = PROCESSES[random.nextInt(PROCESSES.length)];
+                int cpus = 1 << random.nextInt(5);
+                long realtime = 1000 + random.nextLong(3_600_000);
+                long duration = realtime + random.nextLong(60_000);
+                long memory = (1L + random.nextInt(32)) << 30;
+                double cpuPercent = Math.round(random.nextDouble() * cpus * 1000) / 10.0;
+                long readBytes = random.nextLong(20L << 30);
+                long writeBytes = random.nextLong(10L << 30);
+                int host = 1 + random.nextInt(HOSTS);
+                String hash = Long.toHexString(0x1000000000L | random.nextLong(0xf000000000L));
+                long start = submit + random.nextLong(600_000);
+
+                line.setLength(0);
+                line.append(taskId).append(',')
+                        .append(host < 10 ? "cpu0" : "cpu").append(host).append(',')
+                        .append(hash, 0, 2).append('/').append(hash, 2, 8).append(',')
+                        .append("nf-").append(hash).append(',')
+                        .append(process).append(',')
+                        .append("SAMPLE_").append(taskId % 97).append(',')
+                        .append(process).append(" (SAMPLE_").append(taskId % 97).append("),")
+                        .append("COMPLETED,0,-,quay.io/biocontainers/tool:1.0,")
+                        .append(cpus).append(",57600000,-,").append(memory).append(",1,")
+                        .append(submit).append(',').append(start).append(',').append(start + duration).append(',')
+                        .append(duration).append(',').append(realtime).append(",-,")
+                        .append(cpuPercent).append(',').append(random.nextInt(1000) / 10.0).append(',')
+                        .append(memory / 4).append(',').append(memory / 3).append(',')
+                        .append(memory / 4).append(',').append(memory / 3).append(',')
+                        .append(readBytes + 4096).append(',').append(writeBytes + 4096).append(',')
+                        .append(random.nextInt(2_000_000)).append(',').append(random.nextInt(2_000_000)).append(',')
+                        .append(readBytes).append(',').append(writeBytes).append(',')
+                        .append(random.nextInt(30_000)).append(',').append(random.nextInt(10_000)).append(',')
+                        .append("/input/data/work/").append(hash).append(",true,-,")
+                        .append(random.nextInt(10)).append(',').append(random.nextInt(2)).append(',')
+                        .append(2).append(',').append(random.nextInt(100))
+                        .append('\n');
+                writer.append(line);
+                submit += random.nextInt(1000);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long rows = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000L;
+        write(Paths.get(args[0]), rows);
+    }
+}
@@ -0,0 +1,78 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.carbonfootprint.analysis.TraceCsvParser;
+import com.carbonfootprint.analysis.TraceRow;
+import com.carbonfootprint.analysis.TraceRowHandler;
+
+/**
+ * Single-threaded streaming parse of synthetic traces at 10k/1M/10M rows: decoding alone, and
+ * decoding plus the energy model and grouping (what the native analyzer does for small files).
+ *
+ * Traces are generated once into java.io.tmpdir; the 10M file is about 4.5GB, use
+ * -p rows=10000,1000000 to leave it out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraceParsingBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public long rows;
+
+    private Path trace;
+
+    @Setup
+    public void setUp() throws IOException {
+        trace = SyntheticTraceGenerator.cached(rows);
+    }
+
+    @Benchmark
+    public double parse() throws IOException {
+        RowChecksum checksum = new RowChecksum();
+        try (InputStream in = Files.newInputStream(trace)) {
+            new TraceCsvParser().parse(in, checksum);
+        }
+        return checksum.sum;
+    }
+
+    @Benchmark
+    public TraceAggregates parseAndAggregate() throws IOException {
+        try (InputStream in = Files.newInputStream(trace)) {
+            return TraceAnalysisEngine.aggregate(in);
+        }
+    }
+
+    // Touches every decoded field so the parse cannot be optimized away
+    private static final class RowChecksum implements TraceRowHandler {
+        double sum;
+
+        @Override
+        public void onRow(TraceRow row) {
+            sum += row.processId + row.hostId + row.cpus + row.cpuPercent + row.realtime + row.duration
+                    + row.memory + row.readBytes + row.writeBytes;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.carbonfootprint.service.AnalysisService;
+import com.carbonfootprint.service.JsonCodec;
+import com.carbonfootprint.service.VisualizationService;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+
+/**
+ * Building the /api/visualization response for one stored result: the model alone and the
+ * model plus the JSON body. "cold" evicts the cached model first, so every call reads the
+ * compressed payload from H2 and parses it; "warm" is a cache hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisualizationBenchmark {
+
+    @Param({"cold", "warm"})
+    public String cache;
+
+    private ConfigurableApplicationContext context;
+    private VisualizationService visualizationService;
+    private JsonCodec jsonCodec;
+    private Long resultId;
+    private boolean cold;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = BenchmarkApplication.start("visualization");
+        visualizationService = context.getBean(VisualizationService.class);
+        jsonCodec = context.getBean(JsonCodec.class);
+        resultId = context.getBean(AnalysisService.class)
+                .saveAnalysisResult(null, BenchmarkApplication.sampleResult()).getId();
+        cold = "cold".equals(cache);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public VisualizationData getVisualizationData() {
+        if (cold) {
+            visualizationService.evict(resultId);
+        }
+        return visualizationService.getVisualizationData(resultId);
+    }
+
+    @Benchmark
+    public byte[] visualizationResponse() throws IOException {
+        return jsonCodec.writeVisualization(getVisualizationData());
+    }
+}
@@ -0,0 +1,70 @@
+package com.carbonfootprint.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.carbonfootprint.analysis.PowerProfile;
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.carbonfootprint.analysis.TraceRollup;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+import com.carbonfootprint.service.WhatIfService;
+
+/**
+ * A what-if view from the rollup of a synthetic trace, against re-analysing the trace (see
+ * ParallelScalingBenchmark for that). {@code recompute} is the in-memory case, {@code readAndRecompute}
+ * also decodes the rollup file, as on a cache miss. The rollup size is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WhatIfBenchmark {
+
+    @Param({"1000000"})
+    public long rows;
+
+    private TraceRollup rollup;
+    private byte[] rollupBytes;
+    private PowerProfiles power;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (TraceAnalysisEngine engine = new TraceAnalysisEngine(Runtime.getRuntime().availableProcessors(), 0)) {
+            rollup = engine.aggregate(SyntheticTraceGenerator.cached(rows)).getRollup();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        rollup.writeTo(out);
+        rollupBytes = out.toByteArray();
+        System.out.println("Rollup: " + rollup.size() + " cells, " + rollupBytes.length + " bytes");
+        power = PowerProfiles.of(List.of(new PowerProfile("xeon", 7.5, 90, 0.375, 5)), Map.of("cpu0*", "xeon"), "default");
+    }
+
+    @Benchmark
+    public VisualizationData recompute() {
+        return WhatIfService.recompute(rollup, power, null);
+    }
+
+    @Benchmark
+    public VisualizationData readAndRecompute() throws IOException {
+        return WhatIfService.recompute(TraceRollup.readFrom(new ByteArrayInputStream(rollupBytes)), power, 300.0);
+    }
+}
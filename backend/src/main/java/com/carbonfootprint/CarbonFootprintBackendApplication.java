@@ -4,9 +4,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.carbonfootprint.config.AnalysisConfig;
 import com.carbonfootprint.config.FileStorageConfig;
 import com.carbonfootprint.config.PythonConfig;
 
@@ -17,10 +19,12 @@ import org.springframework.core.env.Environment;
 @SpringBootApplication(scanBasePackages = {
     "com.carbonfootprint.config",
     "com.carbonfootprint.controller",
+    "com.carbonfootprint.exception",
     "com.carbonfootprint.service",
     "com.carbonfootprint.repository"
 })
-@EnableConfigurationProperties({FileStorageConfig.class, PythonConfig.class})
+@EnableConfigurationProperties({FileStorageConfig.class, PythonConfig.class, AnalysisConfig.class})
+@EnableScheduling
 public class CarbonFootprintBackendApplication {
     public static void main(String[] args) {
         SpringApplication.run(CarbonFootprintBackendApplication.class, args);
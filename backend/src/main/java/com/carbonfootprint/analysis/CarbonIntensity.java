@@ -0,0 +1,74 @@
+package com.carbonfootprint.analysis;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Carbon intensity of the electricity a task used, in gCO2eq/kWh. The energy model asks once
+ * per task with the region of its host and the task's start and completion time, so
+ * implementations must answer in constant time.
+ */
+public abstract class CarbonIntensity {
+
+    /** The fixed global average evaluation.py uses. */
+    public static final CarbonIntensity CONSTANT = new Constant(EnergyModel.CARBON_INTENSITY_G_PER_KWH);
+
+    /**
+     * Identifies the data behind the values, e.g. {@code constant-475}. Recorded with every
+     * result and part of the result cache key, so it changes whenever the values may change.
+     */
+    public abstract String getProfile();
+
+    /** Region index of a host, null for tasks without a hostname; -1 when no region applies. */
+    public abstract int regionOf(String hostName);
+
+    /**
+     * Intensity for a task in {@code region} that ran from {@code startMs} to
+     * {@code completeMs} (epoch milliseconds, 0 when unknown).
+     */
+    public abstract double gramsPerKwh(int region, double startMs, double completeMs);
+
+    public boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * Zone of the start and complete times a trace writes as date-times (Nextflow's default
+     * {@code trace.txt}); the parser turns them into epoch milliseconds with it.
+     */
+    public ZoneId getTraceTimeZone() {
+        return ZoneOffset.UTC;
+    }
+
+    private static final class Constant extends CarbonIntensity {
+
+        private final double gramsPerKwh;
+        private final String profile;
+
+        Constant(double gramsPerKwh) {
+            this.gramsPerKwh = gramsPerKwh;
+            this.profile = "constant-" + (gramsPerKwh == Math.rint(gramsPerKwh)
+                    ? String.valueOf((long) gramsPerKwh) : String.valueOf(gramsPerKwh));
+        }
+
+        @Override
+        public String getProfile() {
+            return profile;
+        }
+
+        @Override
+        public int regionOf(String hostName) {
+            return -1;
+        }
+
+        @Override
+        public double gramsPerKwh(int region, double startMs, double completeMs) {
+            return gramsPerKwh;
+        }
+
+        @Override
+        public boolean isConstant() {
+            return true;
+        }
+    }
+}
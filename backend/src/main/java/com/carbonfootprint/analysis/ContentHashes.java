@@ -0,0 +1,53 @@
+package com.carbonfootprint.analysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 helpers for content-addressing uploaded traces and analysis results.
+ */
+public final class ContentHashes {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContentHashes() {}
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** Hashes a whole file, for traces stored before hashes were recorded. */
+    public static String hashFile(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) >= 0) {
+                // DigestInputStream updates the digest
+            }
+        }
+        return hex(digest);
+    }
+
+    /** Hash of the given parts joined with '|', used for composite cache keys. */
+    public static String hashOf(String... parts) {
+        MessageDigest digest = newDigest();
+        digest.update(String.join("|", parts).getBytes(StandardCharsets.UTF_8));
+        return hex(digest);
+    }
+}
@@ -0,0 +1,53 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * Runs the {@link EnergyModel} over a batch of rows. Two implementations compute exactly the same
+ * values: a plain loop, and a SIMD one built on the incubating Vector API. The vector kernel is
+ * used when the JVM was started with {@code --add-modules jdk.incubator.vector}; without it the
+ * scalar loop is used and nothing else changes.
+ */
+public abstract class EnergyKernel {
+
+    EnergyKernel() {}
+
+    public abstract String getName();
+
+    /**
+     * Fills the clipped %cpu, IO volume, energy and carbon columns of the first
+     * {@code columns.size} rows; the carbon intensity and power coefficient columns must be
+     * filled in already.
+     */
+    public abstract void apply(TraceColumns columns);
+
+    /** The vector kernel when the JVM provides it, the scalar one otherwise. */
+    public static EnergyKernel preferred() {
+        return Holder.VECTOR != null ? Holder.VECTOR : ScalarEnergyKernel.INSTANCE;
+    }
+
+    public static EnergyKernel scalar() {
+        return ScalarEnergyKernel.INSTANCE;
+    }
+
+    /** The vector kernel, or null when jdk.incubator.vector is not in the boot layer. */
+    public static EnergyKernel vector() {
+        return Holder.VECTOR;
+    }
+
+    // Resolved once; the vector class is only loaded when its module is present
+    private static final class Holder {
+
+        static final EnergyKernel VECTOR = loadVector();
+
+        private static EnergyKernel loadVector() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return null;
+            }
+            try {
+                return (EnergyKernel) Class.forName("com.carbonfootprint.analysis.VectorEnergyKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
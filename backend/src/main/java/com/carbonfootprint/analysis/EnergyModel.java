@@ -0,0 +1,64 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * Energy and carbon model used by the native analyzer.
+ * The coefficients mirror load_and_preprocess_data() in scripts/evaluation.py.
+ */
+public final class EnergyModel {
+
+    public static final double BYTES_PER_GB = 1024.0 * 1024.0 * 1024.0;
+    public static final double MS_PER_MINUTE = 60000.0;
+    public static final double MS_PER_HOUR = 3600000.0;
+
+    /** %cpu values above this are treated as measurement noise and clipped. */
+    public static final double MAX_CPU_PERCENT = 1000.0;
+
+    public static final double CPU_WATTS_PER_CORE = 200.0;
+    public static final double IO_WATTS_PER_GB = 5.0;
+    public static final double BASE_WATTS = 50.0;
+    public static final double CARBON_INTENSITY_G_PER_KWH = 475.0;
+
+    /** Bump whenever the coefficients or the result shape change; cached results are keyed by it. */
+    public static final int VERSION = 2;
+
+    private EnergyModel() {}
+
+    public static double clipCpuPercent(double cpuPercent) {
+        return Math.min(cpuPercent, MAX_CPU_PERCENT);
+    }
+
+    /** Total power draw of one task in watts. */
+    public static double powerWatts(double cpus, double cpuPercent, double ioGb) {
+        return cpus * CPU_WATTS_PER_CORE * (cpuPercent / 100)
+                + ioGb * IO_WATTS_PER_GB
+                + BASE_WATTS;
+    }
+
+    /**
+     * Total power draw of one task in watts with the coefficients of a {@link PowerProfile}.
+     * With the default profile (no memory term) this is exactly {@link #powerWatts(double, double, double)}.
+     */
+    public static double powerWatts(double cpus, double cpuPercent, double ioGb, double memoryGb,
+                                    double cpuWattsPerCore, double storageWattsPerGb, double memoryWattsPerGb,
+                                    double idleWatts) {
+        return cpus * cpuWattsPerCore * (cpuPercent / 100)
+                + ioGb * storageWattsPerGb
+                + memoryGb * memoryWattsPerGb
+                + idleWatts;
+    }
+
+    /** Energy of one task in Wh. */
+    public static double energyWh(double powerWatts, double realtimeMs) {
+        return powerWatts * (realtimeMs / MS_PER_HOUR);
+    }
+
+    /** Carbon emission in gCO2eq for the given energy in Wh. */
+    public static double carbonGrams(double energyWh) {
+        return carbonGrams(energyWh, CARBON_INTENSITY_G_PER_KWH);
+    }
+
+    /** Carbon emission in gCO2eq for the given energy in Wh at a carbon intensity in gCO2eq/kWh. */
+    public static double carbonGrams(double energyWh, double gramsPerKwh) {
+        return (energyWh / 1000) * gramsPerKwh;
+    }
+}
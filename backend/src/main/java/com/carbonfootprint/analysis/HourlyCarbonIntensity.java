@@ -0,0 +1,310 @@
+package com.carbonfootprint.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Hourly intensity tables, one per region, loaded from CSV files named {@code <region>.csv}
+ * whose lines are {@code <hour>,<gCO2eq/kWh>}. The hour is epoch milliseconds or an ISO-8601
+ * date-time (UTC unless it carries an offset); a header line is skipped, and hours missing from a
+ * table repeat the previous value.
+ *
+ * Every region is kept as a dense array of hourly values plus their running sum, so the average
+ * over a task's run is two array reads and a subtraction however long the task ran. Before the
+ * first and after the last hour the edge values continue; a task without usable timestamps gets
+ * the average of the whole table.
+ *
+ * Traces that write start and complete as date-times are read in the configured trace time
+ * zone, which is part of the profile.
+ */
+public final class HourlyCarbonIntensity extends CarbonIntensity {
+
+    private static final double MS_PER_HOUR = EnergyModel.MS_PER_HOUR;
+
+    private final String profile;
+    private final String[] regions;
+    private final long[] firstHour;
+    private final double[][] values;
+    // prefix[r][k] is the sum of the first k hourly values of region r
+    private final double[][] prefix;
+    private final double[] mean;
+    private final Map<String, Integer> hostRegions;
+    private final List<Map.Entry<String, Integer>> hostPrefixes;
+    private final int defaultRegion;
+    private final ZoneId traceTimeZone;
+
+    private HourlyCarbonIntensity(String profile, List<RegionTable> tables, Map<String, String> hosts, String defaultRegion,
+                                  ZoneId traceTimeZone) {
+        this.profile = profile;
+        this.traceTimeZone = traceTimeZone;
+        int count = tables.size();
+        regions = new String[count];
+        firstHour = new long[count];
+        values = new double[count][];
+        prefix = new double[count][];
+        mean = new double[count];
+        for (int r = 0; r < count; r++) {
+            RegionTable table = tables.get(r);
+            regions[r] = table.region;
+            firstHour[r] = table.firstHour;
+            values[r] = table.values;
+            double[] sums = new double[table.values.length + 1];
+            for (int k = 0; k < table.values.length; k++) {
+                sums[k + 1] = sums[k] + table.values[k];
+            }
+            prefix[r] = sums;
+            mean[r] = sums[table.values.length] / table.values.length;
+        }
+
+        hostRegions = new LinkedHashMap<>();
+        hostPrefixes = new ArrayList<>();
+        for (Map.Entry<String, String> host : hosts.entrySet()) {
+            int region = regionIndex(host.getValue());
+            if (host.getKey().endsWith("*")) {
+                String hostPrefix = host.getKey().substring(0, host.getKey().length() - 1);
+                hostPrefixes.add(Map.entry(hostPrefix, region));
+            } else {
+                hostRegions.put(host.getKey(), region);
+            }
+        }
+        // The longest prefix wins
+        hostPrefixes.sort((a, b) -> b.getKey().length() - a.getKey().length());
+        if (defaultRegion != null && !defaultRegion.isBlank()) {
+            this.defaultRegion = regionIndex(defaultRegion);
+        } else {
+            this.defaultRegion = count == 1 ? 0 : -1;
+        }
+    }
+
+    /**
+     * Loads every {@code .csv} file of {@code directory}. {@code hostRegions} maps host names to
+     * regions, a key ending in {@code *} matching every host with that prefix; hosts matching
+     * nothing use {@code defaultRegion}, or the only table when there is just one.
+     * {@code traceTimeZone} is the zone of date-time start and complete columns in traces.
+     */
+    public static HourlyCarbonIntensity load(Path directory, Map<String, String> hostRegions, String defaultRegion,
+                                             ZoneId traceTimeZone) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv"))
+                    .sorted()
+                    .toList();
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No intensity tables (*.csv) in " + directory);
+        }
+
+        MessageDigest digest = ContentHashes.newDigest();
+        List<RegionTable> tables = new ArrayList<>();
+        for (Path file : files) {
+            RegionTable table = readTable(file);
+            tables.add(table);
+            digest.update(table.region.getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+        hostRegions.forEach((host, region) -> digest.update((host + "=" + region + ";").getBytes(StandardCharsets.UTF_8)));
+        digest.update(String.valueOf(defaultRegion).getBytes(StandardCharsets.UTF_8));
+        digest.update((";zone=" + traceTimeZone.getId()).getBytes(StandardCharsets.UTF_8));
+        String profile = "hourly-" + ContentHashes.hex(digest).substring(0, 12);
+        return new HourlyCarbonIntensity(profile, tables, hostRegions, defaultRegion, traceTimeZone);
+    }
+
+    @Override
+    public String getProfile() {
+        return profile;
+    }
+
+    @Override
+    public ZoneId getTraceTimeZone() {
+        return traceTimeZone;
+    }
+
+    public List<String> getRegions() {
+        return Arrays.asList(regions);
+    }
+
+    /** First hour of the region's table, epoch milliseconds. */
+    public long getFirstHourMs(int region) {
+        return firstHour[region] * (long) MS_PER_HOUR;
+    }
+
+    public int getHours(int region) {
+        return values[region].length;
+    }
+
+    @Override
+    public int regionOf(String hostName) {
+        if (hostName != null) {
+            Integer region = hostRegions.get(hostName);
+            if (region != null) {
+                return region;
+            }
+            for (Map.Entry<String, Integer> hostPrefix : hostPrefixes) {
+                if (hostName.startsWith(hostPrefix.getKey())) {
+                    return hostPrefix.getValue();
+                }
+            }
+        }
+        return defaultRegion;
+    }
+
+    @Override
+    public double gramsPerKwh(int region, double startMs, double completeMs) {
+        if (region < 0) {
+            return EnergyModel.CARBON_INTENSITY_G_PER_KWH;
+        }
+        boolean hasStart = startMs > 0;
+        boolean hasComplete = completeMs > 0;
+        if (hasStart && hasComplete && completeMs > startMs) {
+            double from = hoursSinceFirst(region, startMs);
+            double to = hoursSinceFirst(region, completeMs);
+            return (integral(region, to) - integral(region, from)) / (to - from);
+        }
+        if (hasStart || hasComplete) {
+            double at = hoursSinceFirst(region, hasStart ? startMs : completeMs);
+            int hour = (int) Math.max(0, Math.min(values[region].length - 1, Math.floor(at)));
+            return values[region][hour];
+        }
+        return mean[region];
+    }
+
+    private double hoursSinceFirst(int region, double epochMs) {
+        return (epochMs - firstHour[region] * MS_PER_HOUR) / MS_PER_HOUR;
+    }
+
+    // Sum of the intensity over [0, x) hours of the table, edges extended
+    private double integral(int region, double x) {
+        double[] hourly = values[region];
+        int hours = hourly.length;
+        if (x <= 0) {
+            return x * hourly[0];
+        }
+        if (x >= hours) {
+            return prefix[region][hours] + (x - hours) * hourly[hours - 1];
+        }
+        int hour = (int) x;
+        return prefix[region][hour] + (x - hour) * hourly[hour];
+    }
+
+    private int regionIndex(String region) {
+        for (int r = 0; r < regions.length; r++) {
+            if (regions[r].equals(region)) {
+                return r;
+            }
+        }
+        throw new IllegalArgumentException("No intensity table for region " + region + ", known: " + Arrays.toString(regions));
+    }
+
+    private static RegionTable readTable(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        String region = name.substring(0, name.length() - ".csv".length());
+        List<Long> hours = new ArrayList<>();
+        List<Double> intensities = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            boolean firstRecord = true;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("[,;\t]");
+                if (fields.length < 2) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": expected <hour>,<gCO2eq/kWh>");
+                }
+                Long epochMs = parseTime(fields[0].strip());
+                double intensity;
+                try {
+                    intensity = Double.parseDouble(fields[1].strip());
+                } catch (NumberFormatException e) {
+                    intensity = Double.NaN;
+                }
+                boolean header = firstRecord;
+                firstRecord = false;
+                if (epochMs == null || Double.isNaN(intensity)) {
+                    if (header) {
+                        continue;
+                    }
+                    throw new IllegalArgumentException(file + ":" + lineNumber + ": can not read '" + line + "'");
+                }
+                hours.add(Math.floorDiv(epochMs, (long) MS_PER_HOUR));
+                intensities.add(intensity);
+            }
+        }
+        if (hours.isEmpty()) {
+            throw new IllegalArgumentException(file + " has no hourly values");
+        }
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (long hour : hours) {
+            first = Math.min(first, hour);
+            last = Math.max(last, hour);
+        }
+        double[] values = new double[Math.toIntExact(last - first + 1)];
+        Arrays.fill(values, Double.NaN);
+        for (int i = 0; i < hours.size(); i++) {
+            values[(int) (hours.get(i) - first)] = intensities.get(i);
+        }
+        for (int k = 1; k < values.length; k++) {
+            if (Double.isNaN(values[k])) {
+                values[k] = values[k - 1];
+            }
+        }
+        return new RegionTable(region, first, values);
+    }
+
+    // Epoch milliseconds, ISO-8601 with offset, or a UTC local date-time ("2023-10-14T12:00" / "2023-10-14 12:00")
+    private static Long parseTime(String text) {
+        if (!text.isEmpty() && text.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(text);
+        }
+        String iso = text.replace(' ', 'T');
+        try {
+            return OffsetDateTime.parse(iso).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // no offset
+        }
+        try {
+            return Instant.parse(iso).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // no zone
+        }
+        try {
+            return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static final class RegionTable {
+        final String region;
+        final long firstHour;
+        final double[] values;
+
+        RegionTable(String region, long firstHour, double[] values) {
+            this.region = region;
+            this.firstHour = firstHour;
+            this.values = values;
+        }
+    }
+}
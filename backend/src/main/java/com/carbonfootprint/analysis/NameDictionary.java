@@ -0,0 +1,90 @@
+package com.carbonfootprint.analysis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary that maps raw UTF-8 byte ranges to dense int ids. A String is only created the
+ * first time a name is seen, so looking up a known process or host name does not allocate.
+ */
+public final class NameDictionary {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Open addressing table holding id + 1 (0 = empty slot)
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private byte[][] keys = new byte[INITIAL_CAPACITY][];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the id of the name stored in {@code buf[from, to)}, adding it if it is new.
+     */
+    public int intern(byte[] buf, int from, int to) {
+        int hash = hash(buf, from, to);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && Arrays.equals(keys[id], 0, keys[id].length, buf, from, to)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = size++;
+        if (id == keys.length) {
+            keys = Arrays.copyOf(keys, id * 2);
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        keys[id] = Arrays.copyOfRange(buf, from, to);
+        names[id] = new String(buf, from, to - from, StandardCharsets.UTF_8);
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        int[] newSlots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    private static int hash(byte[] buf, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + buf[i];
+        }
+        // Spread the bits so short names do not cluster in the low slots
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,68 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * Power coefficients of one kind of machine. A task draws
+ * {@code cpus * cpuWattsPerCore * %cpu / 100 + ioGb * storageWattsPerGb
+ * + memoryGb * memoryWattsPerGb + idleWatts}.
+ */
+public final class PowerProfile {
+
+    /** The coefficients evaluation.py has always used. */
+    public static final PowerProfile DEFAULT = new PowerProfile("default", EnergyModel.CPU_WATTS_PER_CORE,
+            EnergyModel.BASE_WATTS, 0.0, EnergyModel.IO_WATTS_PER_GB);
+
+    private final String name;
+    private final double cpuWattsPerCore;
+    private final double idleWatts;
+    private final double memoryWattsPerGb;
+    private final double storageWattsPerGb;
+
+    public PowerProfile(String name, double cpuWattsPerCore, double idleWatts, double memoryWattsPerGb,
+                        double storageWattsPerGb) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("A power profile needs a name");
+        }
+        check(name, "cpu-watts-per-core", cpuWattsPerCore);
+        check(name, "idle-watts", idleWatts);
+        check(name, "memory-watts-per-gb", memoryWattsPerGb);
+        check(name, "storage-watts-per-gb", storageWattsPerGb);
+        this.name = name;
+        this.cpuWattsPerCore = cpuWattsPerCore;
+        this.idleWatts = idleWatts;
+        this.memoryWattsPerGb = memoryWattsPerGb;
+        this.storageWattsPerGb = storageWattsPerGb;
+    }
+
+    private static void check(String profile, String field, double value) {
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Power profile " + profile + ": " + field + " must be a finite value >= 0, got " + value);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** TDP share of one core at 100% utilisation. */
+    public double getCpuWattsPerCore() {
+        return cpuWattsPerCore;
+    }
+
+    public double getIdleWatts() {
+        return idleWatts;
+    }
+
+    public double getMemoryWattsPerGb() {
+        return memoryWattsPerGb;
+    }
+
+    public double getStorageWattsPerGb() {
+        return storageWattsPerGb;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[cpu " + cpuWattsPerCore + " W/core, idle " + idleWatts + " W, memory "
+                + memoryWattsPerGb + " W/GB, storage " + storageWattsPerGb + " W/GB]";
+    }
+}
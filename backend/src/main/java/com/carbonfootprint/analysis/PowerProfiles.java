@@ -0,0 +1,157 @@
+package com.carbonfootprint.analysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable registry of {@link PowerProfile}s and of the hosts they apply to. Host names map to
+ * profiles exactly or by a prefix ending in {@code *} (the longest prefix wins); every other host
+ * uses the default profile. The maps are built once, so an analysis resolves each distinct host
+ * once and its rows only index into {@link #profile(int)}.
+ */
+public final class PowerProfiles {
+
+    /** Only the built-in {@link PowerProfile#DEFAULT}, for every host. */
+    public static final PowerProfiles DEFAULT = of(List.of(), Map.of(), PowerProfile.DEFAULT.getName());
+
+    private final PowerProfile[] profiles;
+    private final Map<String, Integer> byName;
+    private final Map<String, Integer> hosts;
+    // Sorted longest first
+    private final String[] hostPrefixes;
+    private final int[] prefixProfiles;
+    private final int defaultProfile;
+    private final String fingerprint;
+
+    private PowerProfiles(PowerProfile[] profiles, Map<String, Integer> byName, Map<String, Integer> hosts,
+                          String[] hostPrefixes, int[] prefixProfiles, int defaultProfile, String fingerprint) {
+        this.profiles = profiles;
+        this.byName = byName;
+        this.hosts = hosts;
+        this.hostPrefixes = hostPrefixes;
+        this.prefixProfiles = prefixProfiles;
+        this.defaultProfile = defaultProfile;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Builds a registry from {@code profiles} plus the built-in {@code default} profile (which a
+     * profile of the same name replaces). {@code hostProfiles} maps host names, or prefixes
+     * ending in {@code *}, to profile names.
+     */
+    public static PowerProfiles of(Collection<PowerProfile> profiles, Map<String, String> hostProfiles,
+                                   String defaultProfile) {
+        Map<String, PowerProfile> named = new LinkedHashMap<>();
+        named.put(PowerProfile.DEFAULT.getName(), PowerProfile.DEFAULT);
+        for (PowerProfile profile : profiles) {
+            named.put(profile.getName(), profile);
+        }
+        PowerProfile[] ordered = named.values().toArray(new PowerProfile[0]);
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < ordered.length; i++) {
+            byName.put(ordered[i].getName(), i);
+        }
+
+        Map<String, Integer> hosts = new HashMap<>();
+        List<Map.Entry<String, Integer>> prefixes = new ArrayList<>();
+        for (Map.Entry<String, String> host : hostProfiles.entrySet()) {
+            Integer profile = byName.get(host.getValue());
+            if (profile == null) {
+                throw new IllegalArgumentException("Host " + host.getKey() + " maps to unknown power profile "
+                        + host.getValue() + ", known: " + named.keySet());
+            }
+            if (host.getKey().endsWith("*")) {
+                prefixes.add(Map.entry(host.getKey().substring(0, host.getKey().length() - 1), profile));
+            } else {
+                hosts.put(host.getKey(), profile);
+            }
+        }
+        prefixes.sort((a, b) -> b.getKey().length() - a.getKey().length());
+        String[] hostPrefixes = new String[prefixes.size()];
+        int[] prefixProfiles = new int[prefixes.size()];
+        for (int i = 0; i < hostPrefixes.length; i++) {
+            hostPrefixes[i] = prefixes.get(i).getKey();
+            prefixProfiles[i] = prefixes.get(i).getValue();
+        }
+
+        Integer fallback = byName.get(defaultProfile == null || defaultProfile.isBlank()
+                ? PowerProfile.DEFAULT.getName() : defaultProfile);
+        if (fallback == null) {
+            throw new IllegalArgumentException("Unknown default power profile " + defaultProfile + ", known: " + named.keySet());
+        }
+
+        List<String> parts = new ArrayList<>();
+        for (PowerProfile profile : ordered) {
+            parts.add(profile.toString());
+        }
+        hostProfiles.forEach((host, profile) -> parts.add(host + "=" + profile));
+        parts.add("*=" + ordered[fallback].getName());
+        String fingerprint = ContentHashes.hashOf(parts.toArray(new String[0])).substring(0, 12);
+        return new PowerProfiles(ordered, Collections.unmodifiableMap(byName), Collections.unmodifiableMap(hosts),
+                hostPrefixes, prefixProfiles, fallback, fingerprint);
+    }
+
+    /**
+     * The same registry with {@code profileName} as the default, or this one when no profile has
+     * that name. Scripts select their default through {@code Script.hardwareConfig}.
+     */
+    public PowerProfiles withDefault(String profileName) {
+        Integer profile = profileName != null ? byName.get(profileName) : null;
+        if (profile == null || profile == defaultProfile) {
+            return this;
+        }
+        return new PowerProfiles(profiles, byName, hosts, hostPrefixes, prefixProfiles, profile, fingerprint);
+    }
+
+    public boolean contains(String profileName) {
+        return profileName != null && byName.containsKey(profileName);
+    }
+
+    /** Profile index for a host; null (no hostname) gets the default profile. */
+    public int profileOf(String hostName) {
+        if (hostName != null) {
+            Integer profile = hosts.get(hostName);
+            if (profile != null) {
+                return profile;
+            }
+            for (int i = 0; i < hostPrefixes.length; i++) {
+                if (hostName.startsWith(hostPrefixes[i])) {
+                    return prefixProfiles[i];
+                }
+            }
+        }
+        return defaultProfile;
+    }
+
+    public PowerProfile profile(int index) {
+        return profiles[index];
+    }
+
+    public PowerProfile getDefaultProfile() {
+        return profiles[defaultProfile];
+    }
+
+    public List<PowerProfile> getProfiles() {
+        return List.of(profiles);
+    }
+
+    /** Host name or prefix (ending in *) to profile name, exact names first. */
+    public Map<String, String> getHostProfiles() {
+        Map<String, String> mapping = new LinkedHashMap<>();
+        hosts.forEach((host, profile) -> mapping.put(host, profiles[profile].getName()));
+        for (int i = 0; i < hostPrefixes.length; i++) {
+            mapping.put(hostPrefixes[i] + "*", profiles[prefixProfiles[i]].getName());
+        }
+        return mapping;
+    }
+
+    /** Changes whenever a coefficient or a host mapping does; part of the result cache key. */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+}
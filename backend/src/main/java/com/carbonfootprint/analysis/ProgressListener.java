@@ -0,0 +1,12 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * Receives parse progress as bytes of the trace file are consumed.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    ProgressListener NONE = (bytesRead, totalBytes) -> {};
+
+    void onProgress(long bytesRead, long totalBytes);
+}
@@ -0,0 +1,34 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * The energy model row by row with the {@link EnergyModel} functions; the reference the vector
+ * kernel has to match.
+ */
+final class ScalarEnergyKernel extends EnergyKernel {
+
+    static final ScalarEnergyKernel INSTANCE = new ScalarEnergyKernel();
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void apply(TraceColumns columns) {
+        apply(columns, 0, columns.size);
+    }
+
+    static void apply(TraceColumns c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double clippedCpu = EnergyModel.clipCpuPercent(c.cpuPercent[i]);
+            double ioGb = c.readBytes[i] / EnergyModel.BYTES_PER_GB + c.writeBytes[i] / EnergyModel.BYTES_PER_GB;
+            double power = EnergyModel.powerWatts(c.cpus[i], clippedCpu, ioGb, c.memory[i] / EnergyModel.BYTES_PER_GB,
+                    c.cpuWattsPerCore[i], c.storageWattsPerGb[i], c.memoryWattsPerGb[i], c.idleWatts[i]);
+            double energyWh = EnergyModel.energyWh(power, c.realtime[i]);
+            c.clippedCpuPercent[i] = clippedCpu;
+            c.ioGb[i] = ioGb;
+            c.energyWh[i] = energyWh;
+            c.carbonGrams[i] = EnergyModel.carbonGrams(energyWh, c.gramsPerKwh[i]);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.carbonfootprint.analysis;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.StringJoiner;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Running totals for one trace: overall summary plus per (process, host) cells in a
+ * {@link TraceRollup}, from which the per-process and per-host groups are summed when the
+ * result is rendered. Cells are indexed by the dictionary ids the parser assigns, so folding in
+ * a row touches only primitive fields and nothing proportional to the trace size is kept. Rows are buffered
+ * in a {@link TraceColumns} batch and the energy model runs over the whole batch at once; the
+ * readers below fold in whatever is still buffered.
+ */
+public class TraceAggregates implements TraceRowHandler {
+
+    private final NameDictionary processNames;
+    private final NameDictionary hostNames;
+
+    private boolean trackProcesses;
+    private boolean trackHosts;
+
+    private long rows;
+    private double durationMin;
+    private double memoryGb;
+    private double ioGb;
+    private double energyWh;
+    private double carbonGrams;
+    private double cpuPercent;
+
+    // Rows wait here until a batch is full, so the model runs over columns instead of row by row
+    private final EnergyKernel kernel;
+    private final TraceColumns columns = new TraceColumns();
+
+    // Carbon intensity region of every host id, resolved on first use; -2 until then
+    private final CarbonIntensity intensity;
+    private final int noHostRegion;
+    private int[] hostRegions = new int[0];
+
+    // Power profile of every host id, resolved on first use; -1 until then
+    private final PowerProfiles power;
+    private final int noHostProfile;
+    private int[] hostProfiles = new int[0];
+
+    // Per (process, host) sums for recomputing with other coefficients later
+    private final TraceRollup rollup;
+
+    public TraceAggregates(NameDictionary processNames, NameDictionary hostNames) {
+        this(processNames, hostNames, CarbonIntensity.CONSTANT);
+    }
+
+    public TraceAggregates(NameDictionary processNames, NameDictionary hostNames, CarbonIntensity intensity) {
+        this(processNames, hostNames, EnergyKernel.preferred(), intensity, PowerProfiles.DEFAULT);
+    }
+
+    public TraceAggregates(NameDictionary processNames, NameDictionary hostNames, CarbonIntensity intensity,
+                           PowerProfiles power) {
+        this(processNames, hostNames, EnergyKernel.preferred(), intensity, power);
+    }
+
+    public TraceAggregates(NameDictionary processNames, NameDictionary hostNames, EnergyKernel kernel) {
+        this(processNames, hostNames, kernel, CarbonIntensity.CONSTANT, PowerProfiles.DEFAULT);
+    }
+
+    public TraceAggregates(NameDictionary processNames, NameDictionary hostNames, EnergyKernel kernel,
+                           CarbonIntensity intensity, PowerProfiles power) {
+        this.processNames = processNames;
+        this.hostNames = hostNames;
+        this.kernel = kernel;
+        this.intensity = intensity;
+        this.noHostRegion = intensity.regionOf(null);
+        this.power = power;
+        this.noHostProfile = power.profileOf(null);
+        this.rollup = new TraceRollup(processNames, hostNames, intensity.getProfile());
+    }
+
+    @Override
+    public void onLayout(TraceLayout layout) {
+        trackProcesses = layout.hasProcess();
+        trackHosts = layout.hasHostname();
+    }
+
+    @Override
+    public void onRow(TraceRow row) {
+        columns.add(row);
+        if (columns.isFull()) {
+            flush();
+        }
+    }
+
+    // Runs the model over the buffered rows, then folds them in file order
+    private void flush() {
+        if (columns.size == 0) {
+            return;
+        }
+        TraceColumns c = columns;
+        for (int i = 0; i < c.size; i++) {
+            int hostId = c.hostId[i];
+            c.gramsPerKwh[i] = intensity.gramsPerKwh(regionOf(hostId), c.start[i], c.complete[i]);
+            PowerProfile profile = power.profile(profileOf(hostId));
+            c.cpuWattsPerCore[i] = profile.getCpuWattsPerCore();
+            c.idleWatts[i] = profile.getIdleWatts();
+            c.memoryWattsPerGb[i] = profile.getMemoryWattsPerGb();
+            c.storageWattsPerGb[i] = profile.getStorageWattsPerGb();
+        }
+        kernel.apply(c);
+        for (int i = 0; i < c.size; i++) {
+            double clippedCpu = c.clippedCpuPercent[i];
+            double rowDurationMin = c.duration[i] / EnergyModel.MS_PER_MINUTE;
+            double rowMemoryGb = c.memory[i] / EnergyModel.BYTES_PER_GB;
+            double rowIoGb = c.ioGb[i];
+            double rowWh = c.energyWh[i];
+            double rowCarbon = c.carbonGrams[i];
+            int processId = c.processId[i];
+            int hostId = c.hostId[i];
+
+            rows++;
+            this.durationMin += rowDurationMin;
+            this.memoryGb += rowMemoryGb;
+            this.ioGb += rowIoGb;
+            this.energyWh += rowWh;
+            this.carbonGrams += rowCarbon;
+            this.cpuPercent += clippedCpu;
+            rollup.add(processId, hostId, rowDurationMin, clippedCpu, rowMemoryGb, rowIoGb, rowWh, rowCarbon,
+                    c.readBytes[i], c.writeBytes[i], c.cpus[i], c.realtime[i] / EnergyModel.MS_PER_HOUR,
+                    c.gramsPerKwh[i] / 1000);
+        }
+        c.size = 0;
+    }
+
+    private int regionOf(int hostId) {
+        if (hostId < 0) {
+            return noHostRegion;
+        }
+        if (hostId >= hostRegions.length) {
+            int from = hostRegions.length;
+            hostRegions = Arrays.copyOf(hostRegions, Math.max(hostId + 1, from * 2));
+            Arrays.fill(hostRegions, from, hostRegions.length, -2);
+        }
+        int region = hostRegions[hostId];
+        if (region == -2) {
+            region = hostRegions[hostId] = intensity.regionOf(hostNames.name(hostId));
+        }
+        return region;
+    }
+
+    private int profileOf(int hostId) {
+        if (hostId < 0) {
+            return noHostProfile;
+        }
+        if (hostId >= hostProfiles.length) {
+            int from = hostProfiles.length;
+            hostProfiles = Arrays.copyOf(hostProfiles, Math.max(hostId + 1, from * 2));
+            Arrays.fill(hostProfiles, from, hostProfiles.length, -1);
+        }
+        int profile = hostProfiles[hostId];
+        if (profile == -1) {
+            profile = hostProfiles[hostId] = power.profileOf(hostNames.name(hostId));
+        }
+        return profile;
+    }
+
+    public long getRows() {
+        flush();
+        return rows;
+    }
+
+    /** The per (process, host) sums of the rows so far, see {@link TraceRollup}. */
+    public TraceRollup getRollup() {
+        flush();
+        return rollup;
+    }
+
+    /**
+     * Folds in the partial aggregates of another slice of the same trace. Partials have their
+     * own dictionaries, so groups are matched by name. Merge them in file order so every host
+     * keeps its processes in order of first appearance.
+     */
+    public void merge(TraceAggregates other) {
+        flush();
+        other.flush();
+        trackProcesses |= other.trackProcesses;
+        trackHosts |= other.trackHosts;
+        rows += other.rows;
+        durationMin += other.durationMin;
+        memoryGb += other.memoryGb;
+        ioGb += other.ioGb;
+        energyWh += other.energyWh;
+        carbonGrams += other.carbonGrams;
+        cpuPercent += other.cpuPercent;
+        rollup.merge(other.rollup);
+    }
+
+    /**
+     * Renders the aggregates in the JSON shape printed by evaluation.py, so the result can go
+     * straight into AnalysisService.saveAnalysisResult().
+     */
+    public ObjectNode toResultNode(String hardwareConfig) {
+        flush();
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        ObjectNode root = factory.objectNode();
+
+        double totalEnergyKwh = energyWh / 1000;
+        ObjectNode summary = root.putObject("summary");
+        summary.put("totalEnergy", totalEnergyKwh);
+        // Summed per task, since the intensity may differ from task to task
+        summary.put("totalCarbonFootprint", carbonGrams / 1000);
+        summary.put("totalRuntime", durationMin);
+        summary.put("totalMemory", memoryGb);
+        summary.put("totalIo", ioGb);
+        summary.put("totalTasks", rows);
+        summary.put("hardwareConfig", hardwareConfig);
+        summary.put("avgCpuUtilization", rows == 0 ? 0.0 : cpuPercent / rows);
+        summary.put("carbonIntensityProfile", intensity.getProfile());
+
+        // Groups are summed from the (process, host) cells, which are kept in order of first
+        // appearance, so every host lists its processes in the order they first ran there
+        GroupStats[] processes = new GroupStats[trackProcesses ? processNames.size() : 0];
+        GroupStats[] hosts = new GroupStats[trackHosts ? hostNames.size() : 0];
+        for (int cell = 0; cell < rollup.size(); cell++) {
+            int processId = rollup.processId(cell);
+            int hostId = rollup.hostId(cell);
+            if (trackProcesses && processId >= 0) {
+                group(processes, processId).add(rollup, cell);
+            }
+            // pandas drops rows with a missing hostname from the host groups
+            if (trackHosts && hostId >= 0) {
+                GroupStats stats = group(hosts, hostId);
+                stats.add(rollup, cell);
+                if (processId >= 0) {
+                    stats.addProcess(processId);
+                }
+            }
+        }
+
+        ArrayNode tasks = root.putArray("tasks");
+        if (trackProcesses) {
+            for (int id : sortedIds(processes, processNames)) {
+                GroupStats stats = processes[id];
+                ObjectNode task = tasks.addObject();
+                task.put("process", processNames.name(id));
+                task.put("tasks", stats.count);
+                task.put("runtime", stats.durationMin);
+                task.put("cpu_usage", stats.cpuPercent / stats.count);
+                task.put("memory_allocated", stats.memoryGb / stats.count);
+                task.put("io_volume", stats.ioGb);
+                task.put("energy_consumption", stats.energyWh);
+                task.put("carbon_footprint", stats.carbonGrams);
+                task.put("read_gb", stats.readBytes / EnergyModel.BYTES_PER_GB);
+                task.put("write_gb", stats.writeBytes / EnergyModel.BYTES_PER_GB);
+                task.put("hardware", hardwareConfig);
+            }
+        }
+
+        ObjectNode hostData = root.putObject("hostData");
+        if (trackHosts) {
+            ArrayNode names = hostData.putArray("hosts");
+            ArrayNode taskCounts = hostData.putArray("task_counts");
+            ArrayNode runtimes = hostData.putArray("runtimes");
+            ArrayNode cpuUtilizations = hostData.putArray("cpu_utilizations");
+            ArrayNode memoryAllocations = hostData.putArray("memory_allocations");
+            ArrayNode ioVolumes = hostData.putArray("io_volumes");
+            ArrayNode energyConsumptions = hostData.putArray("energy_consumptions");
+            ArrayNode carbonEmissions = hostData.putArray("carbon_emissions");
+            ObjectNode processesNode = factory.objectNode();
+            for (int id : sortedIds(hosts, hostNames)) {
+                GroupStats stats = hosts[id];
+                names.add(hostNames.name(id));
+                taskCounts.add(stats.count);
+                runtimes.add(stats.durationMin);
+                cpuUtilizations.add(stats.cpuPercent / stats.count);
+                memoryAllocations.add(stats.memoryGb);
+                ioVolumes.add(stats.ioGb);
+                energyConsumptions.add(stats.energyWh);
+                carbonEmissions.add(stats.carbonGrams);
+                if (stats.processCount > 0) {
+                    StringJoiner joined = new StringJoiner(", ");
+                    for (int i = 0; i < stats.processCount; i++) {
+                        joined.add(processNames.name(stats.processOrder[i]));
+                    }
+                    processesNode.put(hostNames.name(id), joined.toString());
+                }
+            }
+            hostData.set("processes", processesNode);
+        }
+
+        root.putArray("processData");
+        root.put("status", "success");
+        return root;
+    }
+
+    // Ids of the groups that received rows, ordered by name like pandas groupby()
+    private static int[] sortedIds(GroupStats[] groups, NameDictionary names) {
+        return IntStream.range(0, groups.length)
+                .filter(id -> groups[id] != null)
+                .boxed()
+                .sorted(Comparator.comparing(names::name))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static GroupStats group(GroupStats[] groups, int id) {
+        GroupStats stats = groups[id];
+        if (stats == null) {
+            stats = groups[id] = new GroupStats();
+        }
+        return stats;
+    }
+
+    /** Sums for one process or host group. */
+    static final class GroupStats {
+        long count;
+        double durationMin;
+        double cpuPercent;
+        double memoryGb;
+        double ioGb;
+        double energyWh;
+        double carbonGrams;
+        double readBytes;
+        double writeBytes;
+
+        // Process ids seen on a host, in order of first appearance; every cell is a new pair
+        int[] processOrder = new int[0];
+        int processCount;
+
+        void add(TraceRollup rollup, int cell) {
+            count += (long) rollup.value(cell, TraceRollup.COUNT);
+            durationMin += rollup.value(cell, TraceRollup.DURATION_MIN);
+            cpuPercent += rollup.value(cell, TraceRollup.CPU_PERCENT);
+            memoryGb += rollup.value(cell, TraceRollup.MEMORY_GB);
+            ioGb += rollup.value(cell, TraceRollup.IO_GB);
+            energyWh += rollup.value(cell, TraceRollup.ENERGY_WH);
+            carbonGrams += rollup.value(cell, TraceRollup.CARBON_GRAMS);
+            readBytes += rollup.value(cell, TraceRollup.READ_BYTES);
+            writeBytes += rollup.value(cell, TraceRollup.WRITE_BYTES);
+        }
+
+        void addProcess(int processId) {
+            if (processCount == processOrder.length) {
+                processOrder = Arrays.copyOf(processOrder, Math.max(4, processCount * 2));
+            }
+            processOrder[processCount++] = processId;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.carbonfootprint.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Turns a trace file into {@link TraceAggregates}.
+ *
+ * Small files are streamed through one {@link TraceCsvParser}. Large files are memory-mapped and
+ * split at newline boundaries into chunks; every chunk is parsed on its own thread into partial
+ * aggregates, and the partials are merged in file order at the end. Compressed files can not be
+ * split without decompressing them, so they always take the streaming path, decompressed on the
+ * fly. A trace already converted to a {@link TraceColumnFile} is read without any parsing, its
+ * row groups split across the same threads.
+ */
+public class TraceAnalysisEngine implements AutoCloseable {
+
+    // A single mapping is limited to 2GB, keep chunks well below that
+    private static final long MAX_CHUNK_BYTES = 256L * 1024 * 1024;
+    private static final int SCAN_BLOCK = 64 * 1024;
+
+    private final int parallelism;
+    private final long parallelThresholdBytes;
+    private final CarbonIntensity intensity;
+    private final PowerProfiles power;
+    private final ExecutorService executor;
+
+    public TraceAnalysisEngine(int parallelism, long parallelThresholdBytes) {
+        this(parallelism, parallelThresholdBytes, CarbonIntensity.CONSTANT, PowerProfiles.DEFAULT);
+    }
+
+    public TraceAnalysisEngine(int parallelism, long parallelThresholdBytes, CarbonIntensity intensity,
+                               PowerProfiles power) {
+        this.parallelism = Math.max(1, parallelism);
+        this.parallelThresholdBytes = parallelThresholdBytes;
+        this.intensity = intensity;
+        this.power = power;
+        this.executor = this.parallelism > 1 ? Executors.newFixedThreadPool(this.parallelism, daemonThreads()) : null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public TraceAggregates aggregate(Path file) throws IOException {
+        return aggregate(file, ProgressListener.NONE);
+    }
+
+    /**
+     * Aggregates the file, reporting consumed bytes to {@code progress}. Parsing stops with an
+     * {@link InterruptedIOException} when the calling thread is interrupted.
+     */
+    public TraceAggregates aggregate(Path file, ProgressListener progress) throws IOException {
+        return aggregate(file, progress, power);
+    }
+
+    /**
+     * Same as {@link #aggregate(Path, ProgressListener)} with other power profiles, e.g. the
+     * engine's registry with a script's own default profile.
+     */
+    public TraceAggregates aggregate(Path file, ProgressListener progress, PowerProfiles power) throws IOException {
+        long size = Files.size(file);
+        TraceCompression compression = TraceCompression.of(file);
+        if (executor == null || size < parallelThresholdBytes || compression.isCompressed()) {
+            // Progress counts the bytes read from disk, compressed or not
+            try (InputStream in = compression.decompress(new ProgressInputStream(Files.newInputStream(file), size, progress))) {
+                return aggregate(in, intensity, power);
+            }
+        }
+        return aggregateMapped(file, size, progress, power);
+    }
+
+    /**
+     * Aggregates a columnar copy of a trace, reporting the consumed bytes of that file to
+     * {@code progress}. Row groups are divided into contiguous runs, one per thread, whose
+     * partials are merged in file order like the chunks of a mapped CSV file.
+     */
+    public TraceAggregates aggregate(TraceColumnFile file, ProgressListener progress, PowerProfiles power)
+            throws IOException {
+        TraceLayout layout = file.getLayout();
+        int groups = file.getRowGroups();
+        if (executor == null || groups < 2 || file.getFileSize() < parallelThresholdBytes) {
+            TraceAggregates aggregates = new TraceAggregates(file.getProcessNames(), file.getHostNames(), intensity, power);
+            aggregates.onLayout(layout);
+            for (int group = 0; group < groups; group++) {
+                file.scan(TraceColumnFile.ENERGY_COLUMNS, group, group + 1, aggregates);
+                progress.onProgress(file.getRowGroupEnd(group), file.getFileSize());
+            }
+            return aggregates;
+        }
+
+        // The partials share the file's dictionaries, which nothing adds to while they run
+        int runs = Math.min(parallelism, groups);
+        List<Future<TraceAggregates>> partials = new ArrayList<>();
+        int[] bounds = new int[runs + 1];
+        for (int i = 0; i < runs; i++) {
+            int from = bounds[i] = (int) ((long) groups * i / runs);
+            int to = (int) ((long) groups * (i + 1) / runs);
+            partials.add(executor.submit(() -> {
+                TraceAggregates partial = new TraceAggregates(file.getProcessNames(), file.getHostNames(), intensity, power);
+                partial.onLayout(layout);
+                file.scan(TraceColumnFile.ENERGY_COLUMNS, from, to, partial);
+                return partial;
+            }));
+        }
+        bounds[runs] = groups;
+
+        TraceAggregates total = new TraceAggregates(new NameDictionary(), new NameDictionary(), intensity, power);
+        total.onLayout(layout);
+        mergeInOrder(total, partials, i -> file.getRowGroupEnd(bounds[i + 1] - 1), file.getFileSize(), progress);
+        return total;
+    }
+
+    /** Single-threaded streaming path. */
+    public static TraceAggregates aggregate(InputStream in) throws IOException {
+        return aggregate(in, CarbonIntensity.CONSTANT, PowerProfiles.DEFAULT);
+    }
+
+    public static TraceAggregates aggregate(InputStream in, CarbonIntensity intensity, PowerProfiles power)
+            throws IOException {
+        TraceCsvParser parser = new TraceCsvParser();
+        parser.setTimeZone(intensity.getTraceTimeZone());
+        TraceAggregates aggregates = new TraceAggregates(parser.getProcessNames(), parser.getHostNames(), intensity, power);
+        parser.parse(in, aggregates);
+        return aggregates;
+    }
+
+    private TraceAggregates aggregateMapped(Path file, long size, ProgressListener progress, PowerProfiles power)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteArrayOutputStream firstLine = new ByteArrayOutputStream();
+            long firstLineEnd = readFirstLine(channel, size, firstLine);
+            TraceLayout layout = TraceLayout.detect(firstLine.toString(StandardCharsets.UTF_8));
+            long dataStart = layout.hasHeader() ? firstLineEnd : 0;
+
+            List<Future<TraceAggregates>> partials = new ArrayList<>();
+            long[] bounds = chunkBounds(channel, dataStart, size);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                partials.add(executor.submit(() -> parseChunk(channel, layout, start, end, power)));
+            }
+
+            TraceAggregates total = new TraceAggregates(new NameDictionary(), new NameDictionary(), intensity, power);
+            total.onLayout(layout);
+            mergeInOrder(total, partials, i -> bounds[i + 1], size, progress);
+            return total;
+        }
+    }
+
+    // Merges the partials in order, cancelling the rest when one fails or the caller is interrupted
+    private static void mergeInOrder(TraceAggregates total, List<Future<TraceAggregates>> partials,
+                                     IntToLongFunction partialEnd, long size, ProgressListener progress)
+            throws IOException {
+        try {
+            for (int i = 0; i < partials.size(); i++) {
+                total.merge(partials.get(i).get());
+                progress.onProgress(partialEnd.applyAsLong(i), size);
+            }
+        } catch (InterruptedException e) {
+            partials.forEach(partial -> partial.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Trace parsing interrupted");
+        } catch (ExecutionException e) {
+            partials.forEach(partial -> partial.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to parse trace chunk: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private TraceAggregates parseChunk(FileChannel channel, TraceLayout layout, long start, long end,
+                                       PowerProfiles power) throws IOException {
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        TraceCsvParser parser = new TraceCsvParser();
+        parser.setTimeZone(intensity.getTraceTimeZone());
+        TraceAggregates aggregates = new TraceAggregates(parser.getProcessNames(), parser.getHostNames(), intensity, power);
+        parser.useLayout(layout, aggregates);
+        parser.parse(data, aggregates);
+        return aggregates;
+    }
+
+    // Chunk start offsets plus the end of file; every inner bound is the start of a line
+    private long[] chunkBounds(FileChannel channel, long dataStart, long size) throws IOException {
+        long length = size - dataStart;
+        int chunks = (int) Math.max(parallelism, (length + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long chunkSize = Math.max(1, (length + chunks - 1) / chunks);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(dataStart);
+        for (int i = 1; i < chunks; i++) {
+            long bound = nextLineStart(channel, dataStart + i * chunkSize, size);
+            if (bound > bounds.get(bounds.size() - 1) && bound < size) {
+                bounds.add(bound);
+            }
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // First offset at or after position that starts a line
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK);
+        long offset = position - 1;
+        while (offset < size) {
+            block.clear();
+            int n = channel.read(block, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (block.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return size;
+    }
+
+    // Copies the first line and returns the offset just after its newline
+    private static long readFirstLine(FileChannel channel, long size, ByteArrayOutputStream line) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK);
+        long offset = 0;
+        while (offset < size) {
+            block.clear();
+            int n = channel.read(block, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (block.get(i) == '\n') {
+                    line.write(block.array(), 0, i);
+                    return offset + i + 1;
+                }
+            }
+            line.write(block.array(), 0, n);
+            offset += n;
+        }
+        return size;
+    }
+
+    // Reports progress and honours interrupts between reads
+    private static final class ProgressInputStream extends FilterInputStream {
+        private final long total;
+        private final ProgressListener progress;
+        private long read;
+
+        ProgressInputStream(InputStream in, long total, ProgressListener progress) {
+            super(in);
+            this.total = total;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Trace parsing interrupted");
+            }
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                read += n;
+                progress.onProgress(read, total);
+            }
+            return n;
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "trace-parser-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.carbonfootprint.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A trace converted to fixed-width columns (see {@link TraceColumnFileWriter}), read through
+ * memory mapping. Rows are stored in row groups of up to {@link #ROW_GROUP_ROWS} rows; inside a
+ * group every stored column is one little-endian chunk: int dictionary ids for process,
+ * hostname and status (-1 when missing), doubles for the numbers. A scan maps only the chunks
+ * of the columns it asks for, so nothing is parsed and unused columns are never read.
+ *
+ * File layout: magic and format, the row groups, then a footer written with DataOutput that
+ * holds the content hash of the source trace, the zone its date-times were read in, the stored
+ * columns, the three name dictionaries and the offset, row count and per-column min/max of every
+ * group; the file ends with the footer length and the magic again.
+ */
+public final class TraceColumnFile implements AutoCloseable {
+
+    /** Suffix of the columnar copy stored next to a trace. */
+    public static final String SUFFIX = ".cols";
+
+    static final int MAGIC = 0x43465443; // "CFTC"
+    static final int FORMAT = 1;
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = 8;
+    public static final int ROW_GROUP_ROWS = 64 * 1024;
+
+    /** Stored columns, in chunk order, with the trace column each one comes from. */
+    public enum Column {
+        PROCESS("process", Integer.BYTES),
+        HOSTNAME("hostname", Integer.BYTES),
+        STATUS("status", Integer.BYTES),
+        CPUS("cpus", Double.BYTES),
+        CPU_PERCENT("%cpu", Double.BYTES),
+        REALTIME("realtime", Double.BYTES),
+        DURATION("duration", Double.BYTES),
+        MEMORY("memory", Double.BYTES),
+        READ_BYTES("read_bytes", Double.BYTES),
+        WRITE_BYTES("write_bytes", Double.BYTES),
+        START("start", Double.BYTES),
+        COMPLETE("complete", Double.BYTES);
+
+        private final String traceName;
+        private final int width;
+
+        Column(String traceName, int width) {
+            this.traceName = traceName;
+            this.width = width;
+        }
+
+        public String getTraceName() { return traceName; }
+        public boolean isDictionary() { return width == Integer.BYTES; }
+
+        // Bytes of this column's chunk in a group of {@code rows}, padded so chunks stay 8-byte aligned
+        long chunkBytes(int rows) {
+            long bytes = (long) rows * width;
+            return (bytes + 7) & ~7L;
+        }
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+
+    /** Every column the energy model reads: all but the status. */
+    public static final Set<Column> ENERGY_COLUMNS = Collections.unmodifiableSet(EnumSet.complementOf(EnumSet.of(Column.STATUS)));
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final String contentHash;
+    private final String traceTimeZone;
+    private final long rows;
+    private final Set<Column> columns;
+    private final NameDictionary processNames;
+    private final NameDictionary hostNames;
+    private final NameDictionary statusNames;
+    private final long[] groupOffsets;
+    private final int[] groupRows;
+    // [group][column ordinal], NaN for dictionary and absent columns
+    private final double[][] groupMin;
+    private final double[][] groupMax;
+
+    private TraceColumnFile(FileChannel channel, long fileSize, DataInputStream footer) throws IOException {
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.contentHash = footer.readUTF();
+        this.traceTimeZone = footer.readUTF();
+        this.rows = footer.readLong();
+        int mask = footer.readInt();
+        EnumSet<Column> stored = EnumSet.noneOf(Column.class);
+        for (Column column : COLUMNS) {
+            if ((mask & (1 << column.ordinal())) != 0) {
+                stored.add(column);
+            }
+        }
+        this.columns = Collections.unmodifiableSet(stored);
+        this.processNames = readNames(footer);
+        this.hostNames = readNames(footer);
+        this.statusNames = readNames(footer);
+
+        int groups = footer.readInt();
+        if (groups < 0) {
+            throw new IOException("Corrupt columnar trace: " + groups + " row groups");
+        }
+        groupOffsets = new long[groups];
+        groupRows = new int[groups];
+        groupMin = new double[groups][COLUMNS.length];
+        groupMax = new double[groups][COLUMNS.length];
+        long total = 0;
+        for (int group = 0; group < groups; group++) {
+            groupOffsets[group] = footer.readLong();
+            groupRows[group] = footer.readInt();
+            if (groupRows[group] <= 0 || groupRows[group] > ROW_GROUP_ROWS || groupOffsets[group] < HEADER_BYTES
+                    || groupEnd(group) > fileSize - TRAILER_BYTES) {
+                throw new IOException("Corrupt columnar trace: row group " + group + " out of bounds");
+            }
+            total += groupRows[group];
+            for (Column column : COLUMNS) {
+                boolean hasStats = columns.contains(column) && !column.isDictionary();
+                groupMin[group][column.ordinal()] = hasStats ? footer.readDouble() : Double.NaN;
+                groupMax[group][column.ordinal()] = hasStats ? footer.readDouble() : Double.NaN;
+            }
+        }
+        if (total != rows) {
+            throw new IOException("Corrupt columnar trace: " + total + " rows in groups, " + rows + " expected");
+        }
+    }
+
+    /** Opens a columnar trace and reads its footer; the columns are mapped as they are scanned. */
+    public static TraceColumnFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES) {
+                throw new IOException("Not a columnar trace: " + file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            readFully(channel, trailer, size - TRAILER_BYTES);
+            if (header.getInt(0) != MAGIC || trailer.getInt(4) != MAGIC) {
+                throw new IOException("Not a columnar trace: " + file);
+            }
+            if (header.getInt(4) != FORMAT) {
+                throw new IOException("Unsupported columnar trace format " + header.getInt(4));
+            }
+            int footerLength = trailer.getInt(0);
+            if (footerLength <= 0 || footerLength > size - HEADER_BYTES - TRAILER_BYTES) {
+                throw new IOException("Corrupt columnar trace: footer of " + footerLength + " bytes");
+            }
+            ByteBuffer footer = ByteBuffer.allocate(footerLength);
+            readFully(channel, footer, size - TRAILER_BYTES - footerLength);
+            return new TraceColumnFile(channel, size,
+                    new DataInputStream(new ByteArrayInputStream(footer.array())));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Where the columnar copy of {@code trace} is kept: next to it, with {@link #SUFFIX} appended. */
+    public static Path pathFor(Path trace) {
+        return trace.resolveSibling(trace.getFileName() + SUFFIX);
+    }
+
+    /** SHA-256 of the trace this file was converted from. */
+    public String getContentHash() { return contentHash; }
+    /** Id of the zone date-time start and complete columns were read in; epoch milliseconds need none. */
+    public String getTraceTimeZone() { return traceTimeZone; }
+    public long getRows() { return rows; }
+    public long getFileSize() { return fileSize; }
+    public Set<Column> getColumns() { return columns; }
+    public NameDictionary getProcessNames() { return processNames; }
+    public NameDictionary getHostNames() { return hostNames; }
+    public NameDictionary getStatusNames() { return statusNames; }
+    public int getRowGroups() { return groupRows.length; }
+    public int getRowGroupRows(int group) { return groupRows[group]; }
+
+    /** Offset just after the last chunk of {@code group}. */
+    public long getRowGroupEnd(int group) {
+        return groupEnd(group);
+    }
+
+    /** The layout the source trace had, as far as the stored columns tell. */
+    public TraceLayout getLayout() {
+        List<String> names = new ArrayList<>();
+        for (Column column : columns) {
+            names.add(column.traceName);
+        }
+        return TraceLayout.ofColumns(names);
+    }
+
+    /** Smallest value of a numeric column in the whole trace; NaN when it is not stored or the trace is empty. */
+    public double getMin(Column column) {
+        double min = Double.NaN;
+        for (int group = 0; group < groupRows.length; group++) {
+            double value = groupMin[group][column.ordinal()];
+            min = Double.isNaN(min) ? value : Math.min(min, value);
+        }
+        return min;
+    }
+
+    /** Largest value of a numeric column in the whole trace; NaN when it is not stored or the trace is empty. */
+    public double getMax(Column column) {
+        double max = Double.NaN;
+        for (int group = 0; group < groupRows.length; group++) {
+            double value = groupMax[group][column.ordinal()];
+            max = Double.isNaN(max) ? value : Math.max(max, value);
+        }
+        return max;
+    }
+
+    public double getMin(int group, Column column) {
+        return groupMin[group][column.ordinal()];
+    }
+
+    public double getMax(int group, Column column) {
+        return groupMax[group][column.ordinal()];
+    }
+
+    /** Hands every row to {@code handler}, with only {@code wanted} filled in. */
+    public void scan(Set<Column> wanted, TraceRowHandler handler) throws IOException {
+        handler.onLayout(getLayout());
+        scan(wanted, 0, groupRows.length, handler);
+    }
+
+    /**
+     * Hands the rows of groups {@code [fromGroup, toGroup)} to {@code handler}, without calling
+     * {@link TraceRowHandler#onLayout}. Columns not in {@code wanted}, or not stored, are left at
+     * their {@link TraceRow} defaults. Stops with an {@link InterruptedIOException} between
+     * groups when the thread is interrupted.
+     */
+    public void scan(Set<Column> wanted, int fromGroup, int toGroup, TraceRowHandler handler) throws IOException {
+        IntBuffer[] ids = new IntBuffer[COLUMNS.length];
+        DoubleBuffer[] numbers = new DoubleBuffer[COLUMNS.length];
+        TraceRow row = new TraceRow();
+        for (int group = fromGroup; group < toGroup; group++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Trace parsing interrupted");
+            }
+            int n = groupRows[group];
+            long position = groupOffsets[group];
+            for (Column column : COLUMNS) {
+                ids[column.ordinal()] = null;
+                numbers[column.ordinal()] = null;
+                if (!columns.contains(column)) {
+                    continue;
+                }
+                if (wanted.contains(column)) {
+                    ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) n * column.width)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                    if (column.isDictionary()) {
+                        ids[column.ordinal()] = chunk.asIntBuffer();
+                    } else {
+                        numbers[column.ordinal()] = chunk.asDoubleBuffer();
+                    }
+                }
+                position += column.chunkBytes(n);
+            }
+
+            IntBuffer process = ids[Column.PROCESS.ordinal()];
+            IntBuffer host = ids[Column.HOSTNAME.ordinal()];
+            IntBuffer status = ids[Column.STATUS.ordinal()];
+            DoubleBuffer cpus = numbers[Column.CPUS.ordinal()];
+            DoubleBuffer cpuPercent = numbers[Column.CPU_PERCENT.ordinal()];
+            DoubleBuffer realtime = numbers[Column.REALTIME.ordinal()];
+            DoubleBuffer duration = numbers[Column.DURATION.ordinal()];
+            DoubleBuffer memory = numbers[Column.MEMORY.ordinal()];
+            DoubleBuffer readBytes = numbers[Column.READ_BYTES.ordinal()];
+            DoubleBuffer writeBytes = numbers[Column.WRITE_BYTES.ordinal()];
+            DoubleBuffer start = numbers[Column.START.ordinal()];
+            DoubleBuffer complete = numbers[Column.COMPLETE.ordinal()];
+            for (int i = 0; i < n; i++) {
+                row.processId = process != null ? process.get(i) : -1;
+                row.hostId = host != null ? host.get(i) : -1;
+                row.statusId = status != null ? status.get(i) : -1;
+                row.cpus = cpus != null ? cpus.get(i) : 0;
+                row.cpuPercent = cpuPercent != null ? cpuPercent.get(i) : 0;
+                row.realtime = realtime != null ? realtime.get(i) : 0;
+                row.duration = duration != null ? duration.get(i) : 0;
+                row.memory = memory != null ? memory.get(i) : 0;
+                row.readBytes = readBytes != null ? readBytes.get(i) : 0;
+                row.writeBytes = writeBytes != null ? writeBytes.get(i) : 0;
+                row.start = start != null ? start.get(i) : 0;
+                row.complete = complete != null ? complete.get(i) : 0;
+                handler.onRow(row);
+            }
+        }
+    }
+
+    private long groupEnd(int group) {
+        long end = groupOffsets[group];
+        for (Column column : columns) {
+            end += column.chunkBytes(groupRows[group]);
+        }
+        return end;
+    }
+
+    private static NameDictionary readNames(DataInputStream data) throws IOException {
+        NameDictionary names = new NameDictionary();
+        int count = data.readInt();
+        for (int id = 0; id < count; id++) {
+            names.intern(data.readUTF());
+        }
+        return names;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of columnar trace");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,243 @@
+package com.carbonfootprint.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import com.carbonfootprint.analysis.TraceColumnFile.Column;
+
+/**
+ * Writes parsed rows as a {@link TraceColumnFile}. Rows are collected column by column until a
+ * row group is full, then every column of the group is written as one chunk, so memory stays at
+ * one group however long the trace is. The footer is written by {@link #finish()}; a file
+ * without it is not a columnar trace.
+ */
+public final class TraceColumnFileWriter implements TraceRowHandler, Closeable {
+
+    private static final Column[] COLUMNS = Column.values();
+
+    private final FileChannel channel;
+    private final String contentHash;
+    private final ZoneId traceTimeZone;
+    private final NameDictionary processNames;
+    private final NameDictionary hostNames;
+    private final NameDictionary statusNames;
+
+    private final EnumSet<Column> stored = EnumSet.noneOf(Column.class);
+    // One little-endian chunk per column for the group being filled, null when not stored
+    private final ByteBuffer[] chunks = new ByteBuffer[COLUMNS.length];
+    private final double[] min = new double[COLUMNS.length];
+    private final double[] max = new double[COLUMNS.length];
+    private int groupSize;
+
+    private long rows;
+    private long position;
+    private final List<RowGroup> groups = new ArrayList<>();
+
+    /**
+     * Writes to {@code file}; the dictionaries are the ones the rows' ids refer to, read when
+     * the footer is written. {@code contentHash} identifies the source trace and
+     * {@code traceTimeZone} is the zone its date-time start and complete were read in.
+     */
+    public TraceColumnFileWriter(Path file, String contentHash, ZoneId traceTimeZone, NameDictionary processNames,
+                                 NameDictionary hostNames, NameDictionary statusNames) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.contentHash = contentHash;
+        this.traceTimeZone = traceTimeZone;
+        this.processNames = processNames;
+        this.hostNames = hostNames;
+        this.statusNames = statusNames;
+        ByteBuffer header = ByteBuffer.allocate(TraceColumnFile.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(TraceColumnFile.MAGIC).putInt(TraceColumnFile.FORMAT).flip();
+        write(header);
+    }
+
+    /**
+     * Parses the trace text in {@code in} and writes it to {@code file} as a columnar trace.
+     * Returns the number of rows. Date-time start and complete columns are read as UTC.
+     */
+    public static long convert(InputStream in, Path file, String contentHash) throws IOException {
+        return convert(in, file, contentHash, ZoneOffset.UTC);
+    }
+
+    /** Same as {@link #convert(InputStream, Path, String)}, reading date-times in {@code traceTimeZone}. */
+    public static long convert(InputStream in, Path file, String contentHash, ZoneId traceTimeZone) throws IOException {
+        TraceCsvParser parser = new TraceCsvParser();
+        parser.setStatusNames(new NameDictionary());
+        parser.setTimeZone(traceTimeZone);
+        try (TraceColumnFileWriter writer = new TraceColumnFileWriter(file, contentHash, traceTimeZone,
+                parser.getProcessNames(), parser.getHostNames(), parser.getStatusNames())) {
+            try {
+                parser.parse(in, writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.finish();
+            return writer.rows;
+        }
+    }
+
+    @Override
+    public void onLayout(TraceLayout layout) {
+        int[] indexes = {layout.process, layout.hostname, layout.status, layout.cpus, layout.cpuPercent,
+                layout.realtime, layout.duration, layout.memory, layout.readBytes, layout.writeBytes, layout.start,
+                layout.complete};
+        for (Column column : COLUMNS) {
+            if (indexes[column.ordinal()] >= 0) {
+                stored.add(column);
+                chunks[column.ordinal()] = ByteBuffer.allocate((int) column.chunkBytes(TraceColumnFile.ROW_GROUP_ROWS))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        resetStats();
+    }
+
+    @Override
+    public void onRow(TraceRow row) {
+        ByteBuffer[] c = chunks;
+        putId(c[Column.PROCESS.ordinal()], row.processId);
+        putId(c[Column.HOSTNAME.ordinal()], row.hostId);
+        putId(c[Column.STATUS.ordinal()], row.statusId);
+        putNumber(Column.CPUS, row.cpus);
+        putNumber(Column.CPU_PERCENT, row.cpuPercent);
+        putNumber(Column.REALTIME, row.realtime);
+        putNumber(Column.DURATION, row.duration);
+        putNumber(Column.MEMORY, row.memory);
+        putNumber(Column.READ_BYTES, row.readBytes);
+        putNumber(Column.WRITE_BYTES, row.writeBytes);
+        putNumber(Column.START, row.start);
+        putNumber(Column.COMPLETE, row.complete);
+        rows++;
+        if (++groupSize == TraceColumnFile.ROW_GROUP_ROWS) {
+            try {
+                writeGroup();
+            } catch (IOException e) {
+                // TraceRowHandler can not throw; convert() unwraps it
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static void putId(ByteBuffer chunk, int id) {
+        if (chunk != null) {
+            chunk.putInt(id);
+        }
+    }
+
+    private void putNumber(Column column, double value) {
+        ByteBuffer chunk = chunks[column.ordinal()];
+        if (chunk != null) {
+            chunk.putDouble(value);
+            int i = column.ordinal();
+            min[i] = Math.min(min[i], value);
+            max[i] = Math.max(max[i], value);
+        }
+    }
+
+    private void writeGroup() throws IOException {
+        if (groupSize == 0) {
+            return;
+        }
+        long offset = position;
+        for (Column column : stored) {
+            ByteBuffer chunk = chunks[column.ordinal()];
+            while (chunk.position() % 8 != 0) {
+                chunk.put((byte) 0);
+            }
+            chunk.flip();
+            write(chunk);
+            chunk.clear();
+        }
+        groups.add(new RowGroup(offset, groupSize, min.clone(), max.clone()));
+        groupSize = 0;
+        resetStats();
+    }
+
+    private void resetStats() {
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /** Writes the last row group and the footer. */
+    public void finish() throws IOException {
+        writeGroup();
+        int mask = 0;
+        for (Column column : stored) {
+            mask |= 1 << column.ordinal();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream footer = new DataOutputStream(bytes);
+        footer.writeUTF(contentHash);
+        footer.writeUTF(traceTimeZone.getId());
+        footer.writeLong(rows);
+        footer.writeInt(mask);
+        writeNames(footer, processNames);
+        writeNames(footer, hostNames);
+        writeNames(footer, statusNames);
+        footer.writeInt(groups.size());
+        for (RowGroup group : groups) {
+            footer.writeLong(group.offset);
+            footer.writeInt(group.rows);
+            for (Column column : stored) {
+                if (!column.isDictionary()) {
+                    footer.writeDouble(group.min[column.ordinal()]);
+                    footer.writeDouble(group.max[column.ordinal()]);
+                }
+            }
+        }
+        footer.flush();
+        write(ByteBuffer.wrap(bytes.toByteArray()));
+        ByteBuffer trailer = ByteBuffer.allocate(TraceColumnFile.TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt(bytes.size()).putInt(TraceColumnFile.MAGIC).flip();
+        write(trailer);
+        channel.force(false);
+    }
+
+    private static void writeNames(DataOutputStream data, NameDictionary names) throws IOException {
+        int count = names != null ? names.size() : 0;
+        data.writeInt(count);
+        for (int id = 0; id < count; id++) {
+            data.writeUTF(names.name(id));
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static final class RowGroup {
+        final long offset;
+        final int rows;
+        final double[] min;
+        final double[] max;
+
+        RowGroup(long offset, int rows, double[] min, double[] max) {
+            this.offset = offset;
+            this.rows = rows;
+            this.min = min;
+            this.max = max;
+        }
+    }
+}
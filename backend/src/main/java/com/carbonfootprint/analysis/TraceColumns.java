@@ -0,0 +1,90 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * A batch of decoded rows stored column by column, so the energy model can run over primitive
+ * arrays (see {@link EnergyKernel}). The input columns mirror {@link TraceRow} plus the carbon
+ * intensity and the power coefficients of each row; the output columns are filled by the kernel
+ * for the first {@link #size} rows.
+ */
+public final class TraceColumns {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public final int[] processId;
+    public final int[] hostId;
+    public final double[] cpus;
+    public final double[] cpuPercent;
+    public final double[] realtime;
+    public final double[] duration;
+    public final double[] memory;
+    public final double[] readBytes;
+    public final double[] writeBytes;
+    public final double[] start;
+    public final double[] complete;
+    // gCO2eq/kWh of every row, filled in from a CarbonIntensity before the kernel runs
+    public final double[] gramsPerKwh;
+    // Coefficients of the row's PowerProfile, filled in before the kernel runs
+    public final double[] cpuWattsPerCore;
+    public final double[] idleWatts;
+    public final double[] memoryWattsPerGb;
+    public final double[] storageWattsPerGb;
+
+    // Kernel output
+    public final double[] clippedCpuPercent;
+    public final double[] ioGb;
+    public final double[] energyWh;
+    public final double[] carbonGrams;
+
+    public int size;
+
+    public TraceColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TraceColumns(int capacity) {
+        processId = new int[capacity];
+        hostId = new int[capacity];
+        cpus = new double[capacity];
+        cpuPercent = new double[capacity];
+        realtime = new double[capacity];
+        duration = new double[capacity];
+        memory = new double[capacity];
+        readBytes = new double[capacity];
+        writeBytes = new double[capacity];
+        start = new double[capacity];
+        complete = new double[capacity];
+        gramsPerKwh = new double[capacity];
+        cpuWattsPerCore = new double[capacity];
+        idleWatts = new double[capacity];
+        memoryWattsPerGb = new double[capacity];
+        storageWattsPerGb = new double[capacity];
+        clippedCpuPercent = new double[capacity];
+        ioGb = new double[capacity];
+        energyWh = new double[capacity];
+        carbonGrams = new double[capacity];
+    }
+
+    public int capacity() {
+        return cpus.length;
+    }
+
+    public boolean isFull() {
+        return size == cpus.length;
+    }
+
+    /** Appends a copy of {@code row}; the caller checks {@link #isFull()} first. */
+    public void add(TraceRow row) {
+        int i = size++;
+        processId[i] = row.processId;
+        hostId[i] = row.hostId;
+        cpus[i] = row.cpus;
+        cpuPercent[i] = row.cpuPercent;
+        realtime[i] = row.realtime;
+        duration[i] = row.duration;
+        memory[i] = row.memory;
+        readBytes[i] = row.readBytes;
+        writeBytes[i] = row.writeBytes;
+        start[i] = row.start;
+        complete[i] = row.complete;
+    }
+}
@@ -0,0 +1,85 @@
+package com.carbonfootprint.analysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+
+/**
+ * How a stored trace is compressed, decided by its file name: {@code .csv}, {@code .csv.gz} or
+ * {@code .csv.zst}. Compressed traces are kept compressed on disk and decompressed while they
+ * are read, so there is never a decompressed copy.
+ */
+public enum TraceCompression {
+
+    NONE("", new byte[0]),
+    GZIP(".gz", new byte[] {0x1f, (byte) 0x8b}),
+    ZSTD(".zst", new byte[] {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd});
+
+    private static final String CSV = ".csv";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String suffix;
+    private final byte[] magic;
+
+    TraceCompression(String suffix, byte[] magic) {
+        this.suffix = suffix;
+        this.magic = magic;
+    }
+
+    /** The compression of a trace file name; anything that is not .gz or .zst is read as is. */
+    public static TraceCompression of(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(GZIP.suffix)) {
+            return GZIP;
+        } else if (lower.endsWith(ZSTD.suffix)) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    public static TraceCompression of(Path file) {
+        return of(file.getFileName().toString());
+    }
+
+    /** Whether an upload of this name is a trace: a .csv, optionally followed by .gz or .zst. */
+    public static boolean isTraceFileName(String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(CSV + of(fileName).suffix);
+    }
+
+    /** Accepted trace file extensions, for error messages. */
+    public static String extensions() {
+        return CSV + ", " + CSV + GZIP.suffix + ", " + CSV + ZSTD.suffix;
+    }
+
+    public boolean isCompressed() {
+        return this != NONE;
+    }
+
+    /** Number of leading bytes {@link #hasMagic} needs. */
+    public int magicLength() {
+        return magic.length;
+    }
+
+    /** Whether {@code prefix} starts like a stream of this format. */
+    public boolean hasMagic(byte[] prefix, int length) {
+        return length >= magic.length && Arrays.equals(prefix, 0, magic.length, magic, 0, magic.length);
+    }
+
+    /** Wraps {@code in} so that reading it yields the trace text; NONE returns {@code in} itself. */
+    public InputStream decompress(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                // Also reads traces made of several concatenated gzip members
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdInputStreamNoFinalizer(in);
+            default:
+                return in;
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package com.carbonfootprint.analysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Single-pass streaming parser for Nextflow trace files.
+ *
+ * Bytes are read into one reused buffer and only the columns the energy model needs are
+ * decoded: numbers straight from the bytes, names through {@link NameDictionary}. Each row is
+ * handed to a {@link TraceRowHandler} through a reused {@link TraceRow}, so the steady state
+ * allocates nothing per row and memory does not grow with the file size.
+ *
+ * Follows the pandas options used by evaluation.py: comma/tab detection and header detection on
+ * the first line, '#' starts a comment, blank lines are skipped, and unparseable numbers are 0.
+ * Quoted fields are supported, but a record never spans more than one line.
+ *
+ * {@code start} and {@code complete} may be epoch milliseconds (a raw trace) or Nextflow's
+ * default {@code yyyy-MM-dd HH:mm:ss.SSS}, which is local time of the machine that ran the
+ * pipeline; those are read in the zone given to {@link #setTimeZone}, UTC by default.
+ */
+public final class TraceCsvParser {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte ROLE_NONE = 0;
+    private static final byte ROLE_PROCESS = 1;
+    private static final byte ROLE_HOSTNAME = 2;
+    private static final byte ROLE_CPUS = 3;
+    private static final byte ROLE_CPU_PERCENT = 4;
+    private static final byte ROLE_REALTIME = 5;
+    private static final byte ROLE_DURATION = 6;
+    private static final byte ROLE_MEMORY = 7;
+    private static final byte ROLE_READ_BYTES = 8;
+    private static final byte ROLE_WRITE_BYTES = 9;
+    private static final byte ROLE_START = 10;
+    private static final byte ROLE_COMPLETE = 11;
+    private static final byte ROLE_STATUS = 12;
+
+    private static final byte[] MISSING_PROCESS = "nan".getBytes(StandardCharsets.US_ASCII);
+
+    // Powers of ten that are exact in a double, for the fast number path
+    private static final double[] POW10 = new double[23];
+    private static final long MS_PER_HOUR = 3_600_000L;
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final NameDictionary processNames;
+    private final NameDictionary hostNames;
+    private NameDictionary statusNames;
+    private final TraceRow row = new TraceRow();
+    private ZoneRules timeZone = ZoneOffset.UTC.getRules();
+    // Offset of the last local hour a date-time fell in, so the zone rules are asked once per hour
+    private long offsetHour = Long.MIN_VALUE;
+    private long offsetMs;
+
+    private byte[] buf;
+    private byte[] scratch = new byte[256];
+    private TraceLayout layout;
+    private byte[] roles;
+    private byte delimiter;
+    private long rows;
+
+    public TraceCsvParser() {
+        this(new NameDictionary(), new NameDictionary(), DEFAULT_BUFFER_SIZE);
+    }
+
+    public TraceCsvParser(NameDictionary processNames, NameDictionary hostNames, int bufferSize) {
+        this.processNames = processNames;
+        this.hostNames = hostNames;
+        this.buf = new byte[bufferSize];
+    }
+
+    public NameDictionary getProcessNames() { return processNames; }
+    public NameDictionary getHostNames() { return hostNames; }
+    public NameDictionary getStatusNames() { return statusNames; }
+    public TraceLayout getLayout() { return layout; }
+    public long getRows() { return rows; }
+
+    /**
+     * Also decodes the status column into {@code statusNames}. Off by default: the energy model
+     * does not need it. Call before the layout is known.
+     */
+    public void setStatusNames(NameDictionary statusNames) {
+        this.statusNames = statusNames;
+    }
+
+    /** Zone of the formatted start and complete times; epoch milliseconds are not affected. */
+    public void setTimeZone(ZoneId zone) {
+        this.timeZone = zone.getRules();
+        this.offsetHour = Long.MIN_VALUE;
+    }
+
+    /**
+     * Parses the whole stream. The first line decides the layout unless {@link #useLayout} was
+     * called before.
+     */
+    public void parse(InputStream in, TraceRowHandler handler) throws IOException {
+        parse(in, handler, true);
+    }
+
+    /**
+     * Parses the complete lines of the stream and returns the number of bytes they span. A last
+     * line without its newline is left alone, so a file that is still being appended to can be
+     * followed by calling this again from the returned offset; layout and names carry over.
+     */
+    public long parseCompleteLines(InputStream in, TraceRowHandler handler) throws IOException {
+        return parse(in, handler, false);
+    }
+
+    private long parse(InputStream in, TraceRowHandler handler, boolean lastLineComplete) throws IOException {
+        long consumed = 0;
+        int limit = 0;
+        int pos = 0;
+        int scan = 0;
+        boolean eof = false;
+
+        while (true) {
+            int nl = indexOfNewline(buf, scan, limit);
+            if (nl >= 0) {
+                handleLine(pos, nl, handler);
+                consumed += nl + 1 - pos;
+                pos = nl + 1;
+                scan = pos;
+                continue;
+            }
+            if (eof) {
+                if (pos < limit && lastLineComplete) {
+                    handleLine(pos, limit, handler);
+                    consumed += limit - pos;
+                }
+                return consumed;
+            }
+
+            // Keep the partial line, then refill behind it
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            scan = limit;
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+    }
+
+    /**
+     * Parses a buffer, typically a memory-mapped slice of a trace file. The bytes are copied into
+     * the parser's own buffer block by block.
+     */
+    public void parse(ByteBuffer data, TraceRowHandler handler) throws IOException {
+        parse(new ByteBufferInput(data), handler);
+    }
+
+    /**
+     * Fixes the layout up front, e.g. for a slice of a file whose first line was already read.
+     * Every line handed to the parser is then treated as data.
+     */
+    public void useLayout(TraceLayout layout, TraceRowHandler handler) {
+        this.layout = layout;
+        this.delimiter = (byte) layout.getDelimiter();
+        this.roles = buildRoles(layout, statusNames != null);
+        handler.onLayout(layout);
+    }
+
+    private void handleLine(int from, int to, TraceRowHandler handler) {
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        if (layout == null) {
+            useLayout(TraceLayout.detect(new String(buf, from, to - from, StandardCharsets.UTF_8)), handler);
+            if (layout.hasHeader()) {
+                return;
+            }
+        }
+        if (to == from || buf[from] == '#') {
+            return;
+        }
+        parseRow(from, to);
+        rows++;
+        handler.onRow(row);
+    }
+
+    private void parseRow(int from, int end) {
+        TraceRow row = this.row;
+        row.clear();
+
+        int field = 0;
+        int i = from;
+        while (true) {
+            int start;
+            int stop;
+            boolean escaped = false;
+            if (i < end && buf[i] == '"') {
+                start = i + 1;
+                int j = start;
+                while (j < end) {
+                    if (buf[j] == '"') {
+                        if (j + 1 < end && buf[j + 1] == '"') {
+                            escaped = true;
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                stop = j;
+                i = Math.min(j + 1, end);
+                while (i < end && buf[i] != delimiter) {
+                    i++;
+                }
+            } else {
+                start = i;
+                while (i < end && buf[i] != delimiter && buf[i] != '#') {
+                    i++;
+                }
+                if (i < end && buf[i] == '#') {
+                    end = i;
+                }
+                stop = i;
+            }
+
+            byte role = field < roles.length ? roles[field] : ROLE_NONE;
+            if (role != ROLE_NONE) {
+                if (escaped) {
+                    decode(role, scratch, 0, unescape(start, stop));
+                } else {
+                    decode(role, buf, start, stop);
+                }
+            }
+
+            field++;
+            // Nothing after the last column we decode is needed
+            if (i >= end || field >= roles.length) {
+                break;
+            }
+            i++;
+        }
+
+        if (layout.hasProcess() && row.processId < 0) {
+            row.processId = processNames.intern(MISSING_PROCESS, 0, MISSING_PROCESS.length);
+        }
+    }
+
+    private void decode(byte role, byte[] src, int from, int to) {
+        TraceRow row = this.row;
+        switch (role) {
+            case ROLE_PROCESS:
+                if (to > from) {
+                    row.processId = processNames.intern(src, from, to);
+                }
+                break;
+            case ROLE_HOSTNAME:
+                if (to > from) {
+                    row.hostId = hostNames.intern(src, from, to);
+                }
+                break;
+            case ROLE_STATUS:
+                if (to > from) {
+                    row.statusId = statusNames.intern(src, from, to);
+                }
+                break;
+            case ROLE_CPUS:
+                row.cpus = parseNumber(src, from, to);
+                break;
+            case ROLE_CPU_PERCENT:
+                row.cpuPercent = parseNumber(src, from, to);
+                break;
+            case ROLE_REALTIME:
+                row.realtime = parseNumber(src, from, to);
+                break;
+            case ROLE_DURATION:
+                row.duration = parseNumber(src, from, to);
+                break;
+            case ROLE_MEMORY:
+                row.memory = parseNumber(src, from, to);
+                break;
+            case ROLE_READ_BYTES:
+                row.readBytes = parseNumber(src, from, to);
+                break;
+            case ROLE_WRITE_BYTES:
+                row.writeBytes = parseNumber(src, from, to);
+                break;
+            case ROLE_START:
+                row.start = parseTime(src, from, to);
+                break;
+            case ROLE_COMPLETE:
+                row.complete = parseTime(src, from, to);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Copies buf[from, to) into scratch with "" collapsed to ", returns the new length
+    private int unescape(int from, int to) {
+        if (scratch.length < to - from) {
+            scratch = new byte[to - from];
+        }
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            scratch[n++] = buf[i];
+            if (buf[i] == '"') {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    private static byte[] buildRoles(TraceLayout layout, boolean withStatus) {
+        int[] indexes = {layout.process, layout.hostname, layout.cpus, layout.cpuPercent, layout.realtime,
+                layout.duration, layout.memory, layout.readBytes, layout.writeBytes, layout.start, layout.complete,
+                withStatus ? layout.status : -1};
+        byte[] codes = {ROLE_PROCESS, ROLE_HOSTNAME, ROLE_CPUS, ROLE_CPU_PERCENT, ROLE_REALTIME,
+                ROLE_DURATION, ROLE_MEMORY, ROLE_READ_BYTES, ROLE_WRITE_BYTES, ROLE_START, ROLE_COMPLETE,
+                ROLE_STATUS};
+        int width = 0;
+        for (int index : indexes) {
+            width = Math.max(width, index + 1);
+        }
+        byte[] roles = new byte[width];
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] >= 0) {
+                roles[indexes[i]] = codes[i];
+            }
+        }
+        return roles;
+    }
+
+    private static int indexOfNewline(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class ByteBufferInput extends InputStream {
+        private final ByteBuffer data;
+
+        ByteBufferInput(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return data.hasRemaining() ? data.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Trace parsing interrupted");
+            }
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, data.remaining());
+            data.get(b, off, n);
+            return n;
+        }
+    }
+
+    /**
+     * Parses an ASCII decimal number without creating a String, like
+     * pd.to_numeric(errors='coerce').fillna(0): anything that is not a number gives 0.
+     * Plain decimals with up to 18 significant digits take an exact fast path; everything else
+     * falls back to {@link Double#parseDouble}.
+     */
+    static double parseNumber(byte[] b, int from, int to) {
+        while (from < to && b[from] == ' ') {
+            from++;
+        }
+        while (to > from && b[to - 1] == ' ') {
+            to--;
+        }
+        if (from == to) {
+            return 0.0;
+        }
+
+        int i = from;
+        boolean negative = false;
+        if (b[i] == '-' || b[i] == '+') {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDot = false;
+        boolean any = false;
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa == 0 && c == '0') {
+                    if (seenDot) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (digits == 18) {
+                    return slowParse(b, from, to);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenDot) {
+                    scale--;
+                }
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            return slowParse(b, from, to);
+        }
+        if (i < to) {
+            if (b[i] != 'e' && b[i] != 'E') {
+                return slowParse(b, from, to);
+            }
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (b[i] == '-' || b[i] == '+')) {
+                negativeExp = b[i] == '-';
+                i++;
+            }
+            if (i == to) {
+                return slowParse(b, from, to);
+            }
+            int exp = 0;
+            for (; i < to; i++) {
+                byte c = b[i];
+                if (c < '0' || c > '9' || exp > 1000) {
+                    return slowParse(b, from, to);
+                }
+                exp = exp * 10 + (c - '0');
+            }
+            scale += negativeExp ? -exp : exp;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (mantissa < (1L << 53) && scale >= -22 && scale <= 22) {
+            value = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+        } else {
+            return slowParse(b, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a start or complete time as epoch milliseconds: a number as is, a date-time
+     * {@code yyyy-MM-dd HH:mm[:ss[.fraction]]} (or with 'T') in the parser's zone. Anything else is 0.
+     */
+    double parseTime(byte[] b, int from, int to) {
+        while (from < to && b[from] == ' ') {
+            from++;
+        }
+        while (to > from && b[to - 1] == ' ') {
+            to--;
+        }
+        if (to - from < 16 || b[from + 4] != '-') {
+            return parseNumber(b, from, to);
+        }
+        int year = digits(b, from, 4);
+        int month = digits(b, from + 5, 2);
+        int day = digits(b, from + 8, 2);
+        int hour = digits(b, from + 11, 2);
+        int minute = digits(b, from + 14, 2);
+        if (b[from + 7] != '-' || (b[from + 10] != ' ' && b[from + 10] != 'T') || b[from + 13] != ':'
+                || year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59) {
+            return 0.0;
+        }
+        int second = 0;
+        int millis = 0;
+        int i = from + 16;
+        if (i < to) {
+            second = b[i] == ':' && i + 3 <= to ? digits(b, i + 1, 2) : -1;
+            if (second < 0 || second > 60) {
+                return 0.0;
+            }
+            i += 3;
+            if (i < to) {
+                if (b[i] != '.' && b[i] != ',') {
+                    return 0.0;
+                }
+                int scale = 100;
+                for (i++; i < to; i++) {
+                    int digit = b[i] - '0';
+                    if (digit < 0 || digit > 9) {
+                        return 0.0;
+                    }
+                    millis += digit * scale;
+                    scale /= 10;
+                }
+            }
+        }
+        long localMs = epochDay(year, month, day) * 24 * MS_PER_HOUR + hour * MS_PER_HOUR + minute * 60_000L
+                + second * 1000L + millis;
+        return localMs - offsetMs(localMs);
+    }
+
+    // Zone offset of a local time in milliseconds, looked up again only when the local hour changes
+    private long offsetMs(long localMs) {
+        long localHour = Math.floorDiv(localMs, MS_PER_HOUR);
+        if (localHour != offsetHour) {
+            LocalDateTime local = LocalDateTime.ofEpochSecond(localHour * 3600, 0, ZoneOffset.UTC);
+            offsetMs = timeZone.getOffset(local).getTotalSeconds() * 1000L;
+            offsetHour = localHour;
+        }
+        return offsetMs;
+    }
+
+    // Value of count ASCII digits, -1 when one is not a digit
+    private static int digits(byte[] b, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Days since 1970-01-01 of a proleptic Gregorian date, as LocalDate.toEpochDay computes it
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static double slowParse(byte[] b, int from, int to) {
+        try {
+            double value = Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+            return Double.isNaN(value) ? 0.0 : value;
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.carbonfootprint.analysis;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Column layout of a Nextflow trace file: the delimiter, whether the first line is a header,
+ * and the index of every column the energy model reads (-1 when the column is absent).
+ * Detection follows load_and_preprocess_data() in scripts/evaluation.py.
+ */
+public final class TraceLayout {
+
+    /** Column names assigned to headerless traces, in Nextflow's default order. */
+    public static final List<String> EXPECTED_COLUMNS = Arrays.asList(
+            "task_id", "hostname", "hash", "native_id", "process", "tag", "name", "status", "exit",
+            "module", "container", "cpus", "time", "disk", "memory", "attempt", "submit",
+            "start", "complete", "duration", "realtime", "queue", "%cpu", "%mem", "rss",
+            "vmem", "peak_rss", "peak_vmem", "rchar", "wchar", "syscr", "syscw",
+            "read_bytes", "write_bytes", "vol_ctxt", "inv_ctxt", "workdir", "scratch",
+            "error_action", "create_bash_wrapper_time", "create_request_time",
+            "submit_to_scheduler_time", "submit_to_k8s_time");
+
+    private static final List<String> NF_KEYWORDS = Arrays.asList(
+            "task_id", "process", "status", "exit", "duration", "realtime", "memory", "%cpu", "cpus", "hostname");
+
+    /** Columns without which the energy model has nothing to compute. */
+    public static final List<String> REQUIRED_COLUMNS = Arrays.asList("cpus", "%cpu", "realtime");
+
+    private final char delimiter;
+    private final boolean hasHeader;
+
+    final int process;
+    final int hostname;
+    final int status;
+    final int cpus;
+    final int cpuPercent;
+    final int realtime;
+    final int duration;
+    final int memory;
+    final int readBytes;
+    final int writeBytes;
+    final int start;
+    final int complete;
+
+    private TraceLayout(char delimiter, boolean hasHeader, List<String> columns) {
+        this.delimiter = delimiter;
+        this.hasHeader = hasHeader;
+        this.process = columns.indexOf("process");
+        this.hostname = columns.indexOf("hostname");
+        this.status = columns.indexOf("status");
+        this.cpus = columns.indexOf("cpus");
+        this.cpuPercent = columns.indexOf("%cpu");
+        this.realtime = columns.indexOf("realtime");
+        this.duration = columns.indexOf("duration");
+        this.memory = columns.indexOf("memory");
+        this.readBytes = columns.indexOf("read_bytes");
+        this.writeBytes = columns.indexOf("write_bytes");
+        this.start = columns.indexOf("start");
+        this.complete = columns.indexOf("complete");
+    }
+
+    /**
+     * Detects the layout from the first line of the file.
+     */
+    public static TraceLayout detect(String firstLine) {
+        String line = firstLine == null ? "" : firstLine.strip();
+        char delimiter = line.indexOf(',') >= 0 ? ',' : '\t';
+
+        String lower = line.toLowerCase(Locale.ROOT);
+        boolean hasHeader = NF_KEYWORDS.stream().anyMatch(lower::contains);
+        if (!hasHeader) {
+            return new TraceLayout(delimiter, false, EXPECTED_COLUMNS);
+        }
+
+        String[] names = line.split(delimiter == ',' ? "," : "\t", -1);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].strip();
+        }
+        return new TraceLayout(delimiter, true, Arrays.asList(names));
+    }
+
+    /**
+     * A layout with a header naming exactly {@code columns}, for rows that do not come from a
+     * CSV file (see {@link TraceColumnFile}).
+     */
+    static TraceLayout ofColumns(List<String> columns) {
+        return new TraceLayout(',', true, columns);
+    }
+
+    /**
+     * Checks the first line of an upload before the rest arrives. Returns why the file can not be
+     * analyzed, or null if it can: a header must name the required columns, and a headerless
+     * first row must reach at least the last required column of the default order.
+     */
+    public static String validate(String firstLine) {
+        if (firstLine == null || firstLine.isBlank()) {
+            return "The trace is empty";
+        }
+        if (firstLine.indexOf('\0') >= 0) {
+            return "The trace is not a text file";
+        }
+        TraceLayout layout = detect(firstLine);
+        if (layout.hasHeader) {
+            if (layout.cpus < 0 || layout.cpuPercent < 0 || layout.realtime < 0) {
+                return "The trace header lacks one of the columns " + REQUIRED_COLUMNS;
+            }
+            return null;
+        }
+        int fields = firstLine.strip().split(layout.delimiter == ',' ? "," : "\t", -1).length;
+        int needed = 1 + REQUIRED_COLUMNS.stream().mapToInt(EXPECTED_COLUMNS::indexOf).max().getAsInt();
+        if (fields < needed) {
+            return "The first row has " + fields + " fields; a trace without a header needs at least " + needed;
+        }
+        return null;
+    }
+
+    public char getDelimiter() { return delimiter; }
+    public boolean hasHeader() { return hasHeader; }
+    public boolean hasProcess() { return process >= 0; }
+    public boolean hasHostname() { return hostname >= 0; }
+    public boolean hasStatus() { return status >= 0; }
+    public boolean hasTimestamps() { return start >= 0 || complete >= 0; }
+}
@@ -0,0 +1,256 @@
+package com.carbonfootprint.analysis;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Sums of a trace per (process, host) cell, enough to recompute energy and carbon for other
+ * coefficients without reading the trace again. The energy model is linear in the power
+ * coefficients, so every cell keeps the sum of each coefficient's factor weighted by the run
+ * time in hours: a task contributes {@code cpus * %cpu / 100 * h} to the CPU term, {@code ioGb * h},
+ * {@code memoryGb * h} and {@code h} to the storage, memory and idle terms. The same four terms are
+ * also kept multiplied by the carbon intensity each task was analysed with (in kg/kWh), so
+ * carbon under new power coefficients keeps the time-varying intensity.
+ *
+ * Cells are stored as one flat array of {@link #FIELDS} doubles each, in order of first
+ * appearance, and written as a small binary file (see {@link #writeTo(OutputStream)}).
+ */
+public final class TraceRollup {
+
+    private static final int MAGIC = 0x43465255; // "CFRU"
+    private static final int FORMAT = 1;
+
+    public static final int COUNT = 0;
+    public static final int DURATION_MIN = 1;
+    public static final int CPU_PERCENT = 2;
+    public static final int MEMORY_GB = 3;
+    public static final int IO_GB = 4;
+    public static final int READ_BYTES = 5;
+    public static final int WRITE_BYTES = 6;
+    public static final int CPU_TERM = 7;
+    public static final int STORAGE_TERM = 8;
+    public static final int MEMORY_TERM = 9;
+    public static final int IDLE_TERM = 10;
+    public static final int CPU_CARBON_TERM = 11;
+    public static final int STORAGE_CARBON_TERM = 12;
+    public static final int MEMORY_CARBON_TERM = 13;
+    public static final int IDLE_CARBON_TERM = 14;
+    public static final int ENERGY_WH = 15;
+    public static final int CARBON_GRAMS = 16;
+    public static final int FIELDS = 17;
+
+    private final NameDictionary processNames;
+    private final NameDictionary hostNames;
+    private final String carbonIntensityProfile;
+
+    private int size;
+    private int[] processes = new int[16];
+    private int[] hosts = new int[16];
+    private double[] values = new double[16 * FIELDS];
+
+    // cells[processId + 1][hostId + 1] is cell + 1, 0 when the pair has not been seen
+    private int[][] cells = new int[0][];
+
+    public TraceRollup(NameDictionary processNames, NameDictionary hostNames, String carbonIntensityProfile) {
+        this.processNames = processNames;
+        this.hostNames = hostNames;
+        this.carbonIntensityProfile = carbonIntensityProfile;
+    }
+
+    /**
+     * Adds one task with the energy and carbon it was analysed with. {@code realtimeHours}
+     * weights the model terms, {@code kgPerKwh} is the intensity of the task.
+     */
+    void add(int processId, int hostId, double durationMin, double cpuPercent, double memoryGb, double ioGb,
+             double energyWh, double carbonGrams, double readBytes, double writeBytes, double cpus,
+             double realtimeHours, double kgPerKwh) {
+        int base = cell(processId, hostId) * FIELDS;
+        double cpuTerm = cpus * (cpuPercent / 100) * realtimeHours;
+        double storageTerm = ioGb * realtimeHours;
+        double memoryTerm = memoryGb * realtimeHours;
+        double[] v = values;
+        v[base + COUNT] += 1;
+        v[base + DURATION_MIN] += durationMin;
+        v[base + CPU_PERCENT] += cpuPercent;
+        v[base + MEMORY_GB] += memoryGb;
+        v[base + IO_GB] += ioGb;
+        v[base + READ_BYTES] += readBytes;
+        v[base + WRITE_BYTES] += writeBytes;
+        v[base + CPU_TERM] += cpuTerm;
+        v[base + STORAGE_TERM] += storageTerm;
+        v[base + MEMORY_TERM] += memoryTerm;
+        v[base + IDLE_TERM] += realtimeHours;
+        v[base + CPU_CARBON_TERM] += cpuTerm * kgPerKwh;
+        v[base + STORAGE_CARBON_TERM] += storageTerm * kgPerKwh;
+        v[base + MEMORY_CARBON_TERM] += memoryTerm * kgPerKwh;
+        v[base + IDLE_CARBON_TERM] += realtimeHours * kgPerKwh;
+        v[base + ENERGY_WH] += energyWh;
+        v[base + CARBON_GRAMS] += carbonGrams;
+    }
+
+    private int cell(int processId, int hostId) {
+        int p = processId + 1;
+        int h = hostId + 1;
+        if (p >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(p + 1, cells.length * 2));
+        }
+        int[] row = cells[p];
+        if (row == null || h >= row.length) {
+            row = cells[p] = row == null ? new int[Math.max(h + 1, 8)] : Arrays.copyOf(row, Math.max(h + 1, row.length * 2));
+        }
+        int cell = row[h] - 1;
+        if (cell < 0) {
+            cell = size++;
+            if (cell == processes.length) {
+                processes = Arrays.copyOf(processes, cell * 2);
+                hosts = Arrays.copyOf(hosts, cell * 2);
+                values = Arrays.copyOf(values, cell * 2 * FIELDS);
+            }
+            processes[cell] = processId;
+            hosts[cell] = hostId;
+            row[h] = cell + 1;
+        }
+        return cell;
+    }
+
+    /** Folds in the cells of another slice of the same trace, matching names like TraceAggregates.merge. */
+    void merge(TraceRollup other) {
+        for (int cell = 0; cell < other.size; cell++) {
+            int processId = other.processes[cell] < 0 ? -1 : processNames.intern(other.processNames.name(other.processes[cell]));
+            int hostId = other.hosts[cell] < 0 ? -1 : hostNames.intern(other.hostNames.name(other.hosts[cell]));
+            int base = cell(processId, hostId) * FIELDS;
+            int otherBase = cell * FIELDS;
+            for (int field = 0; field < FIELDS; field++) {
+                values[base + field] += other.values[otherBase + field];
+            }
+        }
+    }
+
+    /** Number of (process, host) cells. */
+    public int size() {
+        return size;
+    }
+
+    int processId(int cell) {
+        return processes[cell];
+    }
+
+    int hostId(int cell) {
+        return hosts[cell];
+    }
+
+    /** Process name of a cell, null when the trace has no process column. */
+    public String processName(int cell) {
+        return processes[cell] < 0 ? null : processNames.name(processes[cell]);
+    }
+
+    /** Host name of a cell, null for tasks without a hostname. */
+    public String hostName(int cell) {
+        return hosts[cell] < 0 ? null : hostNames.name(hosts[cell]);
+    }
+
+    public double value(int cell, int field) {
+        return values[cell * FIELDS + field];
+    }
+
+    /** Energy of a cell in Wh with the coefficients of {@code profile}. */
+    public double energyWh(int cell, PowerProfile profile) {
+        int base = cell * FIELDS;
+        return values[base + CPU_TERM] * profile.getCpuWattsPerCore()
+                + values[base + STORAGE_TERM] * profile.getStorageWattsPerGb()
+                + values[base + MEMORY_TERM] * profile.getMemoryWattsPerGb()
+                + values[base + IDLE_TERM] * profile.getIdleWatts();
+    }
+
+    /** Carbon of a cell in grams with the coefficients of {@code profile} and the recorded intensity. */
+    public double carbonGrams(int cell, PowerProfile profile) {
+        int base = cell * FIELDS;
+        return values[base + CPU_CARBON_TERM] * profile.getCpuWattsPerCore()
+                + values[base + STORAGE_CARBON_TERM] * profile.getStorageWattsPerGb()
+                + values[base + MEMORY_CARBON_TERM] * profile.getMemoryWattsPerGb()
+                + values[base + IDLE_CARBON_TERM] * profile.getIdleWatts();
+    }
+
+    /** The carbon intensity profile the carbon terms were computed with. */
+    public String getCarbonIntensityProfile() {
+        return carbonIntensityProfile;
+    }
+
+    /**
+     * Writes the rollup: magic, format, intensity profile, the process and host names, then the
+     * process id, host id and {@link #FIELDS} values of every cell. A few KB for a typical trace.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT);
+        data.writeUTF(carbonIntensityProfile);
+        writeNames(data, processNames);
+        writeNames(data, hostNames);
+        data.writeInt(size);
+        for (int cell = 0; cell < size; cell++) {
+            data.writeInt(processes[cell]);
+            data.writeInt(hosts[cell]);
+        }
+        for (int i = 0; i < size * FIELDS; i++) {
+            data.writeDouble(values[i]);
+        }
+        data.flush();
+    }
+
+    public static TraceRollup readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a trace rollup");
+        }
+        int format = data.readInt();
+        if (format != FORMAT) {
+            throw new IOException("Unsupported trace rollup format " + format);
+        }
+        String profile = data.readUTF();
+        NameDictionary processNames = readNames(data);
+        NameDictionary hostNames = readNames(data);
+        TraceRollup rollup = new TraceRollup(processNames, hostNames, profile);
+        int size = data.readInt();
+        int[] processes = new int[size];
+        int[] hosts = new int[size];
+        for (int cell = 0; cell < size; cell++) {
+            processes[cell] = checkId(data.readInt(), processNames);
+            hosts[cell] = checkId(data.readInt(), hostNames);
+        }
+        for (int cell = 0; cell < size; cell++) {
+            int base = rollup.cell(processes[cell], hosts[cell]) * FIELDS;
+            for (int field = 0; field < FIELDS; field++) {
+                rollup.values[base + field] = data.readDouble();
+            }
+        }
+        return rollup;
+    }
+
+    private static void writeNames(DataOutputStream data, NameDictionary names) throws IOException {
+        data.writeInt(names.size());
+        for (int id = 0; id < names.size(); id++) {
+            data.writeUTF(names.name(id));
+        }
+    }
+
+    private static NameDictionary readNames(DataInputStream data) throws IOException {
+        NameDictionary names = new NameDictionary();
+        int count = data.readInt();
+        for (int id = 0; id < count; id++) {
+            names.intern(data.readUTF());
+        }
+        return names;
+    }
+
+    private static int checkId(int id, NameDictionary names) throws IOException {
+        if (id < -1 || id >= names.size()) {
+            throw new IOException("Corrupt trace rollup: name id " + id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,39 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * One decoded trace row. The parser reuses a single instance for every row, so handlers must
+ * copy out whatever they want to keep. Missing or unparseable numbers are 0, and a missing
+ * hostname or status has id -1; the status is only decoded on request (see
+ * {@link TraceCsvParser#setStatusNames}). {@code start} and {@code complete} are epoch milliseconds, as in raw
+ * Nextflow traces, also when the trace writes them as date-times; 0 when unknown.
+ */
+public final class TraceRow {
+
+    public int processId;
+    public int hostId;
+    public int statusId;
+    public double cpus;
+    public double cpuPercent;
+    public double realtime;
+    public double duration;
+    public double memory;
+    public double readBytes;
+    public double writeBytes;
+    public double start;
+    public double complete;
+
+    void clear() {
+        processId = -1;
+        hostId = -1;
+        statusId = -1;
+        cpus = 0;
+        cpuPercent = 0;
+        realtime = 0;
+        duration = 0;
+        memory = 0;
+        readBytes = 0;
+        writeBytes = 0;
+        start = 0;
+        complete = 0;
+    }
+}
@@ -0,0 +1,12 @@
+package com.carbonfootprint.analysis;
+
+/**
+ * Receives rows from {@link TraceCsvParser} as they are decoded.
+ */
+public interface TraceRowHandler {
+
+    /** Called once, before the first row, with the detected column layout. */
+    default void onLayout(TraceLayout layout) {}
+
+    void onRow(TraceRow row);
+}
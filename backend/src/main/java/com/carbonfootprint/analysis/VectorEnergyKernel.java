@@ -0,0 +1,48 @@
+package com.carbonfootprint.analysis;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The energy model with the JDK Vector API, as many rows per instruction as the CPU's widest
+ * double vector holds. Every lane does the same operations in the same order as
+ * {@link ScalarEnergyKernel} (no fused multiply-add), so the results are bit for bit the same.
+ * Only loaded through {@link EnergyKernel#vector()}, which checks that the module is present.
+ */
+final class VectorEnergyKernel extends EnergyKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String getName() {
+        return "vector-" + SPECIES.length() + "x" + Double.SIZE;
+    }
+
+    @Override
+    public void apply(TraceColumns c) {
+        int bound = SPECIES.loopBound(c.size);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector clippedCpu = DoubleVector.fromArray(SPECIES, c.cpuPercent, i)
+                    .lanewise(VectorOperators.MIN, EnergyModel.MAX_CPU_PERCENT);
+            DoubleVector ioGb = DoubleVector.fromArray(SPECIES, c.readBytes, i).div(EnergyModel.BYTES_PER_GB)
+                    .add(DoubleVector.fromArray(SPECIES, c.writeBytes, i).div(EnergyModel.BYTES_PER_GB));
+            DoubleVector memoryGb = DoubleVector.fromArray(SPECIES, c.memory, i).div(EnergyModel.BYTES_PER_GB);
+            DoubleVector power = DoubleVector.fromArray(SPECIES, c.cpus, i)
+                    .mul(DoubleVector.fromArray(SPECIES, c.cpuWattsPerCore, i))
+                    .mul(clippedCpu.div(100))
+                    .add(ioGb.mul(DoubleVector.fromArray(SPECIES, c.storageWattsPerGb, i)))
+                    .add(memoryGb.mul(DoubleVector.fromArray(SPECIES, c.memoryWattsPerGb, i)))
+                    .add(DoubleVector.fromArray(SPECIES, c.idleWatts, i));
+            DoubleVector energyWh = power.mul(DoubleVector.fromArray(SPECIES, c.realtime, i).div(EnergyModel.MS_PER_HOUR));
+
+            clippedCpu.intoArray(c.clippedCpuPercent, i);
+            ioGb.intoArray(c.ioGb, i);
+            energyWh.intoArray(c.energyWh, i);
+            energyWh.div(1000).mul(DoubleVector.fromArray(SPECIES, c.gramsPerKwh, i)).intoArray(c.carbonGrams, i);
+        }
+        // Rows that do not fill a whole vector
+        ScalarEnergyKernel.apply(c, i, c.size);
+    }
+}
@@ -0,0 +1,373 @@
+package com.carbonfootprint.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "analysis")
+public class AnalysisConfig {
+    // Threads used to parse one large trace; 0 means one per available core
+    private int parallelism = 0;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    // Files at least this large are memory-mapped and parsed in parallel chunks
+    private long parallelThresholdBytes = 16L * 1024 * 1024;
+
+    public long getParallelThresholdBytes() {
+        return parallelThresholdBytes;
+    }
+
+    public void setParallelThresholdBytes(long parallelThresholdBytes) {
+        this.parallelThresholdBytes = parallelThresholdBytes;
+    }
+
+    // Analyses that may run at the same time
+    private int jobConcurrency = 2;
+
+    public int getJobConcurrency() {
+        return jobConcurrency;
+    }
+
+    public void setJobConcurrency(int jobConcurrency) {
+        this.jobConcurrency = jobConcurrency;
+    }
+
+    // Jobs waiting for a free slot; further submissions are rejected with 429
+    private int jobQueueCapacity = 20;
+
+    public int getJobQueueCapacity() {
+        return jobQueueCapacity;
+    }
+
+    public void setJobQueueCapacity(int jobQueueCapacity) {
+        this.jobQueueCapacity = jobQueueCapacity;
+    }
+
+    // Finished jobs kept in memory for status polling
+    private int jobHistorySize = 200;
+
+    public int getJobHistorySize() {
+        return jobHistorySize;
+    }
+
+    public void setJobHistorySize(int jobHistorySize) {
+        this.jobHistorySize = jobHistorySize;
+    }
+
+    // Cache keys of recent results kept in memory in front of the cache_key index
+    private int resultCacheSize = 1000;
+
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    public void setResultCacheSize(int resultCacheSize) {
+        this.resultCacheSize = resultCacheSize;
+    }
+
+    // How often the dashboard aggregate row is rebuilt from the results table
+    private long dashboardReconcileIntervalMs = 3600000;
+
+    public long getDashboardReconcileIntervalMs() {
+        return dashboardReconcileIntervalMs;
+    }
+
+    public void setDashboardReconcileIntervalMs(long dashboardReconcileIntervalMs) {
+        this.dashboardReconcileIntervalMs = dashboardReconcileIntervalMs;
+    }
+
+    // Upper bound for the page size of analysis listings
+    private int maxPageSize = 200;
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    // Memory budget of parsed visualization models kept per result id
+    private long visualizationCacheBytes = 64L * 1024 * 1024;
+
+    public long getVisualizationCacheBytes() {
+        return visualizationCacheBytes;
+    }
+
+    public void setVisualizationCacheBytes(long visualizationCacheBytes) {
+        this.visualizationCacheBytes = visualizationCacheBytes;
+    }
+
+    // Register Jackson's Blackbird module, which replaces reflective property access with generated lambdas
+    private boolean jsonBlackbird = false;
+
+    public boolean isJsonBlackbird() {
+        return jsonBlackbird;
+    }
+
+    public void setJsonBlackbird(boolean jsonBlackbird) {
+        this.jsonBlackbird = jsonBlackbird;
+    }
+
+    // Workers shared by all batch analyses; 0 means one per available core
+    private int batchConcurrency = 0;
+
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    public void setBatchConcurrency(int batchConcurrency) {
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    // Finished analyses of a batch saved per transaction
+    private int batchWriteSize = 25;
+
+    public int getBatchWriteSize() {
+        return batchWriteSize;
+    }
+
+    public void setBatchWriteSize(int batchWriteSize) {
+        this.batchWriteSize = batchWriteSize;
+    }
+
+    // Largest number of traces one batch may contain
+    private int batchMaxItems = 10000;
+
+    public int getBatchMaxItems() {
+        return batchMaxItems;
+    }
+
+    public void setBatchMaxItems(int batchMaxItems) {
+        this.batchMaxItems = batchMaxItems;
+    }
+
+    // Directories whose traces may be followed while a pipeline writes them; empty disables tail mode
+    private List<String> liveTraceRoots = new ArrayList<>();
+
+    public List<String> getLiveTraceRoots() {
+        return liveTraceRoots;
+    }
+
+    public void setLiveTraceRoots(List<String> liveTraceRoots) {
+        this.liveTraceRoots = liveTraceRoots;
+    }
+
+    // How often followed traces are checked for appended rows
+    private long livePollIntervalMs = 2000;
+
+    public long getLivePollIntervalMs() {
+        return livePollIntervalMs;
+    }
+
+    public void setLivePollIntervalMs(long livePollIntervalMs) {
+        this.livePollIntervalMs = livePollIntervalMs;
+    }
+
+    // A followed trace that has not grown for this long is considered finished and no longer followed
+    private long liveIdleTimeoutMinutes = 720;
+
+    public long getLiveIdleTimeoutMinutes() {
+        return liveIdleTimeoutMinutes;
+    }
+
+    public void setLiveIdleTimeoutMinutes(long liveIdleTimeoutMinutes) {
+        this.liveIdleTimeoutMinutes = liveIdleTimeoutMinutes;
+    }
+
+    // Traces followed at the same time
+    private int liveMaxTraces = 20;
+
+    public int getLiveMaxTraces() {
+        return liveMaxTraces;
+    }
+
+    public void setLiveMaxTraces(int liveMaxTraces) {
+        this.liveMaxTraces = liveMaxTraces;
+    }
+
+    // Directory of hourly carbon intensity tables (<region>.csv); empty uses the constant 475 gCO2eq/kWh
+    private String carbonIntensityDir = "";
+
+    public String getCarbonIntensityDir() {
+        return carbonIntensityDir;
+    }
+
+    public void setCarbonIntensityDir(String carbonIntensityDir) {
+        this.carbonIntensityDir = carbonIntensityDir;
+    }
+
+    // Region of tasks whose host is not mapped; empty means the only table, if there is just one
+    private String carbonDefaultRegion = "";
+
+    public String getCarbonDefaultRegion() {
+        return carbonDefaultRegion;
+    }
+
+    public void setCarbonDefaultRegion(String carbonDefaultRegion) {
+        this.carbonDefaultRegion = carbonDefaultRegion;
+    }
+
+    // Host name (or prefix ending in *) to region
+    private Map<String, String> carbonHostRegions = new LinkedHashMap<>();
+
+    public Map<String, String> getCarbonHostRegions() {
+        return carbonHostRegions;
+    }
+
+    public void setCarbonHostRegions(Map<String, String> carbonHostRegions) {
+        this.carbonHostRegions = carbonHostRegions;
+    }
+
+    // Zone of traces that write start/complete as date-times (Nextflow's default trace.txt), e.g. Europe/Berlin
+    private String carbonTraceTimeZone = "UTC";
+
+    public String getCarbonTraceTimeZone() {
+        return carbonTraceTimeZone;
+    }
+
+    public void setCarbonTraceTimeZone(String carbonTraceTimeZone) {
+        this.carbonTraceTimeZone = carbonTraceTimeZone;
+    }
+
+    // Hardware power profiles by name; "default" (200 W/core, 50 W idle, 5 W/GB storage) is built in
+    private Map<String, PowerProfileProperties> powerProfiles = new LinkedHashMap<>();
+
+    public Map<String, PowerProfileProperties> getPowerProfiles() {
+        return powerProfiles;
+    }
+
+    public void setPowerProfiles(Map<String, PowerProfileProperties> powerProfiles) {
+        this.powerProfiles = powerProfiles;
+    }
+
+    // Host name (or prefix ending in *) to power profile
+    private Map<String, String> powerHostProfiles = new LinkedHashMap<>();
+
+    public Map<String, String> getPowerHostProfiles() {
+        return powerHostProfiles;
+    }
+
+    public void setPowerHostProfiles(Map<String, String> powerHostProfiles) {
+        this.powerHostProfiles = powerHostProfiles;
+    }
+
+    // Profile of unmapped hosts when the script's hardwareConfig names none
+    private String powerDefaultProfile = "default";
+
+    public String getPowerDefaultProfile() {
+        return powerDefaultProfile;
+    }
+
+    public void setPowerDefaultProfile(String powerDefaultProfile) {
+        this.powerDefaultProfile = powerDefaultProfile;
+    }
+
+    // Per-trace rollups the native analyzer leaves for what-if views, named by content hash
+    private String rollupDir = "./data/rollups";
+
+    public String getRollupDir() {
+        return rollupDir;
+    }
+
+    public void setRollupDir(String rollupDir) {
+        this.rollupDir = rollupDir;
+    }
+
+    // Parsed rollups kept in memory
+    private int rollupCacheSize = 64;
+
+    public int getRollupCacheSize() {
+        return rollupCacheSize;
+    }
+
+    public void setRollupCacheSize(int rollupCacheSize) {
+        this.rollupCacheSize = rollupCacheSize;
+    }
+
+    // Convert every uploaded trace once into a columnar copy (<trace>.cols) that analyses read instead
+    private boolean columnarConversion = true;
+
+    public boolean isColumnarConversion() {
+        return columnarConversion;
+    }
+
+    public void setColumnarConversion(boolean columnarConversion) {
+        this.columnarConversion = columnarConversion;
+    }
+
+    // Background threads converting traces
+    private int columnarThreads = 1;
+
+    public int getColumnarThreads() {
+        return columnarThreads;
+    }
+
+    public void setColumnarThreads(int columnarThreads) {
+        this.columnarThreads = columnarThreads;
+    }
+
+    public int resolveParallelism() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int resolveBatchConcurrency() {
+        return batchConcurrency > 0 ? batchConcurrency : Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Coefficients of one entry of analysis.power-profiles; unset ones keep the default profile's. */
+    public static class PowerProfileProperties {
+        // Watts of one core at 100% (TDP / cores)
+        private double cpuWattsPerCore = 200.0;
+        // Draw of the rest of the machine per task
+        private double idleWatts = 50.0;
+        // Per GB of requested memory
+        private double memoryWattsPerGb = 0.0;
+        // Per GB read or written
+        private double storageWattsPerGb = 5.0;
+
+        public double getCpuWattsPerCore() {
+            return cpuWattsPerCore;
+        }
+
+        public void setCpuWattsPerCore(double cpuWattsPerCore) {
+            this.cpuWattsPerCore = cpuWattsPerCore;
+        }
+
+        public double getIdleWatts() {
+            return idleWatts;
+        }
+
+        public void setIdleWatts(double idleWatts) {
+            this.idleWatts = idleWatts;
+        }
+
+        public double getMemoryWattsPerGb() {
+            return memoryWattsPerGb;
+        }
+
+        public void setMemoryWattsPerGb(double memoryWattsPerGb) {
+            this.memoryWattsPerGb = memoryWattsPerGb;
+        }
+
+        public double getStorageWattsPerGb() {
+            return storageWattsPerGb;
+        }
+
+        public void setStorageWattsPerGb(double storageWattsPerGb) {
+            this.storageWattsPerGb = storageWattsPerGb;
+        }
+    }
+}
@@ -38,6 +38,28 @@ public class FileStorageConfig {
     public void setUploadDir(String uploadDir) {
         this.uploadDir = uploadDir;
     }
+
+    // Largest trace the streaming and resumable upload endpoints accept
+    private long maxUploadBytes = 64L * 1024 * 1024 * 1024;
+
+    public long getMaxUploadBytes() {
+        return maxUploadBytes;
+    }
+
+    public void setMaxUploadBytes(long maxUploadBytes) {
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    // Resumable uploads that receive nothing for this long are discarded with their partial file
+    private long uploadSessionTimeoutMinutes = 1440;
+
+    public long getUploadSessionTimeoutMinutes() {
+        return uploadSessionTimeoutMinutes;
+    }
+
+    public void setUploadSessionTimeoutMinutes(long uploadSessionTimeoutMinutes) {
+        this.uploadSessionTimeoutMinutes = uploadSessionTimeoutMinutes;
+    }
     @Value("${file.export-dir}")
     private String exportDir;
     
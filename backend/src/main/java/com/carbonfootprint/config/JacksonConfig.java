@@ -0,0 +1,22 @@
+package com.carbonfootprint.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+/**
+ * Extra Jackson modules. Spring Boot registers every Module bean with the application's
+ * ObjectMapper, which JsonCodec and the MVC message converters both use.
+ */
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "analysis", name = "json-blackbird", havingValue = "true")
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
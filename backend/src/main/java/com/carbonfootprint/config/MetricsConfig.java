@@ -0,0 +1,67 @@
+package com.carbonfootprint.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.carbonfootprint.service.AnalysisCacheService;
+import com.carbonfootprint.service.AnalysisJobService;
+import com.carbonfootprint.service.BatchAnalysisService;
+import com.carbonfootprint.service.LiveTraceService;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Meters read from state the services already keep: the analysis job and batch queues, the result
+ * cache counters and the followed live traces. Timings are recorded where the work happens, see PipelineObservations.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder analysisJobMetrics(AnalysisJobService jobService) {
+        return registry -> {
+            Gauge.builder("carbon.analysis.jobs.queued", jobService, AnalysisJobService::getQueueDepth)
+                    .description("Analyses waiting for a job slot")
+                    .register(registry);
+            Gauge.builder("carbon.analysis.jobs.running", jobService, AnalysisJobService::getRunningCount)
+                    .description("Analyses currently running")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder batchAnalysisMetrics(BatchAnalysisService batchService) {
+        return registry -> {
+            Gauge.builder("carbon.analysis.batch.queued", batchService, BatchAnalysisService::getQueueDepth)
+                    .description("Batch analyses waiting for a worker")
+                    .register(registry);
+            Gauge.builder("carbon.analysis.batch.running", batchService, BatchAnalysisService::getRunningCount)
+                    .description("Batch analyses currently running")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder analysisCacheMetrics(AnalysisCacheService cacheService) {
+        return registry -> {
+            FunctionCounter.builder("carbon.analysis.cache.lookups", cacheService, cache -> cache.getStats().getMemoryHits())
+                    .tag("result", "memory-hit")
+                    .register(registry);
+            FunctionCounter.builder("carbon.analysis.cache.lookups", cacheService, cache -> cache.getStats().getDatabaseHits())
+                    .tag("result", "database-hit")
+                    .register(registry);
+            FunctionCounter.builder("carbon.analysis.cache.lookups", cacheService, cache -> cache.getStats().getMisses())
+                    .tag("result", "miss")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder liveTraceMetrics(LiveTraceService liveTraceService) {
+        return registry -> Gauge.builder("carbon.live.traces", liveTraceService, LiveTraceService::getFollowedCount)
+                .description("Trace files followed in tail mode")
+                .register(registry);
+    }
+}
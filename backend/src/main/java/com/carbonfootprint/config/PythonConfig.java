@@ -25,4 +25,70 @@ public class PythonConfig {
     public void setAnalysisScript(String analysisScript) {
         this.analysisScript = analysisScript;
     }
+
+    // Which TraceAnalyzer runs the analysis: "native" (in-process Java) or "python" (evaluation.py)
+    private String analyzer = "native";
+
+    public String getAnalyzer() {
+        return analyzer;
+    }
+
+    public void setAnalyzer(String analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    // Number of warm "evaluation.py --serve" worker processes kept by PythonWorkerPool
+    private int workers = 2;
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    // A worker that has not answered within this time is killed and the analysis fails
+    private long jobTimeoutSeconds = 600;
+
+    public long getJobTimeoutSeconds() {
+        return jobTimeoutSeconds;
+    }
+
+    public void setJobTimeoutSeconds(long jobTimeoutSeconds) {
+        this.jobTimeoutSeconds = jobTimeoutSeconds;
+    }
+
+    // Workers whose resident memory grows past this are replaced after their current job
+    private long workerMaxMemoryMb = 2048;
+
+    public long getWorkerMaxMemoryMb() {
+        return workerMaxMemoryMb;
+    }
+
+    public void setWorkerMaxMemoryMb(long workerMaxMemoryMb) {
+        this.workerMaxMemoryMb = workerMaxMemoryMb;
+    }
+
+    // Largest response a worker may send; bigger ones fail the analysis and the worker is replaced
+    private long maxOutputBytes = 256L * 1024 * 1024;
+
+    public long getMaxOutputBytes() {
+        return maxOutputBytes;
+    }
+
+    public void setMaxOutputBytes(long maxOutputBytes) {
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    // Last stderr lines kept per worker and attached to failures
+    private int stderrTailLines = 50;
+
+    public int getStderrTailLines() {
+        return stderrTailLines;
+    }
+
+    public void setStderrTailLines(int stderrTailLines) {
+        this.stderrTailLines = stderrTailLines;
+    }
 }
@@ -35,6 +35,8 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("http://localhost:5173")); // 替换为前端实际端口
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // 前端需要读取的自定义响应头（任务地址、分页游标、限流重试时间、续传偏移）
+        configuration.setExposedHeaders(Arrays.asList("Location", "X-Next-Cursor", "Retry-After", "Upload-Offset"));
         configuration.setAllowCredentials(true); // 重要！
         
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
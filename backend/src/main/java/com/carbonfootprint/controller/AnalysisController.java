@@ -2,19 +2,29 @@ package com.carbonfootprint.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import com.carbonfootprint.model.AnalysisResult;
-import com.carbonfootprint.repository.AnalysisResultRepository;
+import com.carbonfootprint.service.AnalysisCacheService;
+import com.carbonfootprint.service.AnalysisCacheService.CacheStats;
+import com.carbonfootprint.service.AnalysisJobService;
+import com.carbonfootprint.service.AnalysisJobService.AnalysisJob;
 import com.carbonfootprint.service.AnalysisService;
+import com.carbonfootprint.service.BatchAnalysisService;
+import com.carbonfootprint.service.BatchAnalysisService.BatchJob;
+import com.carbonfootprint.service.BatchAnalysisService.BatchRequest;
 import com.carbonfootprint.service.ScriptService;
+import com.carbonfootprint.service.AnalysisService.AnalysisPage;
 import com.carbonfootprint.service.AnalysisService.AnalysisSummary;
 
+import java.net.URI;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api")
@@ -27,7 +37,14 @@ public class AnalysisController {
     private ScriptService scriptService;
 
     @Autowired
-    private AnalysisResultRepository resultRepository;
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private BatchAnalysisService batchAnalysisService;
+
+    @Autowired
+    private AnalysisCacheService analysisCacheService;
+
     
     // 将端点从 /analysis/{id} 修改为 /analyses/{id}
     @GetMapping("/analyses/{id}")
@@ -35,24 +52,63 @@ public class AnalysisController {
         return ResponseEntity.ok(analysisService.getAnalysisResultById(id));
     }
 
+    // 分析在后台执行，立即返回 202 和任务信息，通过 Location 轮询进度
     @PostMapping("/analysis/{id}/analyze")
-    public ResponseEntity<AnalysisResult> analyzeScript(@PathVariable Long id) {
-        return ResponseEntity.ok(scriptService.analyzeTraceFile(id));
+    public ResponseEntity<AnalysisJob> analyzeScript(@PathVariable Long id) {
+        AnalysisJob job = analysisJobService.submit(id);
+        if (job.isFinished()) {
+            // 命中结果缓存
+            return ResponseEntity.ok(job);
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/analysis/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    @GetMapping("/analysis/jobs/{jobId}")
+    public ResponseEntity<AnalysisJob> getAnalysisJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(analysisJobService.getJob(jobId));
+    }
+
+    @DeleteMapping("/analysis/jobs/{jobId}")
+    public ResponseEntity<AnalysisJob> cancelAnalysisJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(analysisJobService.cancel(jobId));
     }
     
+    // 批量分析：scriptIds 或 uploads 下的目录，返回 202，进度和每个条目的结果通过 Location 查询
+    @PostMapping("/analysis/batch")
+    public ResponseEntity<BatchJob> analyzeBatch(@RequestBody BatchRequest request) {
+        BatchJob batch = batchAnalysisService.submit(request);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/analysis/batches/" + batch.getBatchId()))
+                .body(batch);
+    }
+
+    @GetMapping("/analysis/batches/{batchId}")
+    public ResponseEntity<BatchJob> getAnalysisBatch(@PathVariable String batchId) {
+        return ResponseEntity.ok(batchAnalysisService.getBatch(batchId));
+    }
+
+    @DeleteMapping("/analysis/batches/{batchId}")
+    public ResponseEntity<BatchJob> cancelAnalysisBatch(@PathVariable String batchId) {
+        return ResponseEntity.ok(batchAnalysisService.cancel(batchId));
+    }
+
+    @GetMapping("/analysis/cache/stats")
+    public ResponseEntity<CacheStats> getCacheStats() {
+        return ResponseEntity.ok(analysisCacheService.getStats());
+    }
+
+    // 按 analysisTime,id 的游标分页，下一页的游标通过 X-Next-Cursor 响应头返回
     @GetMapping("/analyses")
-    public ResponseEntity<List<AnalysisSummary>> getAllAnalyses() {
-        List<AnalysisResult> allResults = resultRepository.findAll();
-        List<AnalysisSummary> summaries = allResults.stream()
-            .map(result -> new AnalysisSummary(
-                result.getId(),
-                result.getScript().getFileName(),
-                result.getAnalysisTime(),
-                result.getTotalEnergy(),
-                result.getTotalCarbonFootprint(),
-                result.getTotalRuntime()
-            ))
-            .collect(Collectors.toList());
-        return ResponseEntity.ok(summaries);
+    public ResponseEntity<List<AnalysisSummary>> getAllAnalyses(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        AnalysisPage page = analysisService.getAnalysesPage(cursor, size);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header("X-Next-Cursor", page.getNextCursor());
+        }
+        return response.body(page.getItems());
     }
 }
\ No newline at end of file
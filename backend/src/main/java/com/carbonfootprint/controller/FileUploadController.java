@@ -1,20 +1,37 @@
 package com.carbonfootprint.controller;
 
+import java.io.InputStream;
+import java.net.URI;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.carbonfootprint.model.Script;
+import com.carbonfootprint.service.ColumnarTraceService;
+import com.carbonfootprint.service.ColumnarTraceService.ColumnarSummary;
 import com.carbonfootprint.service.ScriptService;
+import com.carbonfootprint.service.TraceUploadService;
+import com.carbonfootprint.service.TraceUploadService.UploadStatus;
 
 @RestController
 @RequestMapping("/api/data-sources")
 public class FileUploadController {
-    
+
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
     @Autowired
     private ScriptService scriptService;
-    
+
+    @Autowired
+    private TraceUploadService traceUploadService;
+
+    @Autowired
+    private ColumnarTraceService columnarTraceService;
+
     @PostMapping("/upload")
     public ResponseEntity<Script> uploadFile(@RequestParam("file") MultipartFile file) {
         try {
@@ -25,4 +42,56 @@ public class FileUploadController {
             return ResponseEntity.status(500).body(null);
         }
     }
-}
\ No newline at end of file
+
+    // 请求体直接写入上传目录，不经过 multipart 临时文件，也没有 50MB 限制
+    // Raw bodies only: with a form content type the container would consume the body as parameters
+    @PostMapping(value = "/stream", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<Script> uploadStream(@RequestParam("fileName") String fileName,
+                                               @RequestParam(value = "sha256", required = false) String sha256,
+                                               @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+                                               InputStream body) {
+        return ResponseEntity.ok(scriptService.storeTraceStream(fileName, body,
+                contentLength != null ? contentLength : -1, sha256));
+    }
+
+    // 可续传上传：先声明文件名和大小，再按顺序发送任意多段
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadStatus> beginUpload(@RequestParam("fileName") String fileName,
+                                                    @RequestParam("size") long size,
+                                                    @RequestParam(value = "sha256", required = false) String sha256) {
+        UploadStatus status = traceUploadService.begin(fileName, size, sha256);
+        return ResponseEntity.created(URI.create("/api/data-sources/uploads/" + status.getUploadId()))
+                .header(UPLOAD_OFFSET, String.valueOf(status.getReceivedBytes()))
+                .body(status);
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadStatus> getUpload(@PathVariable String uploadId) {
+        return withOffset(traceUploadService.getStatus(uploadId));
+    }
+
+    @PutMapping(value = "/uploads/{uploadId}", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<UploadStatus> appendUpload(@PathVariable String uploadId,
+                                                     @RequestHeader(UPLOAD_OFFSET) long offset,
+                                                     InputStream body) {
+        return withOffset(traceUploadService.append(uploadId, offset, body));
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<Void> cancelUpload(@PathVariable String uploadId) {
+        traceUploadService.cancel(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    // 列式副本的统计信息：行数、各列最小/最大值、各状态的任务数；转换完成前返回 404
+    @GetMapping("/{scriptId}/columns")
+    public ResponseEntity<ColumnarSummary> getColumns(@PathVariable Long scriptId) {
+        return ResponseEntity.ok(columnarTraceService.summarize(scriptId));
+    }
+
+    private static ResponseEntity<UploadStatus> withOffset(UploadStatus status) {
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(status.getReceivedBytes()))
+                .body(status);
+    }
+}
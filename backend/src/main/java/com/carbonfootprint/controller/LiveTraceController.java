@@ -0,0 +1,51 @@
+package com.carbonfootprint.controller;
+
+import java.net.URI;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.carbonfootprint.service.LiveTraceService;
+import com.carbonfootprint.service.LiveTraceService.LiveTraceStatus;
+
+@RestController
+@RequestMapping("/api/live-traces")
+public class LiveTraceController {
+
+    @Autowired
+    private LiveTraceService liveTraceService;
+
+    // 跟踪流水线正在写入的 trace 文件（路径须在 analysis.live-trace-roots 之下）
+    @PostMapping
+    public ResponseEntity<LiveTraceStatus> followTrace(@RequestParam("path") String path,
+                                                       @RequestParam(value = "hardwareConfig", required = false) String hardwareConfig) {
+        LiveTraceStatus status = liveTraceService.follow(path, hardwareConfig);
+        return ResponseEntity.created(URI.create("/api/live-traces/" + status.getId())).body(status);
+    }
+
+    @GetMapping
+    public ResponseEntity<List<LiveTraceStatus>> getLiveTraces() {
+        return ResponseEntity.ok(liveTraceService.getAll());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<LiveTraceStatus> getLiveTrace(@PathVariable String id) {
+        return ResponseEntity.ok(liveTraceService.getStatus(id));
+    }
+
+    // Server-sent events: a "totals" event now and whenever new rows were read
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamLiveTrace(@PathVariable String id) {
+        return liveTraceService.subscribe(id);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> stopLiveTrace(@PathVariable String id) {
+        liveTraceService.stop(id);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -5,11 +5,15 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.carbonfootprint.service.VisualizationService;
 import com.carbonfootprint.service.VisualizationService.VisualizationData;
+import com.carbonfootprint.service.WhatIfService;
+import com.carbonfootprint.service.WhatIfService.WhatIfRequest;
 
 import org.slf4j.Logger;
 
@@ -19,6 +23,9 @@ public class VisualizationController {
     
     @Autowired
     private VisualizationService visualizationService;
+
+    @Autowired
+    private WhatIfService whatIfService;
     
     private static final Logger logger = org.slf4j.LoggerFactory.getLogger(VisualizationController.class);
 
@@ -32,11 +39,7 @@ public class VisualizationController {
                         .body("{\"error\": \"Visualization data not found for resultId: " + resultId + "\"}");
             }
             
-            logger.info("Returning visualization data: {}", data);
-            logger.info("Tasks count: {}", data.getTasks().size());
-            if (data.getTasks() != null && !data.getTasks().isEmpty()) {
-                logger.info("First task: {}", data.getTasks().get(0));
-            }
+            logger.debug("Returning visualization data for result {} ({} tasks)", resultId, data.getTasks().size());
             
             // Returns the VisualizationData object directly, which contains all the necessary data
             return ResponseEntity.ok(data);
@@ -46,4 +49,11 @@ public class VisualizationController {
                     .body("{\"error\": \"Error retrieving visualization data: " + e.getMessage() + "\"}");
         }
     }
-}
\ No newline at end of file
+
+    // 用新的功率参数/碳强度重新计算，不重新读取 trace 文件
+    @PostMapping("/{resultId}/what-if")
+    public ResponseEntity<VisualizationData> whatIf(@PathVariable Long resultId,
+                                                    @RequestBody(required = false) WhatIfRequest request) {
+        return ResponseEntity.ok(whatIfService.recompute(resultId, request));
+    }
+}
@@ -0,0 +1,7 @@
+package com.carbonfootprint.exception;
+
+public class AnalysisQueueFullException extends RuntimeException {
+    public AnalysisQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.carbonfootprint.exception;
+
+public class UploadOffsetConflictException extends RuntimeException {
+    private final long currentOffset;
+
+    public UploadOffsetConflictException(String message, long currentOffset) {
+        super(message);
+        this.currentOffset = currentOffset;
+    }
+
+    // Where the client has to continue the upload from
+    public long getCurrentOffset() {
+        return currentOffset;
+    }
+}
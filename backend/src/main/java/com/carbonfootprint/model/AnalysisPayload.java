@@ -0,0 +1,49 @@
+package com.carbonfootprint.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+
+/**
+ * The full analysis output of one AnalysisResult, gzip-compressed JSON. Kept out of the result
+ * row so listings, the dashboard and ordinary entity loads never read it; only visualization and
+ * export ask for it, through AnalysisPayloadService.
+ */
+@Entity
+public class AnalysisPayload {
+    public static final String ENCODING_GZIP = "gzip";
+
+    // Same value as AnalysisResult.id
+    @Id
+    private Long resultId;
+
+    @Column(length = 16)
+    private String encoding;
+
+    // Length of the uncompressed JSON in bytes
+    private long rawSize;
+
+    @Lob
+    @Column(name = "content")
+    private byte[] content;
+
+    public AnalysisPayload() {}
+
+    public AnalysisPayload(Long resultId, String encoding, long rawSize, byte[] content) {
+        this.resultId = resultId;
+        this.encoding = encoding;
+        this.rawSize = rawSize;
+        this.content = content;
+    }
+
+    // Getters and Setters
+    public Long getResultId() { return resultId; }
+    public void setResultId(Long resultId) { this.resultId = resultId; }
+    public String getEncoding() { return encoding; }
+    public void setEncoding(String encoding) { this.encoding = encoding; }
+    public long getRawSize() { return rawSize; }
+    public void setRawSize(long rawSize) { this.rawSize = rawSize; }
+    public byte[] getContent() { return content; }
+    public void setContent(byte[] content) { this.content = content; }
+}
@@ -9,14 +9,23 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_analysis_result_cache_key", columnList = "cache_key"),
+    @Index(name = "idx_analysis_result_time_id", columnList = "analysisTime, id")
+})
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class AnalysisResult {
     @Id
@@ -28,6 +37,9 @@ public class AnalysisResult {
     private Double totalCarbonFootprint;
     private Double totalRuntime;
     private Double avgCpuUtilization;
+
+    // Carbon intensity profile the footprint was computed with, e.g. constant-475 or hourly-<hash>
+    private String carbonIntensityProfile;
     
     @OneToOne
     @JoinColumn(name = "script_id")
@@ -37,9 +49,20 @@ public class AnalysisResult {
     @JsonManagedReference
     private List<TaskResult> tasks;
 
-    @Column(name = "raw_data", columnDefinition = "TEXT")
+    // Raw analysis JSON, only filled in for export; stored separately as an AnalysisPayload
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String rawData;
 
+    // Hash of (trace hash, analyzer version, hardware config, carbon intensity), see AnalysisCacheService
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    // True once the per-process TaskResult rows are stored, even when there are none; null for older results
+    @Column(name = "tasks_stored")
+    @JsonIgnore
+    private Boolean tasksStored;
+
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -59,4 +82,10 @@ public class AnalysisResult {
     public void setTasks(List<TaskResult> tasks) { this.tasks = tasks; }
     public String getRawData() { return rawData; }
     public void setRawData(String rawData) { this.rawData = rawData; }
+    public String getCarbonIntensityProfile() { return carbonIntensityProfile; }
+    public void setCarbonIntensityProfile(String carbonIntensityProfile) { this.carbonIntensityProfile = carbonIntensityProfile; }
+    public String getCacheKey() { return cacheKey; }
+    public void setCacheKey(String cacheKey) { this.cacheKey = cacheKey; }
+    public Boolean getTasksStored() { return tasksStored; }
+    public void setTasksStored(Boolean tasksStored) { this.tasksStored = tasksStored; }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.carbonfootprint.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * Running dashboard totals over all analysis results, kept as a single row so the summary does
+ * not have to scan the results table. Maintained by DashboardAggregateService.
+ */
+@Entity
+public class DashboardAggregate {
+    public static final Long SINGLETON_ID = 1L;
+
+    @Id
+    private Long id;
+
+    private double totalEnergy;
+    private double totalCarbonFootprint;
+    private double totalRuntime;
+    private long analysisCount;
+    private LocalDateTime reconciledAt;
+
+    public DashboardAggregate() {}
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public double getTotalEnergy() { return totalEnergy; }
+    public void setTotalEnergy(double totalEnergy) { this.totalEnergy = totalEnergy; }
+    public double getTotalCarbonFootprint() { return totalCarbonFootprint; }
+    public void setTotalCarbonFootprint(double totalCarbonFootprint) { this.totalCarbonFootprint = totalCarbonFootprint; }
+    public double getTotalRuntime() { return totalRuntime; }
+    public void setTotalRuntime(double totalRuntime) { this.totalRuntime = totalRuntime; }
+    public long getAnalysisCount() { return analysisCount; }
+    public void setAnalysisCount(long analysisCount) { this.analysisCount = analysisCount; }
+    public LocalDateTime getReconciledAt() { return reconciledAt; }
+    public void setReconciledAt(LocalDateTime reconciledAt) { this.reconciledAt = reconciledAt; }
+}
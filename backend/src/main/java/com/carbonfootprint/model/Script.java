@@ -3,16 +3,20 @@ package com.carbonfootprint.model;
 import java.time.LocalDateTime;
 
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
+@Table(indexes = @Index(name = "idx_script_content_hash", columnList = "content_hash"))
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Script {
     @Id
@@ -26,6 +30,10 @@ public class Script {
     private String status;
     private String hardwareConfig;
 
+    // SHA-256 of the stored trace, computed while the upload is written
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     public Script() {}
     
     @OneToOne(mappedBy = "script", cascade = CascadeType.ALL)
@@ -47,6 +55,8 @@ public class Script {
     public void setStatus(String status) { this.status = status; }
     public String getHardwareConfig() { return hardwareConfig; }
     public void setHardwareConfig(String hardwareConfig) { this.hardwareConfig = hardwareConfig; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
     public AnalysisResult getResult() { return result; }
     public void setResult(AnalysisResult result) { this.result = result; }
 }
\ No newline at end of file
@@ -4,17 +4,23 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
+@Table(indexes = @Index(name = "idx_task_result_energy", columnList = "energyConsumption"))
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class TaskResult {
+    // Sequence ids (fetched 50 at a time) so Hibernate can batch the inserts; IDENTITY can not be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_result_seq")
+    @SequenceGenerator(name = "task_result_seq", sequenceName = "task_result_seq", allocationSize = 50)
     private Long id;
     
     private String process;
@@ -24,6 +30,8 @@ public class TaskResult {
     private String hardware;
     private Double cpuUsage;
     private Double memoryUsage;
+    private Long taskCount;
+    private Double ioVolume;
     
     @ManyToOne
     @JoinColumn(name = "result_id")
@@ -47,6 +55,10 @@ public class TaskResult {
     public void setCpuUsage(Double cpuUsage) { this.cpuUsage = cpuUsage; }
     public Double getMemoryUsage() { return memoryUsage; }
     public void setMemoryUsage(Double memoryUsage) { this.memoryUsage = memoryUsage; }
+    public Long getTaskCount() { return taskCount; }
+    public void setTaskCount(Long taskCount) { this.taskCount = taskCount; }
+    public Double getIoVolume() { return ioVolume; }
+    public void setIoVolume(Double ioVolume) { this.ioVolume = ioVolume; }
     public AnalysisResult getAnalysisResult() { return analysisResult; }
     public void setAnalysisResult(AnalysisResult analysisResult) { this.analysisResult = analysisResult; }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.carbonfootprint.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.carbonfootprint.model.AnalysisPayload;
+
+public interface AnalysisPayloadRepository extends JpaRepository<AnalysisPayload, Long> {
+
+    // Deletes without loading the blob first
+    @Modifying
+    @Query("delete from AnalysisPayload p where p.resultId = :resultId")
+    int deleteByResultId(@Param("resultId") Long resultId);
+}
@@ -1,7 +1,54 @@
 package com.carbonfootprint.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.service.AnalysisService.AnalysisSummary;
 
 public interface AnalysisResultRepository extends JpaRepository<AnalysisResult, Long> {
-}
\ No newline at end of file
+
+    Optional<AnalysisResult> findFirstByCacheKeyOrderByAnalysisTimeDesc(String cacheKey);
+
+    // Listing projections: only the summary columns plus the script's file name, newest first.
+    // Paging is by keyset on (analysisTime, id), which idx_analysis_result_time_id serves directly.
+    @Query("select new com.carbonfootprint.service.AnalysisService$AnalysisSummary("
+            + "r.id, s.fileName, r.analysisTime, r.totalEnergy, r.totalCarbonFootprint, r.totalRuntime) "
+            + "from AnalysisResult r left join r.script s "
+            + "order by r.analysisTime desc, r.id desc")
+    List<AnalysisSummary> findSummaries(Pageable pageable);
+
+    @Query("select new com.carbonfootprint.service.AnalysisService$AnalysisSummary("
+            + "r.id, s.fileName, r.analysisTime, r.totalEnergy, r.totalCarbonFootprint, r.totalRuntime) "
+            + "from AnalysisResult r left join r.script s "
+            + "where r.analysisTime < :analysisTime or (r.analysisTime = :analysisTime and r.id < :id) "
+            + "order by r.analysisTime desc, r.id desc")
+    List<AnalysisSummary> findSummariesBefore(@Param("analysisTime") LocalDateTime analysisTime,
+                                              @Param("id") Long id, Pageable pageable);
+
+    // Energy, carbon and runtime sums plus count over results that have all three; no raw data is read
+    @Query("select coalesce(sum(r.totalEnergy), 0), coalesce(sum(r.totalCarbonFootprint), 0), "
+            + "coalesce(sum(r.totalRuntime), 0), count(r) from AnalysisResult r "
+            + "where r.totalEnergy is not null and r.totalCarbonFootprint is not null and r.totalRuntime is not null")
+    List<Object[]> sumDashboardTotals();
+
+    // Results not yet marked as having their per-process rows stored: saved before those rows or the marker existed
+    @Query("select r.id from AnalysisResult r where r.tasksStored is null or r.tasksStored = false")
+    List<Long> findIdsWithoutStoredTasks();
+
+    @Query("select distinct t.analysisResult.id from TaskResult t where t.analysisResult.id in :ids")
+    List<Long> findIdsHavingTasks(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("update AnalysisResult r set r.tasksStored = true where r.id in :ids")
+    int markTasksStored(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,29 @@
+package com.carbonfootprint.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.carbonfootprint.model.DashboardAggregate;
+
+import jakarta.persistence.LockModeType;
+
+public interface DashboardAggregateRepository extends JpaRepository<DashboardAggregate, Long> {
+
+    // Applied in the database so concurrent saves can not lose each other's increments
+    @Modifying
+    @Query("update DashboardAggregate a set a.totalEnergy = a.totalEnergy + :energy, "
+            + "a.totalCarbonFootprint = a.totalCarbonFootprint + :carbon, "
+            + "a.totalRuntime = a.totalRuntime + :runtime, "
+            + "a.analysisCount = a.analysisCount + :count where a.id = :id")
+    int increment(@Param("id") Long id, @Param("energy") double energy, @Param("carbon") double carbon,
+                  @Param("runtime") double runtime, @Param("count") long count);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from DashboardAggregate a where a.id = :id")
+    Optional<DashboardAggregate> findForUpdate(@Param("id") Long id);
+}
@@ -1,7 +1,23 @@
 package com.carbonfootprint.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import com.carbonfootprint.model.Script;
 
 public interface ScriptRepository extends JpaRepository<Script, Long> {
-}
\ No newline at end of file
+
+    List<Script> findByContentHash(String contentHash);
+
+    List<Script> findByFilePath(String filePath);
+
+    // One statement for the status change of a whole batch
+    @Modifying
+    @Query("update Script s set s.status = :status where s.id in :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") String status);
+}
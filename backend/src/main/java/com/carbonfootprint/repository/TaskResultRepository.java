@@ -0,0 +1,17 @@
+package com.carbonfootprint.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import com.carbonfootprint.model.TaskResult;
+import com.carbonfootprint.service.AnalysisService.EnergyConsumer;
+
+public interface TaskResultRepository extends JpaRepository<TaskResult, Long> {
+
+    // Walks idx_task_result_energy backwards and stops after the page size; no result rows are loaded
+    @Query("select new com.carbonfootprint.service.AnalysisService$EnergyConsumer(t.process, t.energyConsumption, t.analysisResult.id) "
+            + "from TaskResult t where t.energyConsumption is not null order by t.energyConsumption desc")
+    List<EnergyConsumer> findTopEnergyConsumers(Pageable pageable);
+}
\ No newline at end of file
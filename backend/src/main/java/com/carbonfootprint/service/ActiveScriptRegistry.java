@@ -0,0 +1,74 @@
+package com.carbonfootprint.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * The scripts being analyzed right now, by single jobs and batch items alike. Whoever claims a
+ * script first analyzes it and saves the result; anyone else who wants the same script waits
+ * until that result is saved and reuses it, so two writers never replace one script's result
+ * at the same time.
+ */
+@Service
+public class ActiveScriptRegistry {
+
+    // scriptId -> completes with the saved result id (null when the holder saved none)
+    private final ConcurrentHashMap<Long, CompletableFuture<Long>> active = new ConcurrentHashMap<>();
+
+    /**
+     * Claims the script, or waits while someone else holds it. The returned claim is either held,
+     * and then the caller analyzes and must {@link #release} it, or carries the result id the
+     * holder saved. When the holder saved nothing (it failed or was cancelled) the caller tries
+     * to claim the script itself.
+     */
+    public Claim claim(Long scriptId) throws InterruptedException {
+        while (true) {
+            CompletableFuture<Long> mine = new CompletableFuture<>();
+            CompletableFuture<Long> running = active.putIfAbsent(scriptId, mine);
+            if (running == null) {
+                return new Claim(scriptId, mine, null);
+            }
+            Long resultId;
+            try {
+                resultId = running.get();
+            } catch (ExecutionException e) {
+                resultId = null;
+            }
+            if (resultId != null) {
+                return new Claim(scriptId, null, resultId);
+            }
+        }
+    }
+
+    /** Ends a held claim with the result id that was saved, or null; waiting claimants resume. Safe to repeat. */
+    public void release(Claim claim, Long resultId) {
+        if (claim == null || !claim.isHeld()) {
+            return;
+        }
+        active.remove(claim.scriptId, claim.done);
+        claim.done.complete(resultId);
+    }
+
+    public static final class Claim {
+        private final Long scriptId;
+        private final CompletableFuture<Long> done;
+        private final Long reusedResultId;
+
+        private Claim(Long scriptId, CompletableFuture<Long> done, Long reusedResultId) {
+            this.scriptId = scriptId;
+            this.done = done;
+            this.reusedResultId = reusedResultId;
+        }
+
+        public Long getScriptId() { return scriptId; }
+
+        /** True when the caller holds the script and has to analyze it. */
+        public boolean isHeld() { return done != null; }
+
+        /** The result saved by the analysis this claim waited for; null for a held claim. */
+        public Long getReusedResultId() { return reusedResultId; }
+    }
+}
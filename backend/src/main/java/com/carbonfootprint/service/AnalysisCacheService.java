@@ -0,0 +1,134 @@
+package com.carbonfootprint.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.ContentHashes;
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.repository.AnalysisResultRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Content-addressed lookup of earlier analysis results.
+ *
+ * A result is identified by the hash of the trace contents plus everything else that changes the
+ * numbers: analyzer version, hardware config and carbon intensity. The indexed cache_key column
+ * is the source of truth; an LRU map of key to result id sits in front of it so repeated hits do
+ * not touch the index.
+ */
+@Service
+public class AnalysisCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisCacheService.class);
+
+    @Autowired
+    private AnalysisResultRepository resultRepository;
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    private Map<String, Long> recent;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, analysisConfig.getResultCacheSize());
+        recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public String cacheKey(String traceHash, String analyzerVersion, String hardwareConfig, String carbonProfile) {
+        return ContentHashes.hashOf(traceHash, analyzerVersion, hardwareConfig, carbonProfile);
+    }
+
+    public Optional<AnalysisResult> lookup(String cacheKey) {
+        return find(cacheKey, true);
+    }
+
+    /** Like {@link #lookup} but a miss is not counted, for checks that are followed by a real lookup. */
+    public Optional<AnalysisResult> peek(String cacheKey) {
+        return find(cacheKey, false);
+    }
+
+    private Optional<AnalysisResult> find(String cacheKey, boolean countMiss) {
+        Long resultId;
+        synchronized (recent) {
+            resultId = recent.get(cacheKey);
+        }
+        if (resultId != null) {
+            Optional<AnalysisResult> result = resultRepository.findById(resultId);
+            if (result.isPresent()) {
+                memoryHits.incrementAndGet();
+                return result;
+            }
+            // Deleted behind our back
+            evict(resultId);
+        }
+
+        Optional<AnalysisResult> result = resultRepository.findFirstByCacheKeyOrderByAnalysisTimeDesc(cacheKey);
+        if (result.isPresent()) {
+            databaseHits.incrementAndGet();
+            put(cacheKey, result.get().getId());
+        } else if (countMiss) {
+            misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    public void put(String cacheKey, Long resultId) {
+        synchronized (recent) {
+            recent.put(cacheKey, resultId);
+        }
+    }
+
+    public void evict(Long resultId) {
+        synchronized (recent) {
+            recent.values().removeIf(resultId::equals);
+        }
+        logger.debug("Evicted analysis result {} from the result cache", resultId);
+    }
+
+    public CacheStats getStats() {
+        int size;
+        synchronized (recent) {
+            size = recent.size();
+        }
+        return new CacheStats(memoryHits.get(), databaseHits.get(), misses.get(), size);
+    }
+
+    public static class CacheStats {
+        private final long memoryHits;
+        private final long databaseHits;
+        private final long misses;
+        private final int entries;
+
+        public CacheStats(long memoryHits, long databaseHits, long misses, int entries) {
+            this.memoryHits = memoryHits;
+            this.databaseHits = databaseHits;
+            this.misses = misses;
+            this.entries = entries;
+        }
+
+        public long getHits() { return memoryHits + databaseHits; }
+        public long getMemoryHits() { return memoryHits; }
+        public long getDatabaseHits() { return databaseHits; }
+        public long getMisses() { return misses; }
+        public int getEntries() { return entries; }
+    }
+}
@@ -0,0 +1,265 @@
+package com.carbonfootprint.service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.exception.AnalysisQueueFullException;
+import com.carbonfootprint.exception.ResourceNotFoundException;
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.service.ActiveScriptRegistry.Claim;
+
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs trace analyses in the background so HTTP threads return immediately.
+ * Jobs go through a bounded executor; when all slots and the waiting queue are taken,
+ * new submissions are rejected instead of piling up.
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    @Autowired
+    private ScriptService scriptService;
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private PipelineObservations pipelineObservations;
+
+    @Autowired
+    private ActiveScriptRegistry activeScripts;
+
+    private ThreadPoolExecutor executor;
+    private final Map<String, AnalysisJob> jobs = new ConcurrentHashMap<>();
+    private final Queue<String> finishedJobs = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    public void init() {
+        int concurrency = Math.max(1, analysisConfig.getJobConcurrency());
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, analysisConfig.getJobQueueCapacity())),
+                runnable -> new Thread(runnable, "analysis-job-" + counter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public synchronized AnalysisJob submit(Long scriptId) {
+        Script script = scriptService.getScriptById(scriptId);
+        scriptService.validateTraceFile(script);
+
+        // 同一个脚本已有未结束的任务时直接返回该任务，避免重复分析
+        AnalysisJob active = findActiveJob(scriptId);
+        if (active != null) {
+            return active;
+        }
+
+        // 内容和参数都相同的结果已经存在时不必排队
+        Optional<AnalysisResult> cached = scriptService.findCachedResult(script);
+        if (cached.isPresent()) {
+            AnalysisJob job = new AnalysisJob(UUID.randomUUID().toString(), scriptId);
+            finish(job, JobState.SUCCEEDED, cached.get().getId(), "Reused cached result");
+            jobs.put(job.getJobId(), job);
+            scriptService.updateStatus(scriptId, "ANALYZED");
+            logger.info("Analysis job {} for script ID: {} served from the result cache", job.getJobId(), scriptId);
+            return job;
+        }
+
+        String previousStatus = script.getStatus();
+        scriptService.updateStatus(scriptId, "QUEUED");
+
+        AnalysisJob job = new AnalysisJob(UUID.randomUUID().toString(), scriptId);
+        job.submittedFrom = pipelineObservations.current();
+        // Registered before it can run, so a job that finishes at once is still found by its id
+        jobs.put(job.getJobId(), job);
+        try {
+            job.future = executor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            scriptService.updateStatus(scriptId, previousStatus);
+            logger.warn("Analysis queue full, rejecting script ID: {}", scriptId);
+            throw new AnalysisQueueFullException("Analysis queue is full, try again later");
+        }
+        logger.info("Queued analysis job {} for script ID: {}", job.getJobId(), scriptId);
+        return job;
+    }
+
+    public AnalysisJob getJob(String jobId) {
+        AnalysisJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Analysis job not found with id: " + jobId);
+        }
+        return job;
+    }
+
+    public AnalysisJob cancel(String jobId) {
+        AnalysisJob job = getJob(jobId);
+        boolean started;
+        // run() moves the job to RUNNING under the same lock, so exactly one of the two records the outcome
+        synchronized (job) {
+            if (job.isFinished()) {
+                return job;
+            }
+            job.cancelRequested = true;
+            started = job.state != JobState.QUEUED;
+        }
+        Future<?> future = job.future;
+        if (started) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        } else {
+            // Never started, so run() will not record the outcome
+            if (future != null) {
+                future.cancel(false);
+                executor.remove((Runnable) future);
+            }
+            finish(job, JobState.CANCELLED, null, "Cancelled before start");
+            scriptService.updateStatus(job.getScriptId(), "CANCELLED");
+        }
+        logger.info("Cancellation requested for analysis job {}", jobId);
+        return job;
+    }
+
+    private AnalysisJob findActiveJob(Long scriptId) {
+        for (AnalysisJob job : jobs.values()) {
+            if (job.getScriptId().equals(scriptId) && !job.isFinished()) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getRunningCount() {
+        return executor.getActiveCount();
+    }
+
+    private void run(AnalysisJob job) {
+        synchronized (job) {
+            if (job.cancelRequested) {
+                return;
+            }
+            job.state = JobState.RUNNING;
+            job.startedAt = LocalDateTime.now();
+        }
+        scriptService.updateStatus(job.getScriptId(), "RUNNING");
+        Claim claim = null;
+        Long resultId = null;
+        try {
+            // 同一脚本正在被批量分析时等它保存，然后复用它的结果
+            claim = activeScripts.claim(job.getScriptId());
+            if (!claim.isHeld()) {
+                scriptService.updateStatus(job.getScriptId(), "ANALYZED");
+                finish(job, JobState.SUCCEEDED, claim.getReusedResultId(), "Reused the result of a concurrent analysis");
+                return;
+            }
+            // The analysis span continues the trace of the request that queued it
+            AnalysisResult result = Observation.tryScoped(job.submittedFrom, () -> scriptService.analyzeTraceFile(
+                    job.getScriptId(),
+                    (bytesRead, totalBytes) -> job.progress = totalBytes > 0 ? (double) bytesRead / totalBytes : 0.0));
+            resultId = result.getId();
+            finish(job, JobState.SUCCEEDED, resultId, null);
+        } catch (Exception e) {
+            if (job.cancelRequested) {
+                finish(job, JobState.CANCELLED, null, "Cancelled while running");
+                scriptService.updateStatus(job.getScriptId(), "CANCELLED");
+            } else {
+                finish(job, JobState.FAILED, null, e.getMessage());
+            }
+        } finally {
+            activeScripts.release(claim, resultId);
+        }
+    }
+
+    private void finish(AnalysisJob job, JobState state, Long resultId, String message) {
+        synchronized (job) {
+            if (job.isFinished()) {
+                return;
+            }
+            if (state == JobState.SUCCEEDED) {
+                job.progress = 1.0;
+            }
+            job.resultId = resultId;
+            job.message = message;
+            job.finishedAt = LocalDateTime.now();
+            job.state = state;
+        }
+        finishedJobs.add(job.getJobId());
+        while (finishedJobs.size() > analysisConfig.getJobHistorySize()) {
+            String oldest = finishedJobs.poll();
+            if (oldest != null) {
+                jobs.remove(oldest);
+            }
+        }
+    }
+
+    public enum JobState {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    // Status of one background analysis, serialized as-is by the job endpoints
+    public static class AnalysisJob {
+        private final String jobId;
+        private final Long scriptId;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private volatile JobState state = JobState.QUEUED;
+        private volatile double progress;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile Long resultId;
+        private volatile String message;
+        private volatile boolean cancelRequested;
+        private volatile Future<?> future;
+        private volatile Observation submittedFrom;
+
+        AnalysisJob(String jobId, Long scriptId) {
+            this.jobId = jobId;
+            this.scriptId = scriptId;
+        }
+
+        public String getJobId() { return jobId; }
+        public Long getScriptId() { return scriptId; }
+        public JobState getState() { return state; }
+        public double getProgress() { return progress; }
+        public LocalDateTime getSubmittedAt() { return submittedAt; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public LocalDateTime getFinishedAt() { return finishedAt; }
+        public Long getResultId() { return resultId; }
+        public String getMessage() { return message; }
+
+        public boolean isFinished() {
+            return state == JobState.SUCCEEDED || state == JobState.FAILED || state == JobState.CANCELLED;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.carbonfootprint.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.model.AnalysisPayload;
+import com.carbonfootprint.repository.AnalysisPayloadRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Stores the raw analysis JSON of each result as a gzip-compressed {@link AnalysisPayload}, keyed
+ * by the result id. Nothing else maps the payload, so it is only read when asked for here.
+ */
+@Service
+public class AnalysisPayloadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisPayloadService.class);
+
+    @Autowired
+    private AnalysisPayloadRepository payloadRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    /** Serializes and stores the payload of a result; runs in the caller's transaction. */
+    public void store(Long resultId, JsonNode data) {
+        byte[] json;
+        try {
+            json = jsonCodec.writeTree(data);
+        } catch (IOException e) {
+            logger.error("Failed to serialize raw data", e);
+            json = "{}".getBytes(StandardCharsets.UTF_8);
+        }
+        store(resultId, json);
+    }
+
+    private void store(Long resultId, byte[] json) {
+        payloadRepository.save(new AnalysisPayload(resultId, AnalysisPayload.ENCODING_GZIP, json.length, gzip(json)));
+    }
+
+    /** The parsed payload, decompressed straight into the parser. */
+    public Optional<JsonNode> read(Long resultId) {
+        return read(resultId, jsonCodec::readTree);
+    }
+
+    /** The payload as the JSON text it was stored from, for export. */
+    public Optional<String> readJson(Long resultId) {
+        return read(resultId, in -> new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    /** Hands the decompressed JSON stream of a payload to {@code reader}, e.g. a streaming parser. */
+    public <T> Optional<T> read(Long resultId, PayloadReader<T> reader) {
+        return payloadRepository.findById(resultId).map(payload -> {
+            try (InputStream in = open(payload)) {
+                return reader.read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Corrupt payload for analysis result " + resultId, e);
+            }
+        });
+    }
+
+    public void delete(Long resultId) {
+        payloadRepository.deleteByResultId(resultId);
+    }
+
+    private static InputStream open(AnalysisPayload payload) throws IOException {
+        InputStream in = new ByteArrayInputStream(payload.getContent());
+        return AnalysisPayload.ENCODING_GZIP.equals(payload.getEncoding()) ? new GZIPInputStream(in) : in;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            // In-memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Moves raw data left in the old analysis_result.raw_data TEXT column into payloads, then
+     * drops the column. Runs before the other start-up tasks that read payloads.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void migrateLegacyRawData() {
+        if (!hasLegacyColumn()) {
+            return;
+        }
+        List<Long> ids = jdbcTemplate.queryForList(
+                "select id from analysis_result where raw_data is not null", Long.class);
+        for (Long id : ids) {
+            // One row at a time so large histories do not have to fit in memory
+            if (!payloadRepository.existsById(id)) {
+                String json = jdbcTemplate.queryForObject(
+                        "select raw_data from analysis_result where id = ?", String.class, id);
+                store(id, json.getBytes(StandardCharsets.UTF_8));
+            }
+            jdbcTemplate.update("update analysis_result set raw_data = null where id = ?", id);
+        }
+        jdbcTemplate.execute("alter table analysis_result drop column raw_data");
+        logger.info("Moved raw data of {} analysis results into compressed payloads", ids.size());
+    }
+
+    private boolean hasLegacyColumn() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (ResultSet columns = connection.getMetaData().getColumns(null, null, "ANALYSIS_RESULT", "RAW_DATA")) {
+                return columns.next();
+            }
+        }));
+    }
+
+    @FunctionalInterface
+    public interface PayloadReader<T> {
+        T read(InputStream json) throws IOException;
+    }
+}
@@ -1,28 +1,41 @@
 package com.carbonfootprint.service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.carbonfootprint.analysis.CarbonIntensity;
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.exception.BadRequestException;
 import com.carbonfootprint.exception.ResourceNotFoundException;
 import com.carbonfootprint.model.AnalysisResult;
 import com.carbonfootprint.model.Script;
 import com.carbonfootprint.model.TaskResult;
 import com.carbonfootprint.repository.AnalysisResultRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.carbonfootprint.repository.ScriptRepository;
+import com.carbonfootprint.repository.TaskResultRepository;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
 public class AnalysisService {
@@ -32,14 +45,90 @@ public class AnalysisService {
     @Autowired
     private AnalysisResultRepository resultRepository;
 
+    @Autowired
+    private TaskResultRepository taskResultRepository;
+
+    @Autowired
+    private ScriptRepository scriptRepository;
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private AnalysisCacheService analysisCacheService;
+
+    @Autowired
+    private DashboardAggregateService dashboardAggregateService;
+
+    @Autowired
+    private AnalysisPayloadService payloadService;
+
+    @Autowired
+    private VisualizationService visualizationService;
+
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    @Autowired
+    private PipelineObservations pipelineObservations;
+
     public AnalysisResult getAnalysisResultById(Long id) {
         return resultRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Analysis result not found with id: " + id));
     }
     
     // Save the analysis results
+    @Transactional
     public AnalysisResult saveAnalysisResult(Script script, JsonNode resultData) {
-        ObjectMapper mapper = new ObjectMapper();
+        return saveAnalysisResult(script, resultData, null);
+    }
+
+    @Transactional
+    public AnalysisResult saveAnalysisResult(Script script, JsonNode resultData, String cacheKey) {
+        return saveAnalysisResults(List.of(new NewAnalysisResult(script, resultData, cacheKey))).get(0);
+    }
+
+    /**
+     * Saves several results in one transaction, in order. Their task rows are flushed together
+     * in JDBC batches and the dashboard totals are adjusted once for the whole group.
+     */
+    @Transactional
+    public List<AnalysisResult> saveAnalysisResults(List<NewAnalysisResult> newResults) {
+        List<AnalysisResult> saved = new ArrayList<>(newResults.size());
+        for (NewAnalysisResult newResult : newResults) {
+            AnalysisResult result = resultRepository.save(
+                    toAnalysisResult(newResult.getScript(), newResult.getData(), newResult.getCacheKey()));
+            // Save the complete raw data, compressed and outside the result row
+            payloadService.store(result.getId(), newResult.getData());
+            visualizationService.evict(result.getId());
+            saved.add(result);
+        }
+        dashboardAggregateService.recordAll(saved);
+        return saved;
+    }
+
+    /**
+     * Saves new results in place of the scripts' current ones, in one transaction: a failed
+     * insert leaves the old result in place. Each script keeps a single result.
+     */
+    @Transactional
+    public List<AnalysisResult> replaceAnalysisResults(List<NewAnalysisResult> newResults) {
+        for (NewAnalysisResult newResult : newResults) {
+            // The current result comes from the managed script: the caller's copy may predate another save.
+            // Unlink it first, or the script's cascade would persist it again
+            Script managed = scriptRepository.getReferenceById(newResult.getScript().getId());
+            AnalysisResult replaced = managed.getResult();
+            if (replaced != null) {
+                managed.setResult(null);
+                deleteAnalysisResult(replaced);
+            }
+        }
+        // Hibernate runs inserts before deletes; the replaced results must be gone first (one result per script)
+        scriptRepository.flush();
+        return saveAnalysisResults(newResults);
+    }
+
+    private AnalysisResult toAnalysisResult(Script script, JsonNode resultData, String cacheKey) {
         AnalysisResult result = new AnalysisResult();
         
         JsonNode summary = resultData.get("summary");
@@ -49,95 +138,165 @@ public class AnalysisService {
             result.setTotalCarbonFootprint(summary.path("totalCarbonFootprint").asDouble(0.0));
             result.setTotalRuntime(summary.path("totalRuntime").asDouble(0.0));
             result.setAvgCpuUtilization(summary.path("avgCpuUtilization").asDouble(0.0));
-        }
-
-        // Save the complete raw data
-        try {
-            result.setRawData(mapper.writeValueAsString(resultData));
-        } catch (JsonProcessingException e) {
-            logger.error("Failed to serialize raw data", e);
-            result.setRawData("{}");
+            // evaluation.py always uses the constant intensity and does not report a profile
+            result.setCarbonIntensityProfile(summary.path("carbonIntensityProfile").asText(CarbonIntensity.CONSTANT.getProfile()));
         }
 
         result.setScript(script);
         result.setAnalysisTime(LocalDateTime.now());
+        result.setCacheKey(cacheKey);
+        // Per-process rows, inserted in JDBC batches together with the result
+        result.setTasks(toTaskResults(result, resultData));
+        result.setTasksStored(true);
+        return result;
+    }
+
+    @Transactional
+    public void deleteAnalysisResult(AnalysisResult result) {
+        if (result.getScript() != null) {
+            // Unlink it from the managed script first, or the script's cascade would persist it again
+            scriptRepository.findById(result.getScript().getId()).ifPresent(script -> script.setResult(null));
+        }
+        resultRepository.delete(result);
+        payloadService.delete(result.getId());
+        visualizationService.evict(result.getId());
+        dashboardAggregateService.remove(result);
+        analysisCacheService.evict(result.getId());
+        logger.info("Deleted analysis result {}", result.getId());
+    }
+
+    private List<TaskResult> toTaskResults(AnalysisResult result, JsonNode resultData) {
+        List<TaskResult> tasks = new ArrayList<>();
+        for (JsonNode node : resultData.path("tasks")) {
+            TaskResult task = new TaskResult();
+            task.setProcess(node.path("process").asText());
+            task.setEnergyConsumption(node.path("energy_consumption").asDouble(0.0));
+            task.setCarbonFootprint(node.path("carbon_footprint").asDouble(0.0));
+            task.setRuntime(node.path("runtime").asDouble(0.0));
+            task.setHardware(node.path("hardware").asText(null));
+            task.setCpuUsage(node.path("cpu_usage").asDouble(0.0));
+            task.setMemoryUsage(node.path("memory_allocated").asDouble(0.0));
+            task.setTaskCount(node.path("tasks").asLong(0));
+            task.setIoVolume(node.path("io_volume").asDouble(0.0));
+            task.setAnalysisResult(result);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Creates the TaskResult rows of results saved before they were stored, from their raw data,
+     * and marks every result it has looked at so it is done once, even for results without tasks.
+     * Ordered after AnalysisPayloadService's migration of the old raw_data column.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(1)
+    public void backfillTaskResults() {
+        List<Long> ids = resultRepository.findIdsWithoutStoredTasks();
+        if (ids.isEmpty()) {
+            return;
+        }
+        // Results backfilled by a version without the marker already have their rows
+        Set<Long> withTasks = new HashSet<>(resultRepository.findIdsHavingTasks(ids));
+        List<Long> done = new ArrayList<>(ids.size());
+        int created = 0;
+        for (Long id : ids) {
+            if (withTasks.contains(id)) {
+                done.add(id);
+                continue;
+            }
+            AnalysisResult result = resultRepository.findById(id).orElse(null);
+            if (result == null) {
+                continue;
+            }
+            try {
+                Optional<JsonNode> data = payloadService.read(id);
+                if (data.isPresent()) {
+                    List<TaskResult> tasks = toTaskResults(result, data.get());
+                    taskResultRepository.saveAll(tasks);
+                    created += tasks.size();
+                }
+                done.add(id);
+            } catch (UncheckedIOException e) {
+                // Not marked, so it is tried again on the next start
+                logger.warn("Skipping task backfill for analysis result {}: {}", id, e.getMessage());
+            }
+        }
+        if (!done.isEmpty()) {
+            resultRepository.markTasksStored(done);
+        }
+        logger.info("Backfilled {} task results for {} analysis results", created, ids.size());
+    }
 
-        return resultRepository.save(result);
-    }    
     /**
      * Retrieves a summary of all analysis results for the dashboard.
-     * This method correctly handles cases where analysis results might be incomplete (null values).
+     * Served from the materialized aggregate row, so no result rows or raw data are loaded.
      *
      * @return DashboardSummary containing aggregated metrics.
      */
     public DashboardSummary getDashboardSummary() {
-        // Find all analysis results
-        List<AnalysisResult> allResults = resultRepository.findAll();
+        return pipelineObservations.dashboardQuery("summary").observe(dashboardAggregateService::getSummary);
+    }
 
-        // Use a stream to filter out any results with null values for key metrics
-        List<AnalysisResult> validResults = allResults.stream()
-                .filter(result -> result.getTotalEnergy() != null &&
-                                 result.getTotalCarbonFootprint() != null &&
-                                 result.getTotalRuntime() != null)
-                .collect(Collectors.toList());
+    public List<AnalysisSummary> getRecentAnalyses(int limit) {
+        return pipelineObservations.dashboardQuery("recent-analyses")
+                .observe(() -> resultRepository.findSummaries(PageRequest.of(0, clampPageSize(limit))));
+    }
+
+    /**
+     * One page of analysis summaries, newest first. {@code cursor} is the nextCursor of the
+     * previous page, or null for the first page.
+     */
+    public AnalysisPage getAnalysesPage(String cursor, int size) {
+        return pipelineObservations.dashboardQuery("analyses-page").observe(() -> loadAnalysesPage(cursor, size));
+    }
 
-        // Check if the list of valid results is empty to avoid errors
-        if (validResults.isEmpty()) {
-            return new DashboardSummary(0.0, 0.0, 0.0, 0L);
+    private AnalysisPage loadAnalysesPage(String cursor, int size) {
+        PageRequest page = PageRequest.of(0, clampPageSize(size));
+        List<AnalysisSummary> items;
+        if (cursor == null || cursor.isEmpty()) {
+            items = resultRepository.findSummaries(page);
+        } else {
+            String[] position = decodeCursor(cursor);
+            items = resultRepository.findSummariesBefore(LocalDateTime.parse(position[0]), Long.valueOf(position[1]), page);
         }
 
-        // Aggregate metrics from valid results
-        double totalEnergy = validResults.stream()
-                .mapToDouble(AnalysisResult::getTotalEnergy)
-                .sum();
-        
-        double totalCarbonFootprint = validResults.stream()
-                .mapToDouble(AnalysisResult::getTotalCarbonFootprint)
-                .sum();
-        
-        double avgRuntime = validResults.stream()
-                .mapToDouble(AnalysisResult::getTotalRuntime)
-                .average()
-                .orElse(0.0); // Use orElse(0.0) to handle case where stream is empty
+        // A short page is the last one
+        String nextCursor = null;
+        if (items.size() == page.getPageSize()) {
+            AnalysisSummary last = items.get(items.size() - 1);
+            nextCursor = encodeCursor(last.getAnalyzedAt(), last.getId());
+        }
+        return new AnalysisPage(items, nextCursor);
+    }
 
-        long totalAnalyses = validResults.size();
+    private int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, analysisConfig.getMaxPageSize()));
+    }
 
-        return new DashboardSummary(
-            totalEnergy,
-            totalCarbonFootprint,
-            avgRuntime,
-            totalAnalyses
-        );
+    // Opaque to clients: base64url of "analysisTime,id"
+    private static String encodeCursor(LocalDateTime analysisTime, Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((analysisTime + "," + id).getBytes(StandardCharsets.UTF_8));
     }
 
-    public List<AnalysisSummary> getRecentAnalyses(int limit) {
-        return resultRepository.findAll(PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "analysisTime")))
-                .stream()
-                .map(result -> new AnalysisSummary(
-                        result.getId(),
-                        result.getScript().getFileName(),
-                        result.getAnalysisTime(),
-                        result.getTotalEnergy(),
-                        result.getTotalCarbonFootprint(),
-                        result.getTotalRuntime()
-                ))
-                .collect(Collectors.toList());
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",");
+            if (position.length != 2) {
+                throw new IllegalArgumentException("expected two parts");
+            }
+            LocalDateTime.parse(position[0]);
+            Long.parseLong(position[1]);
+            return position;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
     }
 
     public List<EnergyConsumer> getTopEnergyConsumers(int limit) {
-        List<TaskResult> allTasks = new ArrayList<>();
-        resultRepository.findAll().forEach(result -> {
-            if (result.getTasks() != null) {
-                allTasks.addAll(result.getTasks());
-            }
-        });
-        
-        return allTasks.stream()
-                .filter(task -> task.getEnergyConsumption() != null)
-                .sorted(Comparator.comparing(TaskResult::getEnergyConsumption).reversed())
-                .limit(limit)
-                .map(task -> new EnergyConsumer(task.getProcess(), task.getEnergyConsumption(), task.getAnalysisResult().getId()))
-                .collect(Collectors.toList());
+        return pipelineObservations.dashboardQuery("top-consumers")
+                .observe(() -> taskResultRepository.findTopEnergyConsumers(PageRequest.of(0, limit)));
     }
     
     // The inner class is used for data transfer
@@ -160,6 +319,36 @@ public class AnalysisService {
         public long getTotalAnalyses() { return totalAnalyses; }
     }
 
+    // A result to be saved: the analyzed script, the analyzer output and its cache key (may be null)
+    public static class NewAnalysisResult {
+        private final Script script;
+        private final JsonNode data;
+        private final String cacheKey;
+
+        public NewAnalysisResult(Script script, JsonNode data, String cacheKey) {
+            this.script = script;
+            this.data = data;
+            this.cacheKey = cacheKey;
+        }
+
+        public Script getScript() { return script; }
+        public JsonNode getData() { return data; }
+        public String getCacheKey() { return cacheKey; }
+    }
+
+    public static class AnalysisPage {
+        private final List<AnalysisSummary> items;
+        private final String nextCursor;
+
+        public AnalysisPage(List<AnalysisSummary> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<AnalysisSummary> getItems() { return items; }
+        public String getNextCursor() { return nextCursor; }
+    }
+
     public static class AnalysisSummary {
         private final Long id;
         private final String fileName;
@@ -201,13 +390,12 @@ public class AnalysisService {
         public Long getAnalysisId() { return analysisId; }
     }
     // Export the analysis results to a file
+    @Transactional(readOnly = true)
     public void exportAnalysisResult(Long resultId, String filePath) {
         AnalysisResult result = getAnalysisResultById(resultId);
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            String jsonData = objectMapper.writeValueAsString(result);
-            
-            Files.write(Paths.get(filePath), jsonData.getBytes(), StandardOpenOption.CREATE);
+        result.setRawData(payloadService.readJson(resultId).orElse(null));
+        try (OutputStream out = Files.newOutputStream(Paths.get(filePath))) {
+            jsonCodec.writeResult(result, out);
             logger.info("Exported analysis result {} to {}", resultId, filePath);
         } catch (IOException e) {
             logger.error("Failed to export analysis result {}", resultId, e);
@@ -217,10 +405,8 @@ public class AnalysisService {
 
     // Import analysis results from a file
     public AnalysisResult importAnalysisResult(String filePath) {
-        try {
-            String jsonData = new String(Files.readAllBytes(Paths.get(filePath)));
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.readValue(jsonData, AnalysisResult.class);
+        try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+            return jsonCodec.readResult(in);
         } catch (IOException e) {
             logger.error("Failed to import analysis result from {}", filePath, e);
             throw new RuntimeException("Import failed", e);
@@ -0,0 +1,466 @@
+package com.carbonfootprint.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.exception.BadRequestException;
+import com.carbonfootprint.exception.ResourceNotFoundException;
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.service.ActiveScriptRegistry.Claim;
+import com.carbonfootprint.service.AnalysisJobService.JobState;
+import com.carbonfootprint.service.ScriptService.AnalysisOutcome;
+
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Analyzes many traces at once. The analyses of all batches share one worker pool; each batch
+ * has a writer that collects finished analyses and saves them in groups of
+ * {@code analysis.batch-write-size}, so results, status changes and dashboard totals are written
+ * once per group instead of once per trace.
+ */
+@Service
+public class BatchAnalysisService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchAnalysisService.class);
+
+    // How long the writer waits for more finished analyses before saving a partial group
+    private static final long GROUP_LINGER_MS = 250;
+
+    @Autowired
+    private ScriptService scriptService;
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private PipelineObservations pipelineObservations;
+
+    @Autowired
+    private ActiveScriptRegistry activeScripts;
+
+    private ThreadPoolExecutor workers;
+    private ExecutorService writers;
+    private final Map<String, BatchJob> batches = new ConcurrentHashMap<>();
+    private final Queue<String> finishedBatches = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    public void init() {
+        int concurrency = analysisConfig.resolveBatchConcurrency();
+        AtomicInteger workerCounter = new AtomicInteger();
+        workers = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "analysis-batch-worker-" + workerCounter.incrementAndGet()));
+        AtomicInteger writerCounter = new AtomicInteger();
+        writers = Executors.newCachedThreadPool(
+                runnable -> new Thread(runnable, "analysis-batch-" + writerCounter.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Starts a batch over the given script ids or over every trace under a directory of the
+     * upload directory. The request is checked here; loading the scripts and everything after
+     * happens in the background.
+     */
+    public BatchJob submit(BatchRequest request) {
+        List<Long> scriptIds = request.getScriptIds() != null ? request.getScriptIds() : Collections.emptyList();
+        boolean byDirectory = request.getDirectory() != null;
+        if (scriptIds.isEmpty() == !byDirectory) {
+            throw new BadRequestException("Give either scriptIds or directory");
+        }
+        if (scriptIds.size() > analysisConfig.getBatchMaxItems()) {
+            throw new BadRequestException("A batch may contain at most " + analysisConfig.getBatchMaxItems() + " traces");
+        }
+        Path directory = byDirectory ? scriptService.resolveTraceDirectory(request.getDirectory()) : null;
+
+        BatchJob batch = new BatchJob(UUID.randomUUID().toString());
+        batch.submittedFrom = pipelineObservations.current();
+        batches.put(batch.getBatchId(), batch);
+        writers.execute(() -> Observation.tryScoped(batch.submittedFrom, () -> run(batch, scriptIds, directory)));
+        logger.info("Queued analysis batch {} ({})", batch.getBatchId(),
+                byDirectory ? "directory " + request.getDirectory() : scriptIds.size() + " scripts");
+        return batch;
+    }
+
+    public BatchJob getBatch(String batchId) {
+        BatchJob batch = batches.get(batchId);
+        if (batch == null) {
+            throw new ResourceNotFoundException("Analysis batch not found with id: " + batchId);
+        }
+        return batch;
+    }
+
+    /**
+     * Stops a batch: running analyses are interrupted and queued ones are skipped. Traces that
+     * finished before keep their results.
+     */
+    public BatchJob cancel(String batchId) {
+        BatchJob batch = getBatch(batchId);
+        if (batch.isFinished()) {
+            return batch;
+        }
+        batch.cancelRequested = true;
+        for (BatchItem item : batch.items) {
+            // Only interrupt started analyses: a task cancelled before it runs would never report back
+            if (item.state == JobState.RUNNING && item.future != null) {
+                item.future.cancel(true);
+            }
+        }
+        logger.info("Cancellation requested for analysis batch {}", batchId);
+        return batch;
+    }
+
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    public int getRunningCount() {
+        return workers.getActiveCount();
+    }
+
+    private void run(BatchJob batch, List<Long> scriptIds, Path directory) {
+        batch.startedAt = LocalDateTime.now();
+        batch.state = JobState.RUNNING;
+        try {
+            List<BatchItem> pending = prepare(batch, scriptIds, directory);
+            BlockingQueue<ItemOutcome> outcomes = new LinkedBlockingQueue<>();
+            for (BatchItem item : pending) {
+                item.future = workers.submit(() -> analyze(batch, item, outcomes));
+            }
+            write(batch, outcomes, pending.size());
+            finish(batch, batch.cancelRequested ? JobState.CANCELLED : JobState.SUCCEEDED, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(batch, JobState.CANCELLED, "Interrupted by shutdown");
+        } catch (Exception e) {
+            logger.error("Analysis batch {} failed", batch.getBatchId(), e);
+            finish(batch, JobState.FAILED, e.getMessage());
+        } finally {
+            // Whatever was not saved no longer holds its script
+            batch.items.forEach(item -> activeScripts.release(item.claim, item.resultId));
+        }
+    }
+
+    // Loads or registers the scripts, records the ones that can not be analyzed and queues the rest
+    private List<BatchItem> prepare(BatchJob batch, List<Long> scriptIds, Path directory) {
+        List<BatchItem> items = new ArrayList<>();
+        if (directory != null) {
+            // Files with the same content share a script, which is analyzed once
+            Map<Long, Script> scripts = new LinkedHashMap<>();
+            scriptService.registerTraceDirectory(directory).forEach(script -> scripts.putIfAbsent(script.getId(), script));
+            if (scripts.size() > analysisConfig.getBatchMaxItems()) {
+                throw new BadRequestException("The directory holds " + scripts.size()
+                        + " traces, a batch may contain at most " + analysisConfig.getBatchMaxItems());
+            }
+            scripts.values().forEach(script -> items.add(new BatchItem(script.getId(), script)));
+        } else {
+            Map<Long, Script> found = scriptService.getScriptsByIds(scriptIds).stream()
+                    .collect(Collectors.toMap(Script::getId, Function.identity()));
+            for (Long scriptId : new LinkedHashSet<>(scriptIds)) {
+                items.add(new BatchItem(scriptId, found.get(scriptId)));
+            }
+        }
+
+        List<BatchItem> pending = new ArrayList<>();
+        for (BatchItem item : items) {
+            if (item.script == null) {
+                item.fail("Script not found with id: " + item.scriptId);
+                continue;
+            }
+            try {
+                scriptService.validateTraceFile(item.script);
+                item.totalBytes = traceSize(item.script);
+                pending.add(item);
+            } catch (RuntimeException e) {
+                item.fail(e.getMessage());
+            }
+        }
+        batch.items = Collections.unmodifiableList(items);
+        scriptService.updateStatuses(pending.stream().map(item -> item.scriptId).toList(), "QUEUED");
+        return pending;
+    }
+
+    // Runs on a worker: analysis only, the writer saves the outcome
+    private void analyze(BatchJob batch, BatchItem item, BlockingQueue<ItemOutcome> outcomes) {
+        if (batch.cancelRequested) {
+            outcomes.add(new ItemOutcome(item, null, JobState.CANCELLED, "Cancelled before start"));
+            return;
+        }
+        item.state = JobState.RUNNING;
+        try {
+            // 同一脚本正在被单独分析或另一批分析时等它保存，然后复用它的结果；持有的脚本在写入后才释放
+            item.claim = activeScripts.claim(item.scriptId);
+            AnalysisOutcome outcome = item.claim.isHeld()
+                    ? Observation.tryScoped(batch.submittedFrom, () -> scriptService.computeAnalysis(item.script,
+                            (bytesRead, totalBytes) -> item.bytesRead = bytesRead))
+                    : scriptService.reusedAnalysis(item.script, item.claim.getReusedResultId());
+            outcomes.add(new ItemOutcome(item, outcome, JobState.SUCCEEDED, null));
+        } catch (Exception e) {
+            if (batch.cancelRequested) {
+                outcomes.add(new ItemOutcome(item, null, JobState.CANCELLED, "Cancelled while running"));
+            } else {
+                logger.warn("Analysis of script ID: {} in batch {} failed: {}", item.scriptId, batch.getBatchId(), e.getMessage());
+                outcomes.add(new ItemOutcome(item, null, JobState.FAILED, e.getMessage()));
+            }
+        }
+    }
+
+    // 按组收集完成的分析并一次写入，直到本批所有条目都有结果
+    private void write(BatchJob batch, BlockingQueue<ItemOutcome> outcomes, int expected) throws InterruptedException {
+        int groupSize = Math.max(1, analysisConfig.getBatchWriteSize());
+        int remaining = expected;
+        List<ItemOutcome> group = new ArrayList<>(groupSize);
+        while (remaining > 0) {
+            group.add(outcomes.take());
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GROUP_LINGER_MS);
+            while (group.size() < groupSize && group.size() < remaining) {
+                ItemOutcome next = outcomes.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                group.add(next);
+            }
+            saveGroup(batch, group);
+            remaining -= group.size();
+            group.clear();
+        }
+    }
+
+    private void saveGroup(BatchJob batch, List<ItemOutcome> group) {
+        List<ItemOutcome> succeeded = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        List<Long> cancelled = new ArrayList<>();
+        for (ItemOutcome outcome : group) {
+            if (outcome.state == JobState.SUCCEEDED) {
+                succeeded.add(outcome);
+            } else {
+                outcome.item.finish(outcome.state, null, false, outcome.message);
+                (outcome.state == JobState.CANCELLED ? cancelled : failed).add(outcome.item.scriptId);
+            }
+        }
+
+        if (!succeeded.isEmpty()) {
+            try {
+                save(succeeded);
+            } catch (RuntimeException e) {
+                // The whole group was rolled back; save one by one so a single bad trace only fails itself
+                logger.warn("Saving {} results of batch {} together failed, saving them one by one: {}",
+                        succeeded.size(), batch.getBatchId(), e.getMessage());
+                for (ItemOutcome outcome : succeeded) {
+                    try {
+                        save(List.of(outcome));
+                    } catch (RuntimeException single) {
+                        outcome.item.finish(JobState.FAILED, null, false, single.getMessage());
+                        failed.add(outcome.item.scriptId);
+                    }
+                }
+            }
+        }
+        scriptService.updateStatuses(failed, "ANALYSIS_FAILED");
+        scriptService.updateStatuses(cancelled, "CANCELLED");
+        for (ItemOutcome outcome : group) {
+            activeScripts.release(outcome.item.claim, outcome.item.resultId);
+        }
+    }
+
+    private void save(List<ItemOutcome> outcomes) {
+        Map<Long, Long> resultIds = scriptService.saveAnalyses(
+                outcomes.stream().map(outcome -> outcome.analysis).toList());
+        for (ItemOutcome outcome : outcomes) {
+            outcome.item.finish(JobState.SUCCEEDED, resultIds.get(outcome.item.scriptId),
+                    outcome.analysis.isCached(), null);
+        }
+    }
+
+    private void finish(BatchJob batch, JobState state, String message) {
+        batch.message = message;
+        batch.finishedAt = LocalDateTime.now();
+        batch.state = state;
+        logger.info("Analysis batch {} {}: {} succeeded, {} failed, {} cancelled", batch.getBatchId(),
+                state.name().toLowerCase(), batch.getSucceeded(), batch.getFailed(), batch.getCancelled());
+        finishedBatches.add(batch.getBatchId());
+        while (finishedBatches.size() > analysisConfig.getJobHistorySize()) {
+            String oldest = finishedBatches.poll();
+            if (oldest != null) {
+                batches.remove(oldest);
+            }
+        }
+    }
+
+    // 0 when the file can not be read; the analysis itself reports that
+    private static long traceSize(Script script) {
+        try {
+            return Files.size(Paths.get(script.getFilePath()));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    // A finished analysis handed from a worker to the batch writer
+    private static class ItemOutcome {
+        private final BatchItem item;
+        private final AnalysisOutcome analysis;
+        private final JobState state;
+        private final String message;
+
+        ItemOutcome(BatchItem item, AnalysisOutcome analysis, JobState state, String message) {
+            this.item = item;
+            this.analysis = analysis;
+            this.state = state;
+            this.message = message;
+        }
+    }
+
+    // Body of POST /api/analysis/batch: either scriptIds or directory (relative to the upload directory)
+    public static class BatchRequest {
+        private List<Long> scriptIds;
+        private String directory;
+
+        public BatchRequest() {}
+
+        public List<Long> getScriptIds() { return scriptIds; }
+        public void setScriptIds(List<Long> scriptIds) { this.scriptIds = scriptIds; }
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+    }
+
+    // Status of a batch with one entry per trace, serialized as-is by the batch endpoints
+    public static class BatchJob {
+        private final String batchId;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private volatile JobState state = JobState.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile String message;
+        private volatile List<BatchItem> items = Collections.emptyList();
+        private volatile boolean cancelRequested;
+        private volatile Observation submittedFrom;
+
+        BatchJob(String batchId) {
+            this.batchId = batchId;
+        }
+
+        public String getBatchId() { return batchId; }
+        public JobState getState() { return state; }
+        public LocalDateTime getSubmittedAt() { return submittedAt; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public LocalDateTime getFinishedAt() { return finishedAt; }
+        public String getMessage() { return message; }
+        public List<BatchItem> getItems() { return items; }
+
+        public int getTotal() { return items.size(); }
+        public int getCompleted() { return count(null); }
+        public int getSucceeded() { return count(JobState.SUCCEEDED); }
+        public int getFailed() { return count(JobState.FAILED); }
+        public int getCancelled() { return count(JobState.CANCELLED); }
+
+        // Share of the batch's trace bytes that has been analyzed; by item count when sizes are unknown
+        public double getProgress() {
+            if (isFinished()) {
+                return 1.0;
+            }
+            long totalBytes = 0;
+            long doneBytes = 0;
+            for (BatchItem item : items) {
+                totalBytes += item.totalBytes;
+                doneBytes += item.isFinished() ? item.totalBytes : Math.min(item.bytesRead, item.totalBytes);
+            }
+            if (totalBytes == 0) {
+                return items.isEmpty() ? 0.0 : (double) getCompleted() / items.size();
+            }
+            return (double) doneBytes / totalBytes;
+        }
+
+        public boolean isFinished() {
+            return state == JobState.SUCCEEDED || state == JobState.FAILED || state == JobState.CANCELLED;
+        }
+
+        // null counts every finished item
+        private int count(JobState state) {
+            int count = 0;
+            for (BatchItem item : items) {
+                if (state == null ? item.isFinished() : item.state == state) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    // One trace of a batch. SUCCEEDED only once its result has been saved
+    public static class BatchItem {
+        private final Long scriptId;
+        private final String fileName;
+        private final Script script;
+        private volatile JobState state = JobState.QUEUED;
+        private volatile Long resultId;
+        private volatile boolean cached;
+        private volatile String message;
+        private volatile long totalBytes;
+        private volatile long bytesRead;
+        private volatile Future<?> future;
+        private volatile Claim claim;
+
+        BatchItem(Long scriptId, Script script) {
+            this.scriptId = scriptId;
+            this.script = script;
+            this.fileName = script != null ? script.getFileName() : null;
+        }
+
+        public Long getScriptId() { return scriptId; }
+        public String getFileName() { return fileName; }
+        public JobState getState() { return state; }
+        public Long getResultId() { return resultId; }
+        public boolean isCached() { return cached; }
+        public String getMessage() { return message; }
+
+        boolean isFinished() {
+            return state == JobState.SUCCEEDED || state == JobState.FAILED || state == JobState.CANCELLED;
+        }
+
+        void fail(String message) {
+            finish(JobState.FAILED, null, false, message);
+        }
+
+        void finish(JobState state, Long resultId, boolean cached, String message) {
+            this.resultId = resultId;
+            this.cached = cached;
+            this.message = message;
+            this.state = state;
+        }
+    }
+}
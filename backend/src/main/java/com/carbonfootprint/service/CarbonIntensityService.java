@@ -0,0 +1,76 @@
+package com.carbonfootprint.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.CarbonIntensity;
+import com.carbonfootprint.analysis.HourlyCarbonIntensity;
+import com.carbonfootprint.config.AnalysisConfig;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Supplies the carbon intensity the native analyzer applies per task: the hourly tables of
+ * {@code analysis.carbon-intensity-dir} when set, the constant 475 gCO2eq/kWh otherwise. The
+ * tables are loaded once at start-up; a directory that can not be read stops the start.
+ */
+@Service
+public class CarbonIntensityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CarbonIntensityService.class);
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    private CarbonIntensity intensity = CarbonIntensity.CONSTANT;
+
+    @PostConstruct
+    public void init() {
+        String dir = analysisConfig.getCarbonIntensityDir();
+        if (dir == null || dir.isBlank()) {
+            logger.info("Carbon intensity: constant profile {}", intensity.getProfile());
+            return;
+        }
+        Path directory = Paths.get(dir).toAbsolutePath().normalize();
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalStateException("analysis.carbon-intensity-dir is not a directory: " + directory);
+        }
+        try {
+            HourlyCarbonIntensity hourly = HourlyCarbonIntensity.load(directory,
+                    analysisConfig.getCarbonHostRegions(), analysisConfig.getCarbonDefaultRegion(), traceTimeZone());
+            intensity = hourly;
+            for (int region = 0; region < hourly.getRegions().size(); region++) {
+                logger.info("Carbon intensity region {}: {} hours from {}", hourly.getRegions().get(region),
+                        hourly.getHours(region), Instant.ofEpochMilli(hourly.getFirstHourMs(region)));
+            }
+            logger.info("Carbon intensity: hourly profile {} from {}, trace dates in {}", intensity.getProfile(),
+                    directory, hourly.getTraceTimeZone());
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Could not load carbon intensity tables from " + directory + ": "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private ZoneId traceTimeZone() {
+        try {
+            return ZoneId.of(analysisConfig.getCarbonTraceTimeZone());
+        } catch (DateTimeException e) {
+            throw new IllegalStateException("analysis.carbon-trace-time-zone is not a time zone: "
+                    + analysisConfig.getCarbonTraceTimeZone(), e);
+        }
+    }
+
+    public CarbonIntensity getIntensity() {
+        return intensity;
+    }
+}
@@ -0,0 +1,303 @@
+package com.carbonfootprint.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.ContentHashes;
+import com.carbonfootprint.analysis.NameDictionary;
+import com.carbonfootprint.analysis.TraceColumnFile;
+import com.carbonfootprint.analysis.TraceColumnFile.Column;
+import com.carbonfootprint.analysis.TraceColumnFileWriter;
+import com.carbonfootprint.analysis.TraceCompression;
+import com.carbonfootprint.analysis.TraceRow;
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.config.FileStorageConfig;
+import com.carbonfootprint.exception.FileStorageException;
+import com.carbonfootprint.exception.ResourceNotFoundException;
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.repository.ScriptRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps a {@link TraceColumnFile} next to every uploaded trace. Uploads are converted once, in
+ * the background, so the upload itself returns as soon as the bytes are stored; until the copy
+ * exists analyses simply parse the CSV. A copy is only written when the bytes it was converted
+ * from hash to the script's content hash, and only used when its recorded hash is the script's,
+ * so a trace rewritten in place is never analysed from a stale copy. Likewise a copy whose
+ * date-times were read in another zone than the configured trace time zone is converted again.
+ */
+@Service
+public class ColumnarTraceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarTraceService.class);
+
+    private static final String TEMP_PREFIX = ".columns-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private FileStorageConfig fileStorageConfig;
+
+    @Autowired
+    private ScriptRepository scriptRepository;
+
+    @Autowired
+    private CarbonIntensityService carbonIntensityService;
+
+    // Traces queued or being converted, so a trace is not converted twice at once
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+    private ExecutorService converter;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        converter = Executors.newFixedThreadPool(Math.max(1, analysisConfig.getColumnarThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "trace-converter-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        converter.shutdownNow();
+    }
+
+    /** Queues the conversion of a script's trace unless it is disabled, queued already or done. */
+    public void convertLater(Script script) {
+        if (!analysisConfig.isColumnarConversion() || script.getContentHash() == null) {
+            return;
+        }
+        Path trace = Paths.get(script.getFilePath());
+        String contentHash = script.getContentHash();
+        if (pending.add(trace)) {
+            converter.execute(() -> {
+                try {
+                    convert(trace, contentHash);
+                } finally {
+                    pending.remove(trace);
+                }
+            });
+        }
+    }
+
+    // Writes the copy under a temporary name and renames it, so readers never see half a file.
+    // The copy is labelled with the script's hash, so it is kept only when the bytes read hash to it.
+    private void convert(Path trace, String contentHash) {
+        Path target = TraceColumnFile.pathFor(trace);
+        if (isCurrent(target, contentHash)) {
+            return;
+        }
+        ZoneId zone = traceTimeZone();
+        long start = System.nanoTime();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(trace.toAbsolutePath().getParent(), TEMP_PREFIX, TEMP_SUFFIX);
+            MessageDigest digest = ContentHashes.newDigest();
+            long rows;
+            try (InputStream raw = new DigestInputStream(Files.newInputStream(trace), digest);
+                 InputStream in = TraceCompression.of(trace).decompress(raw)) {
+                rows = TraceColumnFileWriter.convert(in, temp, contentHash, zone);
+                // The parser may stop before the last bytes (a compressed trailer); the hash covers them all
+                raw.transferTo(OutputStream.nullOutputStream());
+            }
+            String readHash = ContentHashes.hex(digest);
+            if (!readHash.equals(contentHash)) {
+                logger.warn("Not keeping the columnar copy of {}: its content hash is {}, the script records {}",
+                        trace, readHash, contentHash);
+                return;
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Converted {} to columns: {} rows, {} -> {} bytes in {} ms", trace.getFileName(), rows,
+                    Files.size(trace), Files.size(target), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not convert {} to columns: {}", trace, e.getMessage());
+        } finally {
+            ScriptService.deleteQuietly(temp);
+        }
+    }
+
+    private boolean isCurrent(Path columns, String contentHash) {
+        if (!Files.exists(columns)) {
+            return false;
+        }
+        try (TraceColumnFile file = TraceColumnFile.open(columns)) {
+            return matches(file, contentHash);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // The copy was converted from these bytes, with date-times read in the zone analyses use now
+    private boolean matches(TraceColumnFile file, String contentHash) {
+        return contentHash.equals(file.getContentHash()) && traceTimeZone().getId().equals(file.getTraceTimeZone());
+    }
+
+    private ZoneId traceTimeZone() {
+        return carbonIntensityService.getIntensity().getTraceTimeZone();
+    }
+
+    /**
+     * Opens the columnar copy of a script's trace, or returns null when there is none that
+     * matches the trace; in that case a conversion is queued for next time.
+     */
+    public TraceColumnFile open(Script script) {
+        if (!analysisConfig.isColumnarConversion() || script.getContentHash() == null) {
+            return null;
+        }
+        Path columns = TraceColumnFile.pathFor(Paths.get(script.getFilePath()));
+        if (Files.exists(columns)) {
+            try {
+                TraceColumnFile file = TraceColumnFile.open(columns);
+                if (matches(file, script.getContentHash())) {
+                    return file;
+                }
+                file.close();
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable columnar trace {}: {}", columns, e.getMessage());
+            }
+        }
+        convertLater(script);
+        return null;
+    }
+
+    /**
+     * Row count, per-column min/max and task counts per status of a script's trace, all read
+     * from its columnar copy: the footer plus the status column alone.
+     */
+    public ColumnarSummary summarize(Long scriptId) {
+        Script script = scriptRepository.findById(scriptId)
+                .orElseThrow(() -> new ResourceNotFoundException("Script not found with id: " + scriptId));
+        try (TraceColumnFile file = open(script)) {
+            if (file == null) {
+                throw new ResourceNotFoundException("No columnar copy of script " + scriptId + " yet");
+            }
+            Map<String, ColumnStats> columns = new LinkedHashMap<>();
+            for (Column column : file.getColumns()) {
+                // NaN only for a trace without rows
+                if (!column.isDictionary() && !Double.isNaN(file.getMin(column))) {
+                    columns.put(column.getTraceName(), new ColumnStats(file.getMin(column), file.getMax(column)));
+                }
+            }
+
+            Map<String, Long> statusCounts = new LinkedHashMap<>();
+            if (file.getColumns().contains(Column.STATUS)) {
+                NameDictionary statuses = file.getStatusNames();
+                long[] counts = new long[statuses.size() + 1];
+                file.scan(EnumSet.of(Column.STATUS), (TraceRow row) -> counts[row.statusId + 1]++);
+                for (int id = 0; id < statuses.size(); id++) {
+                    statusCounts.put(statuses.name(id), counts[id + 1]);
+                }
+                if (counts[0] > 0) {
+                    statusCounts.put("", counts[0]);
+                }
+            }
+
+            long traceBytes = Files.size(Paths.get(script.getFilePath()));
+            return new ColumnarSummary(script.getId(), file.getRows(), file.getRowGroups(), traceBytes,
+                    file.getFileSize(), file.getProcessNames().size(), file.getHostNames().size(), columns, statusCounts);
+        } catch (IOException e) {
+            throw new FileStorageException("无法读取列式文件: " + e.getMessage(), e);
+        }
+    }
+
+    // A conversion cut short by a restart leaves its temporary file behind
+    @EventListener(ApplicationReadyEvent.class)
+    public void removeOrphanedConversions() {
+        Path directory = Paths.get(fileStorageConfig.getUploadDir());
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> orphans = new ArrayList<>();
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory, TEMP_PREFIX + "*" + TEMP_SUFFIX)) {
+            temps.forEach(orphans::add);
+        } catch (IOException e) {
+            logger.warn("Could not clean partial conversions: {}", e.getMessage());
+        }
+        for (Path orphan : orphans) {
+            ScriptService.deleteQuietly(orphan);
+            logger.info("Removed partial columnar trace {} left from a previous run", orphan.getFileName());
+        }
+    }
+
+    // What GET /api/data-sources/{id}/columns returns
+    public static class ColumnarSummary {
+        private final Long scriptId;
+        private final long rows;
+        private final int rowGroups;
+        private final long traceBytes;
+        private final long columnarBytes;
+        private final int processes;
+        private final int hosts;
+        private final Map<String, ColumnStats> columns;
+        private final Map<String, Long> statusCounts;
+
+        public ColumnarSummary(Long scriptId, long rows, int rowGroups, long traceBytes, long columnarBytes,
+                               int processes, int hosts, Map<String, ColumnStats> columns, Map<String, Long> statusCounts) {
+            this.scriptId = scriptId;
+            this.rows = rows;
+            this.rowGroups = rowGroups;
+            this.traceBytes = traceBytes;
+            this.columnarBytes = columnarBytes;
+            this.processes = processes;
+            this.hosts = hosts;
+            this.columns = columns;
+            this.statusCounts = statusCounts;
+        }
+
+        public Long getScriptId() { return scriptId; }
+        public long getRows() { return rows; }
+        public int getRowGroups() { return rowGroups; }
+        public long getTraceBytes() { return traceBytes; }
+        public long getColumnarBytes() { return columnarBytes; }
+        public int getProcesses() { return processes; }
+        public int getHosts() { return hosts; }
+        // Numeric columns only, in trace units
+        public Map<String, ColumnStats> getColumns() { return columns; }
+        // Tasks per status; "" counts tasks without one
+        public Map<String, Long> getStatusCounts() { return statusCounts; }
+    }
+
+    public static class ColumnStats {
+        private final double min;
+        private final double max;
+
+        public ColumnStats(double min, double max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        public double getMin() { return min; }
+        public double getMax() { return max; }
+    }
+}
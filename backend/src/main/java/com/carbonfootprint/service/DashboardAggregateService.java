@@ -0,0 +1,139 @@
+package com.carbonfootprint.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.model.DashboardAggregate;
+import com.carbonfootprint.repository.AnalysisResultRepository;
+import com.carbonfootprint.repository.DashboardAggregateRepository;
+import com.carbonfootprint.service.AnalysisService.DashboardSummary;
+
+/**
+ * Maintains the single {@link DashboardAggregate} row. Saves and deletes adjust it inside their
+ * own transaction; a periodic reconciliation rebuilds it from the results table in case the two
+ * ever drift apart (manual SQL, imports, bugs).
+ */
+@Service
+public class DashboardAggregateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DashboardAggregateService.class);
+
+    @Autowired
+    private DashboardAggregateRepository aggregateRepository;
+
+    @Autowired
+    private AnalysisResultRepository resultRepository;
+
+    /** Adds a newly saved result. Must run in the transaction that saves it. */
+    @Transactional
+    public void record(AnalysisResult result) {
+        apply(result, 1);
+    }
+
+    /** Adds several newly saved results with one update. Must run in the transaction that saves them. */
+    @Transactional
+    public void recordAll(List<AnalysisResult> results) {
+        double energy = 0;
+        double carbon = 0;
+        double runtime = 0;
+        long count = 0;
+        for (AnalysisResult result : results) {
+            if (isComplete(result)) {
+                energy += result.getTotalEnergy();
+                carbon += result.getTotalCarbonFootprint();
+                runtime += result.getTotalRuntime();
+                count++;
+            }
+        }
+        increment(energy, carbon, runtime, count);
+    }
+
+    /** Subtracts a result that is being deleted. Must run in the transaction that deletes it. */
+    @Transactional
+    public void remove(AnalysisResult result) {
+        apply(result, -1);
+    }
+
+    private void apply(AnalysisResult result, int sign) {
+        if (isComplete(result)) {
+            increment(sign * result.getTotalEnergy(), sign * result.getTotalCarbonFootprint(),
+                    sign * result.getTotalRuntime(), sign);
+        }
+    }
+
+    private void increment(double energy, double carbon, double runtime, long count) {
+        if (count == 0) {
+            return;
+        }
+        int updated = aggregateRepository.increment(DashboardAggregate.SINGLETON_ID, energy, carbon, runtime, count);
+        if (updated == 0) {
+            // No row yet: build it from the table, which already contains this change
+            reconcile();
+        }
+    }
+
+    // Same rule as the summary always had: incomplete results are not counted
+    private static boolean isComplete(AnalysisResult result) {
+        return result.getTotalEnergy() != null && result.getTotalCarbonFootprint() != null
+                && result.getTotalRuntime() != null;
+    }
+
+    @Transactional
+    public DashboardSummary getSummary() {
+        DashboardAggregate aggregate = aggregateRepository.findById(DashboardAggregate.SINGLETON_ID)
+                .orElseGet(this::reconcile);
+        if (aggregate.getAnalysisCount() <= 0) {
+            return new DashboardSummary(0.0, 0.0, 0.0, 0L);
+        }
+        return new DashboardSummary(
+                aggregate.getTotalEnergy(),
+                aggregate.getTotalCarbonFootprint(),
+                aggregate.getTotalRuntime() / aggregate.getAnalysisCount(),
+                aggregate.getAnalysisCount());
+    }
+
+    /**
+     * Recomputes the row from scratch. The row is locked before summing, so a concurrent save
+     * either finishes first and is included, or waits and applies its increment afterwards.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${analysis.dashboard-reconcile-interval-ms:3600000}")
+    @Transactional
+    public DashboardAggregate reconcile() {
+        DashboardAggregate aggregate = aggregateRepository.findForUpdate(DashboardAggregate.SINGLETON_ID)
+                .orElseGet(() -> {
+                    DashboardAggregate created = new DashboardAggregate();
+                    created.setId(DashboardAggregate.SINGLETON_ID);
+                    return created;
+                });
+
+        Object[] totals = resultRepository.sumDashboardTotals().get(0);
+        double energy = ((Number) totals[0]).doubleValue();
+        double carbon = ((Number) totals[1]).doubleValue();
+        double runtime = ((Number) totals[2]).doubleValue();
+        long count = ((Number) totals[3]).longValue();
+
+        if (aggregate.getAnalysisCount() != count || drifted(aggregate.getTotalEnergy(), energy)
+                || drifted(aggregate.getTotalCarbonFootprint(), carbon) || drifted(aggregate.getTotalRuntime(), runtime)) {
+            logger.info("Dashboard aggregate rebuilt: {} analyses (was {})", count, aggregate.getAnalysisCount());
+        }
+        aggregate.setTotalEnergy(energy);
+        aggregate.setTotalCarbonFootprint(carbon);
+        aggregate.setTotalRuntime(runtime);
+        aggregate.setAnalysisCount(count);
+        aggregate.setReconciledAt(LocalDateTime.now());
+        return aggregateRepository.save(aggregate);
+    }
+
+    // Running sums pick up rounding noise; only report real differences
+    private static boolean drifted(double stored, double actual) {
+        return Math.abs(stored - actual) > 1e-9 * Math.max(1.0, Math.abs(actual));
+    }
+}
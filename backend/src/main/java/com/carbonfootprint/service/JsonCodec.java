@@ -0,0 +1,74 @@
+package com.carbonfootprint.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The one place JSON is read and written outside the MVC layer. Wraps the Spring-managed
+ * ObjectMapper, so its configuration and modules apply, and builds the readers and writers for
+ * the types we handle once; they are immutable and share the mapper's serializer caches.
+ */
+@Service
+public class JsonCodec {
+
+    private final ObjectMapper mapper;
+    // Analyzer output (evaluation.py and the native analyzer) and worker requests are plain trees
+    private final ObjectReader treeReader;
+    private final ObjectWriter treeWriter;
+    private final ObjectReader resultReader;
+    private final ObjectWriter resultWriter;
+    private final ObjectWriter visualizationWriter;
+
+    public JsonCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.treeReader = mapper.readerFor(JsonNode.class);
+        this.treeWriter = mapper.writerFor(JsonNode.class);
+        this.resultReader = mapper.readerFor(AnalysisResult.class);
+        this.resultWriter = mapper.writerFor(AnalysisResult.class);
+        this.visualizationWriter = mapper.writerFor(VisualizationData.class);
+    }
+
+    public ObjectNode createObjectNode() {
+        return mapper.createObjectNode();
+    }
+
+    public JsonNode readTree(byte[] json) throws IOException {
+        return treeReader.readTree(json);
+    }
+
+    public JsonNode readTree(InputStream json) throws IOException {
+        return treeReader.readTree(json);
+    }
+
+    public byte[] writeTree(JsonNode node) throws IOException {
+        return treeWriter.writeValueAsBytes(node);
+    }
+
+    public AnalysisResult readResult(InputStream json) throws IOException {
+        return resultReader.readValue(json);
+    }
+
+    public void writeResult(AnalysisResult result, OutputStream out) throws IOException {
+        resultWriter.writeValue(out, result);
+    }
+
+    /** Streams analyzer output straight into the columnar visualization model. */
+    public VisualizationData readVisualization(InputStream json) throws IOException {
+        return VisualizationDataReader.read(mapper.getFactory().createParser(json));
+    }
+
+    public byte[] writeVisualization(VisualizationData data) throws IOException {
+        return visualizationWriter.writeValueAsBytes(data);
+    }
+}
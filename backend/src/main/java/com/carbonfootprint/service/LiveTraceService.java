@@ -0,0 +1,383 @@
+package com.carbonfootprint.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.carbonfootprint.analysis.CarbonIntensity;
+import com.carbonfootprint.analysis.NameDictionary;
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceCompression;
+import com.carbonfootprint.analysis.TraceCsvParser;
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.exception.BadRequestException;
+import com.carbonfootprint.exception.ResourceNotFoundException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Tail mode: follows a trace file that a running pipeline is still appending to. Every poll
+ * parses only the complete lines written since the last byte offset and folds them into running
+ * per-process and per-host aggregates, which are pushed to the subscribers of that trace as
+ * server-sent events. Nothing is re-read and nothing is stored; the live totals are in memory only.
+ *
+ * Only files under analysis.live-trace-roots can be followed, since the path comes from the client.
+ */
+@Service
+public class LiveTraceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveTraceService.class);
+
+    private static final String EVENT_TOTALS = "totals";
+    // Idle connections get a comment now and then, so closed ones are noticed and dropped
+    private static final long HEARTBEAT_MS = 15_000;
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private CarbonIntensityService carbonIntensityService;
+
+    @Autowired
+    private PowerProfileService powerProfileService;
+
+    private final Map<String, LiveTrace> traces = new ConcurrentHashMap<>();
+    private ScheduledExecutorService poller;
+
+    @PostConstruct
+    public void init() {
+        // Own thread: catching up on a large trace must not hold up the shared scheduler
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-trace-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(100, analysisConfig.getLivePollIntervalMs());
+        poller.scheduleWithFixedDelay(this::pollAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        traces.values().forEach(trace -> trace.subscribers.forEach(SseEmitter::complete));
+    }
+
+    /**
+     * Starts following {@code path}, or returns the existing follower of the same file. The
+     * first poll reads everything already in the file.
+     */
+    public synchronized LiveTraceStatus follow(String path, String hardwareConfig) {
+        Path file = resolveAllowed(path);
+        for (LiveTrace trace : traces.values()) {
+            if (trace.file.equals(file)) {
+                return trace.status;
+            }
+        }
+        if (traces.size() >= analysisConfig.getLiveMaxTraces()) {
+            throw new BadRequestException("Already following " + traces.size() + " traces; stop one first");
+        }
+        String hardware = hardwareConfig != null && !hardwareConfig.isBlank() ? hardwareConfig : "default";
+        LiveTrace trace = new LiveTrace(UUID.randomUUID().toString(), file, hardware,
+                carbonIntensityService.getIntensity(), powerProfileService.forHardware(hardware));
+        traces.put(trace.id, trace);
+        logger.info("Following live trace {} as {}", file, trace.id);
+        poller.execute(() -> poll(trace));
+        return trace.status;
+    }
+
+    public LiveTraceStatus getStatus(String id) {
+        return trace(id).status;
+    }
+
+    public List<LiveTraceStatus> getAll() {
+        return traces.values().stream()
+                .map(trace -> trace.status)
+                .collect(Collectors.toList());
+    }
+
+    /** Opens an event stream that receives the current totals now and after every change. */
+    public SseEmitter subscribe(String id) {
+        LiveTrace trace = trace(id);
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> trace.subscribers.remove(emitter));
+        emitter.onTimeout(() -> trace.subscribers.remove(emitter));
+        emitter.onError(error -> trace.subscribers.remove(emitter));
+        trace.subscribers.add(emitter);
+        send(trace, emitter, trace.status);
+        return emitter;
+    }
+
+    public void stop(String id) {
+        LiveTrace trace = traces.remove(id);
+        if (trace == null) {
+            throw new ResourceNotFoundException("Live trace not found: " + id);
+        }
+        trace.stopped = true;
+        poller.execute(() -> finish(trace, "STOPPED"));
+        logger.info("Stopped following live trace {}", trace.file);
+    }
+
+    private LiveTrace trace(String id) {
+        LiveTrace trace = traces.get(id);
+        if (trace == null) {
+            throw new ResourceNotFoundException("Live trace not found: " + id);
+        }
+        return trace;
+    }
+
+    // The real path of a regular, uncompressed file inside one of the configured roots
+    private Path resolveAllowed(String path) {
+        if (analysisConfig.getLiveTraceRoots().isEmpty()) {
+            throw new BadRequestException("Tail mode is disabled: analysis.live-trace-roots is empty");
+        }
+        Path file;
+        try {
+            // Checked before and after resolving links, so nothing is revealed about other directories
+            if (!isUnderRoot(Paths.get(path).toAbsolutePath().normalize())) {
+                throw new BadRequestException("Traces can only be followed under " + analysisConfig.getLiveTraceRoots());
+            }
+            file = Paths.get(path).toRealPath();
+        } catch (InvalidPathException | IOException e) {
+            throw new BadRequestException("Trace not found: " + path);
+        }
+        if (!isUnderRoot(file)) {
+            throw new BadRequestException("Traces can only be followed under " + analysisConfig.getLiveTraceRoots());
+        }
+        if (!Files.isRegularFile(file)) {
+            throw new BadRequestException("Not a file: " + path);
+        }
+        if (TraceCompression.of(file).isCompressed()) {
+            throw new BadRequestException("Compressed traces can not be followed while they grow");
+        }
+        return file;
+    }
+
+    private boolean isUnderRoot(Path file) {
+        for (String root : analysisConfig.getLiveTraceRoots()) {
+            try {
+                Path rootPath = Paths.get(root).toAbsolutePath().normalize();
+                if (file.startsWith(rootPath) || file.startsWith(rootPath.toRealPath())) {
+                    return true;
+                }
+            } catch (InvalidPathException | IOException e) {
+                logger.warn("Live trace root {} is not usable: {}", root, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void pollAll() {
+        long idleCutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(analysisConfig.getLiveIdleTimeoutMinutes());
+        for (LiveTrace trace : traces.values()) {
+            try {
+                poll(trace);
+                if (trace.lastGrowth < idleCutoff && traces.remove(trace.id, trace)) {
+                    logger.info("Live trace {} has not grown for {} minutes, no longer following it",
+                            trace.file, analysisConfig.getLiveIdleTimeoutMinutes());
+                    finish(trace, "IDLE");
+                }
+            } catch (RuntimeException e) {
+                // One broken trace must not stop the others
+                logger.warn("Polling live trace {} failed: {}", trace.file, e.getMessage());
+            }
+        }
+    }
+
+    // Runs on the poller thread only, so the parser and aggregates need no locking
+    private void poll(LiveTrace trace) {
+        if (trace.stopped) {
+            return;
+        }
+        boolean changed = false;
+        try (FileChannel channel = FileChannel.open(trace.file, StandardOpenOption.READ)) {
+            Object fileKey = Files.readAttributes(trace.file, BasicFileAttributes.class).fileKey();
+            long size = channel.size();
+            if (size < trace.offset || (trace.fileKey != null && !trace.fileKey.equals(fileKey))) {
+                // Truncated or replaced, e.g. the pipeline was run again and overwrote its trace
+                logger.info("Live trace {} was truncated or replaced, starting over", trace.file);
+                trace.reset();
+                changed = true;
+            }
+            trace.fileKey = fileKey;
+            if (size > trace.offset) {
+                channel.position(trace.offset);
+                InputStream in = Channels.newInputStream(channel);
+                long consumed = trace.parser.parseCompleteLines(in, trace.aggregates);
+                if (consumed > 0) {
+                    trace.offset += consumed;
+                    trace.lastGrowth = System.currentTimeMillis();
+                    changed = true;
+                }
+            }
+            trace.fileBytes = size;
+            trace.error = null;
+        } catch (IOException e) {
+            if (trace.error == null) {
+                logger.warn("Can not read live trace {}: {}", trace.file, e.getMessage());
+                changed = true;
+            }
+            trace.error = e.getMessage();
+        }
+
+        if (changed) {
+            trace.status = trace.snapshot("FOLLOWING");
+            publish(trace);
+        } else if (System.currentTimeMillis() - trace.lastSent > HEARTBEAT_MS) {
+            heartbeat(trace);
+        }
+    }
+
+    private void finish(LiveTrace trace, String state) {
+        trace.status = trace.snapshot(state);
+        publish(trace);
+        trace.subscribers.forEach(SseEmitter::complete);
+        trace.subscribers.clear();
+    }
+
+    private void publish(LiveTrace trace) {
+        trace.lastSent = System.currentTimeMillis();
+        for (SseEmitter emitter : trace.subscribers) {
+            send(trace, emitter, trace.status);
+        }
+    }
+
+    private void heartbeat(LiveTrace trace) {
+        trace.lastSent = System.currentTimeMillis();
+        for (SseEmitter emitter : trace.subscribers) {
+            try {
+                emitter.send(SseEmitter.event().comment("keep-alive"));
+            } catch (IOException | IllegalStateException e) {
+                trace.subscribers.remove(emitter);
+            }
+        }
+    }
+
+    private static void send(LiveTrace trace, SseEmitter emitter, LiveTraceStatus status) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(EVENT_TOTALS)
+                    .id(String.valueOf(status.getBytesRead()))
+                    .data(status, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away
+            trace.subscribers.remove(emitter);
+        }
+    }
+
+    public int getFollowedCount() {
+        return traces.size();
+    }
+
+    private static final class LiveTrace {
+        private final String id;
+        private final Path file;
+        private final String hardwareConfig;
+        private final CarbonIntensity intensity;
+        private final PowerProfiles power;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final Collection<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+
+        private TraceCsvParser parser;
+        private TraceAggregates aggregates;
+        private Object fileKey;
+        private long offset;
+        private long fileBytes;
+        private String error;
+        private volatile long lastGrowth = System.currentTimeMillis();
+        private volatile long lastSent;
+        private volatile boolean stopped;
+        private volatile LiveTraceStatus status;
+
+        LiveTrace(String id, Path file, String hardwareConfig, CarbonIntensity intensity, PowerProfiles power) {
+            this.id = id;
+            this.file = file;
+            this.hardwareConfig = hardwareConfig;
+            this.intensity = intensity;
+            this.power = power;
+            reset();
+            this.status = snapshot("FOLLOWING");
+        }
+
+        void reset() {
+            parser = new TraceCsvParser(new NameDictionary(), new NameDictionary(), 64 * 1024);
+            parser.setTimeZone(intensity.getTraceTimeZone());
+            aggregates = new TraceAggregates(parser.getProcessNames(), parser.getHostNames(), intensity, power);
+            offset = 0;
+        }
+
+        LiveTraceStatus snapshot(String state) {
+            return new LiveTraceStatus(id, file.toString(), state, offset, fileBytes, aggregates.getRows(),
+                    startedAt, LocalDateTime.now(), error, aggregates.toResultNode(hardwareConfig));
+        }
+    }
+
+    // Running totals of one followed trace, as sent to subscribers
+    public static class LiveTraceStatus {
+        private final String id;
+        private final String path;
+        private final String state;
+        private final long bytesRead;
+        private final long fileBytes;
+        private final long rows;
+        private final LocalDateTime startedAt;
+        private final LocalDateTime updatedAt;
+        private final String error;
+        private final JsonNode totals;
+
+        public LiveTraceStatus(String id, String path, String state, long bytesRead, long fileBytes, long rows,
+                               LocalDateTime startedAt, LocalDateTime updatedAt, String error, JsonNode totals) {
+            this.id = id;
+            this.path = path;
+            this.state = state;
+            this.bytesRead = bytesRead;
+            this.fileBytes = fileBytes;
+            this.rows = rows;
+            this.startedAt = startedAt;
+            this.updatedAt = updatedAt;
+            this.error = error;
+            this.totals = totals;
+        }
+
+        public String getId() { return id; }
+        public String getPath() { return path; }
+        // FOLLOWING, or STOPPED / IDLE in the last event of a stream
+        public String getState() { return state; }
+        public long getBytesRead() { return bytesRead; }
+        public long getFileBytes() { return fileBytes; }
+        public long getRows() { return rows; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public LocalDateTime getUpdatedAt() { return updatedAt; }
+        // Why the last read failed, null while the file reads fine
+        public String getError() { return error; }
+        // summary, tasks and hostData in the shape of an analysis result
+        public JsonNode getTotals() { return totals; }
+    }
+}
@@ -0,0 +1,115 @@
+package com.carbonfootprint.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.EnergyKernel;
+import com.carbonfootprint.analysis.EnergyModel;
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.analysis.ProgressListener;
+import com.carbonfootprint.analysis.TraceAggregates;
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.carbonfootprint.analysis.TraceColumnFile;
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.exception.ScriptExecutionException;
+import com.carbonfootprint.model.Script;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pure Java implementation of the evaluation.py model. Runs in-process, so there is no
+ * interpreter start-up or pandas import per analysis. Traces with a columnar copy (see
+ * {@link ColumnarTraceService}) are read from it instead of being parsed.
+ */
+@Service
+public class NativeTraceAnalyzer implements TraceAnalyzer {
+
+    public static final String NAME = "native";
+
+    private static final Logger logger = LoggerFactory.getLogger(NativeTraceAnalyzer.class);
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private CarbonIntensityService carbonIntensityService;
+
+    @Autowired
+    private PowerProfileService powerProfileService;
+
+    @Autowired
+    private WhatIfService whatIfService;
+
+    @Autowired
+    private ColumnarTraceService columnarTraceService;
+
+    private TraceAnalysisEngine engine;
+
+    @PostConstruct
+    public void init() {
+        engine = new TraceAnalysisEngine(analysisConfig.resolveParallelism(), analysisConfig.getParallelThresholdBytes(),
+                carbonIntensityService.getIntensity(), powerProfileService.getProfiles());
+        logger.info("Native trace analyzer using {} parser threads and the {} energy kernel",
+                engine.getParallelism(), EnergyKernel.preferred().getName());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        engine.close();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getCarbonIntensityProfile() {
+        return carbonIntensityService.getIntensity().getProfile();
+    }
+
+    @Override
+    public String getVersion() {
+        return NAME + "-" + EnergyModel.VERSION;
+    }
+
+    @Override
+    public JsonNode analyze(Script script) {
+        return analyze(script, ProgressListener.NONE);
+    }
+
+    @Override
+    public JsonNode analyze(Script script, ProgressListener progress) {
+        Path traceFile = Paths.get(script.getFilePath());
+        if (!Files.exists(traceFile)) {
+            throw new ScriptExecutionException("File does not exist: " + script.getFilePath());
+        }
+
+        long start = System.nanoTime();
+        PowerProfiles power = powerProfileService.forHardware(hardwareConfig(script));
+        try (TraceColumnFile columns = columnarTraceService.open(script)) {
+            TraceAggregates aggregates = columns != null
+                    ? engine.aggregate(columns, progress, power)
+                    : engine.aggregate(traceFile, progress, power);
+            logger.info("Native analysis of {} finished: {} rows from {} in {} ms", script.getFileName(),
+                    aggregates.getRows(), columns != null ? "columns" : "CSV", (System.nanoTime() - start) / 1_000_000);
+            whatIfService.saveRollup(script.getContentHash(), aggregates.getRollup());
+            return aggregates.toResultNode(hardwareConfig(script));
+        } catch (IOException e) {
+            throw new ScriptExecutionException("Failed to analyze trace file: " + e.getMessage(), e);
+        }
+    }
+
+    private static String hardwareConfig(Script script) {
+        return script.getHardwareConfig() != null ? script.getHardwareConfig() : "default";
+    }
+}
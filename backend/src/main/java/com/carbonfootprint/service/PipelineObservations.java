@@ -0,0 +1,105 @@
+package com.carbonfootprint.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+/**
+ * Names and tags of the upload, analysis, visualization and dashboard measurements. Every
+ * timing is a Micrometer Observation, so it becomes both a timer (with histogram buckets, see
+ * management.metrics in application.yml) and a span in the current trace; an analysis shows up
+ * as one span with a child per phase, under the request that queued it.
+ */
+@Service
+public class PipelineObservations {
+
+    public static final String UPLOAD = "carbon.upload";
+    public static final String UPLOAD_SIZE = "carbon.upload.size";
+    public static final String ANALYSIS = "carbon.analysis";
+    public static final String ANALYSIS_PHASE = "carbon.analysis.phase";
+    public static final String VISUALIZATION = "carbon.visualization";
+    public static final String DASHBOARD_QUERY = "carbon.dashboard.query";
+
+    // Phases of one analysis; the python ones are only recorded when the python analyzer runs
+    public static final String PHASE_CACHE_LOOKUP = "cache-lookup";
+    public static final String PHASE_ANALYZE = "analyze";
+    public static final String PHASE_SCRIPT_EXTRACTION = "script-extraction";
+    public static final String PHASE_PROCESS_SPAWN = "process-spawn";
+    public static final String PHASE_WORKER_COMPUTE = "worker-compute";
+    public static final String PHASE_OUTPUT_PARSE = "output-parse";
+    public static final String PHASE_DB_SAVE = "db-save";
+
+    private static final long MB = 1024L * 1024;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Storing one uploaded trace; tag the outcome once it is known. */
+    public Observation upload(long bytes) {
+        DistributionSummary.builder(UPLOAD_SIZE)
+                .baseUnit("bytes")
+                .tag("trace.size", sizeBucket(bytes))
+                .register(meterRegistry)
+                .record(Math.max(0, bytes));
+        return Observation.createNotStarted(UPLOAD, observationRegistry)
+                .lowCardinalityKeyValue("trace.size", sizeBucket(bytes));
+    }
+
+    /** One analysis, from the cache lookup to the saved result. */
+    public Observation analysis(String analyzer, long traceBytes) {
+        return Observation.createNotStarted(ANALYSIS, observationRegistry)
+                .lowCardinalityKeyValue("analyzer", analyzer)
+                .lowCardinalityKeyValue("trace.size", sizeBucket(traceBytes));
+    }
+
+    /** A phase of the analysis running on this thread. */
+    public Observation phase(String phase, String analyzer) {
+        return phase(phase, analyzer, current());
+    }
+
+    /** A phase that runs on another thread than the analysis it belongs to. */
+    public Observation phase(String phase, String analyzer, Observation parent) {
+        return Observation.createNotStarted(ANALYSIS_PHASE, observationRegistry)
+                .parentObservation(parent)
+                .lowCardinalityKeyValue("phase", phase)
+                .lowCardinalityKeyValue("analyzer", analyzer);
+    }
+
+    /** Building the chart data of one result; tag whether the cache had it. */
+    public Observation visualization() {
+        return Observation.createNotStarted(VISUALIZATION, observationRegistry);
+    }
+
+    public Observation dashboardQuery(String query) {
+        return Observation.createNotStarted(DASHBOARD_QUERY, observationRegistry)
+                .lowCardinalityKeyValue("query", query);
+    }
+
+    /** The observation in scope on this thread, to hand to work done elsewhere; may be null. */
+    public Observation current() {
+        return observationRegistry.getCurrentObservation();
+    }
+
+    // A handful of fixed buckets keeps the tag low-cardinality
+    static String sizeBucket(long bytes) {
+        if (bytes < 0) {
+            return "unknown";
+        } else if (bytes < MB) {
+            return "0-1MB";
+        } else if (bytes < 16 * MB) {
+            return "1-16MB";
+        } else if (bytes < 256 * MB) {
+            return "16-256MB";
+        } else if (bytes < 4096 * MB) {
+            return "256MB-4GB";
+        }
+        return "4GB+";
+    }
+}
@@ -0,0 +1,73 @@
+package com.carbonfootprint.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.PowerProfile;
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.config.AnalysisConfig;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Holds the hardware power profiles of {@code analysis.power-profiles} and the hosts they apply
+ * to. The registry is built once at start-up and never changes; a profile or mapping that does
+ * not make sense stops the start.
+ */
+@Service
+public class PowerProfileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PowerProfileService.class);
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    private PowerProfiles profiles = PowerProfiles.DEFAULT;
+
+    @PostConstruct
+    public void init() {
+        List<PowerProfile> configured = new ArrayList<>();
+        try {
+            for (Map.Entry<String, AnalysisConfig.PowerProfileProperties> entry : analysisConfig.getPowerProfiles().entrySet()) {
+                AnalysisConfig.PowerProfileProperties properties = entry.getValue();
+                configured.add(new PowerProfile(entry.getKey(), properties.getCpuWattsPerCore(), properties.getIdleWatts(),
+                        properties.getMemoryWattsPerGb(), properties.getStorageWattsPerGb()));
+            }
+            profiles = PowerProfiles.of(configured, analysisConfig.getPowerHostProfiles(),
+                    analysisConfig.getPowerDefaultProfile());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid power profiles: " + e.getMessage(), e);
+        }
+        for (PowerProfile profile : profiles.getProfiles()) {
+            logger.info("Power profile {}", profile);
+        }
+        profiles.getHostProfiles().forEach((host, profile) -> logger.info("Hosts {} use power profile {}", host, profile));
+        logger.info("Power profiles {}: {} for other hosts", profiles.getFingerprint(), profiles.getDefaultProfile().getName());
+    }
+
+    public PowerProfiles getProfiles() {
+        return profiles;
+    }
+
+    /**
+     * The registry with the profile a script's {@code hardwareConfig} names as default for its
+     * unmapped hosts. Any other value ("default", a free-form label) keeps the configured default.
+     */
+    public PowerProfiles forHardware(String hardwareConfig) {
+        return profiles.withDefault(hardwareConfig);
+    }
+
+    /**
+     * The part of the result cache key that the power model contributes: which default a script
+     * gets and which coefficients and host mappings were configured.
+     */
+    public String cacheToken(String hardwareConfig) {
+        return forHardware(hardwareConfig).getDefaultProfile().getName() + "@" + profiles.getFingerprint();
+    }
+}
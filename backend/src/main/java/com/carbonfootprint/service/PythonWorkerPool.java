@@ -0,0 +1,435 @@
+package com.carbonfootprint.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.PowerProfile;
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.config.PythonConfig;
+import com.carbonfootprint.exception.ScriptExecutionException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps long-lived "evaluation.py --serve" processes so an analysis does not pay interpreter
+ * start-up and the pandas import every time.
+ *
+ * Requests and responses are frames of a 4-byte big-endian length followed by UTF-8 JSON. A
+ * response is parsed straight off the pipe, bounded by its frame length and python.max-output-bytes,
+ * without first being collected in memory. stderr is drained on its own thread into a small ring
+ * buffer whose tail is attached to failures. A worker serves one request at a time; workers that
+ * exit, miss the job timeout, send something invalid or grow past the memory limit are thrown
+ * away and replaced on the next request. Nothing is started until the python analyzer is
+ * actually used.
+ */
+@Service
+public class PythonWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(PythonWorkerPool.class);
+
+    @Autowired
+    private PythonConfig pythonConfig;
+
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    @Autowired
+    private PipelineObservations pipelineObservations;
+
+    private final Queue<PythonWorker> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger workerIds = new AtomicInteger();
+    private final ExecutorService responseReaders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "python-worker-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Semaphore permits;
+    private volatile File scriptFile;
+    private boolean tempScript;
+
+    /**
+     * Runs one analysis on a pooled worker and returns the parsed response. Blocks while all
+     * workers are busy. The power profiles travel with the request, so the workers apply the
+     * same per-host coefficients as the native analyzer.
+     */
+    public JsonNode analyze(String filePath, String hardware, PowerProfiles power) {
+        Semaphore slots = permits();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptExecutionException("Interrupted while waiting for a Python worker", e);
+        }
+
+        PythonWorker worker = null;
+        boolean reusable = false;
+        try {
+            worker = takeWorker();
+            ObjectNode request = jsonCodec.createObjectNode();
+            request.put("file_path", filePath);
+            request.put("hardware", hardware);
+            writePowerProfiles(request.putObject("power"), power);
+            worker.send(jsonCodec.writeTree(request));
+
+            // The reader thread reports its phases under the caller's analysis
+            PythonWorker current = worker;
+            Observation parent = pipelineObservations.current();
+            Future<JsonNode> response = responseReaders.submit(() -> {
+                int length = phase(PipelineObservations.PHASE_WORKER_COMPUTE, parent)
+                        .observeChecked(() -> current.awaitResponse(pythonConfig.getMaxOutputBytes()));
+                return phase(PipelineObservations.PHASE_OUTPUT_PARSE, parent)
+                        .observeChecked(() -> current.parseResponse(jsonCodec, length));
+            });
+            JsonNode result;
+            try {
+                result = response.get(pythonConfig.getJobTimeoutSeconds(), TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                response.cancel(true);
+                throw failure(worker, "Python analysis timed out after "
+                        + pythonConfig.getJobTimeoutSeconds() + " seconds", null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScriptExecutionException("Python analysis interrupted", e);
+            } catch (ExecutionException e) {
+                throw failure(worker, "Python worker failed: " + e.getCause().getMessage(), e.getCause());
+            }
+
+            reusable = worker.withinMemoryLimit(pythonConfig.getWorkerMaxMemoryMb());
+            return result;
+        } catch (IOException e) {
+            throw new ScriptExecutionException("Failed to communicate with Python worker: " + e.getMessage(), e);
+        } finally {
+            if (worker != null) {
+                if (reusable) {
+                    idle.offer(worker);
+                } else {
+                    // Hung, crashed, interrupted or too big: the process is not trusted for another job
+                    worker.destroy();
+                }
+            }
+            slots.release();
+        }
+    }
+
+    // {"default": name, "profiles": {name: coefficients}, "hosts": {host or prefix*: name}}
+    private static void writePowerProfiles(ObjectNode node, PowerProfiles power) {
+        node.put("default", power.getDefaultProfile().getName());
+        ObjectNode profiles = node.putObject("profiles");
+        for (PowerProfile profile : power.getProfiles()) {
+            ObjectNode coefficients = profiles.putObject(profile.getName());
+            coefficients.put("cpu_watts_per_core", profile.getCpuWattsPerCore());
+            coefficients.put("idle_watts", profile.getIdleWatts());
+            coefficients.put("memory_watts_per_gb", profile.getMemoryWattsPerGb());
+            coefficients.put("storage_watts_per_gb", profile.getStorageWattsPerGb());
+        }
+        ObjectNode hosts = node.putObject("hosts");
+        power.getHostProfiles().forEach(hosts::put);
+    }
+
+    private ScriptExecutionException failure(PythonWorker worker, String message, Throwable cause) {
+        String stderr = worker.stderrTail();
+        if (!stderr.isEmpty()) {
+            logger.warn("{}; last stderr lines of worker {}:\n{}", message, worker.id, stderr);
+            message += "\n" + stderr;
+        }
+        return new ScriptExecutionException(message, cause);
+    }
+
+    private PythonWorker takeWorker() throws IOException {
+        PythonWorker worker;
+        while ((worker = idle.poll()) != null) {
+            if (worker.isAlive()) {
+                return worker;
+            }
+            logger.warn("Python worker {} exited unexpectedly, replacing it", worker.id);
+            worker.destroy();
+        }
+        return startWorker();
+    }
+
+    private PythonWorker startWorker() throws IOException {
+        List<String> command = List.of(pythonConfig.getExecutable(), script().getAbsolutePath(), "--serve");
+        return phase(PipelineObservations.PHASE_PROCESS_SPAWN, pipelineObservations.current()).observeChecked(() -> {
+            Process process = new ProcessBuilder(command).start();
+            PythonWorker worker = new PythonWorker(workerIds.incrementAndGet(), process,
+                    Math.max(1, pythonConfig.getStderrTailLines()));
+            logger.info("Started Python worker {} (pid {})", worker.id, process.pid());
+            return worker;
+        });
+    }
+
+    private Observation phase(String phase, Observation parent) {
+        return pipelineObservations.phase(phase, PythonRunnerService.NAME, parent);
+    }
+
+    private Semaphore permits() {
+        Semaphore slots = permits;
+        if (slots == null) {
+            synchronized (this) {
+                if (permits == null) {
+                    permits = new Semaphore(Math.max(1, pythonConfig.getWorkers()), true);
+                }
+                slots = permits;
+            }
+        }
+        return slots;
+    }
+
+    // The script is extracted from the JAR once and shared by all workers
+    private synchronized File script() throws IOException {
+        if (scriptFile != null) {
+            return scriptFile;
+        }
+        Resource resource = new ClassPathResource(pythonConfig.getAnalysisScript());
+        if (!resource.exists()) {
+            throw new ScriptExecutionException("Analysis script not found in classpath: " +
+                    pythonConfig.getAnalysisScript());
+        }
+        if (resource.getURI().toString().startsWith("jar:")) {
+            File extracted = phase(PipelineObservations.PHASE_SCRIPT_EXTRACTION, pipelineObservations.current())
+                    .observeChecked(() -> {
+                        File file = File.createTempFile("analysis", ".py");
+                        try (InputStream in = resource.getInputStream()) {
+                            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        return file;
+                    });
+            tempScript = true;
+            scriptFile = extracted;
+            logger.info("Extracted analysis script to {}", extracted.getAbsolutePath());
+        } else {
+            scriptFile = resource.getFile();
+        }
+        return scriptFile;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        PythonWorker worker;
+        while ((worker = idle.poll()) != null) {
+            worker.stop();
+        }
+        responseReaders.shutdownNow();
+        if (tempScript && scriptFile != null && !scriptFile.delete()) {
+            logger.warn("Could not delete temporary file: {}", scriptFile.getAbsolutePath());
+        }
+    }
+
+    /** One "evaluation.py --serve" process. */
+    private static final class PythonWorker {
+        private final int id;
+        private final Process process;
+        private final DataOutputStream requests;
+        private final DataInputStream responses;
+        private final Deque<String> stderrTail = new ArrayDeque<>();
+        private final int stderrTailLines;
+
+        PythonWorker(int id, Process process, int stderrTailLines) {
+            this.id = id;
+            this.process = process;
+            this.stderrTailLines = stderrTailLines;
+            this.requests = new DataOutputStream(process.getOutputStream());
+            this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+
+            // stderr carries the script's logging; it must be drained or the worker blocks
+            Thread drainer = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        logger.debug("Python worker {}: {}", id, line);
+                        remember(line);
+                    }
+                } catch (IOException e) {
+                    // Stream closes with the process
+                }
+            }, "python-worker-" + id + "-stderr");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        void send(byte[] payload) throws IOException {
+            requests.writeInt(payload.length);
+            requests.write(payload);
+            requests.flush();
+        }
+
+        // Blocks until the worker starts answering and returns the length of its response frame
+        int awaitResponse(long maxBytes) throws IOException {
+            int length;
+            try {
+                length = responses.readInt();
+            } catch (EOFException e) {
+                throw new IOException("worker exited" + exitDescription());
+            }
+            if (length < 0) {
+                throw new IOException("invalid frame length " + length);
+            }
+            if (length > maxBytes) {
+                throw new IOException("response of " + length + " bytes exceeds the limit of " + maxBytes);
+            }
+            return length;
+        }
+
+        // The response frame, parsed as it is read. The parser never sees past the frame.
+        JsonNode parseResponse(JsonCodec codec, int length) throws IOException {
+            try (FrameInputStream frame = new FrameInputStream(responses, length)) {
+                return codec.readTree(frame);
+            }
+        }
+
+        // Long lines are cut so a runaway traceback can not hold much memory
+        private void remember(String line) {
+            synchronized (stderrTail) {
+                if (stderrTail.size() == stderrTailLines) {
+                    stderrTail.removeFirst();
+                }
+                stderrTail.addLast(line.length() > 1000 ? line.substring(0, 1000) + "..." : line);
+            }
+        }
+
+        String stderrTail() {
+            synchronized (stderrTail) {
+                return String.join("\n", stderrTail);
+            }
+        }
+
+        // Resident set size from /proc; where that is not available the limit is not enforced
+        boolean withinMemoryLimit(long maxMemoryMb) {
+            Path status = Paths.get("/proc", String.valueOf(process.pid()), "status");
+            try {
+                for (String line : Files.readAllLines(status)) {
+                    if (line.startsWith("VmRSS:")) {
+                        long rssKb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                        if (rssKb / 1024 > maxMemoryMb) {
+                            logger.info("Python worker {} uses {} MB, above the {} MB limit; replacing it",
+                                    id, rssKb / 1024, maxMemoryMb);
+                            return false;
+                        }
+                        return true;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Not on Linux
+            }
+            return true;
+        }
+
+        private String exitDescription() {
+            try {
+                return process.waitFor(1, TimeUnit.SECONDS) ? " with code " + process.exitValue() : "";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "";
+            }
+        }
+
+        // Graceful exit: an empty request ends the serve loop
+        void stop() {
+            try {
+                send(new byte[0]);
+                requests.close();
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    destroy();
+                }
+            } catch (IOException e) {
+                destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                destroy();
+            }
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+            logger.info("Stopped Python worker {}", id);
+        }
+    }
+
+    /**
+     * The body of one frame. Reads stop at the frame end, and closing skips whatever the parser
+     * left unread (trailing whitespace), so the next frame starts in the right place.
+     */
+    private static final class FrameInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        FrameInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("worker exited in the middle of a response");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("worker exited in the middle of a response");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Leaves the pipe open for the next frame
+            in.skipNBytes(remaining);
+            remaining = 0;
+        }
+    }
+}
@@ -2,13 +2,20 @@ package com.carbonfootprint.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,18 +23,29 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.carbonfootprint.analysis.ContentHashes;
+import com.carbonfootprint.analysis.ProgressListener;
+import com.carbonfootprint.analysis.TraceCompression;
 import com.carbonfootprint.config.FileStorageConfig;
 import com.carbonfootprint.config.PythonConfig;
+import com.carbonfootprint.exception.BadRequestException;
 import com.carbonfootprint.exception.FileStorageException;
 import com.carbonfootprint.exception.ResourceNotFoundException;
 import com.carbonfootprint.exception.ScriptExecutionException;
 import com.carbonfootprint.model.AnalysisResult;
 import com.carbonfootprint.model.Script;
 import com.carbonfootprint.repository.ScriptRepository;
+import com.carbonfootprint.service.AnalysisService.NewAnalysisResult;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.micrometer.observation.Observation;
 
 @Service
 public class ScriptService {
@@ -36,80 +54,167 @@ public class ScriptService {
     private ScriptRepository scriptRepository;
     
     @Autowired
-    private PythonRunnerService pythonRunnerService;
+    private List<TraceAnalyzer> traceAnalyzers;
+
+    @Autowired
+    private AnalysisService analysisService;
+
+    @Autowired
+    private AnalysisCacheService analysisCacheService;
+
+    @Autowired
+    private PowerProfileService powerProfileService;
+
+    @Autowired
+    private ColumnarTraceService columnarTraceService;
+
     @Autowired
     private FileStorageConfig fileStorageConfig;
 
     @Autowired
     private PythonConfig pythonConfig;
 
+    @Autowired
+    private PipelineObservations pipelineObservations;
+
     private static final Logger logger = LoggerFactory.getLogger(ScriptService.class);
     
-    // ScriptService.java - 添加详细日志
     public Script storeTraceFile(MultipartFile file) {
-        String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+        Observation observation = pipelineObservations.upload(file.getSize());
+        return observation.observe(() -> {
+            try (InputStream in = file.getInputStream()) {
+                return store(file.getOriginalFilename(), in, Long.MAX_VALUE, null, observation);
+            } catch (IOException ex) {
+                throw new FileStorageException("无法读取上传的文件 " + file.getOriginalFilename(), ex);
+            }
+        });
+    }
+
+    /**
+     * Stores a trace sent as the raw request body, written straight into the upload directory.
+     * {@code contentLength} is only used for metrics (-1 if unknown); {@code expectedSha256}
+     * is optional and checked once the body has arrived.
+     */
+    public Script storeTraceStream(String originalFileName, InputStream body, long contentLength, String expectedSha256) {
+        Observation observation = pipelineObservations.upload(contentLength);
+        return observation.observe(() -> store(originalFileName, body,
+                fileStorageConfig.getMaxUploadBytes(), expectedSha256, observation));
+    }
+
+    // ScriptService.java - 添加详细日志
+    private Script store(String originalFileName, InputStream in, long maxBytes, String expectedSha256,
+            Observation observation) {
+        String fileName = traceFileName(originalFileName);
         logger.info("尝试存储文件: {}", fileName);
         
+        Path tempFile = null;
         try {
-            // 验证文件扩展名
-            if (!fileName.endsWith(".csv")) {
-                logger.error("无效的文件类型: {}", fileName);
-                throw new FileStorageException("无效的文件类型. 只允许CSV文件");
-            }
-            
-            // 获取上传目录
-            String uploadDirPath = fileStorageConfig.getUploadDir();
-            logger.info("上传目录: {}", uploadDirPath);
-            
-            // 创建目标路径
-            Path targetLocation = Paths.get(uploadDirPath).resolve(fileName);
-            logger.info("目标路径: {}", targetLocation.toAbsolutePath());
-            
-            // 确保父目录存在
-            Files.createDirectories(targetLocation.getParent());
-            
-            // 保存文件
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-            logger.info("文件存储成功: {}", fileName);
-            
-            // 保存元数据到数据库
-            Script script = new Script();
-            script.setFileName(fileName);
-            script.setFilePath(targetLocation.toAbsolutePath().toString());
-            script.setUploadTime(LocalDateTime.now());
-            script.setStatus("UPLOADED");
-            
-            Script savedScript = scriptRepository.save(script);
-            logger.info("脚本元数据保存成功，ID: {}", savedScript.getId());
-            
-            return savedScript;
+            // 直接写入上传目录中的临时文件，同时计算 SHA-256 并检查首行
+            tempFile = Files.createTempFile(uploadDirectory(), ".upload-", ".tmp");
+            TraceFileReceiver receiver = new TraceFileReceiver(tempFile, maxBytes, TraceCompression.of(fileName));
+            receiver.receive(in);
+            String contentHash = receiver.finish(expectedSha256);
+            return registerTraceFile(fileName, tempFile, contentHash, observation);
         } catch (IOException ex) {
             logger.error("文件存储失败: {}", ex.getMessage());
             logger.error("堆栈跟踪:", ex);
             throw new FileStorageException("无法存储文件 " + fileName, ex);
+        } finally {
+            // 成功时临时文件已被移走
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Turns a fully received upload into a Script: returns the existing script when the same
+     * content was uploaded before (and deletes {@code received}), otherwise moves the file into
+     * the upload directory under a name derived from its content hash and records it.
+     */
+    public Script registerTraceFile(String fileName, Path received, String contentHash, Observation observation)
+            throws IOException {
+        // 相同内容已经上传过时直接返回已有记录，它的分析结果可以立即复用
+        Optional<Script> existing = findByContentHash(contentHash);
+        if (existing.isPresent()) {
+            Files.deleteIfExists(received);
+            observation.lowCardinalityKeyValue("outcome", "duplicate");
+            logger.info("文件内容与脚本 {} 相同，复用已有记录", existing.get().getId());
+            return existing.get();
+        }
+        
+        // 同一文件系统内移动，不会再复制一次；磁盘上的文件名带内容哈希前缀，同名的不同文件互不覆盖，
+        // fileName 只用于显示
+        Path targetLocation = uploadDirectory().resolve(storedFileName(fileName, contentHash));
+        logger.info("目标路径: {}", targetLocation.toAbsolutePath());
+        Files.move(received, targetLocation, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("文件存储成功: {}", fileName);
+        
+        // 保存元数据到数据库
+        Script script = new Script();
+        script.setFileName(fileName);
+        script.setFilePath(targetLocation.toAbsolutePath().toString());
+        script.setUploadTime(LocalDateTime.now());
+        script.setStatus("UPLOADED");
+        script.setContentHash(contentHash);
+        
+        Script savedScript = scriptRepository.save(script);
+        observation.lowCardinalityKeyValue("outcome", "stored");
+        logger.info("脚本元数据保存成功，ID: {}", savedScript.getId());
+        // 后台转换为列式文件，之后的分析直接读取它
+        columnarTraceService.convertLater(savedScript);
+        
+        return savedScript;
+    }
+
+    /**
+     * The name an upload is stored under; only plain .csv file names are accepted, optionally
+     * gzip or zstd compressed (.csv.gz, .csv.zst). Compressed traces stay compressed on disk.
+     */
+    public String traceFileName(String originalFileName) {
+        String fileName = StringUtils.cleanPath(originalFileName != null ? originalFileName : "");
+        // 验证文件扩展名
+        if (!TraceCompression.isTraceFileName(fileName)) {
+            logger.error("无效的文件类型: {}", fileName);
+            throw new BadRequestException("无效的文件类型. 只允许CSV文件 (" + TraceCompression.extensions() + ")");
+        }
+        // 不允许带目录的文件名，文件只能落在上传目录里
+        if (fileName.contains("/") || fileName.contains("\\") || fileName.startsWith(".")) {
+            throw new BadRequestException("Invalid file name: " + fileName);
+        }
+        return fileName;
+    }
+
+    /** The upload directory, created if needed. Partial uploads are kept here too, so finishing one is a rename. */
+    public Path uploadDirectory() throws IOException {
+        Path directory = Paths.get(fileStorageConfig.getUploadDir());
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", file, e.getMessage());
         }
     }
 
     public AnalysisResult analyzeTraceFile(Long scriptId) {
+        return analyzeTraceFile(scriptId, ProgressListener.NONE);
+    }
+
+    public AnalysisResult analyzeTraceFile(Long scriptId, ProgressListener progress) {
         Script script = getScriptById(scriptId);
         logger.info("Starting analysis for script ID: {}", scriptId);
         
-        // 验证是否为 trace 文件
-        if (!script.getFileName().endsWith(".csv")) {
-            throw new ScriptExecutionException("Only CSV trace files can be analyzed");
-        }
+        validateTraceFile(script);
         
         try {
-            // 执行分析
-            AnalysisResult result = pythonRunnerService.analyzeTraceFile(script);
-            logger.info("Analysis completed successfully, result ID: {}", result.getId());
-            
-            // 更新脚本状态
-            script.setStatus("ANALYZED");
-            scriptRepository.save(script);
-            logger.info("Script status updated to ANALYZED");
-            
-            return result;
+            TraceAnalyzer analyzer = getTraceAnalyzer();
+            Observation observation = pipelineObservations.analysis(analyzer.getName(), traceSize(script));
+            return observation.observe(() -> analyze(script, analyzer, progress, observation));
         } catch (Exception ex) {
             logger.error("Analysis failed for script ID: {}", scriptId, ex);
             script.setStatus("ANALYSIS_FAILED");
@@ -117,8 +222,311 @@ public class ScriptService {
             throw ex;
         }
     }
+
+    // One analysis inside its observation; each phase is a child span
+    private AnalysisResult analyze(Script script, TraceAnalyzer analyzer, ProgressListener progress,
+            Observation observation) {
+        AnalysisOutcome outcome = compute(script, analyzer, progress, observation);
+        if (outcome.isCached()) {
+            logger.info("Reusing cached analysis result {} for script ID: {}", outcome.getCachedResult().getId(), script.getId());
+            markAnalyzed(script);
+            return outcome.getCachedResult();
+        }
+
+        String name = analyzer.getName();
+        // 每个脚本只保留一份结果，重新分析时在同一事务中替换旧结果
+        AnalysisResult result = pipelineObservations.phase(PipelineObservations.PHASE_DB_SAVE, name).observe(() ->
+                analysisService.replaceAnalysisResults(
+                        List.of(new NewAnalysisResult(script, outcome.getData(), outcome.getCacheKey()))).get(0));
+        script.setResult(null);
+        if (outcome.getCacheKey() != null) {
+            analysisCacheService.put(outcome.getCacheKey(), result.getId());
+        }
+        logger.info("Analysis completed successfully, result ID: {}", result.getId());
+        
+        // 更新脚本状态
+        markAnalyzed(script);
+        
+        return result;
+    }
+
+    // The cache lookup and the analysis itself, without any database writes
+    private AnalysisOutcome compute(Script script, TraceAnalyzer analyzer, ProgressListener progress,
+            Observation observation) {
+        String name = analyzer.getName();
+        String cacheKey = cacheKey(script, analyzer);
+        if (cacheKey != null) {
+            Optional<AnalysisResult> cached = pipelineObservations.phase(PipelineObservations.PHASE_CACHE_LOOKUP, name)
+                    .observe(() -> analysisCacheService.lookup(cacheKey));
+            if (cached.isPresent()) {
+                observation.lowCardinalityKeyValue("cache", "hit");
+                return new AnalysisOutcome(script, cacheKey, null, cached.get());
+            }
+        }
+        observation.lowCardinalityKeyValue("cache", "miss");
+
+        // 执行分析
+        logger.info("Using {} analyzer", name);
+        JsonNode resultData = pipelineObservations.phase(PipelineObservations.PHASE_ANALYZE, name)
+                .observe(() -> analyzer.analyze(script, progress));
+        return new AnalysisOutcome(script, cacheKey, resultData, null);
+    }
+
+    // ---- Batch entry points: analyses run in parallel, their database writes are grouped ----
+
+    /** Loads many scripts with one query; ids without a script are missing from the result. */
+    public List<Script> getScriptsByIds(Collection<Long> scriptIds) {
+        return scriptRepository.findAllById(scriptIds);
+    }
+
+    /** Sets the status of many scripts with one update statement. */
+    @Transactional
+    public void updateStatuses(Collection<Long> scriptIds, String status) {
+        if (!scriptIds.isEmpty()) {
+            scriptRepository.updateStatus(scriptIds, status);
+        }
+    }
+
+    /**
+     * Analyzes one script of a batch (or finds its cached result) without writing anything;
+     * the outcome is saved later together with others through {@link #saveAnalyses}.
+     */
+    public AnalysisOutcome computeAnalysis(Script script, ProgressListener progress) {
+        validateTraceFile(script);
+        TraceAnalyzer analyzer = getTraceAnalyzer();
+        Observation observation = pipelineObservations.analysis(analyzer.getName(), traceSize(script));
+        return observation.observe(() -> compute(script, analyzer, progress, observation));
+    }
+
+    /** The outcome of a batch item whose script another analysis saved while the item waited for it. */
+    public AnalysisOutcome reusedAnalysis(Script script, Long resultId) {
+        return new AnalysisOutcome(script, null, null, analysisService.getAnalysisResultById(resultId));
+    }
+
+    /**
+     * Saves the outcomes of several analyses in one transaction: the new results, the removal of
+     * the results they replace, and one status update for all scripts. Returns the result id of
+     * every script. The result cache learns the new ids once the transaction has committed.
+     */
+    @Transactional
+    public Map<Long, Long> saveAnalyses(List<AnalysisOutcome> outcomes) {
+        Map<Long, Long> resultIds = new HashMap<>();
+        List<AnalysisOutcome> computed = new ArrayList<>();
+        List<NewAnalysisResult> toSave = new ArrayList<>();
+        for (AnalysisOutcome outcome : outcomes) {
+            Script script = outcome.getScript();
+            if (outcome.isCached()) {
+                resultIds.put(script.getId(), outcome.getCachedResult().getId());
+                continue;
+            }
+            computed.add(outcome);
+            toSave.add(new NewAnalysisResult(script, outcome.getData(), outcome.getCacheKey()));
+        }
+        // 每个脚本只保留一份结果；内存中的脚本等提交后再更新，回滚时可以原样重试
+        List<AnalysisResult> saved = analysisService.replaceAnalysisResults(toSave);
+        for (int i = 0; i < saved.size(); i++) {
+            resultIds.put(computed.get(i).getScript().getId(), saved.get(i).getId());
+        }
+        scriptRepository.updateStatus(resultIds.keySet(), "ANALYZED");
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (int i = 0; i < saved.size(); i++) {
+                    computed.get(i).getScript().setResult(null);
+                    if (computed.get(i).getCacheKey() != null) {
+                        analysisCacheService.put(computed.get(i).getCacheKey(), saved.get(i).getId());
+                    }
+                }
+            }
+        });
+        return resultIds;
+    }
+
+    /**
+     * Resolves a directory given relative to the upload directory; it must exist and may not
+     * lead outside. An empty name is the upload directory itself.
+     */
+    public Path resolveTraceDirectory(String directory) {
+        Path root;
+        try {
+            root = uploadDirectory();
+        } catch (IOException e) {
+            throw new FileStorageException("无法创建上传目录", e);
+        }
+        String relative = StringUtils.cleanPath(directory != null ? directory : "");
+        if (relative.startsWith("/") || relative.startsWith("..") || relative.contains(":")) {
+            throw new BadRequestException("The directory must be inside the upload directory: " + directory);
+        }
+        Path dir = relative.isEmpty() || relative.equals(".") ? root : root.resolve(relative);
+        if (!Files.isDirectory(dir)) {
+            throw new BadRequestException("Not a directory under the upload directory: " + directory);
+        }
+        return dir;
+    }
+
+    /**
+     * Registers the traces found under {@code dir} (searched recursively) that are not scripts
+     * yet, and returns the script of each file, so files with the same content return the same
+     * script. Files already recorded, by path or by content, keep their existing script; a file
+     * rewritten since it was recorded gets its new content hash and loses its old result.
+     */
+    public List<Script> registerTraceDirectory(Path dir) {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith("."))
+                    .filter(file -> TraceCompression.isTraceFileName(file.getFileName().toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new FileStorageException("无法读取目录 " + dir, e);
+        }
+
+        List<Script> scripts = new ArrayList<>();
+        for (Path file : files) {
+            String filePath = file.toAbsolutePath().toString();
+            String contentHash;
+            try {
+                contentHash = ContentHashes.hashFile(file);
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable trace {}: {}", file, e.getMessage());
+                continue;
+            }
+            Optional<Script> known = scriptRepository.findByFilePath(filePath).stream().findFirst();
+            if (known.isPresent()) {
+                Script script = known.get();
+                if (!contentHash.equals(script.getContentHash())) {
+                    // 文件在原路径被改写：旧结果描述的内容已不存在，删除它（连同缓存）并按新内容重新记录
+                    logger.info("Trace {} changed since it was recorded as script {}", file, script.getId());
+                    if (script.getResult() != null) {
+                        analysisService.deleteAnalysisResult(script.getResult());
+                        script.setResult(null);
+                    }
+                    script.setContentHash(contentHash);
+                    script.setStatus("UPLOADED");
+                    script = scriptRepository.save(script);
+                    columnarTraceService.convertLater(script);
+                }
+                scripts.add(script);
+                continue;
+            }
+            Optional<Script> sameContent = findByContentHash(contentHash);
+            if (sameContent.isPresent()) {
+                scripts.add(sameContent.get());
+                continue;
+            }
+            Script script = new Script();
+            script.setFileName(file.getFileName().toString());
+            script.setFilePath(filePath);
+            script.setUploadTime(LocalDateTime.now());
+            script.setStatus("UPLOADED");
+            script.setContentHash(contentHash);
+            Script saved = scriptRepository.save(script);
+            columnarTraceService.convertLater(saved);
+            scripts.add(saved);
+        }
+        logger.info("Found {} traces under {}", scripts.size(), dir);
+        return scripts;
+    }
+
+    /**
+     * Returns the cached result for the script's trace under the current analyzer, if any,
+     * without counting a miss (the analysis itself does the counted lookup).
+     */
+    public Optional<AnalysisResult> findCachedResult(Script script) {
+        String cacheKey = cacheKey(script, getTraceAnalyzer());
+        return cacheKey != null ? analysisCacheService.peek(cacheKey) : Optional.empty();
+    }
+
+    private void markAnalyzed(Script script) {
+        script.setStatus("ANALYZED");
+        scriptRepository.save(script);
+        logger.info("Script status updated to ANALYZED");
+    }
+
+    // Null when the trace can not be hashed, in which case the cache is bypassed
+    private String cacheKey(Script script, TraceAnalyzer analyzer) {
+        if (script.getContentHash() == null) {
+            // Uploaded before hashes were recorded
+            try {
+                script.setContentHash(ContentHashes.hashFile(Paths.get(script.getFilePath())));
+                scriptRepository.save(script);
+            } catch (IOException e) {
+                logger.warn("Could not hash trace file {}: {}", script.getFilePath(), e.getMessage());
+                return null;
+            }
+        }
+        String hardware = script.getHardwareConfig() != null ? script.getHardwareConfig() : "default";
+        return analysisCacheService.cacheKey(script.getContentHash(), analyzer.getVersion(),
+                powerProfileService.cacheToken(hardware), analyzer.getCarbonIntensityProfile());
+    }
+
+    // -1 when the file can not be read; the analysis itself reports that
+    private static long traceSize(Script script) {
+        try {
+            return Files.size(Paths.get(script.getFilePath()));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // The name a trace is stored under: unique per content, and keeping the suffix that tells its compression
+    static String storedFileName(String fileName, String contentHash) {
+        return contentHash.substring(0, 16) + "-" + fileName;
+    }
+
+    private Optional<Script> findByContentHash(String contentHash) {
+        return scriptRepository.findByContentHash(contentHash).stream()
+                .filter(script -> Files.exists(Paths.get(script.getFilePath())))
+                .findFirst();
+    }
+
+    // 验证是否为 trace 文件
+    public void validateTraceFile(Script script) {
+        if (!TraceCompression.isTraceFileName(script.getFileName())) {
+            throw new ScriptExecutionException("Only CSV trace files can be analyzed (" + TraceCompression.extensions() + ")");
+        }
+    }
+
+    public Script updateStatus(Long scriptId, String status) {
+        Script script = getScriptById(scriptId);
+        script.setStatus(status);
+        return scriptRepository.save(script);
+    }
+
+    // Resolves the engine configured by python.analyzer
+    public TraceAnalyzer getTraceAnalyzer() {
+        String name = pythonConfig.getAnalyzer();
+        return traceAnalyzers.stream()
+                .filter(analyzer -> analyzer.getName().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new ScriptExecutionException("Unknown analyzer configured: " + name));
+    }
+
     public Script getScriptById(Long id) {
         return scriptRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Script not found with id: " + id));
     }
+
+    // What analyzing one script produced: either new result data or a cached result to reuse
+    public static class AnalysisOutcome {
+        private final Script script;
+        private final String cacheKey;
+        private final JsonNode data;
+        private final AnalysisResult cachedResult;
+
+        public AnalysisOutcome(Script script, String cacheKey, JsonNode data, AnalysisResult cachedResult) {
+            this.script = script;
+            this.cacheKey = cacheKey;
+            this.data = data;
+            this.cachedResult = cachedResult;
+        }
+
+        public Script getScript() { return script; }
+        public String getCacheKey() { return cacheKey; }
+        public JsonNode getData() { return data; }
+        public AnalysisResult getCachedResult() { return cachedResult; }
+        public boolean isCached() { return cachedResult != null; }
+    }
 }
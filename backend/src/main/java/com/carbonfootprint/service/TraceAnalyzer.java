@@ -0,0 +1,44 @@
+package com.carbonfootprint.service;
+
+import com.carbonfootprint.analysis.CarbonIntensity;
+import com.carbonfootprint.analysis.ProgressListener;
+import com.carbonfootprint.model.Script;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * An engine that turns a stored trace file into the analysis JSON consumed by
+ * {@link AnalysisService#saveAnalysisResult(Script, JsonNode)}.
+ */
+public interface TraceAnalyzer {
+
+    /** Name used by the {@code python.analyzer} property to select this engine. */
+    String getName();
+
+    /**
+     * Identifies the engine and model revision. Part of the result cache key, so change it
+     * whenever the same trace would produce different numbers.
+     */
+    String getVersion();
+
+    /**
+     * The carbon intensity profile the engine applies, recorded with every result and part of
+     * the result cache key. Engines without time-varying intensity use the constant one.
+     */
+    default String getCarbonIntensityProfile() {
+        return CarbonIntensity.CONSTANT.getProfile();
+    }
+
+    /**
+     * Runs the energy/carbon model over the script's trace file.
+     *
+     * @return the result tree in the same shape evaluation.py prints
+     */
+    JsonNode analyze(Script script);
+
+    /**
+     * Same as {@link #analyze(Script)}, reporting progress where the engine can measure it.
+     */
+    default JsonNode analyze(Script script, ProgressListener progress) {
+        return analyze(script);
+    }
+}
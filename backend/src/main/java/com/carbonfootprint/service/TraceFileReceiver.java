@@ -0,0 +1,189 @@
+package com.carbonfootprint.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+import com.carbonfootprint.analysis.ContentHashes;
+import com.carbonfootprint.analysis.TraceCompression;
+import com.carbonfootprint.analysis.TraceLayout;
+import com.carbonfootprint.exception.BadRequestException;
+
+/**
+ * Writes an uploaded trace to its file as the bytes arrive, hashing them and checking the first
+ * line on the way, so the upload is neither buffered nor read back. One receiver can be fed by
+ * several requests (resumable uploads); it only ever appends at its current length, and bytes
+ * are counted once they are on disk, so a dropped connection leaves a consistent prefix.
+ *
+ * Compressed traces are stored as uploaded and hashed as stored. Their first line is checked by
+ * decompressing the start of the upload, kept in memory until the line is complete.
+ */
+final class TraceFileReceiver {
+
+    /** A first line longer than this is not a trace header. */
+    static final int MAX_FIRST_LINE_BYTES = 64 * 1024;
+
+    /** How much of a compressed upload is kept to find its first line. */
+    static final int MAX_COMPRESSED_HEAD_BYTES = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FIRST_PROBE_BYTES = 16 * 1024;
+
+    private final Path file;
+    private final long maxBytes;
+    private final TraceCompression compression;
+    private final MessageDigest digest = ContentHashes.newDigest();
+    private final ByteArrayOutputStream firstLine = new ByteArrayOutputStream();
+    private ByteArrayOutputStream compressedHead;
+    private int nextProbe = FIRST_PROBE_BYTES;
+    private boolean firstLineChecked;
+    private long length;
+
+    TraceFileReceiver(Path file, long maxBytes, TraceCompression compression) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.compression = compression;
+        this.compressedHead = compression.isCompressed() ? new ByteArrayOutputStream() : null;
+    }
+
+    Path getFile() { return file; }
+    long getLength() { return length; }
+
+    /**
+     * Appends everything {@code in} delivers and returns the number of bytes added. Throws
+     * BadRequestException as soon as the first line is complete and not a usable trace, or the
+     * file grows past the limit.
+     */
+    long receive(InputStream in) throws IOException {
+        long received = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.position(length);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                if (length + n > maxBytes) {
+                    throw new BadRequestException("The trace exceeds the upload limit of " + maxBytes + " bytes");
+                }
+                if (!firstLineChecked) {
+                    if (compressedHead != null) {
+                        collectCompressedHead(buffer, n);
+                    } else {
+                        collectFirstLine(buffer, n);
+                    }
+                }
+                wrapped.clear().limit(n);
+                while (wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+                digest.update(buffer, 0, n);
+                length += n;
+                received += n;
+            }
+        }
+        return received;
+    }
+
+    /**
+     * Ends the upload: checks a first line that never ended (a one-line file) and returns the
+     * hex SHA-256, which must equal {@code expectedSha256} when the client sent one.
+     */
+    String finish(String expectedSha256) {
+        if (!firstLineChecked) {
+            if (compressedHead != null && length > 0) {
+                probeCompressedHead(true);
+            } else {
+                checkFirstLine();
+            }
+        }
+        String sha256 = ContentHashes.hex(digest);
+        if (expectedSha256 != null && !expectedSha256.isBlank() && !expectedSha256.strip().equalsIgnoreCase(sha256)) {
+            throw new BadRequestException("Checksum mismatch: received content has SHA-256 " + sha256);
+        }
+        return sha256;
+    }
+
+    private void collectFirstLine(byte[] buffer, int n) {
+        int end = 0;
+        while (end < n && buffer[end] != '\n') {
+            end++;
+        }
+        int room = MAX_FIRST_LINE_BYTES - firstLine.size();
+        if (end > room) {
+            throw new BadRequestException("The first line of the trace is longer than " + MAX_FIRST_LINE_BYTES + " bytes");
+        }
+        firstLine.write(buffer, 0, end);
+        if (end < n) {
+            checkFirstLine();
+        }
+    }
+
+    // Decompresses the head each time it has doubled, until the first line is complete
+    private void collectCompressedHead(byte[] buffer, int n) {
+        int room = MAX_COMPRESSED_HEAD_BYTES - compressedHead.size();
+        compressedHead.write(buffer, 0, Math.min(n, room));
+        if (compressedHead.size() >= nextProbe || compressedHead.size() == MAX_COMPRESSED_HEAD_BYTES) {
+            nextProbe = compressedHead.size() * 2;
+            probeCompressedHead(compressedHead.size() == MAX_COMPRESSED_HEAD_BYTES);
+        }
+    }
+
+    /**
+     * Looks for the end of the first line in the decompressed head. A truncated stream is only
+     * an error once no more of it will be looked at ({@code last}).
+     */
+    private void probeCompressedHead(boolean last) {
+        byte[] head = compressedHead.toByteArray();
+        if (!compression.hasMagic(head, head.length)) {
+            if (head.length >= compression.magicLength() || last) {
+                throw new BadRequestException("The trace is not " + compression.name().toLowerCase(Locale.ROOT) + " compressed");
+            }
+            return;
+        }
+        firstLine.reset();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = compression.decompress(new ByteArrayInputStream(head))) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                int end = 0;
+                while (end < n && buffer[end] != '\n') {
+                    end++;
+                }
+                if (firstLine.size() + end > MAX_FIRST_LINE_BYTES) {
+                    throw new BadRequestException("The first line of the trace is longer than " + MAX_FIRST_LINE_BYTES + " bytes");
+                }
+                firstLine.write(buffer, 0, end);
+                if (end < n) {
+                    break;
+                }
+            }
+            if (n < 0 && !last) {
+                // The stream may go on in another member or frame
+                return;
+            }
+        } catch (IOException e) {
+            if (last) {
+                throw new BadRequestException("The trace could not be decompressed: " + e.getMessage());
+            }
+            return;
+        }
+        compressedHead = null;
+        checkFirstLine();
+    }
+
+    private void checkFirstLine() {
+        firstLineChecked = true;
+        String problem = TraceLayout.validate(firstLine.toString(StandardCharsets.UTF_8));
+        if (problem != null) {
+            throw new BadRequestException(problem);
+        }
+    }
+}
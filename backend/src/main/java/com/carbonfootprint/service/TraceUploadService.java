@@ -0,0 +1,243 @@
+package com.carbonfootprint.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.TraceCompression;
+import com.carbonfootprint.config.FileStorageConfig;
+import com.carbonfootprint.exception.BadRequestException;
+import com.carbonfootprint.exception.FileStorageException;
+import com.carbonfootprint.exception.ResourceNotFoundException;
+import com.carbonfootprint.exception.UploadOffsetConflictException;
+import com.carbonfootprint.model.Script;
+
+import io.micrometer.observation.Observation;
+
+/**
+ * Resumable uploads for traces too large to send in one request. The client announces the file
+ * name and total size, then sends the bytes in order in as many requests as it likes, each
+ * starting at the offset the server reports. Every part is appended to a partial file in the
+ * upload directory while it streams in, so a broken connection loses at most the bytes in flight
+ * and the last part turns the partial file into the trace with a rename.
+ *
+ * Sessions live in memory: an upload survives dropped connections, not a restart. Partial files
+ * left from before a restart are removed at start-up.
+ */
+@Service
+public class TraceUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TraceUploadService.class);
+
+    private static final String PART_PREFIX = ".upload-";
+    private static final String PART_SUFFIX = ".part";
+
+    @Autowired
+    private ScriptService scriptService;
+
+    @Autowired
+    private FileStorageConfig fileStorageConfig;
+
+    @Autowired
+    private PipelineObservations pipelineObservations;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public UploadStatus begin(String originalFileName, long totalBytes, String expectedSha256) {
+        String fileName = scriptService.traceFileName(originalFileName);
+        if (totalBytes <= 0) {
+            throw new BadRequestException("The upload size must be positive");
+        }
+        if (totalBytes > fileStorageConfig.getMaxUploadBytes()) {
+            throw new BadRequestException("The trace exceeds the upload limit of " + fileStorageConfig.getMaxUploadBytes() + " bytes");
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        Path part;
+        try {
+            part = scriptService.uploadDirectory().resolve(PART_PREFIX + uploadId + PART_SUFFIX);
+        } catch (IOException e) {
+            throw new FileStorageException("无法创建上传目录", e);
+        }
+        UploadSession session = new UploadSession(uploadId, fileName, totalBytes, expectedSha256,
+                new TraceFileReceiver(part, totalBytes, TraceCompression.of(fileName)));
+        sessions.put(uploadId, session);
+        logger.info("Started resumable upload {} of {} ({} bytes)", uploadId, fileName, totalBytes);
+        return session.status();
+    }
+
+    public UploadStatus getStatus(String uploadId) {
+        return session(uploadId).status();
+    }
+
+    /**
+     * Appends the body of one request at {@code offset}, which must be the number of bytes
+     * received so far. When the last byte arrives the upload is checked and stored, and the
+     * returned status carries the script.
+     */
+    public UploadStatus append(String uploadId, long offset, InputStream body) {
+        UploadSession session = session(uploadId);
+        if (!session.lock.tryLock()) {
+            throw new UploadOffsetConflictException("Another part of this upload is still being received",
+                    session.receiver.getLength());
+        }
+        try {
+            if (sessions.get(uploadId) != session) {
+                // Finished or discarded while this request waited
+                throw new ResourceNotFoundException("Upload not found: " + uploadId);
+            }
+            if (offset != session.receiver.getLength()) {
+                throw new UploadOffsetConflictException("Upload is at offset " + session.receiver.getLength()
+                        + ", not " + offset, session.receiver.getLength());
+            }
+            Observation observation = pipelineObservations.upload(session.totalBytes);
+            return observation.observe(() -> receive(session, body, observation));
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    private UploadStatus receive(UploadSession session, InputStream body, Observation observation) {
+        try {
+            session.receiver.receive(body);
+            session.touch();
+            if (session.receiver.getLength() < session.totalBytes) {
+                observation.lowCardinalityKeyValue("outcome", "partial");
+                return session.status();
+            }
+            String contentHash = session.receiver.finish(session.expectedSha256);
+            session.script = scriptService.registerTraceFile(session.fileName, session.receiver.getFile(),
+                    contentHash, observation);
+            sessions.remove(session.uploadId);
+            logger.info("Resumable upload {} complete, script ID: {}", session.uploadId, session.script.getId());
+            return session.status();
+        } catch (BadRequestException e) {
+            // The content itself is unusable; resuming would not help
+            discard(session);
+            throw e;
+        } catch (IOException e) {
+            // Most likely the client went away; what was written so far is kept for the retry
+            session.touch();
+            throw new FileStorageException("Upload " + session.uploadId + " interrupted at offset "
+                    + session.receiver.getLength() + ": " + e.getMessage(), e);
+        }
+    }
+
+    public void cancel(String uploadId) {
+        discard(session(uploadId));
+        logger.info("Cancelled resumable upload {}", uploadId);
+    }
+
+    private UploadSession session(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new ResourceNotFoundException("Upload not found: " + uploadId);
+        }
+        return session;
+    }
+
+    private void discard(UploadSession session) {
+        sessions.remove(session.uploadId);
+        ScriptService.deleteQuietly(session.receiver.getFile());
+    }
+
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void expireIdleUploads() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(fileStorageConfig.getUploadSessionTimeoutMinutes());
+        for (Iterator<UploadSession> it = sessions.values().iterator(); it.hasNext(); ) {
+            UploadSession session = it.next();
+            if (session.lastActivity < cutoff && session.lock.tryLock()) {
+                try {
+                    it.remove();
+                    ScriptService.deleteQuietly(session.receiver.getFile());
+                    logger.info("Discarded idle upload {} of {} at {} bytes", session.uploadId, session.fileName,
+                            session.receiver.getLength());
+                } finally {
+                    session.lock.unlock();
+                }
+            }
+        }
+    }
+
+    // Sessions do not survive a restart, so neither should their partial files
+    @EventListener(ApplicationReadyEvent.class)
+    public void removeOrphanedParts() {
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(scriptService.uploadDirectory(),
+                PART_PREFIX + "*" + PART_SUFFIX)) {
+            for (Path part : parts) {
+                ScriptService.deleteQuietly(part);
+                logger.info("Removed partial upload {} left from a previous run", part.getFileName());
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clean partial uploads: {}", e.getMessage());
+        }
+    }
+
+    private static final class UploadSession {
+        private final String uploadId;
+        private final String fileName;
+        private final long totalBytes;
+        private final String expectedSha256;
+        private final TraceFileReceiver receiver;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long lastActivity = System.currentTimeMillis();
+        private volatile Script script;
+
+        UploadSession(String uploadId, String fileName, long totalBytes, String expectedSha256, TraceFileReceiver receiver) {
+            this.uploadId = uploadId;
+            this.fileName = fileName;
+            this.totalBytes = totalBytes;
+            this.expectedSha256 = expectedSha256;
+            this.receiver = receiver;
+        }
+
+        void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        UploadStatus status() {
+            return new UploadStatus(uploadId, fileName, totalBytes, receiver.getLength(), script);
+        }
+    }
+
+    // Progress of one resumable upload, returned by every upload endpoint
+    public static class UploadStatus {
+        private final String uploadId;
+        private final String fileName;
+        private final long totalBytes;
+        private final long receivedBytes;
+        private final Script script;
+
+        public UploadStatus(String uploadId, String fileName, long totalBytes, long receivedBytes, Script script) {
+            this.uploadId = uploadId;
+            this.fileName = fileName;
+            this.totalBytes = totalBytes;
+            this.receivedBytes = receivedBytes;
+            this.script = script;
+        }
+
+        public String getUploadId() { return uploadId; }
+        public String getFileName() { return fileName; }
+        public long getTotalBytes() { return totalBytes; }
+        public long getReceivedBytes() { return receivedBytes; }
+        // Set once the last byte is in
+        public Script getScript() { return script; }
+        public boolean isComplete() { return script != null; }
+    }
+}
@@ -0,0 +1,348 @@
+package com.carbonfootprint.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.carbonfootprint.service.VisualizationService.HostData;
+import com.carbonfootprint.service.VisualizationService.ProcessTable;
+import com.carbonfootprint.service.VisualizationService.SummaryData;
+import com.carbonfootprint.service.VisualizationService.TaskTable;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Builds {@link VisualizationData} from the raw analysis JSON in one streaming pass, without an
+ * intermediate JsonNode tree. Numbers go straight into growable primitive columns and every
+ * string into one dictionary shared by all tables. Lenient like the tree code it replaces:
+ * missing fields and values of the wrong type fall back to the same defaults, unknown fields
+ * are skipped.
+ */
+final class VisualizationDataReader {
+
+    private final Dictionary names = new Dictionary();
+
+    private final Ints taskProcess = new Ints();
+    private final Doubles taskEnergy = new Doubles();
+    private final Doubles taskCarbon = new Doubles();
+    private final Doubles taskRuntime = new Doubles();
+    private final Doubles taskCpu = new Doubles();
+    private final Doubles taskMemory = new Doubles();
+    private final Ints taskHardware = new Ints();
+
+    private boolean hasHostData;
+    private final Ints hosts = new Ints();
+    private final Ints hostTaskCounts = new Ints();
+    private final Doubles hostRuntimes = new Doubles();
+    private final Doubles hostCpu = new Doubles();
+    private final Doubles hostMemory = new Doubles();
+    private final Doubles hostIo = new Doubles();
+    private final Doubles hostEnergy = new Doubles();
+    private final Doubles hostCarbon = new Doubles();
+    private final Ints processHosts = new Ints();
+    private final Ints processLists = new Ints();
+
+    private final Ints process = new Ints();
+    private final Ints processTasks = new Ints();
+    private final Doubles processRuntime = new Doubles();
+    private final Doubles processCpu = new Doubles();
+    private final Doubles processMemory = new Doubles();
+    private final Doubles processIo = new Doubles();
+    private final Doubles processEnergy = new Doubles();
+    private final Doubles processCarbon = new Doubles();
+    private final Doubles processRead = new Doubles();
+    private final Doubles processWrite = new Doubles();
+
+    private VisualizationDataReader() {}
+
+    /** Reads one document and closes the parser. */
+    static VisualizationData read(JsonParser parser) throws IOException {
+        try (JsonParser p = parser) {
+            return new VisualizationDataReader().readRoot(p);
+        }
+    }
+
+    private VisualizationData readRoot(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(p, "Analysis data is not a JSON object");
+        }
+        SummaryData summary = new SummaryData(0.0, 0.0, 0.0, 0.0);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken token = p.nextToken();
+            if ("summary".equals(field) && token == JsonToken.START_OBJECT) {
+                summary = readSummary(p);
+            } else if ("tasks".equals(field) && token == JsonToken.START_ARRAY) {
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    if (p.currentToken() == JsonToken.START_OBJECT) {
+                        readTask(p);
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+            } else if ("hostData".equals(field)) {
+                // Present but not an object still gives an (empty) HostData, as before
+                hasHostData = true;
+                if (token == JsonToken.START_OBJECT) {
+                    readHostData(p);
+                } else {
+                    p.skipChildren();
+                }
+            } else if ("processData".equals(field) && token == JsonToken.START_ARRAY) {
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    if (p.currentToken() == JsonToken.START_OBJECT) {
+                        readProcess(p);
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        String[] dictionary = names.toArray();
+        TaskTable tasks = new TaskTable(dictionary, taskProcess.size, taskProcess.toArray(), taskEnergy.toArray(),
+                taskCarbon.toArray(), taskRuntime.toArray(), taskCpu.toArray(), taskMemory.toArray(),
+                taskHardware.toArray());
+        HostData hostData = !hasHostData ? null : new HostData(dictionary, hosts.size, hosts.toArray(),
+                hostTaskCounts.toArray(), hostRuntimes.toArray(), hostCpu.toArray(), hostMemory.toArray(),
+                hostIo.toArray(), hostEnergy.toArray(), hostCarbon.toArray(),
+                processHosts.size, processHosts.toArray(), processLists.toArray());
+        ProcessTable processData = new ProcessTable(dictionary, process.size, process.toArray(),
+                processTasks.toArray(), processRuntime.toArray(), processCpu.toArray(), processMemory.toArray(),
+                processIo.toArray(), processEnergy.toArray(), processCarbon.toArray(), processRead.toArray(),
+                processWrite.toArray());
+        return new VisualizationData(summary, tasks, hostData, processData);
+    }
+
+    private static SummaryData readSummary(JsonParser p) throws IOException {
+        double totalEnergy = 0.0;
+        double totalCarbonFootprint = 0.0;
+        double totalRuntime = 0.0;
+        double avgCpuUtilization = 0.0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "totalEnergy": totalEnergy = number(p); break;
+                case "totalCarbonFootprint": totalCarbonFootprint = number(p); break;
+                case "totalRuntime": totalRuntime = number(p); break;
+                case "avgCpuUtilization": avgCpuUtilization = number(p); break;
+                default: p.skipChildren();
+            }
+        }
+        return new SummaryData(totalEnergy, totalCarbonFootprint, totalRuntime, avgCpuUtilization);
+    }
+
+    private void readTask(JsonParser p) throws IOException {
+        String name = "Unknown";
+        double energy = 0.0;
+        double carbon = 0.0;
+        double runtime = 0.0;
+        double cpuUsage = 0.0;
+        double memory = 0.0;
+        String hardware = "Unknown";
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "process": name = text(p, "Unknown"); break;
+                // The analyzers write snake_case; camelCase is what this reader always looked for
+                case "energyConsumption":
+                case "energy_consumption": energy = number(p); break;
+                case "carbonFootprint":
+                case "carbon_footprint": carbon = number(p); break;
+                case "runtime": runtime = number(p); break;
+                case "cpu_usage": cpuUsage = number(p); break;
+                case "memory_allocated": memory = number(p); break;
+                case "hardware": hardware = text(p, "Unknown"); break;
+                default: p.skipChildren();
+            }
+        }
+        taskProcess.add(names.code(name));
+        taskEnergy.add(energy);
+        taskCarbon.add(carbon);
+        taskRuntime.add(runtime);
+        taskCpu.add(cpuUsage);
+        taskMemory.add(memory);
+        taskHardware.add(names.code(hardware));
+    }
+
+    private void readHostData(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken token = p.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                switch (field) {
+                    case "hosts":
+                        while (p.nextToken() != JsonToken.END_ARRAY) {
+                            hosts.add(names.code(text(p, "")));
+                        }
+                        break;
+                    case "task_counts":
+                        while (p.nextToken() != JsonToken.END_ARRAY) {
+                            hostTaskCounts.add((int) number(p));
+                        }
+                        break;
+                    case "runtimes": readNumbers(p, hostRuntimes); break;
+                    case "cpu_utilizations": readNumbers(p, hostCpu); break;
+                    case "memory_allocations": readNumbers(p, hostMemory); break;
+                    case "io_volumes": readNumbers(p, hostIo); break;
+                    case "energy_consumptions": readNumbers(p, hostEnergy); break;
+                    case "carbon_emissions": readNumbers(p, hostCarbon); break;
+                    default: p.skipChildren();
+                }
+            } else if ("processes".equals(field) && token == JsonToken.START_OBJECT) {
+                Map<String, Integer> seen = new HashMap<>();
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String host = p.getCurrentName();
+                    p.nextToken();
+                    int list = names.code(text(p, ""));
+                    // A repeated key replaces the earlier value, like a map would
+                    Integer index = seen.putIfAbsent(host, processHosts.size);
+                    if (index != null) {
+                        processLists.values[index] = list;
+                    } else {
+                        processHosts.add(names.code(host));
+                        processLists.add(list);
+                    }
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private void readProcess(JsonParser p) throws IOException {
+        String name = "Unknown";
+        int tasks = 0;
+        double runtime = 0.0;
+        double cpuUsage = 0.0;
+        double memory = 0.0;
+        double ioVolume = 0.0;
+        double energy = 0.0;
+        double carbon = 0.0;
+        double readGb = 0.0;
+        double writeGb = 0.0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            switch (field) {
+                case "process": name = text(p, "Unknown"); break;
+                case "tasks": tasks = (int) number(p); break;
+                case "runtime": runtime = number(p); break;
+                case "cpu_usage": cpuUsage = number(p); break;
+                case "memory_allocated": memory = number(p); break;
+                case "io_volume": ioVolume = number(p); break;
+                case "energy_consumption": energy = number(p); break;
+                case "carbon_footprint": carbon = number(p); break;
+                case "read_gb": readGb = number(p); break;
+                case "write_gb": writeGb = number(p); break;
+                default: p.skipChildren();
+            }
+        }
+        process.add(names.code(name));
+        processTasks.add(tasks);
+        processRuntime.add(runtime);
+        processCpu.add(cpuUsage);
+        processMemory.add(memory);
+        processIo.add(ioVolume);
+        processEnergy.add(energy);
+        processCarbon.add(carbon);
+        processRead.add(readGb);
+        processWrite.add(writeGb);
+    }
+
+    private static void readNumbers(JsonParser p, Doubles values) throws IOException {
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            values.add(number(p));
+        }
+    }
+
+    // Current value as a double: numbers and numeric strings, anything else is 0
+    private static double number(JsonParser p) throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getDoubleValue();
+            case START_OBJECT:
+            case START_ARRAY:
+                p.skipChildren();
+                return 0.0;
+            default:
+                return p.getValueAsDouble(0.0);
+        }
+    }
+
+    // Current value as text; null, objects and arrays give the default
+    private static String text(JsonParser p, String defaultValue) throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NULL:
+                return defaultValue;
+            case START_OBJECT:
+            case START_ARRAY:
+                p.skipChildren();
+                return defaultValue;
+            default:
+                return p.getText();
+        }
+    }
+
+    // Each distinct string once; rows refer to it by index
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        String[] toArray() {
+            return values.toArray(new String[0]);
+        }
+    }
+
+    private static final class Ints {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class Doubles {
+        private double[] values = new double[16];
+        private int size;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -1,20 +1,29 @@
 package com.carbonfootprint.service;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.carbonfootprint.config.AnalysisConfig;
 import com.carbonfootprint.exception.ResourceNotFoundException;
-import com.carbonfootprint.model.AnalysisResult;
 import com.carbonfootprint.repository.AnalysisResultRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import io.micrometer.observation.Observation;
+
 import org.slf4j.Logger;
 
+/**
+ * Serves the chart data of one analysis result. The typed model is built once from the stored
+ * payload by a streaming parse and then kept in a weight-bounded LRU cache, so repeated views
+ * of a result neither decompress nor parse anything.
+ */
 @Service
 public class VisualizationService {
 
@@ -23,147 +32,108 @@ public class VisualizationService {
     @Autowired
     private AnalysisResultRepository resultRepository;
 
+    @Autowired
+    private AnalysisPayloadService payloadService;
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    @Autowired
+    private PipelineObservations pipelineObservations;
+
+    // Access-ordered, evicted by total estimated size rather than entry count
+    private final LinkedHashMap<Long, VisualizationData> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
     public VisualizationData getVisualizationData(Long resultId) {
-        AnalysisResult result = resultRepository.findById(resultId)
-                .orElseThrow(() -> new ResourceNotFoundException("Analysis result not found"));
-        
-        logger.info("Raw data from database: {}", result.getRawData());
+        Observation observation = pipelineObservations.visualization();
+        return observation.observe(() -> load(resultId, observation));
+    }
+
+    private VisualizationData load(Long resultId, Observation observation) {
+        VisualizationData cached = cached(resultId);
+        observation.lowCardinalityKeyValue("cache", cached != null ? "hit" : "miss");
+        if (cached != null) {
+            return cached;
+        }
+        if (!resultRepository.existsById(resultId)) {
+            throw new ResourceNotFoundException("Analysis result not found");
+        }
         
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode data = mapper.readTree(result.getRawData());
-            
-            // 提取摘要数据，添加默认值处理
-            JsonNode summaryNode = data.path("summary");
-            SummaryData summary = new SummaryData(
-                summaryNode.path("totalEnergy").asDouble(0.0),
-                summaryNode.path("totalCarbonFootprint").asDouble(0.0),
-                summaryNode.path("totalRuntime").asDouble(0.0),
-                summaryNode.path("avgCpuUtilization").asDouble(0.0)
-            );
-
-            // 提取任务数据
-            List<TaskData> tasks = new ArrayList<>();
-            if (data.has("tasks") && data.get("tasks").isArray()) {
-                data.get("tasks").forEach(taskNode -> {
-                    tasks.add(new TaskData(
-                        taskNode.path("process").asText("Unknown"),
-                        taskNode.path("energyConsumption").asDouble(0.0), // 使用驼峰命名
-                        taskNode.path("carbonFootprint").asDouble(0.0),
-                        taskNode.path("runtime").asDouble(0.0),
-                        taskNode.path("cpu_usage").asDouble(0.0),
-                        taskNode.path("memory_allocated").asDouble(0.0),
-                        taskNode.path("hardware").asText("Unknown")
-                    ));
-                });
+            // 只在这里和导出时才读取压缩的原始数据
+            VisualizationData data = payloadService.read(resultId, jsonCodec::readVisualization).orElse(null);
+            if (data == null) {
+                throw new ResourceNotFoundException("Analysis data not found for result " + resultId);
             }
-            
-            // 提取主机数据
-            HostData hostData = null;
-            if (data.has("hostData")) {
-                JsonNode hostDataNode = data.get("hostData");
-                List<String> hosts = new ArrayList<>();
-                List<Integer> taskCounts = new ArrayList<>();
-                List<Double> runtimes = new ArrayList<>();
-                List<Double> cpuUtilizations = new ArrayList<>();
-                List<Double> memoryAllocations = new ArrayList<>();
-                List<Double> ioVolumes = new ArrayList<>();
-                List<Double> energyConsumptions = new ArrayList<>();
-                List<Double> carbonEmissions = new ArrayList<>();
-                Map<String, String> processes = new HashMap<>();
-                
-                if (hostDataNode.has("hosts") && hostDataNode.get("hosts").isArray()) {
-                    hostDataNode.get("hosts").forEach(host -> hosts.add(host.asText()));
-                }
-                
-                if (hostDataNode.has("task_counts") && hostDataNode.get("task_counts").isArray()) {
-                    hostDataNode.get("task_counts").forEach(count -> taskCounts.add(count.asInt()));
-                }
-                
-                if (hostDataNode.has("runtimes") && hostDataNode.get("runtimes").isArray()) {
-                    hostDataNode.get("runtimes").forEach(runtime -> runtimes.add(runtime.asDouble()));
-                }
-                
-                if (hostDataNode.has("cpu_utilizations") && hostDataNode.get("cpu_utilizations").isArray()) {
-                    hostDataNode.get("cpu_utilizations").forEach(cpu -> cpuUtilizations.add(cpu.asDouble()));
-                }
-                
-                if (hostDataNode.has("memory_allocations") && hostDataNode.get("memory_allocations").isArray()) {
-                    hostDataNode.get("memory_allocations").forEach(mem -> memoryAllocations.add(mem.asDouble()));
-                }
-                
-                if (hostDataNode.has("io_volumes") && hostDataNode.get("io_volumes").isArray()) {
-                    hostDataNode.get("io_volumes").forEach(io -> ioVolumes.add(io.asDouble()));
-                }
-                
-                if (hostDataNode.has("energy_consumptions") && hostDataNode.get("energy_consumptions").isArray()) {
-                    hostDataNode.get("energy_consumptions").forEach(energy -> energyConsumptions.add(energy.asDouble()));
-                }
-                
-                if (hostDataNode.has("carbon_emissions") && hostDataNode.get("carbon_emissions").isArray()) {
-                    hostDataNode.get("carbon_emissions").forEach(carbon -> carbonEmissions.add(carbon.asDouble()));
-                }
-                
-                if (hostDataNode.has("processes")) {
-                    JsonNode processesNode = hostDataNode.get("processes");
-                    processesNode.fieldNames().forEachRemaining(host -> {
-                        processes.put(host, processesNode.get(host).asText());
-                    });
-                }
-                
-                hostData = new HostData(hosts, taskCounts, runtimes, cpuUtilizations, 
-                                       memoryAllocations, ioVolumes, energyConsumptions, 
-                                       carbonEmissions, processes);
-            }
-            
-            // 提取进程数据
-            List<ProcessData> processData = new ArrayList<>();
-            if (data.has("processData") && data.get("processData").isArray()) {
-                data.get("processData").forEach(processNode -> {
-                    processData.add(new ProcessData(
-                        processNode.path("process").asText("Unknown"),
-                        processNode.path("tasks").asInt(0),
-                        processNode.path("runtime").asDouble(0.0),
-                        processNode.path("cpu_usage").asDouble(0.0),
-                        processNode.path("memory_allocated").asDouble(0.0),
-                        processNode.path("io_volume").asDouble(0.0),
-                        processNode.path("energy_consumption").asDouble(0.0),
-                        processNode.path("carbon_footprint").asDouble(0.0),
-                        processNode.path("read_gb").asDouble(0.0),
-                        processNode.path("write_gb").asDouble(0.0)
-                    ));
-                });
-            }
-            
-            return new VisualizationData(summary, tasks, hostData, processData);
-        } catch (JsonProcessingException e) {
+            cache(resultId, data);
+            return data;
+        } catch (UncheckedIOException e) {
             logger.error("Failed to parse analysis data", e);
             throw new RuntimeException("Failed to parse analysis data", e);
-        } catch (Exception e) {
-            logger.error("Unexpected error parsing analysis data", e);
-            throw new RuntimeException("Unexpected error parsing analysis data", e);
+        }
+    }
+
+    /** Drops the cached model of a result; called whenever the result is saved or deleted. */
+    public synchronized void evict(Long resultId) {
+        VisualizationData removed = cache.remove(resultId);
+        if (removed != null) {
+            cachedBytes -= removed.estimatedBytes();
+        }
+    }
+
+    private synchronized VisualizationData cached(Long resultId) {
+        return cache.get(resultId);
+    }
+
+    private synchronized void cache(Long resultId, VisualizationData data) {
+        long budget = analysisConfig.getVisualizationCacheBytes();
+        if (data.estimatedBytes() > budget) {
+            // Would push everything else out; serve it uncached
+            return;
+        }
+        VisualizationData previous = cache.put(resultId, data);
+        if (previous != null) {
+            cachedBytes -= previous.estimatedBytes();
+        }
+        cachedBytes += data.estimatedBytes();
+        Iterator<VisualizationData> eldest = cache.values().iterator();
+        while (cachedBytes > budget && eldest.hasNext()) {
+            cachedBytes -= eldest.next().estimatedBytes();
+            eldest.remove();
         }
     }
 
     // 静态内部类，用于封装可视化数据
+    // 任务、进程和主机数据按列存储在基本类型数组里，名称按字典编码；JSON 格式与之前的逐行对象相同
     public static class VisualizationData {
         private final SummaryData summary;
-        private final List<TaskData> tasks;
+        private final TaskTable tasks;
         private final HostData hostData;
-        private final List<ProcessData> processData;
+        private final ProcessTable processData;
+        private final long estimatedBytes;
 
-        public VisualizationData(SummaryData summary, List<TaskData> tasks, HostData hostData, List<ProcessData> processData) {
+        public VisualizationData(SummaryData summary, TaskTable tasks, HostData hostData, ProcessTable processData) {
             this.summary = summary;
             this.tasks = tasks;
             this.hostData = hostData;
             this.processData = processData;
+            this.estimatedBytes = 128 + tasks.estimatedBytes() + processData.estimatedBytes()
+                    + (hostData == null ? 0 : hostData.estimatedBytes());
         }
 
+        // Rough retained heap size, used as the cache weight; not part of the JSON.
+        // The tables may share one dictionary, which is then counted more than once.
+        long estimatedBytes() { return estimatedBytes; }
+
         // Getters
         public SummaryData getSummary() { return summary; }
-        public List<TaskData> getTasks() { return tasks; }
+        public TaskTable getTasks() { return tasks; }
         public HostData getHostData() { return hostData; }
-        public List<ProcessData> getProcessData() { return processData; }
+        public ProcessTable getProcessData() { return processData; }
     }
 
     public static class SummaryData {
@@ -186,17 +156,27 @@ public class VisualizationService {
         public double getAvgCpuUtilization() { return avgCpuUtilization; }
     }
 
-    public static class TaskData {
-        private final String process;
-        private final double energyConsumption;
-        private final double carbonFootprint;
-        private final double runtime;
-        private final double cpuUsage;
-        private final double memoryAllocated;
-        private final String hardware;
-
-        public TaskData(String process, double energyConsumption, double carbonFootprint, 
-                    double runtime, double cpuUsage, double memoryAllocated, String hardware) {
+    /**
+     * Per-process task rows, one array per column. {@code process} and {@code hardware} are
+     * indexes into {@code names}. Serialized as an array of
+     * {process, energyConsumption, carbonFootprint, runtime, cpuUsage, memoryAllocated, hardware}.
+     */
+    @JsonSerialize(using = TaskTable.Serializer.class)
+    public static class TaskTable {
+        private final String[] names;
+        private final int size;
+        private final int[] process;
+        private final double[] energyConsumption;
+        private final double[] carbonFootprint;
+        private final double[] runtime;
+        private final double[] cpuUsage;
+        private final double[] memoryAllocated;
+        private final int[] hardware;
+
+        public TaskTable(String[] names, int size, int[] process, double[] energyConsumption, double[] carbonFootprint,
+                         double[] runtime, double[] cpuUsage, double[] memoryAllocated, int[] hardware) {
+            this.names = names;
+            this.size = size;
             this.process = process;
             this.energyConsumption = energyConsumption;
             this.carbonFootprint = carbonFootprint;
@@ -206,31 +186,71 @@ public class VisualizationService {
             this.hardware = hardware;
         }
 
-        // Getters - 使用驼峰命名法
-        public String getProcess() { return process; }
-        public double getEnergyConsumption() { return energyConsumption; }
-        public double getCarbonFootprint() { return carbonFootprint; }
-        public double getRuntime() { return runtime; }
-        public double getCpuUsage() { return cpuUsage; }
-        public double getMemoryAllocated() { return memoryAllocated; }
-        public String getHardware() { return hardware; }
-    }    
+        public int size() { return size; }
+        public String getProcess(int row) { return names[process[row]]; }
+        public double getEnergyConsumption(int row) { return energyConsumption[row]; }
+        public double getCarbonFootprint(int row) { return carbonFootprint[row]; }
+        public double getRuntime(int row) { return runtime[row]; }
+        public double getCpuUsage(int row) { return cpuUsage[row]; }
+        public double getMemoryAllocated(int row) { return memoryAllocated[row]; }
+        public String getHardware(int row) { return names[hardware[row]]; }
 
+        long estimatedBytes() {
+            return 96 + dictionaryBytes(names) + columnBytes(process.length, 2, 4) + columnBytes(runtime.length, 5, 8);
+        }
+
+        static class Serializer extends StdSerializer<TaskTable> {
+            Serializer() {
+                super(TaskTable.class);
+            }
+
+            @Override
+            public void serialize(TaskTable t, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeStartArray(t, t.size);
+                for (int i = 0; i < t.size; i++) {
+                    gen.writeStartObject();
+                    gen.writeStringField("process", t.names[t.process[i]]);
+                    gen.writeNumberField("energyConsumption", t.energyConsumption[i]);
+                    gen.writeNumberField("carbonFootprint", t.carbonFootprint[i]);
+                    gen.writeNumberField("runtime", t.runtime[i]);
+                    gen.writeNumberField("cpuUsage", t.cpuUsage[i]);
+                    gen.writeNumberField("memoryAllocated", t.memoryAllocated[i]);
+                    gen.writeStringField("hardware", t.names[t.hardware[i]]);
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+            }
+        }
+    }
+
+    /**
+     * Per-host columns. Host names and the per-host process lists are indexes into {@code names};
+     * the processes map is stored as two parallel index arrays. Serialized with the same field
+     * names the bean getters used to produce.
+     */
+    @JsonSerialize(using = HostData.Serializer.class)
     public static class HostData {
-        private final List<String> hosts;
-        private final List<Integer> taskCounts;
-        private final List<Double> runtimes;
-        private final List<Double> cpuUtilizations;
-        private final List<Double> memoryAllocations;
-        private final List<Double> ioVolumes;
-        private final List<Double> energyConsumptions;
-        private final List<Double> carbonEmissions;
-        private final Map<String, String> processes;
-
-        public HostData(List<String> hosts, List<Integer> taskCounts, List<Double> runtimes, 
-                       List<Double> cpuUtilizations, List<Double> memoryAllocations, 
-                       List<Double> ioVolumes, List<Double> energyConsumptions, 
-                       List<Double> carbonEmissions, Map<String, String> processes) {
+        private final String[] names;
+        private final int size;
+        private final int[] hosts;
+        private final int[] taskCounts;
+        private final double[] runtimes;
+        private final double[] cpuUtilizations;
+        private final double[] memoryAllocations;
+        private final double[] ioVolumes;
+        private final double[] energyConsumptions;
+        private final double[] carbonEmissions;
+        private final int processCount;
+        private final int[] processHosts;
+        private final int[] processLists;
+
+        // Columns may have different lengths if the analyzer output did; each keeps its own
+        public HostData(String[] names, int size, int[] hosts, int[] taskCounts, double[] runtimes,
+                        double[] cpuUtilizations, double[] memoryAllocations, double[] ioVolumes,
+                        double[] energyConsumptions, double[] carbonEmissions,
+                        int processCount, int[] processHosts, int[] processLists) {
+            this.names = names;
+            this.size = size;
             this.hosts = hosts;
             this.taskCounts = taskCounts;
             this.runtimes = runtimes;
@@ -239,36 +259,93 @@ public class VisualizationService {
             this.ioVolumes = ioVolumes;
             this.energyConsumptions = energyConsumptions;
             this.carbonEmissions = carbonEmissions;
-            this.processes = processes;
+            this.processCount = processCount;
+            this.processHosts = processHosts;
+            this.processLists = processLists;
         }
 
-        // Getters
-        public List<String> getHosts() { return hosts; }
-        public List<Integer> getTaskCounts() { return taskCounts; }
-        public List<Double> getRuntimes() { return runtimes; }
-        public List<Double> getCpuUtilizations() { return cpuUtilizations; }
-        public List<Double> getMemoryAllocations() { return memoryAllocations; }
-        public List<Double> getIoVolumes() { return ioVolumes; }
-        public List<Double> getEnergyConsumptions() { return energyConsumptions; }
-        public List<Double> getCarbonEmissions() { return carbonEmissions; }
-        public Map<String, String> getProcesses() { return processes; }
+        public int size() { return size; }
+        public String getHost(int index) { return names[hosts[index]]; }
+        public int[] getTaskCounts() { return taskCounts; }
+        public double[] getRuntimes() { return runtimes; }
+        public double[] getCpuUtilizations() { return cpuUtilizations; }
+        public double[] getMemoryAllocations() { return memoryAllocations; }
+        public double[] getIoVolumes() { return ioVolumes; }
+        public double[] getEnergyConsumptions() { return energyConsumptions; }
+        public double[] getCarbonEmissions() { return carbonEmissions; }
+
+        long estimatedBytes() {
+            return 160 + dictionaryBytes(names)
+                    + columnBytes(hosts.length + taskCounts.length + processHosts.length + processLists.length, 1, 4)
+                    + columnBytes(runtimes.length + cpuUtilizations.length + memoryAllocations.length
+                            + ioVolumes.length + energyConsumptions.length + carbonEmissions.length, 1, 8);
+        }
+
+        static class Serializer extends StdSerializer<HostData> {
+            Serializer() {
+                super(HostData.class);
+            }
+
+            @Override
+            public void serialize(HostData h, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeStartObject();
+                gen.writeArrayFieldStart("hosts");
+                for (int i = 0; i < h.size; i++) {
+                    gen.writeString(h.names[h.hosts[i]]);
+                }
+                gen.writeEndArray();
+                writeArray(gen, "taskCounts", h.taskCounts);
+                writeArray(gen, "runtimes", h.runtimes);
+                writeArray(gen, "cpuUtilizations", h.cpuUtilizations);
+                writeArray(gen, "memoryAllocations", h.memoryAllocations);
+                writeArray(gen, "ioVolumes", h.ioVolumes);
+                writeArray(gen, "energyConsumptions", h.energyConsumptions);
+                writeArray(gen, "carbonEmissions", h.carbonEmissions);
+                gen.writeObjectFieldStart("processes");
+                for (int i = 0; i < h.processCount; i++) {
+                    gen.writeStringField(h.names[h.processHosts[i]], h.names[h.processLists[i]]);
+                }
+                gen.writeEndObject();
+                gen.writeEndObject();
+            }
+
+            private static void writeArray(JsonGenerator gen, String field, int[] values) throws IOException {
+                gen.writeFieldName(field);
+                gen.writeArray(values, 0, values.length);
+            }
+
+            private static void writeArray(JsonGenerator gen, String field, double[] values) throws IOException {
+                gen.writeFieldName(field);
+                gen.writeArray(values, 0, values.length);
+            }
+        }
     }
-    
-    public static class ProcessData {
-        private final String process;
-        private final int tasks;
-        private final double runtime;
-        private final double cpuUsage;
-        private final double memoryAllocated;
-        private final double ioVolume;
-        private final double energyConsumption;
-        private final double carbonFootprint;
-        private final double readGb;
-        private final double writeGb;
-
-        public ProcessData(String process, int tasks, double runtime, double cpuUsage, 
-                          double memoryAllocated, double ioVolume, double energyConsumption, 
-                          double carbonFootprint, double readGb, double writeGb) {
+
+    /**
+     * Per-process rows as columns, {@code process} indexing into {@code names}. Serialized as an
+     * array of {process, tasks, runtime, cpuUsage, memoryAllocated, ioVolume, energyConsumption,
+     * carbonFootprint, readGb, writeGb}.
+     */
+    @JsonSerialize(using = ProcessTable.Serializer.class)
+    public static class ProcessTable {
+        private final String[] names;
+        private final int size;
+        private final int[] process;
+        private final int[] tasks;
+        private final double[] runtime;
+        private final double[] cpuUsage;
+        private final double[] memoryAllocated;
+        private final double[] ioVolume;
+        private final double[] energyConsumption;
+        private final double[] carbonFootprint;
+        private final double[] readGb;
+        private final double[] writeGb;
+
+        public ProcessTable(String[] names, int size, int[] process, int[] tasks, double[] runtime, double[] cpuUsage,
+                            double[] memoryAllocated, double[] ioVolume, double[] energyConsumption,
+                            double[] carbonFootprint, double[] readGb, double[] writeGb) {
+            this.names = names;
+            this.size = size;
             this.process = process;
             this.tasks = tasks;
             this.runtime = runtime;
@@ -281,16 +358,58 @@ public class VisualizationService {
             this.writeGb = writeGb;
         }
 
-        // Getters
-        public String getProcess() { return process; }
-        public int getTasks() { return tasks; }
-        public double getRuntime() { return runtime; }
-        public double getCpuUsage() { return cpuUsage; }
-        public double getMemoryAllocated() { return memoryAllocated; }
-        public double getIoVolume() { return ioVolume; }
-        public double getEnergyConsumption() { return energyConsumption; }
-        public double getCarbonFootprint() { return carbonFootprint; }
-        public double getReadGb() { return readGb; }
-        public double getWriteGb() { return writeGb; }
+        public int size() { return size; }
+        public String getProcess(int row) { return names[process[row]]; }
+        public int getTasks(int row) { return tasks[row]; }
+        public double getRuntime(int row) { return runtime[row]; }
+        public double getCpuUsage(int row) { return cpuUsage[row]; }
+        public double getMemoryAllocated(int row) { return memoryAllocated[row]; }
+        public double getIoVolume(int row) { return ioVolume[row]; }
+        public double getEnergyConsumption(int row) { return energyConsumption[row]; }
+        public double getCarbonFootprint(int row) { return carbonFootprint[row]; }
+        public double getReadGb(int row) { return readGb[row]; }
+        public double getWriteGb(int row) { return writeGb[row]; }
+
+        long estimatedBytes() {
+            return 112 + dictionaryBytes(names) + columnBytes(process.length, 2, 4) + columnBytes(runtime.length, 8, 8);
+        }
+
+        static class Serializer extends StdSerializer<ProcessTable> {
+            Serializer() {
+                super(ProcessTable.class);
+            }
+
+            @Override
+            public void serialize(ProcessTable t, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeStartArray(t, t.size);
+                for (int i = 0; i < t.size; i++) {
+                    gen.writeStartObject();
+                    gen.writeStringField("process", t.names[t.process[i]]);
+                    gen.writeNumberField("tasks", t.tasks[i]);
+                    gen.writeNumberField("runtime", t.runtime[i]);
+                    gen.writeNumberField("cpuUsage", t.cpuUsage[i]);
+                    gen.writeNumberField("memoryAllocated", t.memoryAllocated[i]);
+                    gen.writeNumberField("ioVolume", t.ioVolume[i]);
+                    gen.writeNumberField("energyConsumption", t.energyConsumption[i]);
+                    gen.writeNumberField("carbonFootprint", t.carbonFootprint[i]);
+                    gen.writeNumberField("readGb", t.readGb[i]);
+                    gen.writeNumberField("writeGb", t.writeGb[i]);
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+            }
+        }
+    }
+
+    private static long dictionaryBytes(String[] names) {
+        long bytes = 16 + 4L * names.length;
+        for (String name : names) {
+            bytes += 48 + name.length();
+        }
+        return bytes;
+    }
+
+    private static long columnBytes(int length, int columns, int width) {
+        return (long) columns * (16 + (long) length * width);
     }
-}
\ No newline at end of file
+}
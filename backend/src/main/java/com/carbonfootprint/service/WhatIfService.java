@@ -0,0 +1,334 @@
+package com.carbonfootprint.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.carbonfootprint.analysis.PowerProfile;
+import com.carbonfootprint.analysis.PowerProfiles;
+import com.carbonfootprint.analysis.TraceRollup;
+import com.carbonfootprint.config.AnalysisConfig;
+import com.carbonfootprint.exception.BadRequestException;
+import com.carbonfootprint.exception.ResourceNotFoundException;
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.repository.AnalysisResultRepository;
+import com.carbonfootprint.service.VisualizationService.HostData;
+import com.carbonfootprint.service.VisualizationService.ProcessTable;
+import com.carbonfootprint.service.VisualizationService.SummaryData;
+import com.carbonfootprint.service.VisualizationService.TaskTable;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+
+/**
+ * "What if" views of an analysis under other power profiles or another carbon intensity. The
+ * native analyzer leaves a {@link TraceRollup} per trace in {@code analysis.rollup-dir}, named by
+ * the trace's content hash; recomputing from it touches a few hundred cells instead of the
+ * trace, and the parsed rollups of recently used traces stay in memory.
+ */
+@Service
+public class WhatIfService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WhatIfService.class);
+
+    private static final String SUFFIX = ".rollup";
+
+    @Autowired
+    private AnalysisConfig analysisConfig;
+
+    @Autowired
+    private AnalysisResultRepository resultRepository;
+
+    @Autowired
+    private PowerProfileService powerProfileService;
+
+    // Access-ordered, keyed by content hash
+    private final LinkedHashMap<String, TraceRollup> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Stores the rollup of an analysed trace, replacing an older one. Failures are only logged:
+     * the analysis itself is complete without it.
+     */
+    public void saveRollup(String contentHash, TraceRollup rollup) {
+        if (contentHash == null) {
+            return;
+        }
+        try {
+            Path directory = Paths.get(analysisConfig.getRollupDir());
+            Files.createDirectories(directory);
+            Path file = directory.resolve(contentHash + SUFFIX);
+            Path temp = Files.createTempFile(directory, contentHash, ".tmp");
+            try {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    rollup.writeTo(out);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                ScriptService.deleteQuietly(temp);
+            }
+            synchronized (cache) {
+                cache.remove(contentHash);
+            }
+            logger.debug("Saved rollup of {} ({} cells)", contentHash, rollup.size());
+        } catch (IOException e) {
+            logger.warn("Could not save the rollup of {}: {}", contentHash, e.getMessage());
+        }
+    }
+
+    /** The chart data of a result recomputed with the parameters of {@code request}. */
+    public VisualizationData recompute(Long resultId, WhatIfRequest request) {
+        Script script = resultRepository.findById(resultId)
+                .orElseThrow(() -> new ResourceNotFoundException("Analysis result not found"))
+                .getScript();
+        if (script == null || script.getContentHash() == null) {
+            throw new ResourceNotFoundException("Analysis result " + resultId + " has no trace to recompute");
+        }
+        TraceRollup rollup = rollup(script.getContentHash());
+        if (rollup == null) {
+            throw new ResourceNotFoundException("No pre-aggregated data for result " + resultId
+                    + "; analyze the trace again with the native analyzer");
+        }
+        WhatIfRequest parameters = request != null ? request : new WhatIfRequest();
+        PowerProfiles power = powerProfiles(parameters, script);
+        Double intensity = parameters.getCarbonIntensity();
+        if (intensity != null && !(intensity >= 0 && !intensity.isInfinite())) {
+            throw new BadRequestException("carbonIntensity must be a finite value >= 0");
+        }
+        return recompute(rollup, power, intensity);
+    }
+
+    // The configured registry, changed by whatever the request sets
+    private PowerProfiles powerProfiles(WhatIfRequest request, Script script) {
+        PowerProfiles configured = powerProfileService.forHardware(script.getHardwareConfig());
+        List<PowerProfile> profiles = new ArrayList<>(configured.getProfiles());
+        try {
+            if (request.getProfiles() != null) {
+                request.getProfiles().forEach((name, coefficients) -> profiles.add(new PowerProfile(name,
+                        coefficients.getCpuWattsPerCore(), coefficients.getIdleWatts(),
+                        coefficients.getMemoryWattsPerGb(), coefficients.getStorageWattsPerGb())));
+            }
+            Map<String, String> hosts = request.getHostProfiles() != null
+                    ? request.getHostProfiles() : configured.getHostProfiles();
+            String defaultProfile = request.getPowerProfile() != null
+                    ? request.getPowerProfile() : configured.getDefaultProfile().getName();
+            return PowerProfiles.of(profiles, hosts, defaultProfile);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    /**
+     * Energy and carbon of every cell with the profiles of {@code power}, folded into the same
+     * tables the stored analysis gives. A null {@code gramsPerKwh} keeps the intensity each task
+     * was analysed with.
+     */
+    public static VisualizationData recompute(TraceRollup rollup, PowerProfiles power, Double gramsPerKwh) {
+        Dictionary names = new Dictionary();
+        int hardware = names.code(power.getDefaultProfile().getName());
+
+        // Per cell, then folded into process and host groups
+        Map<String, Group> processes = new HashMap<>();
+        Map<String, Group> hosts = new LinkedHashMap<>();
+        double energyWh = 0;
+        double carbonGrams = 0;
+        double durationMin = 0;
+        double cpuPercent = 0;
+        double count = 0;
+        for (int cell = 0; cell < rollup.size(); cell++) {
+            String process = rollup.processName(cell);
+            String host = rollup.hostName(cell);
+            PowerProfile profile = power.profile(power.profileOf(host));
+            double cellWh = rollup.energyWh(cell, profile);
+            double cellCarbon = gramsPerKwh != null ? cellWh / 1000 * gramsPerKwh : rollup.carbonGrams(cell, profile);
+
+            energyWh += cellWh;
+            carbonGrams += cellCarbon;
+            durationMin += rollup.value(cell, TraceRollup.DURATION_MIN);
+            cpuPercent += rollup.value(cell, TraceRollup.CPU_PERCENT);
+            count += rollup.value(cell, TraceRollup.COUNT);
+            if (process != null) {
+                processes.computeIfAbsent(process, key -> new Group()).add(rollup, cell, cellWh, cellCarbon);
+            }
+            // Cells are in order of first appearance, so are the processes of every host
+            if (host != null) {
+                Group group = hosts.computeIfAbsent(host, key -> new Group());
+                group.add(rollup, cell, cellWh, cellCarbon);
+                if (process != null && !group.processes.contains(process)) {
+                    group.processes.add(process);
+                }
+            }
+        }
+
+        List<String> processNames = sorted(processes);
+        int[] taskProcess = new int[processNames.size()];
+        double[] taskEnergy = new double[processNames.size()];
+        double[] taskCarbon = new double[processNames.size()];
+        double[] taskRuntime = new double[processNames.size()];
+        double[] taskCpu = new double[processNames.size()];
+        double[] taskMemory = new double[processNames.size()];
+        int[] taskHardware = new int[processNames.size()];
+        for (int i = 0; i < processNames.size(); i++) {
+            Group group = processes.get(processNames.get(i));
+            taskProcess[i] = names.code(processNames.get(i));
+            taskEnergy[i] = group.energyWh;
+            taskCarbon[i] = group.carbonGrams;
+            taskRuntime[i] = group.durationMin;
+            taskCpu[i] = group.cpuPercent / group.count;
+            taskMemory[i] = group.memoryGb / group.count;
+            taskHardware[i] = hardware;
+        }
+
+        List<String> hostNames = sorted(hosts);
+        int size = hostNames.size();
+        int[] hostIds = new int[size];
+        int[] taskCounts = new int[size];
+        double[] runtimes = new double[size];
+        double[] cpuUtilizations = new double[size];
+        double[] memoryAllocations = new double[size];
+        double[] ioVolumes = new double[size];
+        double[] energyConsumptions = new double[size];
+        double[] carbonEmissions = new double[size];
+        int[] processHosts = new int[size];
+        int[] processLists = new int[size];
+        int processCount = 0;
+        for (int i = 0; i < size; i++) {
+            Group group = hosts.get(hostNames.get(i));
+            hostIds[i] = names.code(hostNames.get(i));
+            taskCounts[i] = (int) group.count;
+            runtimes[i] = group.durationMin;
+            cpuUtilizations[i] = group.cpuPercent / group.count;
+            memoryAllocations[i] = group.memoryGb;
+            ioVolumes[i] = group.ioGb;
+            energyConsumptions[i] = group.energyWh;
+            carbonEmissions[i] = group.carbonGrams;
+            if (!group.processes.isEmpty()) {
+                processHosts[processCount] = hostIds[i];
+                processLists[processCount++] = names.code(String.join(", ", group.processes));
+            }
+        }
+
+        String[] dictionary = names.toArray();
+        SummaryData summary = new SummaryData(energyWh / 1000, carbonGrams / 1000, durationMin,
+                count == 0 ? 0.0 : cpuPercent / count);
+        TaskTable tasks = new TaskTable(dictionary, processNames.size(), taskProcess, taskEnergy, taskCarbon,
+                taskRuntime, taskCpu, taskMemory, taskHardware);
+        HostData hostData = new HostData(dictionary, size, hostIds, taskCounts, runtimes, cpuUtilizations,
+                memoryAllocations, ioVolumes, energyConsumptions, carbonEmissions, processCount,
+                Arrays.copyOf(processHosts, processCount), Arrays.copyOf(processLists, processCount));
+        ProcessTable processData = new ProcessTable(dictionary, 0, new int[0], new int[0], new double[0],
+                new double[0], new double[0], new double[0], new double[0], new double[0], new double[0], new double[0]);
+        return new VisualizationData(summary, tasks, hostData, processData);
+    }
+
+    // Ordered by name like the analyzers' groupby()
+    private static List<String> sorted(Map<String, Group> groups) {
+        List<String> keys = new ArrayList<>(groups.keySet());
+        keys.sort(Comparator.naturalOrder());
+        return keys;
+    }
+
+    private TraceRollup rollup(String contentHash) {
+        synchronized (cache) {
+            TraceRollup cached = cache.get(contentHash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Path file = Paths.get(analysisConfig.getRollupDir()).resolve(contentHash + SUFFIX);
+        TraceRollup rollup;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            rollup = TraceRollup.readFrom(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Could not read rollup {}: {}", file, e.getMessage());
+            return null;
+        }
+        synchronized (cache) {
+            cache.put(contentHash, rollup);
+            while (cache.size() > Math.max(0, analysisConfig.getRollupCacheSize())) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+        return rollup;
+    }
+
+    /** Sums of one process or host over its cells. */
+    private static final class Group {
+        double count;
+        double durationMin;
+        double cpuPercent;
+        double memoryGb;
+        double ioGb;
+        double energyWh;
+        double carbonGrams;
+        final List<String> processes = new ArrayList<>(2);
+
+        void add(TraceRollup rollup, int cell, double cellWh, double cellCarbon) {
+            count += rollup.value(cell, TraceRollup.COUNT);
+            durationMin += rollup.value(cell, TraceRollup.DURATION_MIN);
+            cpuPercent += rollup.value(cell, TraceRollup.CPU_PERCENT);
+            memoryGb += rollup.value(cell, TraceRollup.MEMORY_GB);
+            ioGb += rollup.value(cell, TraceRollup.IO_GB);
+            energyWh += cellWh;
+            carbonGrams += cellCarbon;
+        }
+    }
+
+    // Insertion-ordered string dictionary for the tables' shared name array
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int code(String name) {
+            return codes.computeIfAbsent(name, key -> {
+                names.add(key);
+                return names.size() - 1;
+            });
+        }
+
+        String[] toArray() {
+            return names.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Parameters of a what-if view; anything left out keeps the configured value.
+     * {@code profiles} adds or replaces power profiles for this request only.
+     */
+    public static class WhatIfRequest {
+        // gCO2eq/kWh for every task; null keeps the intensity each task was analysed with
+        private Double carbonIntensity;
+        // Profile of hosts that hostProfiles does not map
+        private String powerProfile;
+        // Host name (or prefix ending in *) to profile name
+        private Map<String, String> hostProfiles;
+        private Map<String, AnalysisConfig.PowerProfileProperties> profiles;
+
+        public Double getCarbonIntensity() { return carbonIntensity; }
+        public void setCarbonIntensity(Double carbonIntensity) { this.carbonIntensity = carbonIntensity; }
+        public String getPowerProfile() { return powerProfile; }
+        public void setPowerProfile(String powerProfile) { this.powerProfile = powerProfile; }
+        public Map<String, String> getHostProfiles() { return hostProfiles; }
+        public void setHostProfiles(Map<String, String> hostProfiles) { this.hostProfiles = hostProfiles; }
+        public Map<String, AnalysisConfig.PowerProfileProperties> getProfiles() { return profiles; }
+        public void setProfiles(Map<String, AnalysisConfig.PowerProfileProperties> profiles) { this.profiles = profiles; }
+    }
+}
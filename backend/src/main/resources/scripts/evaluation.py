@@ -6,6 +6,8 @@ import json
 import argparse
 import logging
 import re
+import struct
+import gzip
 
 # Custom JSON encoder to handle NumPy data types
 class NumpyEncoder(json.JSONEncoder):
@@ -31,13 +33,67 @@ def setup_logging():
 
 logger = setup_logging()
 
-def load_and_preprocess_data(file_path):
+def open_trace_text(file_path):
+    """Open a trace for reading text; .csv.gz and .csv.zst traces are decompressed while reading"""
+    if file_path.endswith('.gz'):
+        return gzip.open(file_path, 'rt')
+    if file_path.endswith('.zst'):
+        import zstandard
+        return zstandard.open(file_path, 'rt')
+    return open(file_path, 'r')
+
+# Coefficients of the built-in "default" power profile (PowerProfile.DEFAULT on the Java side)
+DEFAULT_POWER_PROFILE = {
+    'cpu_watts_per_core': 200.0,
+    'idle_watts': 50.0,
+    'memory_watts_per_gb': 0.0,
+    'storage_watts_per_gb': 5.0,
+}
+
+def assign_power_profiles(df, power, hardware):
+    """
+    Add the power coefficients of every task's host as columns. power is the registry the backend
+    sends ({"default": name, "profiles": {name: coefficients}, "hosts": {host or prefix*: name}});
+    hosts match exactly or by the longest prefix, the others use the profile hardware names or the
+    registry's default. Every distinct host is resolved once.
+    """
+    power = power or {}
+    profiles = {'default': DEFAULT_POWER_PROFILE}
+    profiles.update(power.get('profiles', {}))
+    fallback = hardware if hardware in profiles else power.get('default', 'default')
+    hosts = power.get('hosts', {})
+    exact = {host: name for host, name in hosts.items() if not host.endswith('*')}
+    prefixes = sorted(((host[:-1], name) for host, name in hosts.items() if host.endswith('*')),
+                      key=lambda entry: -len(entry[0]))
+
+    def profile_of(host):
+        if host in exact:
+            return exact[host]
+        for prefix, name in prefixes:
+            if host.startswith(prefix):
+                return name
+        return fallback
+
+    names = {}
+    if 'hostname' in df.columns:
+        names = {host: profile_of(str(host)) for host in df['hostname'].dropna().unique()}
+        task_profiles = df['hostname'].map(names).fillna(fallback)
+    else:
+        task_profiles = pd.Series(fallback, index=df.index)
+    for coefficient in DEFAULT_POWER_PROFILE:
+        values = {name: float(profile.get(coefficient, DEFAULT_POWER_PROFILE[coefficient]))
+                  for name, profile in profiles.items()}
+        df[coefficient] = task_profiles.map(values)
+    logger.info(f"Power profiles per host: {names}, others: {fallback}")
+
+def load_and_preprocess_data(file_path, power=None, hardware='default'):
     """Load and preprocess trace.csv data with improved column detection"""
     try:
         logger.info(f"Attempting to read file: {file_path}")
         
         # 首先尝试检测文件是否有真实的表头
-        with open(file_path, 'r') as f:
+        # 压缩的 trace 不解压到磁盘；read_csv 按扩展名推断压缩格式（.zst 需要 zstandard 包）
+        with open_trace_text(file_path) as f:
             first_line = f.readline().strip()
         
         # 检测可能的列分隔符
@@ -116,20 +172,26 @@ def load_and_preprocess_data(file_path):
             df['total_io_gb'] = df['read_gb'] + df['write_gb']
         
         # Estimate energy consumption (simplified model)
-        # Using a fixed CPU power draw (e.g., 200W per CPU) and I/O power (e.g., 5W per GB of I/O)
-        # Assuming a base power draw for other components
+        # The CPU draw per core, the I/O and memory draw per GB and the base draw of the other
+        # components come from the power profile of each task's host (200W per CPU, 5W per GB of
+        # I/O, no memory term and 50W base without profiles)
+        assign_power_profiles(df, power, hardware)
         if all(col in df.columns for col in ['cpus', '%cpu']):
             # 检查%cpu值是否合理，如果过大则限制上限
             df['%cpu'] = df['%cpu'].apply(lambda x: min(x, 1000) if pd.notnull(x) else 0)
-            df['cpu_power_watts'] = df['cpus'] * 200 * (df['%cpu'] / 100)
+            df['cpu_power_watts'] = df['cpus'] * df['cpu_watts_per_core'] * (df['%cpu'] / 100)
         
         if 'total_io_gb' in df.columns:
-            df['io_power_watts'] = df['total_io_gb'] * 5 
+            df['io_power_watts'] = df['total_io_gb'] * df['storage_watts_per_gb']
+
+        if 'memory_gb' in df.columns:
+            df['memory_power_watts'] = df['memory_gb'] * df['memory_watts_per_gb']
         
-        df['base_power_watts'] = 50  # Assume a 50W base power for other components
+        df['base_power_watts'] = df['idle_watts']
         
         # Calculate total power
-        power_columns = [col for col in ['cpu_power_watts', 'io_power_watts', 'base_power_watts'] if col in df.columns]
+        power_columns = [col for col in ['cpu_power_watts', 'io_power_watts', 'memory_power_watts', 'base_power_watts']
+                         if col in df.columns]
         if power_columns:
             df['total_power_watts'] = df[power_columns].sum(axis=1)
         
@@ -194,7 +256,9 @@ def perform_analysis(df, hardware_config):
         'totalIo': total_io_gb,
         'totalTasks': len(df),
         'hardwareConfig': hardware_config,
-        'avgCpuUtilization': avg_cpu_utilization
+        'avgCpuUtilization': avg_cpu_utilization,
+        # Fixed intensity; the native analyzer can apply hourly tables instead
+        'carbonIntensityProfile': 'constant-475'
     }
     
     logger.info(f"Summary statistics - Total energy: {total_energy_kwh} kWh, Total carbon emissions: {total_carbon} kgCO2eq")
@@ -311,41 +375,101 @@ def perform_analysis(df, hardware_config):
     
     return result
 
+def analyze_file(file_path, hardware, power=None):
+    """Analyze one trace file and return the result dict (never raises)"""
+    try:
+        # Check if file exists
+        if not os.path.exists(file_path):
+            error_msg = f"File does not exist: {file_path}"
+            logger.error(error_msg)
+            return {'status': 'failed', 'message': error_msg}
+
+        # Load data
+        df, error = load_and_preprocess_data(file_path, power, hardware)
+
+        if df is None:
+            # If file loading failed, return error message
+            return {'status': 'failed', 'message': error}
+
+        # Perform analysis
+        result = perform_analysis(df, hardware)
+        result['status'] = 'success'
+        return result
+
+    except Exception as e:
+        # Catch any other unexpected errors
+        error_message = f"An unexpected error occurred during analysis: {str(e)}"
+        logger.error(error_message, exc_info=True)
+        return {'status': 'failed', 'message': error_message}
+
+def read_frame(stream):
+    """Read one length-prefixed frame (4-byte big-endian length + UTF-8 JSON), None at EOF or on an empty frame"""
+    header = stream.read(4)
+    if len(header) < 4:
+        return None
+    (length,) = struct.unpack('>I', header)
+    if length == 0:
+        return None
+    payload = stream.read(length)
+    if len(payload) < length:
+        return None
+    return json.loads(payload.decode('utf-8'))
+
+def write_frame(stream, obj):
+    payload = json.dumps(obj, cls=NumpyEncoder).encode('utf-8')
+    stream.write(struct.pack('>I', len(payload)))
+    stream.write(payload)
+    stream.flush()
+
+def serve():
+    """
+    Worker mode used by the backend's Python worker pool: the interpreter and pandas are loaded
+    once, then requests {"file_path": ..., "hardware": ..., "power": ...} are answered one frame at a time
+    until stdin is closed or an empty request arrives.
+    """
+    frames_in = sys.stdin.buffer
+    frames_out = sys.stdout.buffer
+    # Anything printed by accident must not corrupt the framed stdout
+    sys.stdout = sys.stderr
+    logger.info(f"Worker {os.getpid()} ready")
+
+    while True:
+        request = read_frame(frames_in)
+        if not request:
+            break
+        logger.info(f"Worker {os.getpid()} analyzing {request.get('file_path')}")
+        write_frame(frames_out, analyze_file(request.get('file_path', ''), request.get('hardware', 'default'),
+                                             request.get('power')))
+
+    logger.info(f"Worker {os.getpid()} exiting")
+
 if __name__ == '__main__':
     parser = argparse.ArgumentParser(description="""
         A Python script to analyze Nextflow trace data for performance and carbon footprint.
         It processes a trace.csv file, calculates key metrics, and outputs the results as a JSON object.
     """)
-    parser.add_argument('file_path', type=str, help="Path to the trace CSV file.")
+    parser.add_argument('file_path', type=str, nargs='?', help="Path to the trace CSV file.")
     parser.add_argument('--hardware', type=str, default='default', help="Hardware configuration used for the run.")
+    parser.add_argument('--power-profiles', type=str, help="JSON file with the power profiles and their hosts, "
+                        "as the backend sends them; the default profile applies to every host without it.")
+    parser.add_argument('--serve', action='store_true', help="Answer framed requests on stdin/stdout until EOF.")
     
     args = parser.parse_args()
-    logger.info(f"Command line arguments: file_path={args.file_path}, hardware={args.hardware}")
 
-    try:
-        # Check if file exists
-        if not os.path.exists(args.file_path):
-            error_msg = f"File does not exist: {args.file_path}"
-            logger.error(error_msg)
-            result = {'status': 'failed', 'message': error_msg}
-        else:
-            # Load data
-            df, error = load_and_preprocess_data(args.file_path)
-            
-            if df is None:
-                # If file loading failed, return error message
-                result = {'status': 'failed', 'message': error}
-            else:
-                # Perform analysis
-                result = perform_analysis(df, args.hardware)
-                result['status'] = 'success'
+    if args.serve:
+        serve()
+        sys.exit(0)
 
-    except Exception as e:
-        # Catch any other unexpected errors
-        error_message = f"An unexpected error occurred during analysis: {str(e)}"
-        logger.error(error_message, exc_info=True)
-        result = {'status': 'failed', 'message': error_message}
+    if not args.file_path:
+        parser.error("file_path is required unless --serve is given")
+
+    logger.info(f"Command line arguments: file_path={args.file_path}, hardware={args.hardware}")
+    power = None
+    if args.power_profiles:
+        with open(args.power_profiles) as f:
+            power = json.load(f)
+    result = analyze_file(args.file_path, args.hardware, power)
         
     # Output JSON result (ensure only JSON is printed to stdout)
     # Use custom encoder to handle NumPy data types
-    print(json.dumps(result, indent=4, cls=NumpyEncoder))
\ No newline at end of file
+    print(json.dumps(result, indent=4, cls=NumpyEncoder))
@@ -0,0 +1,35 @@
+package com.carbonfootprint;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+/**
+ * Points an application context used by a test at its own in-memory database and a fresh
+ * directory for uploads, exports and rollups, so tests never touch ./uploads or ./data.
+ */
+public final class TestStorage {
+
+    private TestStorage() {}
+
+    /** Registers the properties and returns the directory the context stores its files in. */
+    public static Path register(DynamicPropertyRegistry registry, String name) {
+        Path root;
+        try {
+            root = Files.createTempDirectory(name + "-");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("file.upload-dir", () -> root.resolve("uploads").toString());
+        registry.add("file.export-dir", () -> root.resolve("exports").toString());
+        registry.add("analysis.rollup-dir", () -> root.resolve("rollups").toString());
+        // Background conversions would race with the test's own files
+        registry.add("analysis.columnar-conversion", () -> "false");
+        return root;
+    }
+}
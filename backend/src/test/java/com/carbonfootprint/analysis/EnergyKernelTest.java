@@ -0,0 +1,115 @@
+package com.carbonfootprint.analysis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The vector kernel has to give bit for bit the values of the scalar one, in the full vectors and
+ * in the tail rows the scalar loop finishes. Surefire starts the JVM with jdk.incubator.vector.
+ */
+class EnergyKernelTest {
+
+    // Values the parser can produce, including %cpu above the clip and zero or huge byte counts
+    private static final double[] SPECIAL = {0.0, 1.0, 0.5, 100.0, 999.9, 1000.0, 1000.1, 6400.0, 1e-300, 1e15};
+
+    @Test
+    void vectorKernelIsAvailable() {
+        assertThat(EnergyKernel.vector()).isNotNull();
+        assertThat(EnergyKernel.preferred()).isSameAs(EnergyKernel.vector());
+    }
+
+    @Test
+    void vectorMatchesScalarBitForBitIncludingTail() {
+        EnergyKernel vector = EnergyKernel.vector();
+        assertThat(vector).isNotNull();
+        Random random = new Random(42);
+        // Every size up to a few vectors, so each tail length is covered, and one full batch
+        for (int size = 0; size <= 67; size++) {
+            assertSameBits(vector, randomColumns(random, size), size);
+        }
+        assertSameBits(vector, randomColumns(random, TraceColumns.DEFAULT_CAPACITY), TraceColumns.DEFAULT_CAPACITY);
+        assertSameBits(vector, randomColumns(random, TraceColumns.DEFAULT_CAPACITY - 3), TraceColumns.DEFAULT_CAPACITY - 3);
+    }
+
+    @Test
+    void vectorMatchesScalarOnSpecialValues() {
+        EnergyKernel vector = EnergyKernel.vector();
+        assertThat(vector).isNotNull();
+        int size = SPECIAL.length * SPECIAL.length;
+        TraceColumns columns = new TraceColumns(size);
+        for (int i = 0; i < SPECIAL.length; i++) {
+            for (int j = 0; j < SPECIAL.length; j++) {
+                fill(columns, SPECIAL[i], SPECIAL[j], SPECIAL[(i + j) % SPECIAL.length],
+                        SPECIAL[(i * 3 + j) % SPECIAL.length], 1.0 / 3, PowerProfile.DEFAULT);
+            }
+        }
+        assertSameBits(vector, columns, size);
+    }
+
+    private static void assertSameBits(EnergyKernel vector, TraceColumns columns, int size) {
+        TraceColumns expected = copy(columns);
+        EnergyKernel.scalar().apply(expected);
+        vector.apply(columns);
+        for (int i = 0; i < size; i++) {
+            assertBits(columns.clippedCpuPercent[i], expected.clippedCpuPercent[i], "clippedCpuPercent", size, i);
+            assertBits(columns.ioGb[i], expected.ioGb[i], "ioGb", size, i);
+            assertBits(columns.energyWh[i], expected.energyWh[i], "energyWh", size, i);
+            assertBits(columns.carbonGrams[i], expected.carbonGrams[i], "carbonGrams", size, i);
+        }
+    }
+
+    private static void assertBits(double actual, double expected, String column, int size, int row) {
+        assertThat(Double.doubleToRawLongBits(actual))
+                .as("%s of row %d of %d", column, row, size)
+                .isEqualTo(Double.doubleToRawLongBits(expected));
+    }
+
+    private static TraceColumns randomColumns(Random random, int size) {
+        TraceColumns columns = new TraceColumns(Math.max(size, 1));
+        PowerProfile profile = new PowerProfile("test", 150 + random.nextDouble() * 100, 40 + random.nextDouble() * 20,
+                random.nextDouble(), random.nextDouble() * 10);
+        for (int i = 0; i < size; i++) {
+            fill(columns, 1 + random.nextInt(64), random.nextDouble() * 1500, random.nextDouble() * 1e11,
+                    random.nextDouble() * 1e7, 50 + random.nextDouble() * 800, profile);
+        }
+        return columns;
+    }
+
+    private static void fill(TraceColumns c, double cpus, double cpuPercent, double bytes, double realtime,
+                             double gramsPerKwh, PowerProfile profile) {
+        int i = c.size++;
+        c.cpus[i] = cpus;
+        c.cpuPercent[i] = cpuPercent;
+        c.memory[i] = bytes * 2;
+        c.readBytes[i] = bytes;
+        c.writeBytes[i] = bytes / 3;
+        c.realtime[i] = realtime;
+        c.gramsPerKwh[i] = gramsPerKwh;
+        c.cpuWattsPerCore[i] = profile.getCpuWattsPerCore();
+        c.idleWatts[i] = profile.getIdleWatts();
+        c.memoryWattsPerGb[i] = profile.getMemoryWattsPerGb();
+        c.storageWattsPerGb[i] = profile.getStorageWattsPerGb();
+    }
+
+    private static TraceColumns copy(TraceColumns source) {
+        TraceColumns copy = new TraceColumns(source.capacity());
+        for (int i = 0; i < source.size; i++) {
+            copy.cpus[i] = source.cpus[i];
+            copy.cpuPercent[i] = source.cpuPercent[i];
+            copy.memory[i] = source.memory[i];
+            copy.readBytes[i] = source.readBytes[i];
+            copy.writeBytes[i] = source.writeBytes[i];
+            copy.realtime[i] = source.realtime[i];
+            copy.gramsPerKwh[i] = source.gramsPerKwh[i];
+            copy.cpuWattsPerCore[i] = source.cpuWattsPerCore[i];
+            copy.idleWatts[i] = source.idleWatts[i];
+            copy.memoryWattsPerGb[i] = source.memoryWattsPerGb[i];
+            copy.storageWattsPerGb[i] = source.storageWattsPerGb[i];
+        }
+        copy.size = source.size;
+        return copy;
+    }
+}
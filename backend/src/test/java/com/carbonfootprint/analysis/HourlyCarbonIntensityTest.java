@@ -0,0 +1,121 @@
+package com.carbonfootprint.analysis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The average intensity over a task's run: partial hours weigh by the time spent in them, hours
+ * missing from a table repeat the previous one, and the first and last hour continue before and
+ * after the table.
+ */
+class HourlyCarbonIntensityTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @TempDir
+    Path tables;
+
+    // 00:00 100, 01:00 200, 02:00 missing (so 200), 03:00 400
+    private HourlyCarbonIntensity load(ZoneId traceTimeZone) throws IOException {
+        Files.writeString(tables.resolve("DE.csv"), "hour,intensity\n"
+                + "2023-10-14 00:00,100\n"
+                + "2023-10-14 01:00,200\n"
+                + "2023-10-14 03:00,400\n");
+        return HourlyCarbonIntensity.load(tables, Map.of(), "", traceTimeZone);
+    }
+
+    @Test
+    void partialHoursWeighByTheirShare() throws IOException {
+        HourlyCarbonIntensity intensity = load(ZoneOffset.UTC);
+
+        assertThat(at(intensity, "00:15", "00:45")).isCloseTo(100, within(TOLERANCE));
+        assertThat(at(intensity, "00:30", "01:30")).isCloseTo(150, within(TOLERANCE));
+        // 15 minutes at 100, a full hour at 200
+        assertThat(at(intensity, "00:45", "02:00")).isCloseTo((0.25 * 100 + 200) / 1.25, within(TOLERANCE));
+        assertThat(at(intensity, "00:00", "04:00")).isCloseTo((100 + 200 + 200 + 400) / 4.0, within(TOLERANCE));
+    }
+
+    @Test
+    void gapsRepeatThePreviousHour() throws IOException {
+        HourlyCarbonIntensity intensity = load(ZoneOffset.UTC);
+
+        assertThat(at(intensity, "02:00", "03:00")).isCloseTo(200, within(TOLERANCE));
+        assertThat(at(intensity, "02:10", "02:50")).isCloseTo(200, within(TOLERANCE));
+        assertThat(at(intensity, "01:30", "03:30")).isCloseTo((0.5 * 200 + 200 + 0.5 * 400) / 2, within(TOLERANCE));
+        assertThat(intensity.getHours(0)).isEqualTo(4);
+    }
+
+    @Test
+    void edgesContinueBeforeAndAfterTheTable() throws IOException {
+        HourlyCarbonIntensity intensity = load(ZoneOffset.UTC);
+
+        // Entirely before the first hour, and reaching into it
+        assertThat(gramsPerKwh(intensity, "2023-10-13T22:00:00Z", "2023-10-13T23:00:00Z")).isCloseTo(100, within(TOLERANCE));
+        assertThat(gramsPerKwh(intensity, "2023-10-13T23:00:00Z", "2023-10-14T01:30:00Z"))
+                .isCloseTo((100 + 100 + 0.5 * 200) / 2.5, within(TOLERANCE));
+        // Entirely after the last hour, and from inside it
+        assertThat(gramsPerKwh(intensity, "2023-10-14T06:00:00Z", "2023-10-14T09:00:00Z")).isCloseTo(400, within(TOLERANCE));
+        assertThat(at(intensity, "02:30", "05:30")).isCloseTo((0.5 * 200 + 3 * 400 - 0.5 * 400) / 3, within(TOLERANCE));
+    }
+
+    @Test
+    void missingTimesUseOneHourOrTheMean() throws IOException {
+        HourlyCarbonIntensity intensity = load(ZoneOffset.UTC);
+
+        // Only one usable time: the hour it falls in, clamped to the table
+        assertThat(intensity.gramsPerKwh(0, ms("2023-10-14T01:59:00Z"), 0)).isEqualTo(200);
+        assertThat(intensity.gramsPerKwh(0, 0, ms("2023-10-15T00:00:00Z"))).isEqualTo(400);
+        assertThat(at(intensity, "03:00", "01:00")).isEqualTo(400);
+        // No times at all: the mean of the table
+        assertThat(intensity.gramsPerKwh(0, 0, 0)).isCloseTo(225, within(TOLERANCE));
+    }
+
+    @Test
+    void formattedTraceTimesAreReadInTheTraceZone() throws IOException {
+        HourlyCarbonIntensity berlin = load(ZoneId.of("Europe/Berlin"));
+        // 02:30 to 03:30 in Berlin is 00:30 to 01:30 UTC, half at 100 and half at 200
+        String formatted = "process,cpus,%cpu,realtime,start,complete\n"
+                + "A,1,100,3600000,2023-10-14 02:30:00.000,2023-10-14 03:30:00.000\n";
+        String raw = "process,cpus,%cpu,realtime,start,complete\n"
+                + "A,1,100,3600000," + (long) ms("2023-10-14T00:30:00Z") + "," + (long) ms("2023-10-14T01:30:00Z") + "\n";
+
+        double formattedCarbon = carbon(formatted, berlin);
+        assertThat(formattedCarbon).isEqualTo(carbon(raw, berlin));
+        assertThat(formattedCarbon).isCloseTo(carbon(raw, CarbonIntensity.CONSTANT) * 150 / EnergyModel.CARBON_INTENSITY_G_PER_KWH,
+                within(TOLERANCE));
+        // The zone is part of the profile, so results from another zone are not reused
+        assertThat(berlin.getProfile()).isNotEqualTo(load(ZoneOffset.UTC).getProfile());
+    }
+
+    private static double carbon(String trace, CarbonIntensity intensity) throws IOException {
+        TraceAggregates aggregates = TraceAnalysisEngine.aggregate(
+                new ByteArrayInputStream(trace.getBytes(StandardCharsets.UTF_8)), intensity, PowerProfiles.DEFAULT);
+        return aggregates.toResultNode("default").path("summary").path("totalCarbonFootprint").asDouble();
+    }
+
+    // A task on 2023-10-14 between two UTC times of day
+    private static double at(HourlyCarbonIntensity intensity, String from, String to) {
+        return gramsPerKwh(intensity, "2023-10-14T" + from + ":00Z", "2023-10-14T" + to + ":00Z");
+    }
+
+    private static double gramsPerKwh(HourlyCarbonIntensity intensity, String from, String to) {
+        return intensity.gramsPerKwh(0, ms(from), ms(to));
+    }
+
+    private static double ms(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+}
@@ -0,0 +1,100 @@
+package com.carbonfootprint.analysis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The native analyzer against evaluation.py on the sample trace (uploads/trace.csv). The expected
+ * values are evaluation.py's model evaluated on that file with exact summation, so the native
+ * sums may only differ from them by rounding.
+ */
+class TraceAnalysisEngineTest {
+
+    private static final Path SAMPLE_TRACE = Paths.get("uploads", "trace.csv");
+
+    // summary of evaluation.py: kWh, kgCO2eq, minutes, mean %cpu
+    private static final double TOTAL_ENERGY_KWH = 503.1318723125721;
+    private static final double TOTAL_CARBON_KG = 238.98763934847173;
+    private static final double TOTAL_RUNTIME_MIN = 36833.636633333335;
+    private static final double AVG_CPU_UTILIZATION = 132.22760963557752;
+    private static final int TOTAL_TASKS = 3238;
+    private static final int PROCESSES = 42;
+    private static final int HOSTS = 8;
+
+    private static final String SAMTOOLS_STATS =
+            "NFCORE_CHIPSEQ:CHIPSEQ:ALIGN_BWA_MEM:BAM_SORT_SAMTOOLS:BAM_STATS_SAMTOOLS:SAMTOOLS_STATS";
+    private static final double SAMTOOLS_STATS_ENERGY_WH = 671.8072463838789;
+
+    private static final double RELATIVE_TOLERANCE = 1e-12;
+
+    @Test
+    void streamingMatchesEvaluationModel() throws IOException {
+        TraceAggregates aggregates;
+        try (InputStream in = Files.newInputStream(SAMPLE_TRACE)) {
+            aggregates = TraceAnalysisEngine.aggregate(in);
+        }
+        assertMatchesModel(aggregates.toResultNode("default"));
+    }
+
+    @Test
+    void parallelChunksMatchEvaluationModel() throws IOException {
+        // Threshold 0 so the small sample is also split into mapped chunks
+        try (TraceAnalysisEngine engine = new TraceAnalysisEngine(4, 0)) {
+            assertMatchesModel(engine.aggregate(SAMPLE_TRACE).toResultNode("default"));
+        }
+    }
+
+    @Test
+    void columnarCopyMatchesEvaluationModel() throws IOException {
+        Path columns = Files.createTempFile("trace-", TraceColumnFile.SUFFIX);
+        try {
+            try (InputStream in = Files.newInputStream(SAMPLE_TRACE)) {
+                TraceColumnFileWriter.convert(in, columns, "sample");
+            }
+            try (TraceAnalysisEngine engine = new TraceAnalysisEngine(1, Long.MAX_VALUE);
+                 TraceColumnFile file = TraceColumnFile.open(columns)) {
+                assertMatchesModel(engine.aggregate(file, ProgressListener.NONE, PowerProfiles.DEFAULT)
+                        .toResultNode("default"));
+            }
+        } finally {
+            Files.deleteIfExists(columns);
+        }
+    }
+
+    private static void assertMatchesModel(JsonNode result) {
+        JsonNode summary = result.get("summary");
+        assertClose(summary.get("totalEnergy").asDouble(), TOTAL_ENERGY_KWH);
+        assertClose(summary.get("totalCarbonFootprint").asDouble(), TOTAL_CARBON_KG);
+        assertClose(summary.get("totalRuntime").asDouble(), TOTAL_RUNTIME_MIN);
+        assertClose(summary.get("avgCpuUtilization").asDouble(), AVG_CPU_UTILIZATION);
+        assertThat(summary.get("totalTasks").asInt()).isEqualTo(TOTAL_TASKS);
+        assertThat(summary.get("carbonIntensityProfile").asText()).isEqualTo("constant-475");
+
+        assertThat(result.get("tasks")).hasSize(PROCESSES);
+        JsonNode samtoolsStats = null;
+        for (JsonNode task : result.get("tasks")) {
+            if (SAMTOOLS_STATS.equals(task.get("process").asText())) {
+                samtoolsStats = task;
+            }
+        }
+        assertThat(samtoolsStats).isNotNull();
+        assertThat(samtoolsStats.get("tasks").asInt()).isEqualTo(105);
+        assertClose(samtoolsStats.get("energy_consumption").asDouble(), SAMTOOLS_STATS_ENERGY_WH);
+
+        assertThat(result.get("hostData").get("hosts")).hasSize(HOSTS);
+    }
+
+    private static void assertClose(double actual, double expected) {
+        assertThat(actual).isCloseTo(expected, within(Math.abs(expected) * RELATIVE_TOLERANCE));
+    }
+}
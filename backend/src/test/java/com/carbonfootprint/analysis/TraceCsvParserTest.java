@@ -0,0 +1,230 @@
+package com.carbonfootprint.analysis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Edge cases of the trace parser, each checked against what pandas.read_csv does with the
+ * options evaluation.py uses.
+ */
+class TraceCsvParserTest {
+
+    @Test
+    void quotedFieldsKeepDelimitersAndEscapedQuotes() throws IOException {
+        Parsed parsed = parse("process,hostname,cpus,%cpu,realtime\n"
+                + "\"ALIGN (a, b)\",\"node \"\"7\"\"\",2,50.5,1000\n");
+
+        assertThat(parsed.rows).hasSize(1);
+        Row row = parsed.rows.get(0);
+        assertThat(parsed.processName(row)).isEqualTo("ALIGN (a, b)");
+        assertThat(parsed.hostName(row)).isEqualTo("node \"7\"");
+        assertThat(row.cpus).isEqualTo(2.0);
+        assertThat(row.cpuPercent).isEqualTo(50.5);
+        assertThat(row.realtime).isEqualTo(1000.0);
+    }
+
+    @Test
+    void commentsAndBlankLinesAreSkipped() throws IOException {
+        Parsed parsed = parse("process,cpus,%cpu,realtime\r\n"
+                + "# a comment line\r\n"
+                + "\r\n"
+                + "A,1,100,2000 # the rest of the line is a comment\r\n"
+                + "B,4,25,#500\r\n");
+
+        assertThat(parsed.rows).hasSize(2);
+        assertThat(parsed.processName(parsed.rows.get(0))).isEqualTo("A");
+        assertThat(parsed.rows.get(0).realtime).isEqualTo(2000.0);
+        // Everything from '#' on is dropped, so the field is empty
+        assertThat(parsed.rows.get(1).cpus).isEqualTo(4.0);
+        assertThat(parsed.rows.get(1).realtime).isEqualTo(0.0);
+    }
+
+    @Test
+    void missingColumnsAndFieldsReadAsAbsent() throws IOException {
+        Parsed parsed = parse("process,cpus,%cpu,realtime,memory\n"
+                + "A,2,80,1000\n"
+                + ",1,10,100,2048\n");
+
+        assertThat(parsed.layout.hasHostname()).isFalse();
+        assertThat(parsed.layout.hasStatus()).isFalse();
+        assertThat(parsed.rows).hasSize(2);
+        Row shortRow = parsed.rows.get(0);
+        assertThat(shortRow.hostId).isEqualTo(-1);
+        assertThat(shortRow.memory).isEqualTo(0.0);
+        assertThat(shortRow.readBytes).isEqualTo(0.0);
+        // pandas reads an empty process as NaN, which astype(str) turns into "nan"
+        assertThat(parsed.processName(parsed.rows.get(1))).isEqualTo("nan");
+        assertThat(parsed.rows.get(1).memory).isEqualTo(2048.0);
+    }
+
+    @Test
+    void unparseableNumbersAreZero() throws IOException {
+        Parsed parsed = parse("process,cpus,%cpu,realtime,duration,memory\n"
+                + "A,NaN,nan,-,abc,\n"
+                + "B, 3 ,1e2,2.5E3,-0.0,+7\n");
+
+        Row missing = parsed.rows.get(0);
+        assertThat(missing.cpus).isEqualTo(0.0);
+        assertThat(missing.cpuPercent).isEqualTo(0.0);
+        assertThat(missing.realtime).isEqualTo(0.0);
+        assertThat(missing.duration).isEqualTo(0.0);
+        assertThat(missing.memory).isEqualTo(0.0);
+
+        Row numbers = parsed.rows.get(1);
+        assertThat(numbers.cpus).isEqualTo(3.0);
+        assertThat(numbers.cpuPercent).isEqualTo(100.0);
+        assertThat(numbers.realtime).isEqualTo(2500.0);
+        assertThat(numbers.memory).isEqualTo(7.0);
+    }
+
+    @Test
+    void numbersMatchDoubleParsing() {
+        String[] inputs = {"0", "1", "0.1", "123.456", "00012.5000", "-42.75", "1e-5", "6.02214076e23",
+                "123456789012345678901234", "0.000000000000000000000001", "9007199254740993"};
+        for (String input : inputs) {
+            byte[] bytes = input.getBytes(StandardCharsets.US_ASCII);
+            assertThat(TraceCsvParser.parseNumber(bytes, 0, bytes.length))
+                    .as(input)
+                    .isEqualTo(Double.parseDouble(input));
+        }
+    }
+
+    @Test
+    void headerlessTabSeparatedTraceUsesNextflowOrder() throws IOException {
+        String[] fields = new String[TraceLayout.EXPECTED_COLUMNS.size()];
+        Arrays.fill(fields, "-");
+        fields[TraceLayout.EXPECTED_COLUMNS.indexOf("hostname")] = "cpu01";
+        fields[TraceLayout.EXPECTED_COLUMNS.indexOf("process")] = "ALIGN";
+        fields[TraceLayout.EXPECTED_COLUMNS.indexOf("cpus")] = "8";
+        fields[TraceLayout.EXPECTED_COLUMNS.indexOf("%cpu")] = "650.1";
+        fields[TraceLayout.EXPECTED_COLUMNS.indexOf("realtime")] = "60000";
+        Parsed parsed = parse(String.join("\t", fields) + "\n");
+
+        assertThat(parsed.layout.hasHeader()).isFalse();
+        assertThat(parsed.layout.getDelimiter()).isEqualTo('\t');
+        Row row = parsed.rows.get(0);
+        assertThat(parsed.processName(row)).isEqualTo("ALIGN");
+        assertThat(parsed.hostName(row)).isEqualTo("cpu01");
+        assertThat(row.cpus).isEqualTo(8.0);
+        assertThat(row.cpuPercent).isEqualTo(650.1);
+        assertThat(row.realtime).isEqualTo(60000.0);
+    }
+
+    @Test
+    void smallBufferGivesSameRows() throws IOException {
+        String trace = "process,hostname,cpus,%cpu,realtime\n"
+                + "\"a long, quoted process name\",h1,1,100,1000\n"
+                + "B,h2,2,200,2000\n";
+        Parsed large = parse(trace);
+        TraceCsvParser parser = new TraceCsvParser(new NameDictionary(), new NameDictionary(), 8);
+        Parsed small = parse(parser, trace);
+
+        assertThat(small.rows).hasSameSizeAs(large.rows);
+        for (int i = 0; i < large.rows.size(); i++) {
+            assertThat(small.processName(small.rows.get(i))).isEqualTo(large.processName(large.rows.get(i)));
+            assertThat(small.rows.get(i).realtime).isEqualTo(large.rows.get(i).realtime);
+        }
+    }
+
+    @Test
+    void dateTimesAreReadInTheParserZone() throws IOException {
+        TraceCsvParser parser = new TraceCsvParser();
+        parser.setTimeZone(ZoneId.of("Europe/Berlin"));
+        Parsed parsed = parse(parser, "process,start,complete\n"
+                + "A,2023-10-14 12:00:00.250,2023-10-14 13:30:05.5\n"
+                // Winter time, so another offset; 'T' and no seconds are read too
+                + "B,2023-12-01T08:15,2023-12-01 09:00:00\n"
+                // Raw epoch milliseconds pass through, '-' is unknown
+                + "C,1697286401325,-\n");
+
+        assertThat(parsed.rows.get(0).start).isEqualTo(epochMs("2023-10-14T12:00:00.250+02:00"));
+        assertThat(parsed.rows.get(0).complete).isEqualTo(epochMs("2023-10-14T13:30:05.500+02:00"));
+        assertThat(parsed.rows.get(1).start).isEqualTo(epochMs("2023-12-01T08:15:00+01:00"));
+        assertThat(parsed.rows.get(1).complete).isEqualTo(epochMs("2023-12-01T09:00:00+01:00"));
+        assertThat(parsed.rows.get(2).start).isEqualTo(1697286401325.0);
+        assertThat(parsed.rows.get(2).complete).isEqualTo(0.0);
+
+        // UTC by default
+        Parsed utc = parse("process,start\nA,2023-10-14 12:00:00.250\n");
+        assertThat(utc.rows.get(0).start).isEqualTo(epochMs("2023-10-14T12:00:00.250Z"));
+    }
+
+    private static double epochMs(String dateTime) {
+        return OffsetDateTime.parse(dateTime).toInstant().toEpochMilli();
+    }
+
+    private static Parsed parse(String trace) throws IOException {
+        return parse(new TraceCsvParser(), trace);
+    }
+
+    private static Parsed parse(TraceCsvParser parser, String trace) throws IOException {
+        Parsed parsed = new Parsed(parser);
+        parser.parse(new ByteArrayInputStream(trace.getBytes(StandardCharsets.UTF_8)), parsed);
+        return parsed;
+    }
+
+    // Copies every row, since the parser reuses its TraceRow
+    private static final class Parsed implements TraceRowHandler {
+        final TraceCsvParser parser;
+        final List<Row> rows = new ArrayList<>();
+        TraceLayout layout;
+
+        Parsed(TraceCsvParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public void onLayout(TraceLayout layout) {
+            this.layout = layout;
+        }
+
+        @Override
+        public void onRow(TraceRow row) {
+            rows.add(new Row(row));
+        }
+
+        String processName(Row row) {
+            return row.processId < 0 ? null : parser.getProcessNames().name(row.processId);
+        }
+
+        String hostName(Row row) {
+            return row.hostId < 0 ? null : parser.getHostNames().name(row.hostId);
+        }
+    }
+
+    private static final class Row {
+        final int processId;
+        final int hostId;
+        final double cpus;
+        final double cpuPercent;
+        final double realtime;
+        final double duration;
+        final double memory;
+        final double readBytes;
+        final double start;
+        final double complete;
+
+        Row(TraceRow row) {
+            processId = row.processId;
+            hostId = row.hostId;
+            cpus = row.cpus;
+            cpuPercent = row.cpuPercent;
+            realtime = row.realtime;
+            duration = row.duration;
+            memory = row.memory;
+            readBytes = row.readBytes;
+            start = row.start;
+            complete = row.complete;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.carbonfootprint.analysis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.carbonfootprint.service.VisualizationService.HostData;
+import com.carbonfootprint.service.VisualizationService.TaskTable;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+import com.carbonfootprint.service.WhatIfService;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * What-if views recomputed from the rollup of the sample trace (uploads/trace.csv): with the
+ * profiles the trace was analysed with they give the stored result, and a profile for one host
+ * only changes that host and the processes that ran on it.
+ */
+class WhatIfRecomputeTest {
+
+    private static final Path SAMPLE_TRACE = Paths.get("uploads", "trace.csv");
+
+    private static final double RELATIVE_TOLERANCE = 1e-12;
+
+    private static final PowerProfile XEON = new PowerProfile("xeon", 7.5, 90, 0.5, 0.002);
+    private static final PowerProfile EPYC = new PowerProfile("epyc", 5.0, 120, 0.4, 0.001);
+
+    // The configured registry: two hosts on xeon, every other one on the default profile
+    private static final PowerProfiles CONFIGURED = PowerProfiles.of(List.of(XEON),
+            Map.of("cpu01", "xeon", "cpu02", "xeon"), PowerProfile.DEFAULT.getName());
+
+    private static TraceRollup rollup;
+    private static JsonNode stored;
+
+    @BeforeAll
+    static void analyze() throws IOException {
+        TraceAggregates aggregates;
+        try (InputStream in = Files.newInputStream(SAMPLE_TRACE)) {
+            aggregates = TraceAnalysisEngine.aggregate(in, CarbonIntensity.CONSTANT, CONFIGURED);
+        }
+        stored = aggregates.toResultNode("default");
+        rollup = aggregates.getRollup();
+    }
+
+    @Test
+    void configuredProfilesReproduceTheStoredResult() {
+        VisualizationData recomputed = WhatIfService.recompute(rollup, CONFIGURED, null);
+
+        JsonNode summary = stored.get("summary");
+        assertClose(recomputed.getSummary().getTotalEnergy(), summary.get("totalEnergy").asDouble());
+        assertClose(recomputed.getSummary().getTotalCarbonFootprint(), summary.get("totalCarbonFootprint").asDouble());
+        assertClose(recomputed.getSummary().getTotalRuntime(), summary.get("totalRuntime").asDouble());
+        assertClose(recomputed.getSummary().getAvgCpuUtilization(), summary.get("avgCpuUtilization").asDouble());
+
+        TaskTable tasks = recomputed.getTasks();
+        assertThat(tasks.size()).isEqualTo(stored.get("tasks").size());
+        for (int row = 0; row < tasks.size(); row++) {
+            JsonNode task = stored.get("tasks").get(row);
+            assertThat(tasks.getProcess(row)).isEqualTo(task.get("process").asText());
+            assertClose(tasks.getEnergyConsumption(row), task.get("energy_consumption").asDouble());
+            assertClose(tasks.getCarbonFootprint(row), task.get("carbon_footprint").asDouble());
+            assertClose(tasks.getRuntime(row), task.get("runtime").asDouble());
+        }
+
+        HostData hosts = recomputed.getHostData();
+        JsonNode hostData = stored.get("hostData");
+        assertThat(hosts.size()).isEqualTo(hostData.get("hosts").size());
+        for (int i = 0; i < hosts.size(); i++) {
+            assertThat(hosts.getHost(i)).isEqualTo(hostData.get("hosts").get(i).asText());
+            assertThat(hosts.getTaskCounts()[i]).isEqualTo(hostData.get("task_counts").get(i).asInt());
+            assertClose(hosts.getEnergyConsumptions()[i], hostData.get("energy_consumptions").get(i).asDouble());
+            assertClose(hosts.getCarbonEmissions()[i], hostData.get("carbon_emissions").get(i).asDouble());
+        }
+    }
+
+    @Test
+    void profileForOneHostChangesOnlyThatHost() {
+        VisualizationData before = WhatIfService.recompute(rollup, CONFIGURED, null);
+        // cpu03 moves from the default profile to an added one; the mapping of the others stays
+        PowerProfiles remapped = PowerProfiles.of(List.of(XEON, EPYC),
+                Map.of("cpu01", "xeon", "cpu02", "xeon", "cpu03", "epyc"), PowerProfile.DEFAULT.getName());
+        VisualizationData after = WhatIfService.recompute(rollup, remapped, null);
+
+        HostData hostsBefore = before.getHostData();
+        HostData hostsAfter = after.getHostData();
+        assertThat(hostsAfter.size()).isEqualTo(hostsBefore.size());
+        boolean seen = false;
+        for (int i = 0; i < hostsAfter.size(); i++) {
+            assertThat(hostsAfter.getHost(i)).isEqualTo(hostsBefore.getHost(i));
+            if ("cpu03".equals(hostsAfter.getHost(i))) {
+                seen = true;
+                assertThat(hostsAfter.getEnergyConsumptions()[i]).isNotCloseTo(hostsBefore.getEnergyConsumptions()[i],
+                        within(Math.abs(hostsBefore.getEnergyConsumptions()[i]) * 1e-6));
+                assertThat(hostsAfter.getCarbonEmissions()[i]).isNotCloseTo(hostsBefore.getCarbonEmissions()[i],
+                        within(Math.abs(hostsBefore.getCarbonEmissions()[i]) * 1e-6));
+            } else {
+                assertThat(hostsAfter.getEnergyConsumptions()[i]).isEqualTo(hostsBefore.getEnergyConsumptions()[i]);
+                assertThat(hostsAfter.getCarbonEmissions()[i]).isEqualTo(hostsBefore.getCarbonEmissions()[i]);
+            }
+        }
+        assertThat(seen).isTrue();
+
+        // Processes that never ran on cpu03 keep their numbers
+        Set<String> onCpu03 = new HashSet<>();
+        for (int cell = 0; cell < rollup.size(); cell++) {
+            if ("cpu03".equals(rollup.hostName(cell))) {
+                onCpu03.add(rollup.processName(cell));
+            }
+        }
+        assertThat(onCpu03).isNotEmpty();
+        Map<String, Double> energyBefore = processEnergy(before.getTasks());
+        Map<String, Double> energyAfter = processEnergy(after.getTasks());
+        assertThat(energyAfter.keySet()).isEqualTo(energyBefore.keySet());
+        assertThat(energyAfter.keySet()).anyMatch(process -> !onCpu03.contains(process));
+        energyAfter.forEach((process, energy) -> {
+            if (!onCpu03.contains(process)) {
+                assertThat(energy).as(process).isEqualTo(energyBefore.get(process));
+            }
+        });
+
+        // The totals move by exactly the change of cpu03
+        double delta = 0;
+        for (int i = 0; i < hostsAfter.size(); i++) {
+            delta += hostsAfter.getEnergyConsumptions()[i] - hostsBefore.getEnergyConsumptions()[i];
+        }
+        assertThat(after.getSummary().getTotalEnergy() - before.getSummary().getTotalEnergy())
+                .isCloseTo(delta / 1000, within(before.getSummary().getTotalEnergy() * RELATIVE_TOLERANCE));
+    }
+
+    private static Map<String, Double> processEnergy(TaskTable tasks) {
+        Map<String, Double> energy = new HashMap<>();
+        for (int row = 0; row < tasks.size(); row++) {
+            energy.put(tasks.getProcess(row), tasks.getEnergyConsumption(row));
+        }
+        return energy;
+    }
+
+    private static void assertClose(double actual, double expected) {
+        assertThat(actual).isCloseTo(expected, within(Math.abs(expected) * RELATIVE_TOLERANCE));
+    }
+}
@@ -0,0 +1,119 @@
+package com.carbonfootprint.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.carbonfootprint.TestStorage;
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.repository.AnalysisResultRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Keyset paging of /api/analyses: results with the same analysis time are ordered by id, so
+ * following X-Next-Cursor visits every result exactly once; a cursor that does not decode is a
+ * 400, not a server error.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class AnalysesPagingTest {
+
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
+
+    private static final LocalDateTime ANALYSIS_TIME = LocalDateTime.of(2023, 10, 14, 12, 0);
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        TestStorage.register(registry, "analyses-paging-test");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AnalysisResultRepository resultRepository;
+
+    @Test
+    void pagesThroughEqualTimesWithoutDuplicatesOrGaps() throws Exception {
+        // Seven results at one time, so page boundaries fall inside the tie, and two either side
+        List<AnalysisResult> saved = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            saved.add(save(ANALYSIS_TIME));
+        }
+        saved.add(save(ANALYSIS_TIME.minusMinutes(1)));
+        saved.add(save(ANALYSIS_TIME.plusMinutes(1)));
+        saved.add(save(ANALYSIS_TIME.minusMinutes(1)));
+        saved.add(save(ANALYSIS_TIME.plusMinutes(1)));
+        List<Long> expected = saved.stream()
+                .sorted(Comparator.comparing(AnalysisResult::getAnalysisTime).thenComparing(AnalysisResult::getId)
+                        .reversed())
+                .map(AnalysisResult::getId)
+                .collect(Collectors.toList());
+
+        List<Long> listed = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MvcResult page = mockMvc.perform(get("/api/analyses").param("size", "3")
+                            .param("cursor", cursor != null ? cursor : ""))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            JsonNode items = objectMapper.readTree(page.getResponse().getContentAsByteArray());
+            assertThat(items.size()).isBetween(1, 3);
+            items.forEach(item -> listed.add(item.get("id").asLong()));
+            cursor = page.getResponse().getHeader(NEXT_CURSOR);
+            pages++;
+        } while (cursor != null && pages < 10);
+
+        assertThat(listed).doesNotHaveDuplicates().containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void malformedCursorIsBadRequest() throws Exception {
+        List<String> cursors = List.of(
+                "not base64!",
+                encode("2023-10-14T12:00"),
+                encode("yesterday,5"),
+                encode("2023-10-14T12:00,five"),
+                encode("2023-10-14T12:00,5,6"));
+        for (String cursor : cursors) {
+            mockMvc.perform(get("/api/analyses").param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    private AnalysisResult save(LocalDateTime analysisTime) {
+        AnalysisResult result = new AnalysisResult();
+        result.setAnalysisTime(analysisTime);
+        result.setTotalEnergy(1.0);
+        result.setTotalCarbonFootprint(0.5);
+        result.setTotalRuntime(10.0);
+        result.setTasksStored(true);
+        return resultRepository.save(result);
+    }
+
+    private static String encode(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,129 @@
+package com.carbonfootprint.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.carbonfootprint.TestStorage;
+import com.carbonfootprint.analysis.ContentHashes;
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.repository.ScriptRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Resumable uploads (/api/data-sources/uploads): a part at the wrong offset is refused with 409
+ * and the current offset, and the upload then resumes from that offset to a complete script.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ResumableUploadTest {
+
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        TestStorage.register(registry, "resumable-upload-test");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ScriptRepository scriptRepository;
+
+    @Test
+    void wrongOffsetIsConflictAndUploadResumes() throws Exception {
+        byte[] trace = sampleTrace(200);
+        int half = trace.length / 2;
+
+        MvcResult begun = mockMvc.perform(post("/api/data-sources/uploads")
+                        .param("fileName", "trace.csv")
+                        .param("size", String.valueOf(trace.length)))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(UPLOAD_OFFSET, "0"))
+                .andReturn();
+        String uploadId = json(begun).get("uploadId").asText();
+        String uri = "/api/data-sources/uploads/" + uploadId;
+
+        mockMvc.perform(put(uri).header(UPLOAD_OFFSET, 0)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(Arrays.copyOfRange(trace, 0, half)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(UPLOAD_OFFSET, String.valueOf(half)))
+                .andExpect(jsonPath("$.complete").value(false));
+
+        // The first part sent again, e.g. by a client that missed the response
+        mockMvc.perform(put(uri).header(UPLOAD_OFFSET, 0)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(Arrays.copyOfRange(trace, 0, half)))
+                .andExpect(status().isConflict())
+                .andExpect(header().string(UPLOAD_OFFSET, String.valueOf(half)));
+        // A part that skips ahead
+        mockMvc.perform(put(uri).header(UPLOAD_OFFSET, half + 10)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(Arrays.copyOfRange(trace, half + 10, trace.length)))
+                .andExpect(status().isConflict())
+                .andExpect(header().string(UPLOAD_OFFSET, String.valueOf(half)));
+
+        // The client asks where to resume and sends the rest from there
+        MvcResult current = mockMvc.perform(get(uri))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.receivedBytes").value(half))
+                .andReturn();
+        long offset = Long.parseLong(current.getResponse().getHeader(UPLOAD_OFFSET));
+        MvcResult done = mockMvc.perform(put(uri).header(UPLOAD_OFFSET, offset)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(Arrays.copyOfRange(trace, (int) offset, trace.length)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(UPLOAD_OFFSET, String.valueOf(trace.length)))
+                .andExpect(jsonPath("$.complete").value(true))
+                .andReturn();
+
+        Script script = scriptRepository.findById(json(done).get("script").get("id").asLong()).orElseThrow();
+        assertThat(script.getFileName()).isEqualTo("trace.csv");
+        assertThat(script.getContentHash()).isEqualTo(sha256(trace));
+        assertThat(Files.readAllBytes(Paths.get(script.getFilePath()))).isEqualTo(trace);
+
+        // A finished upload is gone
+        mockMvc.perform(get(uri)).andExpect(status().isNotFound());
+    }
+
+    private JsonNode json(MvcResult result) throws IOException {
+        return objectMapper.readTree(result.getResponse().getContentAsByteArray());
+    }
+
+    private static byte[] sampleTrace(int lines) throws IOException {
+        Path sample = Paths.get("uploads", "trace.csv");
+        return (String.join("\n", Files.readAllLines(sample).subList(0, lines)) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(ContentHashes.newDigest().digest(bytes));
+    }
+}
@@ -0,0 +1,74 @@
+package com.carbonfootprint.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import com.carbonfootprint.service.ActiveScriptRegistry.Claim;
+
+/**
+ * A second analysis of a script that is being analyzed waits for the first one and reuses its
+ * result, or analyzes the script itself when the first one saved nothing.
+ */
+class ActiveScriptRegistryTest {
+
+    private final ActiveScriptRegistry registry = new ActiveScriptRegistry();
+
+    @Test
+    void waiterReusesTheSavedResult() throws Exception {
+        Claim first = registry.claim(1L);
+        assertThat(first.isHeld()).isTrue();
+
+        CompletableFuture<Claim> second = claimInBackground(1L);
+        assertStillWaiting(second);
+        registry.release(first, 42L);
+
+        Claim reused = second.get(5, TimeUnit.SECONDS);
+        assertThat(reused.isHeld()).isFalse();
+        assertThat(reused.getReusedResultId()).isEqualTo(42L);
+        // Released, so the next one holds the script again
+        assertThat(registry.claim(1L).isHeld()).isTrue();
+    }
+
+    @Test
+    void waiterTakesOverWhenNothingWasSaved() throws Exception {
+        Claim first = registry.claim(2L);
+        CompletableFuture<Claim> second = claimInBackground(2L);
+        assertStillWaiting(second);
+        registry.release(first, null);
+
+        Claim takenOver = second.get(5, TimeUnit.SECONDS);
+        assertThat(takenOver.isHeld()).isTrue();
+        // Releasing twice changes nothing; other scripts were never blocked
+        registry.release(first, 7L);
+        assertThat(registry.claim(3L).isHeld()).isTrue();
+        CompletableFuture<Claim> third = claimInBackground(2L);
+        assertStillWaiting(third);
+        registry.release(takenOver, 8L);
+        assertThat(third.get(5, TimeUnit.SECONDS).getReusedResultId()).isEqualTo(8L);
+    }
+
+    private CompletableFuture<Claim> claimInBackground(Long scriptId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return registry.claim(scriptId);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static void assertStillWaiting(CompletableFuture<Claim> claim) throws InterruptedException, ExecutionException {
+        try {
+            claim.get(100, TimeUnit.MILLISECONDS);
+            throw new AssertionError("Claim did not wait for the holder");
+        } catch (TimeoutException expected) {
+            // still waiting
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.carbonfootprint.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.carbonfootprint.TestStorage;
+import com.carbonfootprint.analysis.ProgressListener;
+import com.carbonfootprint.model.AnalysisResult;
+import com.carbonfootprint.model.Script;
+import com.carbonfootprint.repository.AnalysisResultRepository;
+import com.carbonfootprint.repository.ScriptRepository;
+import com.carbonfootprint.service.ScriptService.AnalysisOutcome;
+
+/**
+ * Content de-duplication of uploads and the analysis result cache: a result is reused only when
+ * the trace hash, analyzer version, power profile and carbon intensity profile all match.
+ */
+@SpringBootTest(properties = {
+        "analysis.power-profiles.xeon.cpu-watts-per-core=7.5",
+        "analysis.power-profiles.xeon.idle-watts=90"
+})
+class ScriptServiceTest {
+
+    private static Path storage;
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        storage = TestStorage.register(registry, "script-service-test");
+    }
+
+    @Autowired
+    private ScriptService scriptService;
+
+    @Autowired
+    private AnalysisCacheService analysisCacheService;
+
+    @Autowired
+    private ScriptRepository scriptRepository;
+
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+
+    @Test
+    void sameContentIsStoredOnce() throws IOException {
+        byte[] trace = sampleTrace(0, 40);
+        Script first = upload("first.csv", trace);
+        Script second = upload("second.csv", trace);
+
+        assertThat(second.getId()).isEqualTo(first.getId());
+        assertThat(second.getFilePath()).isEqualTo(first.getFilePath());
+        assertThat(storedFilesWithContent(trace)).hasSize(1);
+    }
+
+    @Test
+    void sameNameWithOtherContentKeepsBothTraces() throws IOException {
+        byte[] older = sampleTrace(40, 80);
+        byte[] newer = sampleTrace(80, 120);
+        Script first = upload("run.csv", older);
+        Script second = upload("run.csv", newer);
+
+        assertThat(second.getId()).isNotEqualTo(first.getId());
+        assertThat(second.getFilePath()).isNotEqualTo(first.getFilePath());
+        assertThat(first.getFileName()).isEqualTo("run.csv");
+        assertThat(second.getFileName()).isEqualTo("run.csv");
+        assertThat(Files.readAllBytes(Paths.get(first.getFilePath()))).isEqualTo(older);
+        assertThat(Files.readAllBytes(Paths.get(second.getFilePath()))).isEqualTo(newer);
+    }
+
+    @Test
+    void cachedResultIsReusedOnlyWhenEveryKeyPartMatches() throws IOException {
+        Script script = upload("cached.csv", sampleTrace(120, 160));
+        assertThat(scriptService.findCachedResult(script)).isEmpty();
+        AnalysisResult result = scriptService.analyzeTraceFile(script.getId());
+
+        // Same trace, analyzer, profile and intensity: the result is reused without analysing again
+        Script reloaded = scriptRepository.findById(script.getId()).orElseThrow();
+        assertThat(scriptService.findCachedResult(reloaded)).map(AnalysisResult::getId).contains(result.getId());
+        assertThat(scriptService.analyzeTraceFile(script.getId()).getId()).isEqualTo(result.getId());
+
+        // Another power profile for the same trace is a miss
+        reloaded.setHardwareConfig("xeon");
+        assertThat(scriptService.findCachedResult(reloaded)).isEmpty();
+
+        // Changing any one part of the key gives another key, which misses
+        String key = result.getCacheKey();
+        // (trace hash, analyzer version, power profile token, carbon intensity profile)
+        String[] parts = {script.getContentHash(), scriptService.getTraceAnalyzer().getVersion(),
+                "default@profiles", scriptService.getTraceAnalyzer().getCarbonIntensityProfile()};
+        String base = analysisCacheService.cacheKey(parts[0], parts[1], parts[2], parts[3]);
+        for (int i = 0; i < parts.length; i++) {
+            String[] changed = parts.clone();
+            changed[i] = changed[i] + "-changed";
+            String other = analysisCacheService.cacheKey(changed[0], changed[1], changed[2], changed[3]);
+            assertThat(other).as("key with part %d changed", i).isNotEqualTo(base).isNotEqualTo(key);
+            assertThat(analysisCacheService.peek(other)).isEmpty();
+        }
+        assertThat(analysisCacheService.peek(key)).map(AnalysisResult::getId).contains(result.getId());
+    }
+
+    @Test
+    void batchSaveReplacesResultSavedAfterItsScriptWasLoaded() throws IOException {
+        Script script = upload("overlap.csv", sampleTrace(160, 200));
+        // A batch item loaded the script and analyzed it while a single analysis saved a result
+        AnalysisOutcome batchItem = scriptService.computeAnalysis(script, ProgressListener.NONE);
+        assertThat(script.getResult()).isNull();
+        AnalysisResult single = scriptService.analyzeTraceFile(script.getId());
+
+        Map<Long, Long> saved = scriptService.saveAnalyses(List.of(batchItem));
+
+        Long replacement = saved.get(script.getId());
+        assertThat(replacement).isNotEqualTo(single.getId());
+        assertThat(analysisResultRepository.findById(single.getId())).isEmpty();
+        assertThat(analysisResultRepository.findById(replacement)).isPresent();
+    }
+
+    private Script upload(String fileName, byte[] trace) {
+        return scriptService.storeTraceStream(fileName, new ByteArrayInputStream(trace), trace.length, null);
+    }
+
+    private static List<Path> storedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(storage.resolve("uploads"))) {
+            return files.filter(file -> !file.getFileName().toString().startsWith("."))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<Path> storedFilesWithContent(byte[] content) throws IOException {
+        List<Path> matching = new ArrayList<>();
+        for (Path file : storedFiles()) {
+            if (Arrays.equals(Files.readAllBytes(file), content)) {
+                matching.add(file);
+            }
+        }
+        return matching;
+    }
+
+    // Lines [from, to) of the sample trace; different ranges give different content
+    private static byte[] sampleTrace(int from, int to) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get("uploads", "trace.csv")).subList(from, to);
+        return (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
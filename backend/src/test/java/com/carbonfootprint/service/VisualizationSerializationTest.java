@@ -0,0 +1,157 @@
+package com.carbonfootprint.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.carbonfootprint.analysis.TraceAnalysisEngine;
+import com.carbonfootprint.service.VisualizationService.VisualizationData;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Golden test of the chart data JSON. The columnar tables serialize themselves, so this checks
+ * that the result of the sample trace (uploads/trace.csv) still comes out with the field names,
+ * nesting and values the per-row beans gave: {@code tasks[]} objects, the {@code hostData}
+ * columns with its {@code processes} map, and {@code processData[]} objects.
+ */
+class VisualizationSerializationTest {
+
+    private static final Path SAMPLE_TRACE = Paths.get("uploads", "trace.csv");
+
+    private static final List<String> SUMMARY_FIELDS =
+            List.of("totalEnergy", "totalCarbonFootprint", "totalRuntime", "avgCpuUtilization");
+    private static final List<String> TASK_FIELDS = List.of("process", "energyConsumption", "carbonFootprint",
+            "runtime", "cpuUsage", "memoryAllocated", "hardware");
+    private static final List<String> HOST_FIELDS = List.of("hosts", "taskCounts", "runtimes", "cpuUtilizations",
+            "memoryAllocations", "ioVolumes", "energyConsumptions", "carbonEmissions", "processes");
+    private static final List<String> PROCESS_FIELDS = List.of("process", "tasks", "runtime", "cpuUsage",
+            "memoryAllocated", "ioVolume", "energyConsumption", "carbonFootprint", "readGb", "writeGb");
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonCodec codec = new JsonCodec(mapper);
+
+    private static JsonNode raw;
+    private static JsonNode serialized;
+
+    @BeforeAll
+    static void serialize() throws IOException {
+        ObjectNode result;
+        try (InputStream in = Files.newInputStream(SAMPLE_TRACE)) {
+            result = TraceAnalysisEngine.aggregate(in).toResultNode("default");
+        }
+        // The native result has no per-process rows; give it evaluation.py's, one per task group
+        ArrayNode processData = result.putArray("processData");
+        result.get("tasks").forEach(task -> processData.add(task.deepCopy()));
+        raw = result;
+
+        VisualizationData data = codec.readVisualization(new ByteArrayInputStream(codec.writeTree(raw)));
+        serialized = mapper.readTree(codec.writeVisualization(data));
+    }
+
+    @Test
+    void fieldNamesAndNestingAreUnchanged() {
+        assertThat(fieldNames(serialized)).containsExactly("summary", "tasks", "hostData", "processData");
+        assertThat(fieldNames(serialized.get("summary"))).containsExactlyInAnyOrderElementsOf(SUMMARY_FIELDS);
+
+        assertThat(serialized.get("tasks").isArray()).isTrue();
+        assertThat(serialized.get("tasks")).hasSize(raw.get("tasks").size());
+        serialized.get("tasks").forEach(task -> assertThat(fieldNames(task)).containsExactlyElementsOf(TASK_FIELDS));
+
+        JsonNode hostData = serialized.get("hostData");
+        assertThat(hostData.isObject()).isTrue();
+        assertThat(fieldNames(hostData)).containsExactlyElementsOf(HOST_FIELDS);
+        HOST_FIELDS.subList(0, HOST_FIELDS.size() - 1).forEach(field -> {
+            assertThat(hostData.get(field).isArray()).as(field).isTrue();
+            assertThat(hostData.get(field)).as(field).hasSize(raw.get("hostData").get("hosts").size());
+        });
+        assertThat(hostData.get("processes").isObject()).isTrue();
+        hostData.get("processes").forEach(processes -> assertThat(processes.isTextual()).isTrue());
+
+        assertThat(serialized.get("processData").isArray()).isTrue();
+        assertThat(serialized.get("processData")).hasSize(raw.get("processData").size());
+        serialized.get("processData")
+                .forEach(process -> assertThat(fieldNames(process)).containsExactlyElementsOf(PROCESS_FIELDS));
+    }
+
+    @Test
+    void valuesMatchTheBeanMapping() {
+        assertThat(serialized).isEqualTo(expected(raw));
+    }
+
+    // What the bean model made of the analyzer output, field by field
+    private static JsonNode expected(JsonNode data) {
+        ObjectNode root = mapper.createObjectNode();
+
+        JsonNode summaryNode = data.path("summary");
+        ObjectNode summary = root.putObject("summary");
+        SUMMARY_FIELDS.forEach(field -> summary.put(field, summaryNode.path(field).asDouble(0.0)));
+
+        ArrayNode tasks = root.putArray("tasks");
+        data.get("tasks").forEach(taskNode -> {
+            ObjectNode task = tasks.addObject();
+            task.put("process", taskNode.path("process").asText("Unknown"));
+            task.put("energyConsumption", taskNode.path("energy_consumption").asDouble(0.0));
+            task.put("carbonFootprint", taskNode.path("carbon_footprint").asDouble(0.0));
+            task.put("runtime", taskNode.path("runtime").asDouble(0.0));
+            task.put("cpuUsage", taskNode.path("cpu_usage").asDouble(0.0));
+            task.put("memoryAllocated", taskNode.path("memory_allocated").asDouble(0.0));
+            task.put("hardware", taskNode.path("hardware").asText("Unknown"));
+        });
+
+        JsonNode hostDataNode = data.get("hostData");
+        ObjectNode hostData = root.putObject("hostData");
+        ArrayNode hosts = hostData.putArray("hosts");
+        hostDataNode.get("hosts").forEach(host -> hosts.add(host.asText()));
+        ArrayNode taskCounts = hostData.putArray("taskCounts");
+        hostDataNode.get("task_counts").forEach(count -> taskCounts.add(count.asInt()));
+        copyDoubles(hostDataNode, "runtimes", hostData, "runtimes");
+        copyDoubles(hostDataNode, "cpu_utilizations", hostData, "cpuUtilizations");
+        copyDoubles(hostDataNode, "memory_allocations", hostData, "memoryAllocations");
+        copyDoubles(hostDataNode, "io_volumes", hostData, "ioVolumes");
+        copyDoubles(hostDataNode, "energy_consumptions", hostData, "energyConsumptions");
+        copyDoubles(hostDataNode, "carbon_emissions", hostData, "carbonEmissions");
+        ObjectNode processes = hostData.putObject("processes");
+        hostDataNode.get("processes").fields()
+                .forEachRemaining(entry -> processes.put(entry.getKey(), entry.getValue().asText()));
+
+        ArrayNode processData = root.putArray("processData");
+        data.get("processData").forEach(processNode -> {
+            ObjectNode process = processData.addObject();
+            process.put("process", processNode.path("process").asText("Unknown"));
+            process.put("tasks", processNode.path("tasks").asInt(0));
+            process.put("runtime", processNode.path("runtime").asDouble(0.0));
+            process.put("cpuUsage", processNode.path("cpu_usage").asDouble(0.0));
+            process.put("memoryAllocated", processNode.path("memory_allocated").asDouble(0.0));
+            process.put("ioVolume", processNode.path("io_volume").asDouble(0.0));
+            process.put("energyConsumption", processNode.path("energy_consumption").asDouble(0.0));
+            process.put("carbonFootprint", processNode.path("carbon_footprint").asDouble(0.0));
+            process.put("readGb", processNode.path("read_gb").asDouble(0.0));
+            process.put("writeGb", processNode.path("write_gb").asDouble(0.0));
+        });
+        return root;
+    }
+
+    private static void copyDoubles(JsonNode from, String field, ObjectNode to, String name) {
+        ArrayNode values = to.putArray(name);
+        from.get(field).forEach(value -> values.add(value.asDouble()));
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+}